@@ -0,0 +1,77 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.Allegrex;
+
+import java.util.Arrays;
+
+import jpcsp.Memory;
+import jpcsp.Allegrex.Common.Instruction;
+
+/**
+ * Cache of the decoded instructions used by the interpreter.
+ *
+ * The decoded instructions are stored per 4KB page, together with the
+ * opcode they have been decoded from. The opcode is anyway fetched from
+ * memory by the interpreter: a cached instruction is only used when
+ * the opcode in memory is still the same. This way, the cache is
+ * implicitly invalidated by any memory write (CPU, DMA, file reads...)
+ * without having to track them.
+ *
+ * This class is not thread-safe: each Processor is using its own cache.
+ */
+public class DecodedInstructionCache {
+	private static final int PAGE_SHIFT = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final int NUMBER_PAGES = (Memory.addressMask >>> PAGE_SHIFT) + 1;
+	private final int[][] opcodePages = new int[NUMBER_PAGES][];
+	private final Instruction[][] instructionPages = new Instruction[NUMBER_PAGES][];
+
+	/**
+	 * Retrieve the decoded instruction for the given opcode at the given address.
+	 *
+	 * @param address  the address of the instruction
+	 * @param opcode   the opcode read from memory at this address
+	 * @return         the decoded instruction
+	 */
+	public Instruction getInstruction(int address, int opcode) {
+		int pageIndex = (address & Memory.addressMask) >>> PAGE_SHIFT;
+		int[] opcodes = opcodePages[pageIndex];
+		Instruction[] instructions = instructionPages[pageIndex];
+		if (opcodes == null) {
+			opcodes = new int[PAGE_SIZE >> 2];
+			instructions = new Instruction[PAGE_SIZE >> 2];
+			opcodePages[pageIndex] = opcodes;
+			instructionPages[pageIndex] = instructions;
+		}
+
+		int index = (address & PAGE_MASK) >> 2;
+		Instruction insn = instructions[index];
+		if (insn == null || opcodes[index] != opcode) {
+			insn = Decoder.instruction(opcode);
+			opcodes[index] = opcode;
+			instructions[index] = insn;
+		}
+
+		return insn;
+	}
+
+	public void clear() {
+		Arrays.fill(opcodePages, null);
+		Arrays.fill(instructionPages, null);
+	}
+}
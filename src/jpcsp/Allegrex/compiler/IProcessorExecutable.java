@@ -0,0 +1,35 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.Allegrex.compiler;
+
+import jpcsp.Processor;
+
+/**
+ * Code block compiled by a ProcessorCompiler.
+ * The code block is not bound to any processor instance:
+ * the processor is passed as a parameter.
+ */
+public interface IProcessorExecutable {
+	/**
+	 * Execute the code block on the given processor.
+	 * When returning, processor.cpu.pc is the address
+	 * of the next instruction to be executed.
+	 *
+	 * @param processor  the processor executing the code block
+	 */
+	public void exec(Processor processor);
+}
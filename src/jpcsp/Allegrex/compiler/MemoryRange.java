@@ -59,9 +59,7 @@ public class MemoryRange {
 			System.arraycopy(RuntimeContext.getMemoryInt(), address >> 2, values, 0, values.length);
 		} else {
 			IMemoryReader memoryReader = MemoryReader.getMemoryReader(rawAddress, length, 4);
-			for (int i = 0; i < values.length; i++) {
-				values[i] = memoryReader.readNext();
-			}
+			memoryReader.readNext(values, 0, values.length);
 		}
 	}
 
@@ -0,0 +1,330 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.Allegrex.compiler;
+
+import static jpcsp.Allegrex.Common.Instruction.FLAG_ENDS_BLOCK;
+import static jpcsp.Allegrex.Common.Instruction.FLAG_HAS_DELAY_SLOT;
+import static jpcsp.Allegrex.Common.Instruction.FLAG_MODIFIES_INTERRUPT_STATE;
+import static jpcsp.Allegrex.Common.Instruction.FLAG_SYSCALL;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import jpcsp.Memory;
+import jpcsp.Processor;
+import jpcsp.Allegrex.Common;
+import jpcsp.Allegrex.CpuState;
+import jpcsp.Allegrex.Decoder;
+import jpcsp.Allegrex.Instructions;
+import jpcsp.Allegrex.Common.Instruction;
+
+/**
+ * Compiler for the code executed by a secondary processor (e.g. the Media Engine).
+ *
+ * The code generated by the Compiler is bound to the main processor through
+ * the static fields of the RuntimeContext. The code generated here is
+ * processor independent: each basic block is compiled into a class
+ * calling the instruction interpreters on the processor passed as parameter.
+ * This removes the instruction decoding and dispatching from the
+ * execution loop.
+ *
+ * Each processor has its own ProcessorCompiler, reading the code through
+ * the processor memory view and caching its code blocks independently.
+ * The code blocks are invalidated by RuntimeContext.invalidateRange()
+ * and RuntimeContext.invalidateAll(), i.e. when the main processor or
+ * the secondary processor are executing cache instructions.
+ */
+public class ProcessorCompiler {
+	public static Logger log = Compiler.log;
+	// Maximum number of instructions compiled in one code block
+	private static final int MAX_BLOCK_INSTRUCTIONS = 256;
+	private static final int BLOCK_END_FLAGS = FLAG_HAS_DELAY_SLOT | FLAG_ENDS_BLOCK | FLAG_SYSCALL | FLAG_MODIFIES_INTERRUPT_STATE;
+	private static final String objectInternalName = Type.getInternalName(Object.class);
+	private static final String processorInternalName = Type.getInternalName(Processor.class);
+	private static final String processorDescriptor = Type.getDescriptor(Processor.class);
+	private static final String cpuInternalName = Type.getInternalName(CpuState.class);
+	private static final String cpuDescriptor = Type.getDescriptor(CpuState.class);
+	private static final String instructionInternalName = Type.getInternalName(Instruction.class);
+	private static final String instructionDescriptor = Type.getDescriptor(Instruction.class);
+	private static final String[] interfaces = new String[] { Type.getInternalName(IProcessorExecutable.class) };
+	private static final List<ProcessorCompiler> compilers = new CopyOnWriteArrayList<ProcessorCompiler>();
+	private final Processor processor;
+	private final String name;
+	private final Map<Integer, ProcessorCodeBlock> codeBlocks = new ConcurrentHashMap<Integer, ProcessorCodeBlock>();
+	private CompilerClassLoader classLoader;
+	private int classIndex;
+
+	private static class ProcessorCodeBlock {
+		// Masked addresses of the compiled code, including the delay slot
+		private final int lowestAddress;
+		private final int highestAddress;
+		private final IProcessorExecutable executable;
+
+		public ProcessorCodeBlock(int lowestAddress, int highestAddress, IProcessorExecutable executable) {
+			this.lowestAddress = lowestAddress;
+			this.highestAddress = highestAddress;
+			this.executable = executable;
+		}
+
+		public boolean isOverlappingWithAddressRange(int addr, int size) {
+			return lowestAddress < addr + size && addr <= highestAddress;
+		}
+	}
+
+	public ProcessorCompiler(Processor processor, String name) {
+		this.processor = processor;
+		this.name = name;
+		classLoader = new CompilerClassLoader(null);
+		compilers.add(this);
+	}
+
+	/**
+	 * Invalidate the code blocks of all the processors
+	 * overlapping the given address range.
+	 */
+	public static void invalidateRangeAllProcessors(int addr, int size) {
+		for (ProcessorCompiler compiler : compilers) {
+			compiler.invalidateRange(addr, size);
+		}
+	}
+
+	/**
+	 * Invalidate the code blocks of all the processors.
+	 */
+	public static void invalidateAllProcessors() {
+		for (ProcessorCompiler compiler : compilers) {
+			compiler.invalidateAll();
+		}
+	}
+
+	public synchronized void invalidateRange(int addr, int size) {
+		addr &= Memory.addressMask;
+		for (Map.Entry<Integer, ProcessorCodeBlock> entry : codeBlocks.entrySet()) {
+			if (entry.getValue().isOverlappingWithAddressRange(addr, size)) {
+				if (log.isDebugEnabled()) {
+					log.debug(String.format("%s invalidating code block 0x%08X", name, entry.getKey()));
+				}
+				codeBlocks.remove(entry.getKey());
+			}
+		}
+	}
+
+	public synchronized void invalidateAll() {
+		if (!codeBlocks.isEmpty()) {
+			codeBlocks.clear();
+			// Allow the classes of the invalidated code blocks to be garbage collected
+			classLoader = new CompilerClassLoader(null);
+		}
+	}
+
+	/**
+	 * Retrieve the compiled code block starting at the given address,
+	 * compiling it at the first call.
+	 *
+	 * @param address  the start address of the code block
+	 * @return         the compiled code block or null if it could not be compiled
+	 */
+	public IProcessorExecutable getExecutable(int address) {
+		ProcessorCodeBlock codeBlock = codeBlocks.get(address);
+		if (codeBlock == null) {
+			codeBlock = compileCodeBlock(address);
+			if (codeBlock == null) {
+				return null;
+			}
+		}
+
+		return codeBlock.executable;
+	}
+
+	/**
+	 * Compile and store the code block starting at the given address.
+	 *
+	 * The code block is stored while holding the lock used by invalidateRange()
+	 * and invalidateAll(): a code block compiled from memory being modified
+	 * concurrently is either invalidated after being stored or is compiled
+	 * after the invalidation, reading the new memory content.
+	 *
+	 * @param address  the start address of the code block
+	 * @return         the compiled code block or null if it could not be compiled
+	 */
+	private synchronized ProcessorCodeBlock compileCodeBlock(int address) {
+		// The code block might have been compiled while waiting for the lock
+		ProcessorCodeBlock codeBlock = codeBlocks.get(address);
+		if (codeBlock == null) {
+			codeBlock = compile(address);
+			if (codeBlock != null) {
+				codeBlocks.put(address, codeBlock);
+			}
+		}
+
+		return codeBlock;
+	}
+
+	private static boolean isEndOfBlock(Instruction insn) {
+		if (insn.hasFlags(BLOCK_END_FLAGS)) {
+			return true;
+		}
+
+		// The cache instructions might invalidate the current code block
+		// and the halt instruction is stopping the processor.
+		return insn == Instructions.HALT || insn == Instructions.ICACHE_HIT_INVALIDATE;
+	}
+
+	private static void loadImm(MethodVisitor mv, int imm) {
+		switch (imm) {
+			case -1: mv.visitInsn(Opcodes.ICONST_M1); break;
+			case  0: mv.visitInsn(Opcodes.ICONST_0);  break;
+			case  1: mv.visitInsn(Opcodes.ICONST_1);  break;
+			case  2: mv.visitInsn(Opcodes.ICONST_2);  break;
+			case  3: mv.visitInsn(Opcodes.ICONST_3);  break;
+			case  4: mv.visitInsn(Opcodes.ICONST_4);  break;
+			case  5: mv.visitInsn(Opcodes.ICONST_5);  break;
+			default:
+				if (Byte.MIN_VALUE <= imm && imm < Byte.MAX_VALUE) {
+					mv.visitIntInsn(Opcodes.BIPUSH, imm);
+				} else if (Short.MIN_VALUE <= imm && imm < Short.MAX_VALUE) {
+					mv.visitIntInsn(Opcodes.SIPUSH, imm);
+				} else {
+					mv.visitLdcInsn(Integer.valueOf(imm));
+				}
+				break;
+		}
+	}
+
+	private static void loadInstruction(MethodVisitor mv, Instruction insn) {
+		String classInternalName = Type.getInternalName(Instructions.class);
+
+		if (insn == Common.UNK) {
+			// UNK instruction is in Common class, not Instructions
+			classInternalName = Type.getInternalName(Common.class);
+		}
+
+		mv.visitFieldInsn(Opcodes.GETSTATIC, classInternalName, insn.name().replace('.', '_').replace(' ', '_'), instructionDescriptor);
+	}
+
+	private ProcessorCodeBlock compile(int startAddress) {
+		Memory mem = processor.cpu.memory;
+		int numberInstructions = 0;
+		int address = startAddress;
+		int endAddress;
+		while (true) {
+			Instruction insn = Decoder.instruction(mem.read32(address));
+			numberInstructions++;
+			if (insn.hasFlags(FLAG_HAS_DELAY_SLOT)) {
+				// The delay slot is executed by the branch instruction itself
+				endAddress = address + 4;
+				break;
+			}
+			if (isEndOfBlock(insn) || numberInstructions >= MAX_BLOCK_INSTRUCTIONS) {
+				endAddress = address;
+				break;
+			}
+			address += 4;
+		}
+
+		String className = String.format("%s_0x%08X_%d", name, startAddress, classIndex++);
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("%s compiling 0x%08X-0x%08X (%d instructions)", name, startAddress, endAddress, numberInstructions));
+		}
+
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, className, null, objectInternalName, interfaces);
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, objectInternalName, "<init>", "()V");
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(1, 1);
+		mv.visitEnd();
+
+		// Generate the following code:
+		//     public void exec(Processor processor) {
+		//         CpuState cpu = processor.cpu;
+		//         cpu.pc = address + 4;
+		//         Instructions.XXX.interpret(processor, opcode);
+		//         ... repeated for each instruction of the code block
+		//     }
+		mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "exec", "(" + processorDescriptor + ")V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		mv.visitFieldInsn(Opcodes.GETFIELD, processorInternalName, "cpu", cpuDescriptor);
+		mv.visitVarInsn(Opcodes.ASTORE, 2);
+		for (address = startAddress; address < startAddress + numberInstructions * 4; address += 4) {
+			int opcode = mem.read32(address);
+			Instruction insn = Decoder.instruction(opcode);
+
+			// The interpreters are expecting the pc to point to the next instruction
+			mv.visitVarInsn(Opcodes.ALOAD, 2);
+			loadImm(mv, address + 4);
+			mv.visitFieldInsn(Opcodes.PUTFIELD, cpuInternalName, "pc", "I");
+
+			if (insn != Instructions.NOP) {
+				loadInstruction(mv, insn);
+				mv.visitVarInsn(Opcodes.ALOAD, 1);
+				loadImm(mv, opcode);
+				mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, instructionInternalName, "interpret", "(" + processorDescriptor + "I)V");
+			}
+		}
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		cw.visitEnd();
+
+		IProcessorExecutable executable;
+		try {
+			Class<?> compiledClass = classLoader.defineClass(className, cw.toByteArray());
+			executable = (IProcessorExecutable) compiledClass.getDeclaredConstructor().newInstance();
+		} catch (ClassFormatError e) {
+			log.error(String.format("%s cannot compile 0x%08X", name, startAddress), e);
+			return null;
+		} catch (InstantiationException e) {
+			log.error(String.format("%s cannot compile 0x%08X", name, startAddress), e);
+			return null;
+		} catch (IllegalAccessException e) {
+			log.error(String.format("%s cannot compile 0x%08X", name, startAddress), e);
+			return null;
+		} catch (InvocationTargetException e) {
+			log.error(String.format("%s cannot compile 0x%08X", name, startAddress), e);
+			return null;
+		} catch (NoSuchMethodException e) {
+			log.error(String.format("%s cannot compile 0x%08X", name, startAddress), e);
+			return null;
+		}
+
+		return new ProcessorCodeBlock(startAddress & Memory.addressMask, endAddress & Memory.addressMask, executable);
+	}
+
+	public int getNumberOfCodeBlocks() {
+		return codeBlocks.size();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ProcessorCompiler[%s, %d code blocks]", name, codeBlocks.size());
+	}
+}
@@ -1201,6 +1201,8 @@ public class RuntimeContext {
     }
 
     public static void invalidateAll() {
+    	ProcessorCompiler.invalidateAllProcessors();
+
         if (compilerEnabled) {
     		if (invalidateAllCodeBlocks) {
     			// Simple method: invalidate all the code blocks,
@@ -1261,6 +1263,8 @@ public class RuntimeContext {
     }
 
     public static void invalidateRange(int addr, int size) {
+    	ProcessorCompiler.invalidateRangeAllProcessors(addr, size);
+
         if (compilerEnabled) {
         	addr &= Memory.addressMask;
 
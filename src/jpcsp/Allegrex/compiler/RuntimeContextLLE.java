@@ -57,6 +57,12 @@ public class RuntimeContextLLE {
 		}
 	}
 
+	public static void exit() {
+		if (mmio instanceof MMIO && Profiler.isProfilerEnabled()) {
+			((MMIO) mmio).dumpAccessCounters();
+		}
+	}
+
 	public static Memory getMMIO() {
 		return mmio;
 	}
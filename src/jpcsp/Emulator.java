@@ -31,6 +31,7 @@ import jpcsp.GUI.IMainGUI;
 import jpcsp.HLE.HLEModuleManager;
 import jpcsp.HLE.HLEUidObjectMapping;
 import jpcsp.HLE.Modules;
+import jpcsp.HLE.VFS.local.LocalFileMetadataCache;
 import jpcsp.HLE.kernel.Managers;
 import jpcsp.HLE.kernel.managers.SceUidManager;
 import jpcsp.HLE.kernel.types.SceModule;
@@ -103,11 +104,13 @@ public class Emulator implements Runnable {
         VertexCache.getInstance().exit();
         Compiler.exit();
         RuntimeContext.exit();
+        RuntimeContextLLE.exit();
         Profiler.exit();
         GEProfiler.exit();
         BaseRenderer.exit();
         BasePrimitiveRenderer.exit();
         ExternalGE.exit();
+        LocalFileMetadataCache.exit();
         if (DurationStatistics.collectStatistics && Modules.ThreadManForUserModule.statistics != null && Modules.sceDisplayModule.statistics != null) {
             long totalMillis = getClock().milliTime();
             long displayMillis = Modules.sceDisplayModule.statistics.cumulatedTimeMillis;
@@ -17,16 +17,17 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
@@ -56,7 +57,6 @@ import jpcsp.filesystems.umdiso.UmdIsoFile;
 import jpcsp.filesystems.umdiso.UmdIsoReader;
 import jpcsp.format.PSF;
 import jpcsp.format.psmf.PsmfAudioDemuxVirtualFile;
-import jpcsp.settings.Settings;
 import jpcsp.util.Constants;
 
 /**
@@ -70,7 +70,7 @@ public class UmdBrowser extends javax.swing.JDialog {
         @Override
         public boolean accept(File file) {
             String lower = file.getName().toLowerCase();
-            if (lower.endsWith(".cso") || lower.endsWith(".iso")) {
+            if (lower.endsWith(".cso") || lower.endsWith(".iso") || lower.endsWith(".bci")) {
                 return true;
             }
             if (file.isDirectory()) {
@@ -179,6 +179,9 @@ public class UmdBrowser extends javax.swing.JDialog {
                 umdInfoLoaded[i] = false;
             	filteredItems[i] = i;
             }
+            umdBrowserIndex = new UmdBrowserIndex();
+            umdBrowserIndex.load();
+
             // load the first row: its size is used to compute the table size
             loadUmdInfo(0);
 
@@ -274,6 +277,9 @@ public class UmdBrowser extends javax.swing.JDialog {
     private ImageIcon[] icons;
     private PSF[] psfs;
     private volatile boolean[] umdInfoLoaded;
+    private UmdBrowserIndex umdBrowserIndex;
+    // The UMD scanning is mostly waiting on I/O
+    private static final int numberScanThreads = 4;
     private UmdBrowserPmf umdBrowserPmf;
     private UmdBrowserSound umdBrowserSound;
     private int lastRowIndex = -1;
@@ -385,96 +391,108 @@ public class UmdBrowser extends javax.swing.JDialog {
         }
     }
 
-    private String getUmdBrowseCacheDirectory(String name) {
-        // Return "tmp/UmdBrowserCache/<name>/"
-        return String.format("%1$s%2$cUmdBrowserCache%2$c%3$s%2$c", Settings.getInstance().readString("emu.tmppath"), File.separatorChar, name);
+    private boolean resolveProgram(int rowIndex) {
+        if (programs[rowIndex].isDirectory()) {
+            File eboot[] = programs[rowIndex].listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return file.getName().equalsIgnoreCase("eboot.pbp");
+                }
+            });
+
+            if (eboot.length == 0) {
+                return false;
+            }
+            programs[rowIndex] = eboot[0];
+        }
+
+        return true;
     }
 
-    private void writeUmdBrowseCacheFile(String cacheDirectory, String name, byte[] content) {
-        try {
-            OutputStream os = new FileOutputStream(cacheDirectory + name);
-            os.write(content);
-            os.close();
-        } catch (FileNotFoundException e) {
-            log.error(e);
-        } catch (IOException e) {
-            log.error(e);
+    private ImageIcon getIcon(byte[] icon0) {
+        if (icon0 == null) {
+            // default icon
+            return new ImageIcon(getClass().getResource("/jpcsp/images/icon0.png"));
         }
+
+        return new ImageIcon(icon0);
     }
 
-    private void loadUmdInfo(int rowIndex) {
+    private void setUmdInfoLoaded(int rowIndex) {
+        umdInfoLoaded[rowIndex] = true;
+
+        updateFilteredItem(rowIndex);
+    }
+
+    private static void close(UmdIsoReader iso) {
+        if (iso != null) {
+            try {
+                iso.close();
+            } catch (IOException e) {
+                // Ignore exception
+            }
+        }
+    }
+
+    /**
+     * Load the UMD information from the index.
+     *
+     * @param rowIndex the UMD to be loaded
+     * @return         true if the UMD information is loaded,
+     *                 false if the UMD has to be scanned.
+     */
+    private boolean loadUmdInfoFromIndex(int rowIndex) {
         if (rowIndex >= umdInfoLoaded.length || umdInfoLoaded[rowIndex]) {
-            return;
+            return true;
         }
 
-        try {
-        	boolean cacheEntry = true;
-        	String entryName = programs[rowIndex].getName();
-            if (programs[rowIndex].isDirectory()) {
-                File eboot[] = programs[rowIndex].listFiles(new FileFilter() {
-                    @Override
-                    public boolean accept(File file) {
-                        return file.getName().equalsIgnoreCase("eboot.pbp");
-                    }
-                });
+        if (!resolveProgram(rowIndex)) {
+            // A directory without EBOOT.PBP has no information
+            setUmdInfoLoaded(rowIndex);
+            return true;
+        }
 
-                if (eboot.length > 0) {
-                	programs[rowIndex] = eboot[0];
-                } else {
-                	cacheEntry = false;
-                }
-            }
+        UmdBrowserIndex.Entry entry = umdBrowserIndex.getEntry(programs[rowIndex]);
+        if (entry == null) {
+            return false;
+        }
 
-            if (cacheEntry) {
-                String cacheDirectory = getUmdBrowseCacheDirectory(entryName);
-                File sfoFile = new File(cacheDirectory + "param.sfo");
-                if (sfoFile.canRead()) {
-                    // Read the param.sfo and ICON0.PNG from the UmdBrowserCache
-                    byte[] sfo = new byte[(int) sfoFile.length()];
-                    InputStream is = new FileInputStream(sfoFile);
-                    is.read(sfo);
-                    is.close();
-                    psfs[rowIndex] = new PSF();
-                    psfs[rowIndex].read(ByteBuffer.wrap(sfo));
-
-                    File icon0File = new File(cacheDirectory + "ICON0.PNG");
-                    if (icon0File.canRead()) {
-                        icons[rowIndex] = new ImageIcon(icon0File.getPath());
-                    } else {
-                        icons[rowIndex] = new ImageIcon(getClass().getResource("/jpcsp/images/icon0.png"));
-                    }
-                } else {
-                    // Read the param.sfo and ICON0.PNG from the ISO and
-                    // store them in the UmdBrowserCache.
+        psfs[rowIndex] = entry.getPSF();
+        icons[rowIndex] = getIcon(entry.getIcon0());
+        setUmdInfoLoaded(rowIndex);
+
+        return true;
+    }
 
-                    // Create the UmdBrowse Cache directories
-                    new File(cacheDirectory).mkdirs();
+    private void loadUmdInfo(int rowIndex) {
+        if (loadUmdInfoFromIndex(rowIndex)) {
+            return;
+        }
 
-                    UmdIsoReader iso = new UmdIsoReader(programs[rowIndex].getPath());
+        PSF psf = null;
+        byte[] icon0 = null;
+        boolean indexEntry = true;
+        UmdIsoReader iso = null;
+        try {
+            // Read the param.sfo and ICON0.PNG from the ISO
+            iso = new UmdIsoReader(programs[rowIndex].getPath());
 
-                    byte[] sfo = iso.readParamSFO();
-                    if (sfo == null) {
-                    	throw new FileNotFoundException();
-                    }
-                    writeUmdBrowseCacheFile(cacheDirectory, "param.sfo", sfo);
-                    ByteBuffer buf = ByteBuffer.wrap(sfo);
-                    psfs[rowIndex] = new PSF();
-                    psfs[rowIndex].read(buf);
-
-                    byte[] icon0 = iso.readIcon0();
-                    if (icon0 == null) {
-                        // default icon
-                        icons[rowIndex] = new ImageIcon(getClass().getResource("/jpcsp/images/icon0.png"));
-                    } else {
-                    	writeUmdBrowseCacheFile(cacheDirectory, "ICON0.PNG", icon0);
-                    	icons[rowIndex] = new ImageIcon(icon0);
-                    }
-                }
+            byte[] sfo = iso.readParamSFO();
+            if (sfo == null) {
+            	throw new FileNotFoundException();
             }
+            ByteBuffer buf = ByteBuffer.wrap(sfo);
+            psf = new PSF();
+            psf.read(buf);
+
+            icon0 = iso.readIcon0();
         } catch (FileNotFoundException e) {
+            close(iso);
+            iso = null;
+
             // Check if we're dealing with a UMD_VIDEO.
             try {
-                UmdIsoReader iso = new UmdIsoReader(programs[rowIndex].getPath());
+                iso = new UmdIsoReader(programs[rowIndex].getPath());
 
                 UmdIsoFile paramSfo = iso.getFile("UMD_VIDEO/param.sfo");
                 UmdIsoFile umdDataFile = iso.getFile("UMD_DATA.BIN");
@@ -489,28 +507,36 @@ public class UmdBrowser extends javax.swing.JDialog {
                 paramSfo.read(sfo);
                 paramSfo.close();
                 ByteBuffer buf = ByteBuffer.wrap(sfo);
-                psfs[rowIndex] = new PSF();
-                psfs[rowIndex].read(buf);
-                psfs[rowIndex].put("DISC_ID", umdDataIdString);
+                psf = new PSF();
+                psf.read(buf);
+                psf.put("DISC_ID", umdDataIdString);
 
                 UmdIsoFile icon0umd = iso.getFile("UMD_VIDEO/ICON0.PNG");
-                byte[] icon0 = new byte[(int) icon0umd.length()];
+                icon0 = new byte[(int) icon0umd.length()];
                 icon0umd.read(icon0);
                 icon0umd.close();
-                icons[rowIndex] = new ImageIcon(icon0);
             } catch (FileNotFoundException ve) {
                 // default icon
-                icons[rowIndex] = new ImageIcon(getClass().getResource("/jpcsp/images/icon0.png"));
+                icon0 = null;
             } catch (IOException ve) {
                 log.error(ve);
+                indexEntry = false;
             }
         } catch (IOException e) {
             log.error(e);
+            indexEntry = false;
+        } finally {
+            close(iso);
         }
 
-        umdInfoLoaded[rowIndex] = true;
+        psfs[rowIndex] = psf;
+        if (indexEntry) {
+            // The icon stored in the index is scaled
+            icon0 = umdBrowserIndex.putEntry(programs[rowIndex], psf, icon0).getIcon0();
+        }
+        icons[rowIndex] = getIcon(icon0);
 
-        updateFilteredItem(rowIndex);
+        setUmdInfoLoaded(rowIndex);
     }
     
     private void onSelectionChanged(ListSelectionEvent event) {
@@ -794,13 +820,50 @@ public class UmdBrowser extends javax.swing.JDialog {
 
     /**
      * Load asynchronously all the UMD information (icon, PSF).
+     * The information already present in the index is loaded first,
+     * the new or modified UMDs are then scanned by a pool of threads.
      */
     private class UmdInfoLoader extends Thread {
         @Override
         public void run() {
+            List<Integer> scanRowIndexes = new ArrayList<Integer>();
             for (int i = 0; i < umdInfoLoaded.length; i++) {
-                loadUmdInfo(i);
+                if (!loadUmdInfoFromIndex(i)) {
+                    scanRowIndexes.add(i);
+                }
             }
+
+            if (!scanRowIndexes.isEmpty()) {
+                ExecutorService executor = Executors.newFixedThreadPool(Math.min(numberScanThreads, scanRowIndexes.size()), new ThreadFactory() {
+                    private int threadNumber;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, String.format("Umd Browser - Umd Info Scanner %d", ++threadNumber));
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+                for (final int rowIndex : scanRowIndexes) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            loadUmdInfo(rowIndex);
+                        }
+                    });
+                }
+
+                executor.shutdown();
+                try {
+                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // Ignore exception
+                }
+            }
+
+            umdBrowserIndex.save();
         }
     }
 
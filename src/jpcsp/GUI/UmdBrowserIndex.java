@@ -0,0 +1,303 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.GUI;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.Emulator;
+import jpcsp.format.PSF;
+import jpcsp.settings.Settings;
+
+/**
+ * Persistent index of the UMD information displayed by the UmdBrowser.
+ *
+ * For each UMD image (ISO, CSO, PBP), the index stores the parsed PSF
+ * and the ICON0 scaled to the size displayed by the browser.
+ * An entry is only valid as long as the size and the last modification
+ * time of the image are unchanged, otherwise the image has to be rescanned.
+ *
+ * The entries can be retrieved and added concurrently.
+ */
+public class UmdBrowserIndex {
+	private static Logger log = Emulator.log;
+	private static final int INDEX_VERSION = 1;
+	// Size of ICON0.PNG
+	private static final int ICON0_WIDTH = 144;
+	private static final int ICON0_HEIGHT = 80;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private volatile boolean dirty;
+
+	public static class Entry {
+		private final long length;
+		private final long lastModified;
+		private final byte[] psf;
+		private final byte[] icon0;
+		private boolean used;
+
+		private Entry(long length, long lastModified, byte[] psf, byte[] icon0) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.psf = psf;
+			this.icon0 = icon0;
+		}
+
+		private boolean matches(File file) {
+			return file.length() == length && file.lastModified() == lastModified;
+		}
+
+		/**
+		 * @return the PSF of the UMD or null if it has no PSF.
+		 */
+		public PSF getPSF() {
+			if (psf == null) {
+				return null;
+			}
+
+			PSF result = new PSF();
+			try {
+				result.read(ByteBuffer.wrap(psf));
+			} catch (IOException e) {
+				log.error("UmdBrowserIndex", e);
+				return null;
+			}
+
+			return result;
+		}
+
+		/**
+		 * @return the PNG image of the scaled ICON0 or null if the UMD has no ICON0.
+		 */
+		public byte[] getIcon0() {
+			return icon0;
+		}
+	}
+
+	private static String getIndexFileName() {
+		// Return "tmp/UmdBrowserCache/index.dat"
+		return String.format("%1$s%2$cUmdBrowserCache%2$cindex.dat", Settings.getInstance().readString("emu.tmppath"), File.separatorChar);
+	}
+
+	private static String getKey(File file) {
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+
+	private static byte[] readBytes(DataInputStream is) throws IOException {
+		int length = is.readInt();
+		if (length < 0) {
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		is.readFully(bytes);
+
+		return bytes;
+	}
+
+	private static void writeBytes(DataOutputStream os, byte[] bytes) throws IOException {
+		if (bytes == null) {
+			os.writeInt(-1);
+		} else {
+			os.writeInt(bytes.length);
+			os.write(bytes);
+		}
+	}
+
+	/**
+	 * Scale down the icon to the size of ICON0.PNG.
+	 * The icon is returned unchanged if it is not larger.
+	 */
+	private static byte[] scaleIcon0(byte[] icon0) {
+		try {
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(icon0));
+			if (image == null || (image.getWidth() <= ICON0_WIDTH && image.getHeight() <= ICON0_HEIGHT)) {
+				return icon0;
+			}
+
+			float scale = Math.min(ICON0_WIDTH / (float) image.getWidth(), ICON0_HEIGHT / (float) image.getHeight());
+			int width = Math.max(1, Math.round(image.getWidth() * scale));
+			int height = Math.max(1, Math.round(image.getHeight() * scale));
+			BufferedImage scaledImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = scaledImage.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(image, 0, 0, width, height, null);
+			g.dispose();
+
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			ImageIO.write(scaledImage, "png", os);
+
+			return os.toByteArray();
+		} catch (IOException e) {
+			// Keep the icon unchanged, e.g. when the PNG is corrupted
+			return icon0;
+		}
+	}
+
+	/**
+	 * Load the index from the disk.
+	 */
+	public void load() {
+		File indexFile = new File(getIndexFileName());
+		if (!indexFile.canRead()) {
+			return;
+		}
+
+		try {
+			DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			try {
+				if (is.readInt() != INDEX_VERSION) {
+					log.info(String.format("Ignoring %s having an old version", indexFile));
+					return;
+				}
+
+				int numberEntries = is.readInt();
+				for (int i = 0; i < numberEntries; i++) {
+					String key = is.readUTF();
+					long length = is.readLong();
+					long lastModified = is.readLong();
+					byte[] psf = readBytes(is);
+					byte[] icon0 = readBytes(is);
+					entries.put(key, new Entry(length, lastModified, psf, icon0));
+				}
+			} finally {
+				is.close();
+			}
+		} catch (IOException e) {
+			log.error(String.format("Cannot read %s: %s", indexFile, e));
+			entries.clear();
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("UmdBrowserIndex loaded %d entries", entries.size()));
+		}
+	}
+
+	/**
+	 * Save the index to the disk when it has been modified.
+	 * Only the entries used since the index has been loaded are saved,
+	 * the entries of UMD images having been removed are dropped.
+	 */
+	public void save() {
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+			if (!it.next().used) {
+				it.remove();
+				dirty = true;
+			}
+		}
+
+		if (!dirty) {
+			return;
+		}
+
+		File indexFile = new File(getIndexFileName());
+		indexFile.getParentFile().mkdirs();
+
+		try {
+			DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+			try {
+				List<Map.Entry<String, Entry>> mapEntries = new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+				os.writeInt(INDEX_VERSION);
+				os.writeInt(mapEntries.size());
+				for (Map.Entry<String, Entry> mapEntry : mapEntries) {
+					Entry entry = mapEntry.getValue();
+					os.writeUTF(mapEntry.getKey());
+					os.writeLong(entry.length);
+					os.writeLong(entry.lastModified);
+					writeBytes(os, entry.psf);
+					writeBytes(os, entry.icon0);
+				}
+			} finally {
+				os.close();
+			}
+			dirty = false;
+		} catch (FileNotFoundException e) {
+			log.error(String.format("Cannot write %s: %s", indexFile, e));
+		} catch (IOException e) {
+			log.error(String.format("Cannot write %s: %s", indexFile, e));
+		}
+	}
+
+	/**
+	 * Retrieve the index entry of a UMD image.
+	 *
+	 * @param file the UMD image
+	 * @return     the entry or null if the UMD image is not indexed
+	 *             or has been modified since it has been indexed.
+	 */
+	public Entry getEntry(File file) {
+		Entry entry = entries.get(getKey(file));
+		if (entry == null || !entry.matches(file)) {
+			return null;
+		}
+
+		entry.used = true;
+
+		return entry;
+	}
+
+	/**
+	 * Add or replace the index entry of a UMD image.
+	 *
+	 * @param file  the UMD image
+	 * @param psf   the PSF of the UMD image, or null
+	 * @param icon0 the ICON0.PNG of the UMD image, or null
+	 * @return      the new entry
+	 */
+	public Entry putEntry(File file, PSF psf, byte[] icon0) {
+		byte[] psfBytes = null;
+		if (psf != null) {
+			psfBytes = new byte[psf.size()];
+			psf.write(ByteBuffer.wrap(psfBytes));
+		}
+		if (icon0 != null) {
+			icon0 = scaleIcon0(icon0);
+		}
+
+		Entry entry = new Entry(file.length(), file.lastModified(), psfBytes, icon0);
+		entry.used = true;
+		entries.put(getKey(file), entry);
+		dirty = true;
+
+		return entry;
+	}
+}
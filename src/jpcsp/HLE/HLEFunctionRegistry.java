@@ -0,0 +1,510 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.HLE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.objectweb.asm.Type;
+
+import jpcsp.settings.Settings;
+
+/**
+ * Registry of the HLE functions defined by the HLE module classes.
+ *
+ * Reflecting the HLEFunction annotations of all the module classes is
+ * the most expensive part of the HLE modules installation. The registry
+ * is therefore keeping, for each module class, the HLEFunction metadata
+ * together with the HLEUnimplemented and HLELogging annotations:
+ * - in memory, for the lifetime of the JVM, so that the installation of
+ *   a module after a reset or when loading it from flash0 is only creating
+ *   the HLEModuleFunction objects;
+ * - on disk, so that the next startups can load the registry instead of
+ *   reflecting the module classes. The entry of a module class is only
+ *   valid as long as the class files of the module are unchanged.
+ *
+ * The Method implementing a function is only resolved when it is
+ * requested by the compiler, i.e. at the first call of the function.
+ */
+public class HLEFunctionRegistry {
+	private static Logger log = Modules.log;
+	private static final int REGISTRY_VERSION = 1;
+	private static final Map<Class<?>, FunctionInfo[]> registry = new ConcurrentHashMap<Class<?>, FunctionInfo[]>();
+	private static final HLELogging defaultHLEFunctionLogging = HLEModuleManager.class.getAnnotation(HLELogging.class);
+	private static final HLELogging unimplementedHLEFunctionLogging = HLEUnimplemented.class.getAnnotation(HLELogging.class);
+	// Entries loaded from the disk, not yet validated
+	private static Map<String, StoredEntry> storedEntries;
+	private static volatile boolean dirty;
+
+	/**
+	 * The HLEFunction metadata of one method of a module class.
+	 */
+	public static class FunctionInfo {
+		private final Class<?> moduleClass;
+		private final String methodName;
+		private final String methodDescriptor;
+		private volatile Method method;
+		private final String moduleName;
+		private final String functionName;
+		private final int nid;
+		private final boolean checkInsideInterrupt;
+		private final boolean checkDispatchThreadEnabled;
+		private final int stackUsage;
+		private final int version;
+		private final boolean unimplemented;
+		private final String loggingLevel;
+
+		private FunctionInfo(Class<?> moduleClass, Method method, HLEFunction hleFunction) {
+			this.moduleClass = moduleClass;
+			this.method = method;
+			methodName = method.getName();
+			methodDescriptor = Type.getMethodDescriptor(method);
+			moduleName = hleFunction.moduleName();
+			functionName = hleFunction.functionName().length() == 0 ? methodName : hleFunction.functionName();
+			nid = hleFunction.nid();
+			checkInsideInterrupt = hleFunction.checkInsideInterrupt();
+			checkDispatchThreadEnabled = hleFunction.checkDispatchThreadEnabled();
+			stackUsage = hleFunction.stackUsage();
+			version = hleFunction.version();
+
+			HLEUnimplemented hleUnimplemented = method.getAnnotation(HLEUnimplemented.class);
+			HLELogging hleLogging = method.getAnnotation(HLELogging.class);
+
+			// Take the module default logging if no HLELogging has been
+			// defined at the function level and if the function is not
+			// unimplemented (which will produce it's own logging).
+			if (hleLogging == null) {
+				if (hleUnimplemented != null) {
+					// Take the logging level of the HLEUnimplemented class
+					// as default value for unimplemented functions
+					hleLogging = unimplementedHLEFunctionLogging;
+				} else {
+					HLELogging hleModuleLogging = method.getDeclaringClass().getAnnotation(HLELogging.class);
+					if (hleModuleLogging != null) {
+						// Take the module default logging
+						hleLogging = hleModuleLogging;
+					} else {
+						hleLogging = defaultHLEFunctionLogging;
+					}
+				}
+			}
+
+			unimplemented = hleUnimplemented != null;
+			loggingLevel = hleLogging != null ? hleLogging.level() : null;
+		}
+
+		private FunctionInfo(Class<?> moduleClass, DataInputStream is) throws IOException {
+			this.moduleClass = moduleClass;
+			methodName = is.readUTF();
+			methodDescriptor = is.readUTF();
+			moduleName = is.readUTF();
+			functionName = is.readUTF();
+			nid = is.readInt();
+			checkInsideInterrupt = is.readBoolean();
+			checkDispatchThreadEnabled = is.readBoolean();
+			stackUsage = is.readInt();
+			version = is.readInt();
+			unimplemented = is.readBoolean();
+			loggingLevel = is.readBoolean() ? is.readUTF() : null;
+		}
+
+		private void write(DataOutputStream os) throws IOException {
+			os.writeUTF(methodName);
+			os.writeUTF(methodDescriptor);
+			os.writeUTF(moduleName);
+			os.writeUTF(functionName);
+			os.writeInt(nid);
+			os.writeBoolean(checkInsideInterrupt);
+			os.writeBoolean(checkDispatchThreadEnabled);
+			os.writeInt(stackUsage);
+			os.writeInt(version);
+			os.writeBoolean(unimplemented);
+			os.writeBoolean(loggingLevel != null);
+			if (loggingLevel != null) {
+				os.writeUTF(loggingLevel);
+			}
+		}
+
+		public String getFunctionName() {
+			return functionName;
+		}
+
+		public int getNid() {
+			return nid;
+		}
+
+		/**
+		 * @return the Method implementing the function,
+		 *         resolved at the first call when loaded from the disk.
+		 */
+		public Method getMethod() {
+			if (method == null) {
+				for (Method moduleMethod : moduleClass.getMethods()) {
+					if (methodName.equals(moduleMethod.getName()) && methodDescriptor.equals(Type.getMethodDescriptor(moduleMethod))) {
+						method = moduleMethod;
+						break;
+					}
+				}
+
+				if (method == null) {
+					log.error(String.format("Cannot find the method %s%s in %s", methodName, methodDescriptor, moduleClass.getName()));
+				}
+			}
+
+			return method;
+		}
+
+		/**
+		 * Create a new HLEModuleFunction for this function.
+		 *
+		 * @param hleModule the module instance implementing the function
+		 * @return          the new HLEModuleFunction
+		 */
+		public HLEModuleFunction createHLEModuleFunction(HLEModule hleModule) {
+			String moduleName = this.moduleName;
+			if (moduleName.length() == 0) {
+				moduleName = hleModule.getName();
+			}
+
+			HLEModuleFunction hleModuleFunction = new HLEModuleFunction(moduleName, functionName, nid, hleModule, this, checkInsideInterrupt, checkDispatchThreadEnabled, stackUsage, version);
+			hleModuleFunction.setUnimplemented(unimplemented);
+			if (loggingLevel != null) {
+				hleModuleFunction.setLoggingLevel(loggingLevel);
+			}
+
+			return hleModuleFunction;
+		}
+	}
+
+	private static class StoredEntry {
+		private final long classStamp;
+		private final byte[] functions;
+
+		public StoredEntry(long classStamp, byte[] functions) {
+			this.classStamp = classStamp;
+			this.functions = functions;
+		}
+	}
+
+	private static String getRegistryFileName() {
+		// Return "tmp/HLEFunctionRegistry.dat"
+		return String.format("%s%cHLEFunctionRegistry.dat", Settings.getInstance().readString("emu.tmppath"), File.separatorChar);
+	}
+
+	private static long getFileStamp(File file) {
+		long lastModified = file.lastModified();
+		if (lastModified == 0L) {
+			return 0L;
+		}
+
+		return lastModified * 31L + file.length();
+	}
+
+	private static long getClassFileStamp(Class<?> c) {
+		CodeSource codeSource = c.getProtectionDomain().getCodeSource();
+		if (codeSource == null || codeSource.getLocation() == null) {
+			return 0L;
+		}
+
+		File location;
+		try {
+			location = new File(codeSource.getLocation().toURI());
+		} catch (URISyntaxException e) {
+			return 0L;
+		} catch (IllegalArgumentException e) {
+			return 0L;
+		}
+
+		if (location.isDirectory()) {
+			// Classes directory, e.g. when running from an IDE
+			return getFileStamp(new File(location, c.getName().replace('.', File.separatorChar) + ".class"));
+		}
+
+		// jpcsp.jar: any rebuild is modifying the jar file
+		return getFileStamp(location);
+	}
+
+	/**
+	 * Compute a stamp of the class files defining the HLE functions of a module class.
+	 * The stamp is changing whenever one of the class files is modified.
+	 *
+	 * @param moduleClass the HLE module class
+	 * @return            the stamp, or 0 if it cannot be computed
+	 */
+	private static long getModuleClassStamp(Class<?> moduleClass) {
+		long stamp = REGISTRY_VERSION;
+		// The HLEFunction annotations can be defined in the super classes
+		for (Class<?> c = moduleClass; c != null && c != Object.class; c = c.getSuperclass()) {
+			long classFileStamp = getClassFileStamp(c);
+			if (classFileStamp == 0L) {
+				return 0L;
+			}
+			stamp = stamp * 31L + classFileStamp;
+		}
+		// The default logging levels are defined by these classes
+		stamp = stamp * 31L + getClassFileStamp(HLEModuleManager.class);
+		stamp = stamp * 31L + getClassFileStamp(HLEUnimplemented.class);
+
+		return stamp;
+	}
+
+	private static FunctionInfo[] reflectFunctions(Class<?> moduleClass) {
+		List<FunctionInfo> functions = new ArrayList<FunctionInfo>();
+		for (Method method : moduleClass.getMethods()) {
+			HLEFunction hleFunction = method.getAnnotation(HLEFunction.class);
+			if (hleFunction != null) {
+				functions.add(new FunctionInfo(moduleClass, method, hleFunction));
+			}
+		}
+
+		return functions.toArray(new FunctionInfo[functions.size()]);
+	}
+
+	private static FunctionInfo[] readFunctions(Class<?> moduleClass, StoredEntry storedEntry) throws IOException {
+		DataInputStream is = new DataInputStream(new ByteArrayInputStream(storedEntry.functions));
+		FunctionInfo[] functions = new FunctionInfo[is.readInt()];
+		for (int i = 0; i < functions.length; i++) {
+			functions[i] = new FunctionInfo(moduleClass, is);
+		}
+
+		return functions;
+	}
+
+	private static byte[] writeFunctions(FunctionInfo[] functions) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream os = new DataOutputStream(bytes);
+		os.writeInt(functions.length);
+		for (FunctionInfo function : functions) {
+			function.write(os);
+		}
+		os.close();
+
+		return bytes.toByteArray();
+	}
+
+	private static FunctionInfo[] loadFunctions(Class<?> moduleClass) {
+		long classStamp = getModuleClassStamp(moduleClass);
+
+		StoredEntry storedEntry = null;
+		synchronized (HLEFunctionRegistry.class) {
+			if (storedEntries != null) {
+				storedEntry = storedEntries.get(moduleClass.getName());
+			}
+		}
+
+		if (storedEntry != null && classStamp != 0L && storedEntry.classStamp == classStamp) {
+			try {
+				return readFunctions(moduleClass, storedEntry);
+			} catch (IOException e) {
+				log.error(String.format("Cannot read the HLE functions of %s: %s", moduleClass.getName(), e));
+			}
+		}
+
+		FunctionInfo[] functions = reflectFunctions(moduleClass);
+
+		if (classStamp != 0L) {
+			try {
+				storedEntry = new StoredEntry(classStamp, writeFunctions(functions));
+				synchronized (HLEFunctionRegistry.class) {
+					if (storedEntries == null) {
+						storedEntries = new HashMap<String, StoredEntry>();
+					}
+					storedEntries.put(moduleClass.getName(), storedEntry);
+				}
+				dirty = true;
+			} catch (IOException e) {
+				log.error(String.format("Cannot write the HLE functions of %s: %s", moduleClass.getName(), e));
+			}
+		}
+
+		return functions;
+	}
+
+	/**
+	 * Retrieve the HLE functions of a module class,
+	 * loading or reflecting them at the first call.
+	 *
+	 * @param moduleClass the HLE module class
+	 * @return            the HLE functions defined by the class
+	 */
+	public static FunctionInfo[] getFunctions(Class<?> moduleClass) {
+		FunctionInfo[] functions = registry.get(moduleClass);
+		if (functions == null) {
+			functions = loadFunctions(moduleClass);
+			registry.put(moduleClass, functions);
+		}
+
+		return functions;
+	}
+
+	private static synchronized void load() {
+		if (storedEntries != null) {
+			return;
+		}
+		storedEntries = new HashMap<String, StoredEntry>();
+
+		File registryFile = new File(getRegistryFileName());
+		if (!registryFile.canRead()) {
+			return;
+		}
+
+		try {
+			DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(registryFile)));
+			try {
+				if (is.readInt() != REGISTRY_VERSION) {
+					return;
+				}
+
+				int numberEntries = is.readInt();
+				for (int i = 0; i < numberEntries; i++) {
+					String className = is.readUTF();
+					long classStamp = is.readLong();
+					byte[] functions = new byte[is.readInt()];
+					is.readFully(functions);
+					storedEntries.put(className, new StoredEntry(classStamp, functions));
+				}
+			} finally {
+				is.close();
+			}
+		} catch (IOException e) {
+			log.error(String.format("Cannot read %s: %s", registryFile, e));
+			storedEntries.clear();
+		}
+	}
+
+	private static synchronized void save() {
+		if (!dirty) {
+			return;
+		}
+
+		File registryFile = new File(getRegistryFileName());
+		registryFile.getParentFile().mkdirs();
+
+		// Write to a temporary file first so that a partially written
+		// registry is never loaded by another emulator instance.
+		File tmpFile = new File(registryFile.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				os.writeInt(REGISTRY_VERSION);
+				os.writeInt(storedEntries.size());
+				for (Map.Entry<String, StoredEntry> mapEntry : storedEntries.entrySet()) {
+					StoredEntry storedEntry = mapEntry.getValue();
+					os.writeUTF(mapEntry.getKey());
+					os.writeLong(storedEntry.classStamp);
+					os.writeInt(storedEntry.functions.length);
+					os.write(storedEntry.functions);
+				}
+			} finally {
+				os.close();
+			}
+			Files.move(tmpFile.toPath(), registryFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			dirty = false;
+		} catch (IOException e) {
+			log.error(String.format("Cannot write %s: %s", registryFile, e));
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Build the registry for the given module classes.
+	 * The registry stored on disk is loaded and the module classes
+	 * missing in it or having been modified are reflected, using
+	 * one thread per processor. The updated registry is then saved.
+	 * The module classes already present in memory are skipped.
+	 *
+	 * @param moduleClasses the HLE module classes
+	 */
+	public static void build(Collection<Class<?>> moduleClasses) {
+		List<Class<?>> missingModuleClasses = new ArrayList<Class<?>>();
+		for (Class<?> moduleClass : moduleClasses) {
+			if (!registry.containsKey(moduleClass)) {
+				missingModuleClasses.add(moduleClass);
+			}
+		}
+
+		if (missingModuleClasses.isEmpty()) {
+			return;
+		}
+
+		load();
+
+		int nThreads = Math.min(Runtime.getRuntime().availableProcessors(), missingModuleClasses.size());
+		if (nThreads <= 1) {
+			for (Class<?> moduleClass : missingModuleClasses) {
+				getFunctions(moduleClass);
+			}
+		} else {
+			ExecutorService pool = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "HLE Function Registry Builder");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			for (final Class<?> moduleClass : missingModuleClasses) {
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						getFunctions(moduleClass);
+					}
+				});
+			}
+			pool.shutdown();
+
+			boolean terminated = false;
+			try {
+				terminated = pool.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				log.error("HLEFunctionRegistry", e);
+			}
+
+			if (!terminated) {
+				// Do not save an incomplete registry
+				log.warn("HLEFunctionRegistry: the registry could not be built in time, not saving it");
+				return;
+			}
+		}
+
+		save();
+	}
+}
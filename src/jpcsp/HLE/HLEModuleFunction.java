@@ -30,21 +30,21 @@ public class HLEModuleFunction {
     private int nid;
     private boolean unimplemented;
     private String loggingLevel;
-	private Method hleModuleMethod;
+	private HLEFunctionRegistry.FunctionInfo functionInfo;
 	private boolean checkInsideInterrupt;
 	private boolean checkDispatchThreadEnabled;
 	private int stackUsage;
 	private HLEModule hleModule;
 	private int firmwareVersion;
 
-    public HLEModuleFunction(String moduleName, String functionName, int nid, HLEModule hleModule, Method hleModuleMethod, boolean checkInsideInterrupt, boolean checkDispatchThreadEnabled, int stackUsage, int firmwareVersion) {
+    public HLEModuleFunction(String moduleName, String functionName, int nid, HLEModule hleModule, HLEFunctionRegistry.FunctionInfo functionInfo, boolean checkInsideInterrupt, boolean checkDispatchThreadEnabled, int stackUsage, int firmwareVersion) {
         this.moduleName = moduleName;
         this.functionName = functionName;
         this.nid = nid;
 		this.checkInsideInterrupt = checkInsideInterrupt;
 		this.checkDispatchThreadEnabled = checkDispatchThreadEnabled;
 		this.stackUsage = stackUsage;
-		this.hleModuleMethod = hleModuleMethod; 
+		this.functionInfo = functionInfo;
 		this.hleModule = hleModule;
 		this.firmwareVersion = firmwareVersion;
     }
@@ -106,7 +106,7 @@ public class HLEModuleFunction {
 	}
 
 	public Method getHLEModuleMethod() {
-		return hleModuleMethod;
+		return functionInfo.getMethod();
 	}
 
 	public HLEModule getHLEModule() {
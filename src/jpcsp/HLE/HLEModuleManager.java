@@ -16,7 +16,6 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.HLE;
 
-import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -31,12 +30,17 @@ import jpcsp.Emulator;
 import jpcsp.Memory;
 import jpcsp.NIDMapper;
 import jpcsp.Allegrex.compiler.RuntimeContext;
+import jpcsp.HLE.VFS.IVirtualFile;
 import jpcsp.HLE.VFS.IVirtualFileSystem;
 import jpcsp.HLE.kernel.Managers;
 import jpcsp.HLE.kernel.types.IAction;
 import jpcsp.HLE.kernel.types.SceIoStat;
 import jpcsp.HLE.kernel.types.SceModule;
+import jpcsp.HLE.modules.IoFileMgrForUser;
 import jpcsp.HLE.modules.ThreadManForUser;
+import jpcsp.crypto.DecryptedPRXCache;
+import jpcsp.format.PSP;
+import jpcsp.util.Utilities;
 
 /**
  * Manager for the HLE modules.
@@ -64,8 +68,6 @@ public class HLEModuleManager {
     private Map<Integer, HLEModuleFunction> nidToFunction;
     private Map<HLEModule, ModuleInfo> moduleInfos;
 
-    private HLELogging defaultHLEFunctionLogging;
-
     /**
      * List of PSP modules that can be loaded when they are available.
      * They will then replace the HLE equivalent.
@@ -300,7 +302,6 @@ public class HLEModuleManager {
     }
 
     private HLEModuleManager() {
-		defaultHLEFunctionLogging = HLEModuleManager.class.getAnnotation(HLELogging.class);
 		nidMapper = NIDMapper.getInstance();
 		syscallToFunction = new HashMap<>();
 		nidToFunction = new HashMap<>();
@@ -328,9 +329,29 @@ public class HLEModuleManager {
     }
 
     public void init() {
+    	long start = System.currentTimeMillis();
+
+    	buildFunctionRegistry();
     	installedModules.clear();
         installDefaultModules();
         initialiseFlash0PRXMap();
+
+        if (log.isInfoEnabled()) {
+        	log.info(String.format("HLE modules installed in %d ms (%d functions)", System.currentTimeMillis() - start, nidToFunction.size()));
+        }
+    }
+
+    /**
+     * Load or reflect the HLE functions of all the modules.
+     * This is only performed at the first initialization,
+     * the registry is then reused at each reset.
+     */
+    private void buildFunctionRegistry() {
+    	List<Class<?>> moduleClasses = new LinkedList<Class<?>>();
+    	for (ModuleInfo moduleInfo : ModuleInfo.values()) {
+    		moduleClasses.add(moduleInfo.getModule().getClass());
+    	}
+    	HLEFunctionRegistry.build(moduleClasses);
     }
 
     /**
@@ -346,10 +367,11 @@ public class HLEModuleManager {
         		installModuleWithAnnotations(defaultModule.getModule());
         	} else {
         		// This module is not loaded by default on this firmware version.
-        		// Install and Uninstall the module to register the module syscalls
-        		// so that the loader can still resolve the imports for this module.
-        		installModuleWithAnnotations(defaultModule.getModule());
-        		uninstallModuleWithAnnotations(defaultModule.getModule());
+        		// Only register the module syscalls so that the loader can
+        		// still resolve the imports for this module. The module itself
+        		// is installed later when being loaded from flash0.
+        		installFunctions(defaultModule.getModule());
+        		uninstallFunctions(defaultModule.getModule());
         	}
         }
     }
@@ -566,53 +588,26 @@ public class HLEModuleManager {
 		return startFromSyscall;
 	}
 
-	private void installFunctionWithAnnotations(HLEFunction hleFunction, Method method, HLEModule hleModule) {
-		HLEUnimplemented hleUnimplemented = method.getAnnotation(HLEUnimplemented.class);
-		HLELogging hleLogging = method.getAnnotation(HLELogging.class);
-
-		// Take the module default logging if no HLELogging has been
-		// defined at the function level and if the function is not
-		// unimplemented (which will produce it's own logging).
-		if (hleLogging == null) {
-			if (hleUnimplemented != null) {
-				// Take the logging level of the HLEUnimplemented class
-				// as default value for unimplemented functions
-				hleLogging = HLEUnimplemented.class.getAnnotation(HLELogging.class);
-			} else {
-				HLELogging hleModuleLogging = method.getDeclaringClass().getAnnotation(HLELogging.class);
-				if (hleModuleLogging != null) {
-					// Take the module default logging
-					hleLogging = hleModuleLogging;
-				} else {
-					hleLogging = defaultHLEFunctionLogging;
-				}
+	private void installFunctions(HLEModule hleModule) {
+		try {
+			for (HLEFunctionRegistry.FunctionInfo functionInfo : HLEFunctionRegistry.getFunctions(hleModule.getClass())) {
+				HLEModuleFunction hleModuleFunction = functionInfo.createHLEModuleFunction(hleModule);
+				hleModule.installedHLEModuleFunctions.put(functionInfo.getFunctionName(), hleModuleFunction);
+				addFunction(functionInfo.getNid(), hleModuleFunction);
 			}
+		} catch (Exception e) {
+			log.error("installModuleWithAnnotations", e);
 		}
+	}
 
-		String moduleName = hleFunction.moduleName();
-		String functionName = hleFunction.functionName();
-
-		if (moduleName.length() == 0) {
-			moduleName = hleModule.getName();
-		}
-
-		if (functionName.length() == 0) {
-			functionName = method.getName();
-		}
-
-		HLEModuleFunction hleModuleFunction = new HLEModuleFunction(moduleName, functionName, hleFunction.nid(), hleModule, method, hleFunction.checkInsideInterrupt(), hleFunction.checkDispatchThreadEnabled(), hleFunction.stackUsage(), hleFunction.version());
-
-		if (hleUnimplemented != null) {
-			hleModuleFunction.setUnimplemented(true);
-		}
-
-		if (hleLogging != null) {
-			hleModuleFunction.setLoggingLevel(hleLogging.level());
+	private void uninstallFunctions(HLEModule hleModule) {
+		try {
+			for (HLEModuleFunction hleModuleFunction : hleModule.installedHLEModuleFunctions.values()) {
+				this.removeFunction(hleModuleFunction);
+			}
+		} catch (Exception e) {
+			log.error("uninstallModuleWithAnnotations", e);
 		}
-
-		hleModule.installedHLEModuleFunctions.put(functionName, hleModuleFunction);
-
-		addFunction(hleFunction.nid(), hleModuleFunction);
 	}
 
 	/**
@@ -625,16 +620,7 @@ public class HLEModuleManager {
 			return;
 		}
 
-		try {
-			for (Method method : hleModule.getClass().getMethods()) {
-				HLEFunction hleFunction = method.getAnnotation(HLEFunction.class);
-				if (hleFunction != null) {
-					installFunctionWithAnnotations(hleFunction, method, hleModule);
-				}
-			}
-		} catch (Exception e) {
-			log.error("installModuleWithAnnotations", e);
-		}
+		installFunctions(hleModule);
 
 		installedModules.add(hleModule);
 		hleModule.load();
@@ -646,13 +632,7 @@ public class HLEModuleManager {
 	 * @param hleModule
 	 */
 	public void uninstallModuleWithAnnotations(HLEModule hleModule) {
-		try {
-			for (HLEModuleFunction hleModuleFunction : hleModule.installedHLEModuleFunctions.values()) {
-				this.removeFunction(hleModuleFunction);
-			}
-		} catch (Exception e) {
-			log.error("uninstallModuleWithAnnotations", e);
-		}
+		uninstallFunctions(hleModule);
 
 		installedModules.remove(hleModule);
 		hleModule.unload();
@@ -672,6 +652,7 @@ public class HLEModuleManager {
 		boolean runningFromVsh = Emulator.getMainGUI().isRunningFromVsh() && !fromSyscall;
 
 		List<String> availableModuleFileNames = new LinkedList<>();
+		List<byte[]> encryptedModules = new LinkedList<>();
 		for (String moduleFileName : moduleFileNamesToBeLoaded) {
 			if (runningFromVsh || !isModuleFileNameVshOnly(moduleFileName)) {
 				StringBuilder localFileName = new StringBuilder();
@@ -679,6 +660,15 @@ public class HLEModuleManager {
 				if (vfs != null && vfs.ioGetstat(localFileName.toString(), new SceIoStat()) == 0) {
 					// The module is available, load it
 					availableModuleFileNames.add(moduleFileName);
+
+					IVirtualFile vFile = vfs.ioOpen(localFileName.toString(), IoFileMgrForUser.PSP_O_RDONLY, 0);
+					if (vFile != null) {
+						byte[] moduleBytes = Utilities.readCompleteFile(vFile);
+						vFile.ioClose();
+						if (moduleBytes != null && moduleBytes.length > PSP.PSP_HEADER_SIZE && Utilities.readUnaligned32(moduleBytes, 0) == PSP.PSP_MAGIC) {
+							encryptedModules.add(moduleBytes);
+						}
+					}
 				}
 			}
 		}
@@ -688,6 +678,10 @@ public class HLEModuleManager {
 			return;
 		}
 
+		// The modules are loaded one after the other, but their
+		// decryption is independent and can be performed in parallel.
+		DecryptedPRXCache.decryptInParallel(encryptedModules);
+
 		// This HLE module need to be started in order
 		// to be able to load and start the available modules.
 		Modules.ModuleMgrForUserModule.start();
@@ -0,0 +1,613 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.HLE.VFS.local;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static jpcsp.HLE.VFS.local.LocalVirtualFileSystem.getMsFileName;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * In-memory cache of the directory listings and file attributes
+ * of a local directory tree (typically the ms0 directory).
+ *
+ * The cached tree is a trie indexed by the lower-case path components,
+ * which is also used to resolve the file names case-insensitively,
+ * like on the FAT file system of a real memory stick.
+ *
+ * The cache is invalidated
+ * - explicitly, by the file operations executed by the emulator
+ *   (see invalidateHostFile()),
+ * - by a WatchService when the watch mode is enabled, for the changes done
+ *   outside of the emulator,
+ * - otherwise, by checking the last modification time of the cached directories.
+ */
+public class LocalFileMetadataCache {
+	private static Logger log = Logger.getLogger("vfs");
+	private static final List<LocalFileMetadataCache> caches = new LinkedList<LocalFileMetadataCache>();
+	private static final FileInfo notExistingFileInfo = new FileInfo();
+	private final String rootPath;
+	private final Node rootNode;
+	private WatchService watchService;
+	private Map<WatchKey, Node> watchKeys;
+	private int hits;
+	private int misses;
+
+	public static class FileInfo {
+		public boolean exists;
+		public boolean isDirectory;
+		public boolean isFile;
+		public boolean canRead;
+		public boolean canWrite;
+		public boolean canExecute;
+		public long length;
+		public long lastModified;
+
+		private FileInfo() {
+		}
+
+		public FileInfo(File file) {
+			update(file);
+		}
+
+		public void update(File file) {
+			exists = file.exists();
+			if (exists) {
+				isDirectory = file.isDirectory();
+				isFile = file.isFile();
+				canRead = file.canRead();
+				canWrite = file.canWrite();
+				canExecute = file.canExecute();
+				length = file.length();
+				lastModified = file.lastModified();
+			} else {
+				isDirectory = false;
+				isFile = false;
+				canRead = false;
+				canWrite = false;
+				canExecute = false;
+				length = 0L;
+				lastModified = 0L;
+			}
+		}
+	}
+
+	private static class Node {
+		private final Node parent;
+		private final File file;
+		private FileInfo fileInfo;
+		// The directory listing, indexed by the lower-case file names
+		private Map<String, Node> children;
+		private String[] msFileNames;
+		private String[] hostFileNames;
+		private long listingLastModified;
+		private boolean listingValid;
+		private WatchKey watchKey;
+		private int openForWriting;
+
+		public Node(Node parent, File file) {
+			this.parent = parent;
+			this.file = file;
+		}
+
+		public boolean isCached() {
+			return parent == null || parent.children != null && parent.children.get(getKey(file.getName())) == this;
+		}
+	}
+
+	/**
+	 * Return the cache of a local directory tree, creating it if not yet available.
+	 *
+	 * @param localPath       the root directory
+	 * @param useWatchService use a WatchService to detect the changes
+	 *                        done outside of the emulator
+	 * @return                the cache
+	 */
+	public static LocalFileMetadataCache getCache(String localPath, boolean useWatchService) {
+		String rootPath = getAbsolutePath(new File(localPath));
+		synchronized (caches) {
+			for (LocalFileMetadataCache cache : caches) {
+				if (cache.rootPath.equals(rootPath)) {
+					return cache;
+				}
+			}
+
+			LocalFileMetadataCache cache = new LocalFileMetadataCache(rootPath, useWatchService);
+			caches.add(cache);
+
+			return cache;
+		}
+	}
+
+	/**
+	 * Return the cache containing the given host file.
+	 *
+	 * @param file          the host file
+	 * @param localFileName returns the file name relative to the cache root
+	 * @return              the cache or null if the file is not cached
+	 */
+	public static LocalFileMetadataCache findCache(File file, StringBuilder localFileName) {
+		synchronized (caches) {
+			if (caches.isEmpty()) {
+				return null;
+			}
+
+			String path = getAbsolutePath(file);
+			for (LocalFileMetadataCache cache : caches) {
+				if (path.startsWith(cache.rootPath)) {
+					if (localFileName != null) {
+						localFileName.setLength(0);
+						localFileName.append(path.substring(cache.rootPath.length()));
+					}
+					return cache;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Invalidate the cached information about a host file.
+	 * Has to be called after every file modification executed outside of
+	 * the LocalVirtualFileSystem (e.g. by direct java.io.File operations).
+	 *
+	 * @param file the host file having been created, modified or deleted
+	 */
+	public static void invalidateHostFile(File file) {
+		StringBuilder localFileName = new StringBuilder();
+		LocalFileMetadataCache cache = findCache(file, localFileName);
+		if (cache != null) {
+			cache.invalidate(localFileName.toString());
+		}
+	}
+
+	/**
+	 * Invalidate the cached information about all the host files,
+	 * e.g. when starting or stopping a game. Without the watch mode,
+	 * this is the only way the attributes of the existing files
+	 * are refreshed after being modified outside of the emulator.
+	 */
+	public static void invalidateAll() {
+		synchronized (caches) {
+			for (LocalFileMetadataCache cache : caches) {
+				cache.clear();
+			}
+		}
+	}
+
+	/**
+	 * Log the statistics of all the caches.
+	 */
+	public static void exit() {
+		if (log.isInfoEnabled()) {
+			synchronized (caches) {
+				for (LocalFileMetadataCache cache : caches) {
+					log.info(cache.getStatistics());
+				}
+			}
+		}
+	}
+
+	private static String getAbsolutePath(File file) {
+		String path = file.getAbsolutePath().replace('\\', '/');
+		if (!path.endsWith("/")) {
+			path += "/";
+		}
+		return path;
+	}
+
+	private static String getKey(String fileName) {
+		return fileName.toLowerCase();
+	}
+
+	private LocalFileMetadataCache(String rootPath, boolean useWatchService) {
+		this.rootPath = rootPath;
+		rootNode = new Node(null, new File(rootPath));
+
+		if (useWatchService) {
+			try {
+				watchService = FileSystems.getDefault().newWatchService();
+				watchKeys = new HashMap<WatchKey, Node>();
+				WatchThread watchThread = new WatchThread();
+				watchThread.setDaemon(true);
+				watchThread.setName("Local File Metadata Watcher");
+				watchThread.start();
+			} catch (IOException e) {
+				log.warn(String.format("Cannot watch the directory '%s': %s", rootPath, e));
+				watchService = null;
+			} catch (UnsupportedOperationException e) {
+				log.warn(String.format("Cannot watch the directory '%s': %s", rootPath, e));
+				watchService = null;
+			}
+		}
+	}
+
+	private boolean isWatching() {
+		return watchService != null;
+	}
+
+	private void loadListing(Node node) {
+		String[] hostFileNames = node.file.list();
+		node.listingLastModified = node.file.lastModified();
+		node.listingValid = true;
+
+		Map<String, Node> previousChildren = node.children;
+		node.children = new HashMap<String, Node>();
+		if (hostFileNames == null) {
+			node.hostFileNames = null;
+			node.msFileNames = null;
+		} else {
+			node.hostFileNames = hostFileNames;
+			node.msFileNames = new String[hostFileNames.length];
+			for (int i = 0; i < hostFileNames.length; i++) {
+				String hostFileName = hostFileNames[i];
+				String key = getKey(hostFileName);
+				Node child = previousChildren == null ? null : previousChildren.get(key);
+				if (child == null || !child.file.getName().equals(hostFileName)) {
+					child = new Node(node, new File(node.file, hostFileName));
+				}
+				if (!node.children.containsKey(key)) {
+					node.children.put(key, child);
+				}
+				node.msFileNames[i] = getMsFileName(hostFileName);
+			}
+		}
+
+		if (previousChildren != null) {
+			for (Node child : previousChildren.values()) {
+				if (node.children.get(getKey(child.file.getName())) != child) {
+					dropSubtree(child);
+				}
+			}
+		}
+
+		if (isWatching() && node.watchKey == null && hostFileNames != null) {
+			try {
+				Path path = node.file.toPath();
+				node.watchKey = path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+				watchKeys.put(node.watchKey, node);
+			} catch (IOException e) {
+				log.debug(String.format("Cannot watch the directory '%s': %s", node.file, e));
+			} catch (ClosedWatchServiceException e) {
+				watchService = null;
+			}
+		}
+	}
+
+	private void dropListing(Node node) {
+		if (node.children != null) {
+			for (Node child : node.children.values()) {
+				dropSubtree(child);
+			}
+			node.children = null;
+			node.msFileNames = null;
+			node.hostFileNames = null;
+		}
+	}
+
+	private void dropSubtree(Node node) {
+		dropListing(node);
+		node.fileInfo = null;
+		if (node.watchKey != null) {
+			node.watchKey.cancel();
+			watchKeys.remove(node.watchKey);
+			node.watchKey = null;
+		}
+	}
+
+	private boolean isListingValid(Node node) {
+		if (node.children == null || !node.listingValid) {
+			return false;
+		}
+		if (isWatching()) {
+			return true;
+		}
+
+		// Without a WatchService, check if a file has been added or removed
+		// in the directory since the listing was loaded
+		return node.file.lastModified() == node.listingLastModified;
+	}
+
+	private Node getListedNode(Node node) {
+		if (!isListingValid(node)) {
+			misses++;
+			loadListing(node);
+		} else {
+			hits++;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Resolve the given file name to a node, ignoring the case of the file names.
+	 * Nodes for non-existing files are created but not added to the cache.
+	 */
+	private Node getNode(String fileName) {
+		Node node = rootNode;
+		if (fileName == null) {
+			return node;
+		}
+
+		String[] names = fileName.split("/");
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+			if (name.length() == 0 || ".".equals(name)) {
+				continue;
+			}
+			if ("..".equals(name)) {
+				if (node.parent != null) {
+					node = node.parent;
+				}
+				continue;
+			}
+
+			Node child = null;
+			if (node.isCached()) {
+				getListedNode(node);
+				if (node.children != null) {
+					child = node.children.get(getKey(name));
+				}
+			}
+			if (child == null) {
+				child = new Node(node, new File(node.file, name));
+			}
+			node = child;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Return the host file matching the given file name, ignoring the case.
+	 *
+	 * @param fileName the file name relative to the cache root
+	 * @return         the host file
+	 */
+	public synchronized File getFile(String fileName) {
+		return getNode(fileName).file;
+	}
+
+	/**
+	 * Return the attributes of a file.
+	 * The returned object must not be modified.
+	 *
+	 * @param fileName the file name relative to the cache root
+	 * @return         the file attributes
+	 */
+	public synchronized FileInfo getFileInfo(String fileName) {
+		Node node = getNode(fileName);
+		if (!node.isCached()) {
+			if (node.parent != null && node.parent.isCached() && node.parent.children != null) {
+				// The file is not present in its parent directory listing
+				hits++;
+				return notExistingFileInfo;
+			}
+			misses++;
+			return new FileInfo(node.file);
+		}
+
+		if (node.openForWriting > 0) {
+			// The file length is changing, do not cache its attributes
+			return new FileInfo(node.file);
+		}
+
+		if (node.fileInfo == null) {
+			misses++;
+			node.fileInfo = new FileInfo(node.file);
+		} else {
+			hits++;
+		}
+
+		return node.fileInfo;
+	}
+
+	/**
+	 * Return the file names of a directory, as returned by the memory stick.
+	 *
+	 * @param dirName the directory name relative to the cache root
+	 * @return        the file names or null if the directory does not exist
+	 */
+	public synchronized String[] getMsFileNames(String dirName) {
+		Node node = getNode(dirName);
+		if (!node.isCached()) {
+			String[] fileNames = node.file.list();
+			if (fileNames != null) {
+				for (int i = 0; i < fileNames.length; i++) {
+					fileNames[i] = getMsFileName(fileNames[i]);
+				}
+			}
+			return fileNames;
+		}
+
+		getListedNode(node);
+		if (node.msFileNames == null) {
+			return null;
+		}
+
+		return node.msFileNames.clone();
+	}
+
+	/**
+	 * Return the host file names of a directory.
+	 *
+	 * @param dirName the directory name relative to the cache root
+	 * @return        the file names or null if the directory does not exist
+	 */
+	public synchronized String[] getHostFileNames(String dirName) {
+		Node node = getNode(dirName);
+		if (!node.isCached()) {
+			return node.file.list();
+		}
+
+		getListedNode(node);
+		if (node.hostFileNames == null) {
+			return null;
+		}
+
+		return node.hostFileNames.clone();
+	}
+
+	/**
+	 * Invalidate the cached information about a file
+	 * and its parent directory listing.
+	 *
+	 * @param fileName the file name relative to the cache root
+	 */
+	public synchronized void invalidate(String fileName) {
+		Node node = getNode(fileName);
+
+		if (!node.isCached()) {
+			// Find the deepest cached directory and reload its listing
+			while (node.parent != null && !node.isCached()) {
+				node = node.parent;
+			}
+
+			if (log.isTraceEnabled()) {
+				log.trace(String.format("LocalFileMetadataCache invalidating the directory '%s'", node.file));
+			}
+
+			node.listingValid = false;
+			node.fileInfo = null;
+			return;
+		}
+
+		if (log.isTraceEnabled()) {
+			log.trace(String.format("LocalFileMetadataCache invalidating '%s'", node.file));
+		}
+
+		node.fileInfo = null;
+		if (node.parent != null) {
+			// Keep the children of the parent directory,
+			// they will be reused when reloading its listing.
+			Node parent = node.parent;
+			dropSubtree(node);
+			parent.children.remove(getKey(node.file.getName()));
+			parent.listingValid = false;
+			parent.fileInfo = null;
+		} else {
+			dropListing(node);
+		}
+	}
+
+	/**
+	 * Mark a file as being opened for writing: its attributes are
+	 * not cached until the file is closed.
+	 *
+	 * @param fileName the file name relative to the cache root
+	 */
+	public synchronized void openForWriting(String fileName) {
+		invalidate(fileName);
+		Node node = getNode(fileName);
+		if (node.isCached()) {
+			node.openForWriting++;
+		}
+	}
+
+	/**
+	 * Mark a file opened for writing as being closed.
+	 *
+	 * @param fileName the file name relative to the cache root
+	 */
+	public synchronized void closeForWriting(String fileName) {
+		Node node = getNode(fileName);
+		if (node.openForWriting > 0) {
+			node.openForWriting--;
+		}
+		node.fileInfo = null;
+		if (node.parent != null) {
+			node.parent.fileInfo = null;
+		}
+	}
+
+	public synchronized void clear() {
+		dropSubtree(rootNode);
+	}
+
+	public synchronized String getStatistics() {
+		return String.format("LocalFileMetadataCache '%s': hits=%d, misses=%d", rootPath, hits, misses);
+	}
+
+	private synchronized void onWatchEvent(WatchKey watchKey, List<WatchEvent<?>> events) {
+		Node node = watchKeys.get(watchKey);
+		if (node == null) {
+			return;
+		}
+
+		for (WatchEvent<?> event : events) {
+			if (event.kind() == OVERFLOW) {
+				if (node.children != null) {
+					for (Node child : node.children.values()) {
+						child.fileInfo = null;
+					}
+				}
+				node.listingValid = false;
+				node.fileInfo = null;
+			} else if (node.children != null) {
+				Path path = (Path) event.context();
+				String key = getKey(path.toString());
+				Node child = node.children.get(key);
+				if (child != null) {
+					child.fileInfo = null;
+					if (event.kind() == ENTRY_DELETE) {
+						dropSubtree(child);
+					}
+				}
+				if (event.kind() != ENTRY_MODIFY) {
+					node.listingValid = false;
+					node.fileInfo = null;
+				}
+			}
+		}
+	}
+
+	private class WatchThread extends Thread {
+		@Override
+		public void run() {
+			while (true) {
+				WatchKey watchKey;
+				try {
+					watchKey = watchService.take();
+				} catch (InterruptedException e) {
+					continue;
+				} catch (ClosedWatchServiceException e) {
+					break;
+				}
+
+				onWatchEvent(watchKey, watchKey.pollEvents());
+				watchKey.reset();
+			}
+		}
+	}
+}
@@ -32,6 +32,8 @@ import jpcsp.util.Utilities;
 public class LocalVirtualFile extends AbstractVirtualFile {
 	protected SeekableRandomFile file;
 	protected boolean truncateAtNextWrite;
+	protected LocalFileMetadataCache metadataCache;
+	protected String metadataCacheFileName;
 
 	public LocalVirtualFile(SeekableRandomFile file) {
 		super(file);
@@ -118,6 +120,27 @@ public class LocalVirtualFile extends AbstractVirtualFile {
 		return result;
 	}
 
+	@Override
+	public int ioClose() {
+		int result = super.ioClose();
+
+		if (metadataCache != null) {
+			metadataCache.closeForWriting(metadataCacheFileName);
+			metadataCache = null;
+		}
+
+		return result;
+	}
+
+	/**
+	 * The file has been opened for writing:
+	 * its attributes have to be refreshed in the cache when it is closed.
+	 */
+	public void setMetadataCache(LocalFileMetadataCache metadataCache, String metadataCacheFileName) {
+		this.metadataCache = metadataCache;
+		this.metadataCacheFileName = metadataCacheFileName;
+	}
+
 	public boolean isTruncateAtNextWrite() {
 		return truncateAtNextWrite;
 	}
@@ -33,6 +33,7 @@ import jpcsp.HLE.SceKernelErrorException;
 import jpcsp.HLE.TPointer;
 import jpcsp.HLE.VFS.AbstractVirtualFileSystem;
 import jpcsp.HLE.VFS.IVirtualFile;
+import jpcsp.HLE.VFS.local.LocalFileMetadataCache.FileInfo;
 import jpcsp.HLE.kernel.types.SceIoDirent;
 import jpcsp.HLE.kernel.types.SceIoStat;
 import jpcsp.HLE.kernel.types.SceKernelErrors;
@@ -48,6 +49,7 @@ import jpcsp.hardware.MemoryStick;
 public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
 	protected final String localPath;
 	private final boolean useDirExtendedInfo;
+	protected final LocalFileMetadataCache metadataCache;
     // modeStrings indexed by [0, PSP_O_RDONLY, PSP_O_WRONLY, PSP_O_RDWR]
     // SeekableRandomFile doesn't support write only: take "rw",
     private final static String[] modeStrings = {"r", "r", "rw", "rw"};
@@ -83,12 +85,37 @@ public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
 	public LocalVirtualFileSystem(String localPath, boolean useDirExtendedInfo) {
 		this.localPath = localPath;
 		this.useDirExtendedInfo = useDirExtendedInfo;
+		metadataCache = null;
+	}
+
+	/**
+	 * @param localPath          the local directory
+	 * @param useDirExtendedInfo use ExtendedInfo in the directory entries
+	 * @param metadataCache      the cache of the directory listings and file attributes,
+	 *                           or null to always access the local file system.
+	 *                           When a cache is used, the file names are resolved
+	 *                           ignoring their case.
+	 */
+	public LocalVirtualFileSystem(String localPath, boolean useDirExtendedInfo, LocalFileMetadataCache metadataCache) {
+		this.localPath = localPath;
+		this.useDirExtendedInfo = useDirExtendedInfo;
+		this.metadataCache = metadataCache;
 	}
 
 	protected File getFile(String fileName) {
+		if (metadataCache != null) {
+			return metadataCache.getFile(fileName);
+		}
 		return new File(fileName == null ? localPath : localPath + fileName);
 	}
 
+	protected FileInfo getFileInfo(String fileName) {
+		if (metadataCache != null) {
+			return metadataCache.getFileInfo(fileName);
+		}
+		return new FileInfo(getFile(fileName));
+	}
+
 	protected static String getMode(int mode) {
 		return modeStrings[mode & PSP_O_RDWR];
 	}
@@ -96,7 +123,8 @@ public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
 	@Override
 	public IVirtualFile ioOpen(String fileName, int flags, int mode) {
 		File file = getFile(fileName);
-        if (file.exists() && hasFlag(flags, PSP_O_CREAT) && hasFlag(flags, PSP_O_EXCL)) {
+		boolean exists = getFileInfo(fileName).exists;
+        if (exists && hasFlag(flags, PSP_O_CREAT) && hasFlag(flags, PSP_O_EXCL)) {
             if (log.isDebugEnabled()) {
                 log.debug("hleIoOpen - file already exists (PSP_O_CREAT + PSP_O_EXCL)");
             }
@@ -105,7 +133,7 @@ public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
 
         // When PSP_O_CREAT is specified, create the parent directories
     	// if they do not yet exist.
-        if (!file.exists() && hasFlag(flags, PSP_O_CREAT)) {
+        if (!exists && hasFlag(flags, PSP_O_CREAT)) {
         	String parentDir = file.getParent();
         	new File(parentDir).mkdirs();
         }
@@ -119,6 +147,16 @@ public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
 
 		LocalVirtualFile localVirtualFile = new LocalVirtualFile(raf);
 
+		if (hasFlag(flags, PSP_O_WRONLY) || hasFlag(flags, PSP_O_CREAT)) {
+			// Do not cache the file attributes while the file is being written
+			StringBuilder cachedFileName = new StringBuilder();
+			LocalFileMetadataCache cache = LocalFileMetadataCache.findCache(file, cachedFileName);
+			if (cache != null) {
+				cache.openForWriting(cachedFileName.toString());
+				localVirtualFile.setMetadataCache(cache, cachedFileName.toString());
+			}
+		}
+
 		if (hasFlag(flags, PSP_O_WRONLY) && hasFlag(flags, PSP_O_TRUNC)) {
             // When writing, PSP_O_TRUNC truncates the file at the position of the first write.
         	// E.g.:
@@ -133,31 +171,31 @@ public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
 
 	@Override
 	public int ioGetstat(String fileName, SceIoStat stat) {
-        File file = getFile(fileName);
-        if (!file.exists()) {
+        FileInfo fileInfo = getFileInfo(fileName);
+        if (!fileInfo.exists) {
         	return SceKernelErrors.ERROR_ERRNO_FILE_NOT_FOUND;
         }
 
         // Set attr (dir/file) and copy into mode
         int attr = 0;
-        if (file.isDirectory()) {
+        if (fileInfo.isDirectory) {
             attr |= 0x10;
         }
-        if (file.isFile()) {
+        if (fileInfo.isFile) {
             attr |= 0x20;
         }
 
-        int mode = (file.canRead() ? 4 : 0) + (file.canWrite() ? 2 : 0) + (file.canExecute() ? 1 : 0);
+        int mode = (fileInfo.canRead ? 4 : 0) + (fileInfo.canWrite ? 2 : 0) + (fileInfo.canExecute ? 1 : 0);
         // Octal extend into user and group
         mode = mode + (mode << 3) + (mode << 6);
         mode |= attr << 8;
 
         // Java can't see file create/access time
-        ScePspDateTime ctime = ScePspDateTime.fromUnixTime(file.lastModified());
+        ScePspDateTime ctime = ScePspDateTime.fromUnixTime(fileInfo.lastModified);
         ScePspDateTime atime = ScePspDateTime.fromUnixTime(0);
-        ScePspDateTime mtime = ScePspDateTime.fromUnixTime(file.lastModified());
+        ScePspDateTime mtime = ScePspDateTime.fromUnixTime(fileInfo.lastModified);
 
-        stat.init(mode, attr, file.length(), ctime, atime, mtime);
+        stat.init(mode, attr, fileInfo.length, ctime, atime, mtime);
 
         return 0;
 	}
@@ -166,7 +204,9 @@ public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
 	public int ioRemove(String name) {
 		File file = getFile(name);
 
-		if (!file.delete()) {
+		boolean deleted = file.delete();
+		LocalFileMetadataCache.invalidateHostFile(file);
+		if (!deleted) {
 			return IO_ERROR;
 		}
 
@@ -175,10 +215,10 @@ public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
 
 	@Override
 	public String[] ioDopen(String dirName) {
-		File file = getFile(dirName);
+		FileInfo fileInfo = getFileInfo(dirName);
 
-		if (!file.isDirectory()) {
-			if (file.exists()) {
+		if (!fileInfo.isDirectory) {
+			if (fileInfo.exists) {
 				log.warn(String.format("ioDopen file '%s' is not a directory", dirName));
 			} else {
 				log.warn(String.format("ioDopen directory '%s' not found", dirName));
@@ -186,7 +226,11 @@ public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
 			return null;
 		}
 
-    	String files[] = file.list();
+		if (metadataCache != null) {
+			return metadataCache.getMsFileNames(dirName);
+		}
+
+    	String files[] = getFile(dirName).list();
     	if (files != null) {
         	for (int i = 0; i < files.length; i++) {
         		files[i] = getMsFileName(files[i]);
@@ -210,10 +254,12 @@ public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
 	public int ioMkdir(String name, int mode) {
 		File file = getFile(name);
 
-		if (file.exists()) {
+		if (getFileInfo(name).exists) {
 			return SceKernelErrors.ERROR_ERRNO_FILE_ALREADY_EXISTS;
 		}
-		if (!file.mkdir()) {
+		boolean created = file.mkdir();
+		LocalFileMetadataCache.invalidateHostFile(file);
+		if (!created) {
 			return IO_ERROR;
 		}
 
@@ -224,10 +270,12 @@ public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
 	public int ioRmdir(String name) {
 		File file = getFile(name);
 
-		if (!file.exists()) {
+		if (!getFileInfo(name).exists) {
 			return SceKernelErrors.ERROR_ERRNO_FILE_NOT_FOUND;
 		}
-		if (!file.delete()) {
+		boolean deleted = file.delete();
+		LocalFileMetadataCache.invalidateHostFile(file);
+		if (!deleted) {
 			return IO_ERROR;
 		}
 
@@ -273,6 +321,8 @@ public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
             }
         }
 
+        LocalFileMetadataCache.invalidateHostFile(file);
+
         return successful ? 0 : IO_ERROR;
 	}
 
@@ -285,7 +335,10 @@ public class LocalVirtualFileSystem extends AbstractVirtualFileSystem {
         	log.debug(String.format("ioRename: renaming file '%s' to '%s'", oldFileName, newFileName));
         }
 
-		if (!oldFile.renameTo(newFile)) {
+		boolean renamed = oldFile.renameTo(newFile);
+		LocalFileMetadataCache.invalidateHostFile(oldFile);
+		LocalFileMetadataCache.invalidateHostFile(newFile);
+		if (!renamed) {
         	log.warn(String.format("ioRename failed: '%s' to '%s'", oldFileName, newFileName));
         	return IO_ERROR;
         }
@@ -16,6 +16,10 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.HLE.kernel.types;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.apache.log4j.Logger;
 
 import jpcsp.format.PGF;
@@ -31,6 +35,8 @@ public class SceFontInfo {
 	private static final Logger log = sceFont.log;
 
 	private static final boolean dumpGlyphs = false;
+	// Maximum number of rendered glyph images kept for each font
+	private static final int renderedGlyphCacheMaxSize = 512;
 
 	// Statics based on intraFont's findings.
     public static final int FONT_FILETYPE_PGF = 0x00;
@@ -61,6 +67,17 @@ public class SceFontInfo {
     protected int[] charmap;
     protected Glyph[] glyphs;
     protected int firstGlyph;
+    // Glyphs are only decoded when first used
+    protected int[] charPointers;
+    protected int[] shadowMap;
+    protected PGF fontFile;
+
+    // Table mapping a char code to its glyph index, built on first use
+    private int[] charIndexTable;
+    private int charIndexTableFirstCharCode;
+
+    // Rendered glyph images, the least recently used are removed first
+    private LinkedHashMap<RenderedGlyphKey, int[]> renderedGlyphs;
 
     // Shadow characters properties and glyphs.
     protected int shadowScaleX;
@@ -99,6 +116,36 @@ public class SceFontInfo {
     	}
     }
 
+    // Key of a rendered glyph image.
+    // The PSP is not interpolating on the y-axis, the image is not depending on y64.
+    private static class RenderedGlyphKey {
+    	private final Glyph glyph;
+    	private final int glyphType;
+    	private final int x64;
+    	private final int pixelformat;
+
+    	public RenderedGlyphKey(Glyph glyph, int glyphType, int x64, int pixelformat) {
+    		this.glyph = glyph;
+    		this.glyphType = glyphType;
+    		this.x64 = x64;
+    		this.pixelformat = pixelformat;
+    	}
+
+    	@Override
+		public boolean equals(Object obj) {
+    		if (obj instanceof RenderedGlyphKey) {
+    			RenderedGlyphKey key = (RenderedGlyphKey) obj;
+    			return glyph == key.glyph && glyphType == key.glyphType && x64 == key.x64 && pixelformat == key.pixelformat;
+    		}
+			return super.equals(obj);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(glyph) ^ (glyphType << 16) ^ (pixelformat << 8) ^ x64;
+		}
+    }
+
     private int[] getTable(int[] rawTable, int bpe, int length) {
     	int[] table = new int[length];
     	for (int i = 0, bitPtr = 0; i < length; i++, bitPtr += bpe) {
@@ -113,6 +160,7 @@ public class SceFontInfo {
 
     public SceFontInfo(PGF fontFile) {
         // PGF.
+        this.fontFile = fontFile;
         fileName = fontFile.getFileNamez();
         fileType = fontFile.getPGFMagic();
 
@@ -171,46 +219,53 @@ public class SceFontInfo {
         fontdata = fontFile.getFontdata();
         fontdataBits = fontdata.length * 8L;
 
-        int[] charPointers = getTable(fontFile.getCharPointerTable(), fontFile.getCharPointerBpe(), glyphs.length);
-        int[] shadowMap = getTable(fontFile.getShadowCharMap(), fontFile.getShadowMapBpe(), shadowGlyphs.length);
-
-        // Generate glyphs for all chars.
-        for (int i = 0; i < glyphs.length; i++) {
-            glyphs[i] = getGlyph(fontdata, (charPointers[i] * 4 * 8), FONT_PGF_GLYPH_TYPE_CHAR, fontFile);
-        }
-
-        // Generate shadow glyphs for all chars.
-        if (shadowGlyphs.length > 0) {
-	        for (int i = 0; i < glyphs.length; i++) {
-	        	int shadowId = glyphs[i].shadowID;
-	        	if (shadowId >= 0 && shadowId < shadowMap.length && shadowId < shadowGlyphs.length) {
-		        	int charId = getCharID(shadowMap[shadowId]);
-		        	if (charId >= 0 && charId < glyphs.length) {
-		        		if (shadowGlyphs[shadowId] == null) {
-		        			shadowGlyphs[shadowId] = getGlyph(fontdata, (charPointers[charId] * 4 * 8), FONT_PGF_GLYPH_TYPE_SHADOW, fontFile);
-		        		}
-		        	}
-	        	}
-	        }
-        }
+        charPointers = getTable(fontFile.getCharPointerTable(), fontFile.getCharPointerBpe(), glyphs.length);
+        shadowMap = getTable(fontFile.getShadowCharMap(), fontFile.getShadowMapBpe(), shadowGlyphs.length);
 
         // Dump all glyphs for debugging purpose
         if (dumpGlyphs && log.isTraceEnabled()) {
             for (int i = 0; i < glyphs.length; i++) {
-        		int endPtr = (int) (i + 1 < glyphs.length ? glyphs[i + 1].glyphPtr : glyphs[i].ptr);
-        		log.trace(String.format("charCode=0x%04X: 0x%X-0x%X-0x%X", getCharCode(i, charmap_compr), glyphs[i].glyphPtr, glyphs[i].ptr, endPtr));
-        		for (int j = (int) glyphs[i].ptr; j < endPtr; j++) {
+            	Glyph glyph = getGlyph(i);
+        		int endPtr = (int) (i + 1 < glyphs.length ? getGlyph(i + 1).glyphPtr : glyph.ptr);
+        		log.trace(String.format("charCode=0x%04X: 0x%X-0x%X-0x%X", getCharCode(i, charmap_compr), glyph.glyphPtr, glyph.ptr, endPtr));
+        		for (int j = (int) glyph.ptr; j < endPtr; j++) {
         			log.trace(String.format("  0x%X: 0x%02X", j, fontdata[j]));
         		}
             }
             for (int i = 0; i < shadowGlyphs.length; i++) {
-            	if (shadowGlyphs[i] != null) {
-            		log.trace(String.format("shadowGlyphs#%d: 0x%X-0x%X", i, shadowGlyphs[i].glyphPtr, shadowGlyphs[i].ptr));
+            	Glyph shadowGlyph = getShadowGlyph(i);
+            	if (shadowGlyph != null) {
+            		log.trace(String.format("shadowGlyphs#%d: 0x%X-0x%X", i, shadowGlyph.glyphPtr, shadowGlyph.ptr));
             	}
             }
         }
     }
 
+    // Retrieve the glyph at the given index, decoding it on first use.
+    private Glyph getGlyph(int charIndex) {
+    	Glyph glyph = glyphs[charIndex];
+    	if (glyph == null) {
+    		glyph = getGlyph(fontdata, (charPointers[charIndex] * 4 * 8), FONT_PGF_GLYPH_TYPE_CHAR, fontFile);
+    		glyphs[charIndex] = glyph;
+    	}
+
+    	return glyph;
+    }
+
+    // Retrieve the shadow glyph with the given id, decoding it on first use.
+    private Glyph getShadowGlyph(int shadowId) {
+    	Glyph shadowGlyph = shadowGlyphs[shadowId];
+    	if (shadowGlyph == null && shadowId < shadowMap.length) {
+        	int charId = getCharID(shadowMap[shadowId]);
+        	if (charId >= 0 && charId < glyphs.length) {
+        		shadowGlyph = getGlyph(fontdata, (charPointers[charId] * 4 * 8), FONT_PGF_GLYPH_TYPE_SHADOW, fontFile);
+        		shadowGlyphs[shadowId] = shadowGlyph;
+        	}
+    	}
+
+    	return shadowGlyph;
+    }
+
     // Retrieve bits from a byte buffer based on bpe.
     private int getBits(int bpe, int[] buf, long pos) {
         int v = 0;
@@ -388,12 +443,15 @@ public class SceFontInfo {
     		return null;
     	}
 
-    	int charIndex = getCharIndex(charCode, charmap_compr);
+    	int charIndex = getCharIndex(charCode);
         if (charIndex < 0 || charIndex >= glyphs.length) {
             return null;
         }
 
-        Glyph glyph = glyphs[charIndex];
+        Glyph glyph = getGlyph(charIndex);
+        if (glyph == null) {
+        	return null;
+        }
 
         if (log.isTraceEnabled()) {
         	log.trace(String.format("charCode=0x%04X mapped to glyph#%d", charCode, charIndex));
@@ -404,7 +462,7 @@ public class SceFontInfo {
             if (shadowID < 0 || shadowID >= shadowGlyphs.length) {
                 return null;
             }
-            glyph = shadowGlyphs[shadowID];
+            glyph = getShadowGlyph(shadowID);
         }
 
         return glyph;
@@ -435,24 +493,37 @@ public class SceFontInfo {
     	return color;
     }
 
-    private void generateFontTexture(int base, int bpl, int bufWidth, int bufHeight, int x, int y, int x64, int y64, int clipX, int clipY, int clipWidth, int clipHeight, int pixelformat, Glyph glyph, int glyphType, boolean addColor) {
-        if (((glyph.flags & FONT_PGF_BMP_OVERLAY) != FONT_PGF_BMP_H_ROWS) &&
-            ((glyph.flags & FONT_PGF_BMP_OVERLAY) != FONT_PGF_BMP_V_ROWS)) {
-        	return;
-        }
+    // Retrieve the rendered image of a glyph, rendering it on first use.
+    private synchronized int[] getRenderedGlyph(Glyph glyph, int glyphType, int x64, int y64, int pixelformat) {
+    	if (renderedGlyphs == null) {
+    		renderedGlyphs = new LinkedHashMap<RenderedGlyphKey, int[]>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<RenderedGlyphKey, int[]> eldest) {
+					return size() > renderedGlyphCacheMaxSize;
+				}
+    		};
+    	}
+
+    	RenderedGlyphKey key = new RenderedGlyphKey(glyph, glyphType, x64, pixelformat);
+    	int[] renderedGlyph = renderedGlyphs.get(key);
+    	if (renderedGlyph == null) {
+    		renderedGlyph = renderGlyph(glyph, x64, y64, pixelformat);
+    		renderedGlyphs.put(key, renderedGlyph);
+    	}
+
+    	return renderedGlyph;
+    }
 
+    // Render a glyph into a list of its visible pixels,
+    // stored as (x, y, pixelColor) triples relative to the glyph position.
+    private int[] renderGlyph(Glyph glyph, int x64, int y64, int pixelformat) {
         long bitPtr = glyph.ptr * 8;
         final int nibbleBits = 4;
         boolean bitmapHorizontalRows = (glyph.flags & FONT_PGF_BMP_OVERLAY) == FONT_PGF_BMP_H_ROWS;
         int numberPixels = glyph.w * glyph.h;
 
-        int scaleX = 1;
-        int scaleY = 1;
-        if (glyphType == FONT_PGF_GLYPH_TYPE_SHADOW) {
-        	scaleX = 64 / shadowScaleX;
-        	scaleY = 64 / shadowScaleY;
-        }
-
         int[][] bitmap = new int[glyph.h][glyph.w];
         int pixelIndex = 0;
         while (pixelIndex < numberPixels && bitPtr + 8 < fontdataBits) {
@@ -489,48 +560,74 @@ public class SceFontInfo {
             }
         }
 
+        int[] pixels = new int[(glyph.h + 1) * (glyph.w + 1) * 3];
+        int length = 0;
         for (int yy = 0; yy <= glyph.h; yy++) {
         	for (int xx = 0; xx <= glyph.w; xx++) {
         		int sample = sample(bitmap, xx, yy, x64, y64);
                 // A pixel with value 0 is not changing the value in the buffer (tested on PSP)
                 if (sample != 0) {
-                    int pixelX = x + xx * scaleX;
-                    int pixelY = y + yy * scaleY;
-                    if (pixelX >= clipX && pixelX < clipX + clipWidth && pixelY >= clipY && pixelY < clipY + clipHeight) {
-                        // 4-bit color value
-                        int pixelColor = sample;
-                        switch (pixelformat) {
-                        	case sceFont.PSP_FONT_PIXELFORMAT_8:
-                                // 8-bit color value
-                        		pixelColor |= pixelColor << 4;
-                        		break;
-                        	case sceFont.PSP_FONT_PIXELFORMAT_24:
-                                // 24-bit color value
-                        		pixelColor |= pixelColor << 4;
-                        		pixelColor |= pixelColor << 8;
-                        		pixelColor |= pixelColor << 8;
-                        		break;
-                        	case sceFont.PSP_FONT_PIXELFORMAT_32:
-                                // 32-bit color value
-            					pixelColor |= pixelColor << 4;
-            					pixelColor |= pixelColor << 8;
-            					pixelColor |= pixelColor << 16;
-            					break;
-                        }
-
-                        for (int yyy = 0; yyy < scaleY; yyy++) {
-                        	for (int xxx = 0; xxx < scaleX; xxx++) {
-                        		if (addColor) {
-                        			Debug.addFontPixel(base, bpl, bufWidth, bufHeight, pixelX + xxx, pixelY + yyy, pixelColor, pixelformat);
-                        		} else {
-                        			Debug.setFontPixel(base, bpl, bufWidth, bufHeight, pixelX + xxx, pixelY + yyy, pixelColor, pixelformat);
-                        		}
-                        	}
-                        }
+                    // 4-bit color value
+                    int pixelColor = sample;
+                    switch (pixelformat) {
+                    	case sceFont.PSP_FONT_PIXELFORMAT_8:
+                            // 8-bit color value
+                    		pixelColor |= pixelColor << 4;
+                    		break;
+                    	case sceFont.PSP_FONT_PIXELFORMAT_24:
+                            // 24-bit color value
+                    		pixelColor |= pixelColor << 4;
+                    		pixelColor |= pixelColor << 8;
+                    		pixelColor |= pixelColor << 8;
+                    		break;
+                    	case sceFont.PSP_FONT_PIXELFORMAT_32:
+                            // 32-bit color value
+        					pixelColor |= pixelColor << 4;
+        					pixelColor |= pixelColor << 8;
+        					pixelColor |= pixelColor << 16;
+        					break;
                     }
+
+                    pixels[length++] = xx;
+                    pixels[length++] = yy;
+                    pixels[length++] = pixelColor;
                 }
         	}
         }
+
+        return Arrays.copyOf(pixels, length);
+    }
+
+    private void generateFontTexture(int base, int bpl, int bufWidth, int bufHeight, int x, int y, int x64, int y64, int clipX, int clipY, int clipWidth, int clipHeight, int pixelformat, Glyph glyph, int glyphType, boolean addColor) {
+        if (((glyph.flags & FONT_PGF_BMP_OVERLAY) != FONT_PGF_BMP_H_ROWS) &&
+            ((glyph.flags & FONT_PGF_BMP_OVERLAY) != FONT_PGF_BMP_V_ROWS)) {
+        	return;
+        }
+
+        int scaleX = 1;
+        int scaleY = 1;
+        if (glyphType == FONT_PGF_GLYPH_TYPE_SHADOW) {
+        	scaleX = 64 / shadowScaleX;
+        	scaleY = 64 / shadowScaleY;
+        }
+
+        int[] pixels = getRenderedGlyph(glyph, glyphType, x64, y64, pixelformat);
+        for (int i = 0; i < pixels.length; i += 3) {
+            int pixelX = x + pixels[i] * scaleX;
+            int pixelY = y + pixels[i + 1] * scaleY;
+            if (pixelX >= clipX && pixelX < clipX + clipWidth && pixelY >= clipY && pixelY < clipY + clipHeight) {
+            	int pixelColor = pixels[i + 2];
+                for (int yyy = 0; yyy < scaleY; yyy++) {
+                	for (int xxx = 0; xxx < scaleX; xxx++) {
+                		if (addColor) {
+                			Debug.addFontPixel(base, bpl, bufWidth, bufHeight, pixelX + xxx, pixelY + yyy, pixelColor, pixelformat);
+                		} else {
+                			Debug.setFontPixel(base, bpl, bufWidth, bufHeight, pixelX + xxx, pixelY + yyy, pixelColor, pixelformat);
+                		}
+                	}
+                }
+            }
+        }
     }
 
     // Generate a 4bpp texture for the given char id.
@@ -650,6 +747,62 @@ public class SceFontInfo {
 		return -1;
 	}
 
+	protected int getCharIndex(int charCode) {
+		if (charIndexTable == null) {
+			buildCharIndexTable();
+		}
+
+		charCode -= charIndexTableFirstCharCode;
+		if (charCode < 0 || charCode >= charIndexTable.length) {
+			return -1;
+		}
+
+		return charIndexTable[charCode];
+	}
+
+	// Build a table giving the same results as getCharIndex(charCode, charmap_compr)
+	private void buildCharIndexTable() {
+		int firstCharCode = Integer.MAX_VALUE;
+		int endCharCode = 0;
+		if (charmap_compr != null) {
+			for (int i = 0; i < charmap_compr.length; i += 2) {
+				if (charmap_compr[i + 1] > 0) {
+					firstCharCode = Math.min(firstCharCode, charmap_compr[i]);
+					endCharCode = Math.max(endCharCode, charmap_compr[i] + charmap_compr[i + 1]);
+				}
+			}
+		}
+
+		if (firstCharCode >= endCharCode) {
+			charIndexTableFirstCharCode = 0;
+			charIndexTable = new int[0];
+			return;
+		}
+
+		int[] table = new int[endCharCode - firstCharCode];
+		Arrays.fill(table, -1);
+		int charIndex = 0;
+		for (int i = 0; i < charmap_compr.length; i += 2) {
+			int start = charmap_compr[i];
+			int length = charmap_compr[i + 1];
+			for (int j = 0; j < length; j++) {
+				int tableIndex = start + j - firstCharCode;
+				// When ranges are overlapping, the first one is used
+				if (table[tableIndex] < 0) {
+					int index = charIndex + j;
+					if (charmap != null && index >= 0 && index < charmap.length) {
+						index = charmap[index];
+					}
+					table[tableIndex] = index;
+				}
+			}
+			charIndex += length;
+		}
+
+		charIndexTableFirstCharCode = firstCharCode;
+		charIndexTable = table;
+	}
+
 	public int getCharIndex(int charCode, int[] charmapCompressed) {
 		int charIndex = 0;
 		for (int i = 0; i < charmapCompressed.length; i += 2) {
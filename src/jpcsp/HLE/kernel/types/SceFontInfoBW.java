@@ -57,7 +57,7 @@ public class SceFontInfoBW extends SceFontInfo {
 			return;
 		}
 
-		int charIndex = getCharIndex(charCode, charmap_compr);
+		int charIndex = getCharIndex(charCode);
 		if (charIndex < 0 || charIndex >= charBitmapData.length) {
 			return;
 		}
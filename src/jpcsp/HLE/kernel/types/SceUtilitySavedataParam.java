@@ -33,6 +33,7 @@ import jpcsp.memory.IMemoryWriter;
 import jpcsp.memory.MemoryWriter;
 import jpcsp.HLE.Modules;
 import jpcsp.HLE.VFS.IVirtualFileSystem;
+import jpcsp.HLE.VFS.local.LocalFileMetadataCache;
 import jpcsp.crypto.CryptoEngine;
 import jpcsp.filesystems.SeekableDataInput;
 import jpcsp.filesystems.SeekableRandomFile;
@@ -559,6 +560,7 @@ public class SceUtilitySavedataParam extends pspUtilityBaseDialog {
         if (filename != null && filename.length() > 0) {
             File f = new File(getBasePath().replace(":", "/") + filename);
             success = f.delete();
+            LocalFileMetadataCache.invalidateHostFile(f);
         }
         return success;
     }
@@ -57,9 +57,11 @@ import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.regex.Pattern;
 
 import jpcsp.Emulator;
@@ -77,6 +79,8 @@ import jpcsp.HLE.VFS.crypto.PGDVirtualFile;
 import jpcsp.HLE.VFS.emulator.EmulatorVirtualFileSystem;
 import jpcsp.HLE.VFS.iso.UmdIsoVirtualFile;
 import jpcsp.HLE.VFS.iso.UmdIsoVirtualFileSystem;
+import jpcsp.HLE.VFS.local.LocalFileMetadataCache;
+import jpcsp.HLE.VFS.local.LocalVirtualFile;
 import jpcsp.HLE.VFS.local.LocalVirtualFileSystem;
 import jpcsp.HLE.VFS.memoryStick.MemoryStickStorageVirtualFileSystem;
 import jpcsp.HLE.VFS.memoryStick.MemoryStickVirtualFileSystem;
@@ -99,6 +103,7 @@ import jpcsp.filesystems.umdiso.UmdIsoReader;
 import jpcsp.hardware.MemoryStick;
 import jpcsp.memory.IMemoryWriter;
 import jpcsp.memory.MemoryWriter;
+import jpcsp.scheduler.Scheduler;
 import jpcsp.settings.AbstractBoolSettingsListener;
 import jpcsp.settings.Settings;
 import jpcsp.util.Utilities;
@@ -250,6 +255,8 @@ public class IoFileMgrForUser extends HLEModule {
     // when iterating over all the entries (most common action).
     private IIoListener[] ioListeners;
 
+    private static IoAsyncReadThread ioAsyncReadThread;
+
     public class IoInfo {
         // PSP settings
 
@@ -560,6 +567,10 @@ public class IoFileMgrForUser extends HLEModule {
     	private int address;
     	private int size;
     	private int requestedSize;
+    	// Used when the file read is executed by the IoAsyncReadThread
+    	private byte[] hostBuffer;
+    	private volatile int hostResult;
+    	private volatile boolean hostReadPending;
 
     	public IOAsyncReadAction(IoInfo info, int address, int requestedSize, int size) {
     		this.info = info;
@@ -568,12 +579,76 @@ public class IoFileMgrForUser extends HLEModule {
     		this.size = size;
     	}
 
+    	/**
+    	 * Start the file read on the IoAsyncReadThread.
+    	 * The emulated threads keep running while the host is reading the file,
+    	 * only the copy into the PSP memory is executed by execute().
+    	 *
+    	 * @return true if the read has been started on the IoAsyncReadThread,
+    	 *         false if the read has to be executed synchronously by execute().
+    	 */
+    	public boolean startHostRead() {
+    		if (size <= 0 || !canReadOnHostThread(info)) {
+    			return false;
+    		}
+
+    		hostBuffer = new byte[size];
+    		hostReadPending = true;
+    		getIoAsyncReadThread().addRequest(this);
+
+    		return true;
+    	}
+
+    	public boolean isHostReadPending() {
+    		return hostReadPending;
+    	}
+
+    	/**
+    	 * Executed by the IoAsyncReadThread.
+    	 * Only the host file is accessed here, not the PSP memory.
+    	 */
+    	public void hostRead() {
+    		int result = ERROR_KERNEL_FILE_READ_ERROR;
+    		try {
+    			if (info.vFile != null) {
+    				result = info.vFile.ioRead(hostBuffer, 0, size);
+    			} else {
+    				info.readOnlyFile.readFully(hostBuffer, 0, size);
+    				result = size;
+    			}
+    		} catch (Exception e) {
+    			// Any failure has to complete the request,
+    			// otherwise the async read would never end.
+    			log.error("hostRead", e);
+    			result = ERROR_KERNEL_FILE_READ_ERROR;
+    		} finally {
+    			hostResult = result;
+    			hostReadPending = false;
+
+    			// The async thread has to be triggered from the emulator thread
+    			Scheduler.getInstance().addAction(new IOAsyncReadCompletedAction(info));
+    		}
+    	}
+
         @Override
         public void execute() {
             long position = info.position;
             int result = 0;
 
-            if (info.vFile != null) {
+            if (hostBuffer != null) {
+            	result = hostResult;
+            	if (result >= 0) {
+            		Memory.getInstance().copyToMemory(address, ByteBuffer.wrap(hostBuffer, 0, result), result);
+            		info.position += result;
+            		size = result;
+	            	if (info.sectorBlockMode) {
+	            		result /= UmdIsoFile.sectorLength;
+	            	}
+            	} else {
+            		size = 0;
+            	}
+            	hostBuffer = null;
+            } else if (info.vFile != null) {
             	result = info.vFile.ioRead(new TPointer(Memory.getInstance(), address), size);
             	if (result >= 0) {
             		info.position += result;
@@ -609,6 +684,52 @@ public class IoFileMgrForUser extends HLEModule {
         }
     }
 
+    private class IOAsyncReadCompletedAction implements IAction {
+    	private IoInfo info;
+
+    	public IOAsyncReadCompletedAction(IoInfo info) {
+    		this.info = info;
+    	}
+
+		@Override
+		public void execute() {
+			if (info.asyncPending) {
+				triggerAsyncThread(info);
+			}
+		}
+    }
+
+    /**
+     * Thread executing the host file reads of sceIoReadAsync,
+     * so that the emulator thread is not blocked by slow disks.
+     */
+    private static class IoAsyncReadThread extends Thread {
+    	private final LinkedBlockingQueue<IOAsyncReadAction> requests = new LinkedBlockingQueue<IOAsyncReadAction>();
+
+    	public IoAsyncReadThread() {
+    		super("IoFileMgr Async Read");
+    	}
+
+    	public void addRequest(IOAsyncReadAction request) {
+    		requests.add(request);
+    	}
+
+    	@Override
+		public void run() {
+    		while (true) {
+    			try {
+    				IOAsyncReadAction request = requests.take();
+    				request.hostRead();
+    			} catch (InterruptedException e) {
+    				// Ignore exception and retry
+    			} catch (Exception e) {
+    				// Keep the thread alive for the next requests
+    				log.error("IoAsyncReadThread", e);
+    			}
+    		}
+    	}
+    }
+
 	private class ExtractPGDSettingsListerner extends AbstractBoolSettingsListener {
 		@Override
 		protected void settingsValueChanged(boolean value) {
@@ -649,8 +770,13 @@ public class IoFileMgrForUser extends HLEModule {
     	if (vfsManager == null) {
             vfsManager = new VirtualFileSystemManager();
     	}
-        vfsManager.register("ms0", new LocalVirtualFileSystem(Settings.getInstance().getDirectoryMapping("ms0"), true));
-        vfsManager.register("fatms0", new LocalVirtualFileSystem(Settings.getInstance().getDirectoryMapping("ms0"), true));
+        String ms0Path = Settings.getInstance().getDirectoryMapping("ms0");
+        LocalFileMetadataCache ms0MetadataCache = null;
+        if (Settings.getInstance().readBool("emu.msMetadataCache")) {
+        	ms0MetadataCache = LocalFileMetadataCache.getCache(ms0Path, Settings.getInstance().readBool("emu.msMetadataCache.watch"));
+        }
+        vfsManager.register("ms0", new LocalVirtualFileSystem(ms0Path, true, ms0MetadataCache));
+        vfsManager.register("fatms0", new LocalVirtualFileSystem(ms0Path, true, ms0MetadataCache));
         vfsManager.register("flash0", new LocalVirtualFileSystem(Settings.getInstance().getDirectoryMapping("flash0"), false));
         vfsManager.register("flash1", new LocalVirtualFileSystem(Settings.getInstance().getDirectoryMapping("flash1"), false));
         vfsManager.register("exdata0", new LocalVirtualFileSystem(Settings.getInstance().getDirectoryMapping("exdata0"), false));
@@ -686,6 +812,9 @@ public class IoFileMgrForUser extends HLEModule {
         stdRedirects = new SceKernelMppInfo[3];
         previousFatMsState = MemoryStick.PSP_FAT_MEMORYSTICK_STATE_UNASSIGNED;
 
+        // The host files might have been modified since the previous game
+        LocalFileMetadataCache.invalidateAll();
+
         vfsManager = new VirtualFileSystemManager();
         vfsManager.register("emulator", new EmulatorVirtualFileSystem());
         vfsManager.register("kemulator", new EmulatorVirtualFileSystem());
@@ -727,6 +856,13 @@ public class IoFileMgrForUser extends HLEModule {
 		super.start();
     }
 
+    @Override
+    public void stop() {
+        LocalFileMetadataCache.invalidateAll();
+
+        super.stop();
+    }
+
     public void setHost0Path(String path) {
     	host0Path = path;
     }
@@ -945,6 +1081,7 @@ public class IoFileMgrForUser extends HLEModule {
         if (pcfilename != null) {
             File f = new File(pcfilename);
             f.mkdirs();
+            LocalFileMetadataCache.invalidateHostFile(f);
         }
     }
 
@@ -969,7 +1106,10 @@ public class IoFileMgrForUser extends HLEModule {
     	}
 
     	File f = new File(pcfilename);
-    	return rmdir(f, recursive);
+    	boolean result = rmdir(f, recursive);
+    	LocalFileMetadataCache.invalidateHostFile(f);
+
+    	return result;
     }
 
     public boolean deleteFile(String pspfilename) {
@@ -988,6 +1128,7 @@ public class IoFileMgrForUser extends HLEModule {
     	} else {
     		File f = new File(pcfilename);
     		fileDeleted = f.delete();
+    		LocalFileMetadataCache.invalidateHostFile(f);
     	}
 
     	return fileDeleted;
@@ -999,6 +1140,22 @@ public class IoFileMgrForUser extends HLEModule {
             return null;
         }
         File f = new File(pcfilename);
+        StringBuilder cachedFileName = new StringBuilder();
+        LocalFileMetadataCache metadataCache = LocalFileMetadataCache.findCache(f, cachedFileName);
+        if (metadataCache != null) {
+        	String[] fileNames = metadataCache.getHostFileNames(cachedFileName.toString());
+        	if (fileNames != null && pattern != null) {
+        		PatternFilter patternFilter = new PatternFilter(pattern);
+        		int count = 0;
+        		for (int i = 0; i < fileNames.length; i++) {
+        			if (patternFilter.accept(f, fileNames[i])) {
+        				fileNames[count++] = fileNames[i];
+        			}
+        		}
+        		fileNames = Arrays.copyOf(fileNames, count);
+        	}
+        	return fileNames;
+        }
         return pattern == null ? f.list() : f.list(new PatternFilter(pattern));
     }
 
@@ -1177,6 +1334,9 @@ public class IoFileMgrForUser extends HLEModule {
 
                     try {
                     	resultFile = new SeekableRandomFile(pcfilename, mode);
+                    	if ((flags & PSP_O_WRONLY) != 0 || (flags & PSP_O_CREAT) != 0) {
+                    		LocalFileMetadataCache.invalidateHostFile(file);
+                    	}
                     } catch (FileNotFoundException e) {
                         if (log.isDebugEnabled()) {
                             log.debug("getFile - file not found '" + pcfilename + "' (ok to ignore this message, debug purpose only)");
@@ -1328,8 +1488,15 @@ public class IoFileMgrForUser extends HLEModule {
                 	if (log.isDebugEnabled()) {
                 		log.debug(String.format("Async IO not yet completed"));
                 	}
-                    // Wait for the Async IO to complete...
-                    threadMan.hleKernelDelayThread(info.getAsyncRestMillis() * 1000, false);
+                	int asyncRestMillis = info.getAsyncRestMillis();
+                	if (asyncRestMillis <= 0 && isAsyncHostReadPending(info)) {
+                		// Wait for the host read to complete...
+                		// wakeup is done by IOAsyncReadCompletedAction
+                		threadMan.hleKernelSleepThread(false);
+                	} else {
+                		// Wait for the Async IO to complete...
+                		threadMan.hleKernelDelayThread(asyncRestMillis * 1000, false);
+                	}
                 }
             }
         }
@@ -1364,6 +1531,10 @@ public class IoFileMgrForUser extends HLEModule {
         info.asyncDoneMillis = now + ioOperationTiming.getDelayMillis(size);
         info.asyncAction = asyncAction;
         info.result = result;
+        if (asyncAction instanceof IOAsyncReadAction) {
+        	// Start reading the file on the host while the emulated threads keep running
+        	((IOAsyncReadAction) asyncAction).startHostRead();
+        }
         if (info.asyncThread == null) {
             ThreadManForUser threadMan = Modules.ThreadManForUserModule;
             // Inherit priority from current thread if no default priority set
@@ -1410,12 +1581,46 @@ public class IoFileMgrForUser extends HLEModule {
         return startResult;
     }
 
+    private static IoAsyncReadThread getIoAsyncReadThread() {
+    	if (ioAsyncReadThread == null) {
+    		ioAsyncReadThread = new IoAsyncReadThread();
+    		ioAsyncReadThread.setDaemon(true);
+    		ioAsyncReadThread.start();
+    	}
+
+    	return ioAsyncReadThread;
+    }
+
+    /**
+     * Check if a file can be read by the IoAsyncReadThread.
+     * Only the files having their own host file handle or
+     * reading from the (synchronized) UMD reader are supported.
+     *
+     * @param info the file
+     * @return     true if the file can be read outside of the emulator thread
+     */
+    private static boolean canReadOnHostThread(IoInfo info) {
+    	if (info.vFile != null) {
+    		return info.vFile instanceof LocalVirtualFile || info.vFile instanceof UmdIsoVirtualFile;
+    	}
+
+    	return info.readOnlyFile instanceof SeekableRandomFile || info.readOnlyFile instanceof UmdIsoFile;
+    }
+
+    private static boolean isAsyncHostReadPending(IoInfo info) {
+    	if (info.asyncAction instanceof IOAsyncReadAction) {
+    		return ((IOAsyncReadAction) info.asyncAction).isHostReadPending();
+    	}
+
+    	return false;
+    }
+
     private boolean doStepAsync(IoInfo info) {
         boolean done = true;
 
         if (info.asyncPending) {
             ThreadManForUser threadMan = Modules.ThreadManForUserModule;
-            if (info.getAsyncRestMillis() > 0) {
+            if (info.getAsyncRestMillis() > 0 || isAsyncHostReadPending(info)) {
                 done = false;
             } else {
                 // Execute any pending async action and remove it.
@@ -84,6 +84,7 @@ public class sceAac extends HLEModule {
 
 		public void initCodec() {
         	initCodec(PSP_CODEC_AAC);
+        	enableDecodeAhead();
             init = true;
             codec.init(0, outputChannels, outputChannels, 0);
             setCodecInitialized();
@@ -199,6 +200,12 @@ public class sceAac extends HLEModule {
 
 	            	resetPlayPosition();
 	            }
+
+	            // Decode the next frame in the background if it is already available.
+	            // Not at the end of a looping stream: the next frame is then not certain.
+	            if (inputBuffer.getReadSize() >= minimumInputBufferSize && !(inputBuffer.isFileEnd() && loopNum != 0)) {
+	            	decodeAhead(inputBuffer.getReadAddr(), inputBuffer.getReadSize());
+	            }
         	}
 
             outputBufferAddress.setValue(decodeOutputAddr);
@@ -368,9 +368,35 @@ public class sceAtrac3plus extends HLEModule {
         		}
         	}
 
+        	startDecodeAhead();
+
         	return 0;
         }
 
+        private void startDecodeAhead() {
+        	// Only when the next frame is completely available in the input buffer
+        	// and will be decoded by the next decodeData() call.
+        	if (currentReadPosition + info.atracBytesPerFrame > info.inputFileSize || getAtracCurrentSample() - info.atracSampleOffset > info.atracEndSample) {
+        		return;
+        	}
+        	if (inputBuffer.getCurrentSize() < info.atracBytesPerFrame || inputBuffer.getReadSize() < info.atracBytesPerFrame) {
+        		return;
+        	}
+        	if (getAtracCurrentSample() == 0) {
+        		// Complete frames might be skipped when starting from the first sample
+        		return;
+        	}
+        	if (reloadingFromLoopStart) {
+        		return;
+        	}
+        	if (currentLoopNum >= 0 && info.loopNum != 0 && getAtracCurrentSample() + maxSamples > info.loops[currentLoopNum].endSample) {
+        		// The loop might be replayed before the next frame
+        		return;
+        	}
+
+        	decodeAhead(inputBuffer.getReadAddr(), info.atracBytesPerFrame);
+        }
+
         public void getStreamDataInfo(TPointer32 writeAddr, TPointer32 writableBytesAddr, TPointer32 readOffsetAddr) {
         	if (inputBuffer.getFileWriteSize() <= 0 && currentLoopNum >= 0 && info.loopNum != 0) {
         		// Read ahead to restart the loop
@@ -761,12 +787,14 @@ public class sceAtrac3plus extends HLEModule {
 				initCodec();
 			} else {
 				setCodecInitialized(false);
+				releaseCodec();
 				codec = null;
 			}
 		}
 
 		public void initCodec() {
 			initCodec(getCodecType());
+			enableDecodeAhead();
 		}
 
         @Override
@@ -82,6 +82,18 @@ public class sceAudio extends HLEModule {
 		inputDeviceInitialized = false;
 		captureBuffer = null;
 
+		if (pspPCMChannels != null) {
+			for (int channel = 0; channel < pspPCMChannels.length; channel++) {
+				pspPCMChannels[channel].close();
+			}
+		}
+		if (pspSRC1Channel != null) {
+			pspSRC1Channel.close();
+		}
+		if (pspSRC2Channel != null) {
+			pspSRC2Channel.close();
+		}
+
 		super.stop();
 	}
 
@@ -131,7 +143,7 @@ public class sceAudio extends HLEModule {
         	}
             int bytesPerSample = channel.isFormatStereo() ? 4 : 2;
             int nbytes = bytesPerSample * channel.getSampleLength();
-            byte[] data = new byte[nbytes];
+            byte[] data = channel.getOutputBuffer(nbytes);
 
             IMemoryReader memoryReader = MemoryReader.getMemoryReader(pvoid_buf, nbytes, 2);
             if (channel.isFormatMono()) {
@@ -158,7 +170,7 @@ public class sceAudio extends HLEModule {
                 }
             }
             Modules.sceAudioModule.audioData = data;
-            channel.play(data);
+            channel.play(data, nbytes);
             ret = channel.getSampleLength();
         } else {
             log.warn("doAudioOutput: channel " + channel.getIndex() + " not reserved");
@@ -175,12 +187,12 @@ public class sceAudio extends HLEModule {
 
     protected static void blockThreadOutput(int threadId, SoundChannel channel, int addr, int leftVolume, int rightVolume) {
     	IAction action = new AudioBlockingOutputAction(threadId, channel, addr, leftVolume, rightVolume);
-    	int delayMicros = channel.getUnblockOutputDelayMicros(addr == 0);
-    	long schedule = Emulator.getClock().microTime() + delayMicros;
     	if (log.isDebugEnabled()) {
-    		log.debug(String.format("blockThreadOutput micros=%d, schedule=%d", delayMicros, schedule));
+    		log.debug(String.format("blockThreadOutput waiting for %s %s", addr == 0 ? "drain of" : "free space in", channel));
     	}
-    	Emulator.getScheduler().addAction(schedule, action);
+    	// The action is executed once the audio output thread has
+    	// consumed enough samples from the channel.
+    	channel.setUnblockAction(action, addr == 0);
     }
 
     public void hleAudioBlockingOutput(int threadId, SoundChannel channel, int addr, int leftVolume, int rightVolume) {
@@ -35,9 +35,11 @@ import jpcsp.HLE.TPointer32;
 import jpcsp.HLE.kernel.types.SceKernelErrors;
 import jpcsp.HLE.modules.SysMemUserForUser.SysMemInfo;
 import jpcsp.media.codec.CodecFactory;
+import jpcsp.media.codec.DecodeAheadCodec;
 import jpcsp.media.codec.ICodec;
 import jpcsp.media.codec.mp3.Mp3Decoder;
 import jpcsp.media.codec.mp3.Mp3Header;
+import jpcsp.settings.Settings;
 import jpcsp.util.Utilities;
 
 public class sceAudiocodec extends HLEModule {
@@ -79,13 +81,43 @@ public class sceAudiocodec extends HLEModule {
 		}
 
 		public void release() {
+			releaseCodec();
 			setCodecInitialized(false);
 		}
 
 		public void initCodec(int codecType) {
+			releaseCodec();
 			codec = CodecFactory.getCodec(codecType);
 			setCodecInitialized(false);
 		}
+
+		protected void releaseCodec() {
+			if (codec instanceof DecodeAheadCodec) {
+				((DecodeAheadCodec) codec).release();
+			}
+		}
+
+		/**
+		 * Decode the next frames on a background thread, see DecodeAheadCodec.
+		 * Has to be called after initCodec().
+		 */
+		protected void enableDecodeAhead() {
+			if (codec != null && !(codec instanceof DecodeAheadCodec) && Settings.getInstance().readBool("emu.audioDecodeAhead")) {
+				codec = new DecodeAheadCodec(codec);
+			}
+		}
+
+		/**
+		 * Start decoding the next frame on a background thread, if enabled.
+		 *
+		 * @param inputAddr    the address of the next frame, completely available in memory
+		 * @param inputLength  the length available at inputAddr
+		 */
+		protected void decodeAhead(int inputAddr, int inputLength) {
+			if (codec instanceof DecodeAheadCodec) {
+				((DecodeAheadCodec) codec).decodeAhead(inputAddr, inputLength);
+			}
+		}
 	}
 
 	private Map<Integer, AudiocodecInfo> infos;
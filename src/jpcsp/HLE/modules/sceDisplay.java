@@ -72,6 +72,7 @@ import jpcsp.graphics.GEProfiler;
 import jpcsp.graphics.GeCommands;
 import jpcsp.graphics.VertexCache;
 import jpcsp.graphics.VideoEngine;
+import jpcsp.graphics.VramRegionTracker;
 import jpcsp.graphics.RE.IRenderingEngine;
 import jpcsp.graphics.RE.RenderingEngineFactory;
 import jpcsp.graphics.RE.RenderingEngineLwjgl;
@@ -128,55 +129,60 @@ public class sceDisplay extends HLEModule {
                 statistics.start();
             }
 
-            if (resetDisplaySettings) {
-                // Some display settings have been updated,
-                // a new rendering engine has to be created.
-                if (isStarted) {
-                    videoEngine.stop();
-                }
-                TextureCache.getInstance().reset(re);
-                VertexCache.getInstance().reset(re);
-                startModules = true;
-                re = null;
-                reDisplay = null;
-                resetDisplaySettings = false;
-
-                saveGEToTexture = Settings.getInstance().readBool("emu.enablegetexture");
-                if (saveGEToTexture) {
-                    log.info("Saving GE to Textures");
-                }
-            }
+            if (resetDisplaySettings || re == null || startModules) {
+                // The GE thread must not render while the rendering engine is being replaced
+                synchronized (geThreadLock) {
+                    if (resetDisplaySettings) {
+                        // Some display settings have been updated,
+                        // a new rendering engine has to be created.
+                        if (isStarted) {
+                            videoEngine.stop();
+                        }
+                        TextureCache.getInstance().reset(re);
+                        VertexCache.getInstance().reset(re);
+                        startModules = true;
+                        re = null;
+                        reDisplay = null;
+                        resetDisplaySettings = false;
+
+                        saveGEToTexture = Settings.getInstance().readBool("emu.enablegetexture");
+                        if (saveGEToTexture) {
+                            log.info("Saving GE to Textures");
+                        }
+                    }
 
-            if (re == null) {
-                if (startModules) {
-                	ExternalGE.init();
-                    re = RenderingEngineFactory.createRenderingEngine();
-                    if (isUsingSoftwareRenderer()) {
-                        reDisplay = RenderingEngineFactory.createRenderingEngineForDisplay();
-                        reDisplay.setGeContext(videoEngine.getContext());
-                    } else {
-                        reDisplay = re;
+                    if (re == null) {
+                        if (startModules) {
+                        	ExternalGE.init();
+                            re = RenderingEngineFactory.createRenderingEngine();
+                            if (isUsingSoftwareRenderer()) {
+                                reDisplay = RenderingEngineFactory.createRenderingEngineForDisplay();
+                                reDisplay.setGeContext(videoEngine.getContext());
+                            } else {
+                                reDisplay = re;
+                            }
+                        } else {
+                            re = RenderingEngineFactory.createInitialRenderingEngine();
+                            reDisplay = re;
+                        }
                     }
-                } else {
-                    re = RenderingEngineFactory.createInitialRenderingEngine();
-                    reDisplay = re;
-                }
-            }
 
-            if (startModules) {
-                saveGEToTexture = Settings.getInstance().readBool("emu.enablegetexture");
-                if (saveGEToTexture) {
-                    GETextureManager.getInstance().reset(reDisplay);
-                }
-                videoEngine.start();
-                drawBuffer = reDisplay.getBufferManager().genBuffer(IRenderingEngine.RE_ARRAY_BUFFER, IRenderingEngine.RE_FLOAT, 16, IRenderingEngine.RE_DYNAMIC_DRAW);
-                drawBufferArray = new float[16];
-                startModules = false;
-                if (saveGEToTexture && !re.isFramebufferObjectAvailable()) {
-                    saveGEToTexture = false;
-                    log.warn("Saving GE to Textures has been automatically disabled: FBO is not supported by this OpenGL version");
+                    if (startModules) {
+                        saveGEToTexture = Settings.getInstance().readBool("emu.enablegetexture");
+                        if (saveGEToTexture) {
+                            GETextureManager.getInstance().reset(reDisplay);
+                        }
+                        videoEngine.start();
+                        drawBuffer = reDisplay.getBufferManager().genBuffer(IRenderingEngine.RE_ARRAY_BUFFER, IRenderingEngine.RE_FLOAT, 16, IRenderingEngine.RE_DYNAMIC_DRAW);
+                        drawBufferArray = new float[16];
+                        startModules = false;
+                        if (saveGEToTexture && !re.isFramebufferObjectAvailable()) {
+                            saveGEToTexture = false;
+                            log.warn("Saving GE to Textures has been automatically disabled: FBO is not supported by this OpenGL version");
+                        }
+                        isStarted = true;
+                    }
                 }
-                isStarted = true;
             }
 
             if (!isStarted) {
@@ -252,6 +258,9 @@ public class sceDisplay extends HLEModule {
                     re.startDisplay();
                     videoEngine.update();
                     re.endDisplay();
+                } else if (videoEngine.hasDrawLists()) {
+                    // Lists might have been enqueued before the rendering engine was available
+                    softwareRenderingDisplayThread.display();
                 }
 
                 if (log.isDebugEnabled()) {
@@ -297,9 +306,16 @@ public class sceDisplay extends HLEModule {
                         log.debug(String.format("sceDisplay.paintGL - saving the GE to memory 0x%08X", ge.getTopAddr()));
                     }
 
+                    VramRegionTracker.Region geRegion = vramRegionTracker.getRegion(ge.getTopAddr(), ge.getSize());
                     if (saveGEToTexture && !videoEngine.isVideoTexture(ge.getTopAddr())) {
                         GETexture geTexture = GETextureManager.getInstance().getGETexture(reDisplay, ge.getTopAddr(), ge.getBufferWidth(), ge.getWidth(), ge.getHeight(), ge.getPixelFormat(), true);
                         geTexture.copyScreenToTexture(re);
+                    } else if (!geRegion.isMemoryOutdated()) {
+                        // The GE has already been copied to memory after its last rendering
+                        vramRegionTracker.copyToMemoryAvoided(geRegion);
+                        if (GEProfiler.isProfilerEnabled()) {
+                            GEProfiler.copyGeToMemoryAvoided(geRegion.getLength());
+                        }
                     } else {
                         // Set texFb as the current texture
                         reDisplay.bindTexture(resizedTexFb);
@@ -313,6 +329,7 @@ public class sceDisplay extends HLEModule {
 
                         // Save GE/current texture to vram
                         copyScreenToPixels(ge.getPixels(), ge.getBufferWidth(), ge.getPixelFormat(), ge.getWidth(), ge.getHeight());
+                        vramRegionTracker.copyToMemoryDone(geRegion, ge.getTopAddr(), ge.getSize());
                     }
                 }
 
@@ -535,6 +552,7 @@ public class sceDisplay extends HLEModule {
     private boolean detailsDirty;
     private boolean displayDirty;
     private boolean geDirty;
+    private final VramRegionTracker vramRegionTracker = VramRegionTracker.getInstance();
     private long lastUpdate;
     private boolean initGLcalled;
     private String openGLversion;
@@ -569,6 +587,9 @@ public class sceDisplay extends HLEModule {
     // Async Display
     private AsyncDisplayThread asyncDisplayThread;
     private SoftwareRenderingDisplayThread softwareRenderingDisplayThread;
+    private boolean useGeThread;
+    private final Object geThreadLock = new Object();
+    private volatile boolean geThreadRendering;
     private volatile boolean insideRendering;
     // VBLANK Multi.
     private List<WaitVblankInfo> waitingOnVblank;
@@ -606,6 +627,14 @@ public class sceDisplay extends HLEModule {
         }
     }
 
+    private class GeThreadSettingsListener extends AbstractBoolSettingsListener {
+
+        @Override
+        protected void settingsValueChanged(boolean value) {
+            setUseGeThread(value);
+        }
+    }
+
     private class SaveStencilToMemorySettingsListener extends AbstractBoolSettingsListener {
 
         @Override
@@ -683,23 +712,47 @@ public class sceDisplay extends HLEModule {
         }
     }
 
+    /**
+     * GE thread used by the software renderer.
+     *
+     * The GE lists are processed as soon as they are enqueued, in parallel
+     * with the emulated CPU and independently of the display refresh.
+     * The emulated threads only wait for the GE at the synchronization points
+     * (sceGeDrawSync, sceGeListSync, stall address and memory copies to a
+     * GE buffer being rendered, see waitForRenderingCompletion).
+     */
     private static class SoftwareRenderingDisplayThread extends AbstractDisplayThread {
 
         @Override
         protected void doDisplay() {
-            if (VideoEngine.getInstance().hasDrawLists()) {
-                IRenderingEngine re = Modules.sceDisplayModule.getRenderingEngine();
+            sceDisplay display = Modules.sceDisplayModule;
+            VideoEngine videoEngine = VideoEngine.getInstance();
 
-                if (re == null && !Screen.hasScreen()) {
-            		re = RenderingEngineFactory.createRenderingEngine();
-                    Modules.sceDisplayModule.setRenderingEngine(re);
-                    VideoEngine.getInstance().start();
-            	}
+            // Also process the lists enqueued while rendering the previous ones
+            while (run && videoEngine.hasDrawLists()) {
+                synchronized (display.geThreadLock) {
+                    IRenderingEngine re = display.getRenderingEngine();
 
-            	if (re != null) {
-                    re.startDisplay();
-                    VideoEngine.getInstance().update();
-                    re.endDisplay();
+                    if (re == null && !Screen.hasScreen()) {
+                        re = RenderingEngineFactory.createRenderingEngine();
+                        display.setRenderingEngine(re);
+                        videoEngine.start();
+                    }
+
+                    if (re == null) {
+                        // The display is not yet started,
+                        // paintGL will trigger this thread again.
+                        break;
+                    }
+
+                    display.geThreadRendering = true;
+                    try {
+                        re.startDisplay();
+                        videoEngine.update();
+                        re.endDisplay();
+                    } finally {
+                        display.geThreadRendering = false;
+                    }
                 }
             }
         }
@@ -979,6 +1032,7 @@ public class sceDisplay extends HLEModule {
     @Override
     public void start() {
         statistics = new DurationStatistics("sceDisplay Statistics");
+        vramRegionTracker.reset();
         statisticsCopyGeToMemory = new DurationStatistics("Copy GE to Memory");
         statisticsCopyMemoryToGe = new DurationStatistics("Copy Memory to GE");
 
@@ -1068,6 +1122,7 @@ public class sceDisplay extends HLEModule {
 
         setSettingsListener("emu.onlyGEGraphics", new OnlyGeSettingsListener());
         setSettingsListener("emu.useSoftwareRenderer", new SoftwareRendererSettingsListener());
+        setSettingsListener("emu.useGeThread", new GeThreadSettingsListener());
         setSettingsListener("emu.saveStencilToMemory", new SaveStencilToMemorySettingsListener());
 
         super.start();
@@ -1095,6 +1150,7 @@ public class sceDisplay extends HLEModule {
             log.info(statisticsCopyGeToMemory.toString());
             log.info(statisticsCopyMemoryToGe.toString());
         }
+        vramRegionTracker.exit();
     }
 
     public void step(boolean immediately) {
@@ -1149,6 +1205,13 @@ public class sceDisplay extends HLEModule {
     	this.re = re;
     }
 
+    /**
+     * The GE has rendered into the current GE frame buffer.
+     */
+    public void setGeRendered() {
+        vramRegionTracker.getRegion(ge.getTopAddr(), ge.getSize()).setRenderedByGe();
+    }
+
     public void setGeDirty(boolean dirty) {
         geDirty = dirty;
 
@@ -1301,12 +1364,41 @@ public class sceDisplay extends HLEModule {
     public void setUseSoftwareRenderer(boolean useSoftwareRenderer) {
         this.useSoftwareRenderer = useSoftwareRenderer;
 
+        updateSoftwareRenderingDisplayThread();
+
+        if (isStarted) {
+            resetDisplaySettings = true;
+        }
+    }
+
+    public boolean isUsingSoftwareRenderer() {
+        return useSoftwareRenderer;
+    }
+
+    /**
+     * When using the software renderer, process the GE lists in a dedicated
+     * GE thread instead of processing them in paintGL.
+     * The GE thread is always used when there is no screen.
+     *
+     * @param useGeThread  true to use the GE thread
+     */
+    public void setUseGeThread(boolean useGeThread) {
+        this.useGeThread = useGeThread;
+
+        updateSoftwareRenderingDisplayThread();
+    }
+
+    public boolean isUsingGeThread() {
+        return useGeThread;
+    }
+
+    private void updateSoftwareRenderingDisplayThread() {
         // Start/stop the software rendering display thread
-        if (useSoftwareRenderer) {
-            if (!Screen.hasScreen() && softwareRenderingDisplayThread == null) {
+        if (useSoftwareRenderer && (useGeThread || !Screen.hasScreen())) {
+            if (softwareRenderingDisplayThread == null) {
     			softwareRenderingDisplayThread = new SoftwareRenderingDisplayThread();
     			softwareRenderingDisplayThread.setDaemon(true);
-    			softwareRenderingDisplayThread.setName("GUI");
+    			softwareRenderingDisplayThread.setName(Screen.hasScreen() ? "GE Thread" : "GUI");
     			softwareRenderingDisplayThread.start();
     			log.debug("Starting Software Rendering Display Thread");
             }
@@ -1317,14 +1409,6 @@ public class sceDisplay extends HLEModule {
                 softwareRenderingDisplayThread = null;
             }
         }
-
-        if (isStarted) {
-            resetDisplaySettings = true;
-        }
-    }
-
-    public boolean isUsingSoftwareRenderer() {
-        return useSoftwareRenderer;
     }
 
     public void rotate(int angleId) {
@@ -1754,6 +1838,20 @@ public class sceDisplay extends HLEModule {
         	forceCopyToMemory = true;
         }
 
+        VramRegionTracker.Region geRegion = null;
+        if (forceCopyToMemory && geTopAddress == ge.getTopAddr()) {
+        	// No need to copy the GE to memory if nothing has been rendered
+        	// into it since its last copy: the memory is already up-to-date.
+        	geRegion = vramRegionTracker.getRegion(geTopAddress, ge.getSize());
+        	if (!geRegion.isMemoryOutdated()) {
+        		vramRegionTracker.copyToMemoryAvoided(geRegion);
+        		if (GEProfiler.isProfilerEnabled()) {
+        			GEProfiler.copyGeToMemoryAvoided(geRegion.getLength());
+        		}
+        		forceCopyToMemory = false;
+        	}
+        }
+
         if (forceCopyToMemory) {
             // Set texFb as the current texture
             re.bindTexture(resizedTexFb);
@@ -1776,6 +1874,10 @@ public class sceDisplay extends HLEModule {
                 re.bindTexture(resizedTexFb);
                 drawFrameBuffer(fb, false, false, ge.getBufferWidth(), ge.getPixelFormat(), ge.getWidth(), ge.getHeight());
             }
+
+            if (geRegion != null) {
+            	vramRegionTracker.copyToMemoryDone(geRegion, geTopAddress, ge.getSize());
+            }
         }
 
         if (statisticsCopyGeToMemory != null) {
@@ -2124,7 +2226,7 @@ public class sceDisplay extends HLEModule {
     			return true;
     		}
     	} else {
-    		if (insideRendering) {
+    		if (insideRendering || geThreadRendering) {
     			PspGeList currentList = VideoEngine.getInstance().getCurrentList();
     			if (currentList != null && currentList.isStalledAtStart()) {
     				// We are not really rendering when stalling at the start of the list
@@ -2133,7 +2235,7 @@ public class sceDisplay extends HLEModule {
     		}
     	}
 
-    	return insideRendering;
+    	return insideRendering || geThreadRendering;
     }
 
     public void setInsideRendering(boolean insideRendering) {
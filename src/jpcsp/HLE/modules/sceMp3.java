@@ -190,6 +190,7 @@ public class sceMp3 extends HLEModule {
 
 		public void initCodec() {
         	initCodec(PSP_CODEC_MP3);
+        	enableDecodeAhead();
         }
 
         public int notifyAddStream(int bytesToAdd) {
@@ -288,6 +289,12 @@ public class sceMp3 extends HLEModule {
 		            	resetPlayPosition(0);
 	            	}
 	            }
+
+	            // Decode the next frame in the background if it is already available.
+	            // Not at the end of a looping stream: the next frame is then not certain.
+	            if (inputBuffer.getReadSize() >= minimumInputBufferSize && !(inputBuffer.isFileEnd() && loopNum != 0)) {
+	            	decodeAhead(inputBuffer.getReadAddr(), inputBuffer.getReadSize());
+	            }
         	}
 
             outputBufferAddress.setValue(decodeOutputAddr);
@@ -3726,15 +3726,9 @@ public class sceMpeg extends HLEModule {
             }
         } else {
 	        IMemoryReader memoryReader = MemoryReader.getMemoryReader(dataAddr, length + length2 + length2, 1);
-	        for (int i = 0; i < length; i++) {
-	        	luma[i] = memoryReader.readNext();
-	        }
-	        for (int i = 0; i < length2; i++) {
-	        	cb[i] = memoryReader.readNext();
-	        }
-	        for (int i = 0; i < length2; i++) {
-	        	cr[i] = memoryReader.readNext();
-	        }
+	        memoryReader.readNext(luma, 0, length);
+	        memoryReader.readNext(cb, 0, length2);
+	        memoryReader.readNext(cr, 0, length2);
         }
 
         // Convert YCbCr to ABGR
@@ -4252,4 +4246,4 @@ public class sceMpeg extends HLEModule {
 
     	return 0;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -74,6 +74,7 @@ import jpcsp.memory.MemoryReader;
 import jpcsp.memory.MemoryWriter;
 import jpcsp.network.RawChannel;
 import jpcsp.network.RawSelector;
+import jpcsp.network.SocketReadinessThread;
 import jpcsp.remote.HTTPConfiguration;
 import jpcsp.remote.HTTPConfiguration.HttpServerConfiguration;
 import jpcsp.remote.HTTPServer;
@@ -311,6 +312,8 @@ public class sceNetInet extends HLEModule {
 		public boolean threadBlocked;
 		public long timeout; // microseconds
 		public long start; // Clock.microTime
+		public boolean timeoutScheduled;
+		public boolean readinessRegistered;
 		private boolean insideExecute;
 
 		public BlockingState(pspInetSocket inetSocket, long timeout) {
@@ -330,8 +333,10 @@ public class sceNetInet extends HLEModule {
 		public void execute() {
 			// Avoid executing the blocking state while already processing it.
 			// E.g. when the thread is unblocked by executeBlockingState(),
-			// this action is called again
-			if (!insideExecute) {
+			// this action is called again.
+			// Ignore also a readiness notification or a timeout
+			// received after the thread has been unblocked.
+			if (!insideExecute && threadBlocked) {
 				insideExecute = true;
 				executeBlockingState();
 				insideExecute = false;
@@ -339,6 +344,62 @@ public class sceNetInet extends HLEModule {
 		}
 
 		protected abstract void executeBlockingState();
+
+		/**
+		 * Register this blocking state on the socket readiness thread
+		 * so that it is executed when its socket(s) become ready.
+		 *
+		 * @param socketReadinessThread the socket readiness thread
+		 * @return true if the blocking state has been registered,
+		 *         false if it has to be polled.
+		 */
+		public boolean registerReadiness(SocketReadinessThread socketReadinessThread) {
+			return false;
+		}
+
+		protected boolean registerReadiness(SocketReadinessThread socketReadinessThread, SelectableChannel channel, int ops) {
+			if (channel instanceof SocketChannel && ((SocketChannel) channel).isConnectionPending()) {
+				ops |= SelectionKey.OP_CONNECT;
+			}
+			return socketReadinessThread.register(channel, ops, this);
+		}
+
+		protected boolean registerReadiness(SocketReadinessThread socketReadinessThread, Selector selector) {
+			boolean registered = false;
+			for (SelectionKey key : selector.keys()) {
+				if (key.isValid()) {
+					if (!registerReadiness(socketReadinessThread, key.channel(), key.interestOps())) {
+						return false;
+					}
+					registered = true;
+				}
+			}
+
+			return registered;
+		}
+
+		protected boolean registerReadiness(SocketReadinessThread socketReadinessThread, int ops) {
+			if (inetSocket == null) {
+				return false;
+			}
+			return registerReadiness(socketReadinessThread, inetSocket.getSelectableChannel(), ops);
+		}
+	}
+
+	protected static class BlockingConnectState extends BlockingState {
+		public BlockingConnectState(pspInetSocket inetSocket) {
+			super(inetSocket, pspInetSocket.NO_TIMEOUT);
+		}
+
+		@Override
+		protected void executeBlockingState() {
+			inetSocket.blockedConnect(this);
+		}
+
+		@Override
+		public boolean registerReadiness(SocketReadinessThread socketReadinessThread) {
+			return registerReadiness(socketReadinessThread, SelectionKey.OP_CONNECT);
+		}
 	}
 
 	protected static class BlockingAcceptState extends BlockingState {
@@ -353,6 +414,11 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			inetSocket.blockedAccept(this);
 		}
+
+		@Override
+		public boolean registerReadiness(SocketReadinessThread socketReadinessThread) {
+			return registerReadiness(socketReadinessThread, SelectionKey.OP_ACCEPT);
+		}
 	}
 
 	protected static class BlockingPollState extends BlockingState {
@@ -369,6 +435,11 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			Modules.sceNetInetModule.blockedPoll(this);
 		}
+
+		@Override
+		public boolean registerReadiness(SocketReadinessThread socketReadinessThread) {
+			return registerReadiness(socketReadinessThread, selector);
+		}
 	}
 
 	protected static class BlockingSelectState extends BlockingState {
@@ -395,6 +466,15 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			Modules.sceNetInetModule.blockedSelect(this);
 		}
+
+		@Override
+		public boolean registerReadiness(SocketReadinessThread socketReadinessThread) {
+			// Raw sockets have to be polled
+			if (!rawSelector.keys().isEmpty()) {
+				return false;
+			}
+			return registerReadiness(socketReadinessThread, selector);
+		}
 	}
 
 	protected static class BlockingReceiveState extends BlockingState {
@@ -415,6 +495,11 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			inetSocket.blockedRecv(this);
 		}
+
+		@Override
+		public boolean registerReadiness(SocketReadinessThread socketReadinessThread) {
+			return registerReadiness(socketReadinessThread, SelectionKey.OP_READ);
+		}
 	}
 
 	protected static class BlockingReceiveFromState extends BlockingState {
@@ -437,6 +522,11 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			inetSocket.blockedRecvfrom(this);
 		}
+
+		@Override
+		public boolean registerReadiness(SocketReadinessThread socketReadinessThread) {
+			return registerReadiness(socketReadinessThread, SelectionKey.OP_READ);
+		}
 	}
 
 	protected static class BlockingSendState extends BlockingState {
@@ -457,6 +547,11 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			inetSocket.blockedSend(this);
 		}
+
+		@Override
+		public boolean registerReadiness(SocketReadinessThread socketReadinessThread) {
+			return registerReadiness(socketReadinessThread, SelectionKey.OP_WRITE);
+		}
 	}
 
 	protected static class BlockingSendToState extends BlockingState {
@@ -479,6 +574,11 @@ public class sceNetInet extends HLEModule {
 		protected void executeBlockingState() {
 			inetSocket.blockedSendto(this);
 		}
+
+		@Override
+		public boolean registerReadiness(SocketReadinessThread socketReadinessThread) {
+			return registerReadiness(socketReadinessThread, SelectionKey.OP_WRITE);
+		}
 	}
 
 	protected abstract class pspInetSocket {
@@ -933,6 +1033,12 @@ public class sceNetInet extends HLEModule {
 			}
 		}
 
+		public void blockedConnect(BlockingConnectState blockingState) {
+			log.error(String.format("blockedConnect not supported on %s", toString()));
+			setErrno(EIO, blockingState);
+			unblockThread(blockingState, -1);
+		}
+
 		pspNetSockAddrInternet getLocalAddr() {
 			return localAddr;
 		}
@@ -1064,12 +1170,12 @@ public class sceNetInet extends HLEModule {
 
 				if (isBlocking()) {
 					// blocking mode: wait for the connection to complete
-					while (!socketChannel.finishConnect()) {
-						try {
-							Thread.sleep(1);
-						} catch (InterruptedException e) {
-							// Ignore exception
-						}
+					if (!socketChannel.finishConnect()) {
+						// Block the current thread until the connection is completed.
+						// The return value and errno will be set by blockedConnect().
+						setErrnoToSelf(EINPROGRESS);
+						blockThread(new BlockingConnectState(this));
+						return -1;
 					}
 				} else if (!connected) {
 					// non-blocking mode: return EINPROGRESS
@@ -1086,6 +1192,22 @@ public class sceNetInet extends HLEModule {
 			return 0;
 		}
 
+		@Override
+		public void blockedConnect(BlockingConnectState blockingState) {
+			try {
+				if (socketChannel.finishConnect()) {
+					clearError(blockingState);
+					unblockThread(blockingState, 0);
+				} else {
+					blockThread(blockingState);
+				}
+			} catch (IOException e) {
+				log.error(e);
+				setError(e, blockingState);
+				unblockThread(blockingState, -1);
+			}
+		}
+
 		@Override
 		public int bind(pspNetSockAddrInternet addr) {
 			BlockingState blockingState = null;
@@ -2179,6 +2301,8 @@ public class sceNetInet extends HLEModule {
 		}
 		sockets.clear();
 
+		SocketReadinessThread.exitInstance();
+
         super.stop();
 	}
 
@@ -2269,10 +2393,10 @@ public class sceNetInet extends HLEModule {
 									Selector socketSelector = inetSocket.getSelector(selector, rawSelector);
 
 									// A channel may be registered at most once with any particular selector
-									if (selectableChannel.isRegistered()) {
+									SelectionKey selectionKey = selectableChannel.keyFor(socketSelector);
+									if (selectionKey != null) {
 										// If the channel is already registered,
 										// add the new operation to the active registration
-										SelectionKey selectionKey = selectableChannel.keyFor(socketSelector);
 										selectionKey.interestOps(selectionKey.interestOps() | registeredOperation);
 									} else {
 										try {
@@ -2341,8 +2465,20 @@ public class sceNetInet extends HLEModule {
 			Modules.ThreadManForUserModule.hleBlockCurrentThread(SceKernelThreadInfo.JPCSP_WAIT_NET, blockingState);
 			blockingState.threadBlocked = true;
 		}
-		long schedule = Emulator.getClock().microTime() + BLOCKED_OPERATION_POLLING_MICROS;
-		Emulator.getScheduler().addAction(schedule, blockingState);
+
+		SocketReadinessThread socketReadinessThread = SocketReadinessThread.getInstance();
+		if (socketReadinessThread != null && blockingState.registerReadiness(socketReadinessThread)) {
+			blockingState.readinessRegistered = true;
+			// The blocking state will be executed when the socket is ready,
+			// only the timeout needs to be scheduled.
+			if (!blockingState.timeoutScheduled && blockingState.timeout < pspInetSocket.NO_TIMEOUT) {
+				Emulator.getScheduler().addAction(blockingState.start + blockingState.timeout, blockingState);
+				blockingState.timeoutScheduled = true;
+			}
+		} else {
+			long schedule = Emulator.getClock().microTime() + BLOCKED_OPERATION_POLLING_MICROS;
+			Emulator.getScheduler().addAction(schedule, blockingState);
+		}
 	}
 
 	protected void unblockThread(BlockingState blockingState, int returnValue) {
@@ -2357,6 +2493,16 @@ public class sceNetInet extends HLEModule {
 			Modules.ThreadManForUserModule.hleUnblockThread(blockingState.threadId);
 			blockingState.threadBlocked = false;
 		}
+
+		// Release the channels still waiting on this blocking state
+		// (e.g. after a timeout) so that they can be selected again.
+		if (blockingState.readinessRegistered) {
+			SocketReadinessThread socketReadinessThread = SocketReadinessThread.getInstance();
+			if (socketReadinessThread != null) {
+				socketReadinessThread.unregister(blockingState);
+			}
+			blockingState.readinessRegistered = false;
+		}
 	}
 
 	protected int checkInvalidSelectedSockets(BlockingSelectState blockingState) {
@@ -3008,7 +3154,7 @@ public class sceNetInet extends HLEModule {
 								registeredOperations |= SelectionKey.OP_WRITE;
 							}
 							registeredOperations &= selectableChannel.validOps();
-							if (selectableChannel.isRegistered()) {
+							if (selectableChannel.keyFor(selector) != null) {
 								log.warn(String.format("sceNetInetPoll channel already registered pollFd[%d]=%s", i, pollFd));
 							} else {
 								try {
@@ -3560,4 +3706,4 @@ public class sceNetInet extends HLEModule {
 	public int sceNetInet_lib_7CB1D9E3(int unknown) {
 		return 0;
 	}
-}
\ No newline at end of file
+}
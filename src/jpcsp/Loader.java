@@ -44,8 +44,8 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -811,22 +811,24 @@ public class Loader {
      */
     private void relocateFromBuffer(ByteBuffer f, SceModule module, int baseAddress, Elf32 elf, int RelCount, boolean pspRelocationFormat) throws IOException {
 
-    	Elf32Relocate rel = new Elf32Relocate();
+    	// Read the complete relocation table at once
+    	int[] relocations = Elf32Relocate.readAll(f, RelCount);
         int AHL = 0; // (AHI << 16) | (ALO & 0xFFFF)
-        List<Integer> deferredHi16 = new LinkedList<Integer>(); // We'll use this to relocate R_MIPS_HI16 when we get a R_MIPS_LO16
+        int[] deferredHi16 = new int[16]; // We'll use this to relocate R_MIPS_HI16 when we get a R_MIPS_LO16
+        int deferredHi16Count = 0;
 
         Memory mem = Memory.getInstance();
         for (int i = 0; i < RelCount; i++) {
-            rel.read(f);
+            int R_OFFSET = relocations[i * 2];
+            int R_INFO = relocations[i * 2 + 1];
 
             int phOffset;
             int phBaseOffset;
 
-            int R_OFFSET = rel.getR_offset();
-            int R_TYPE = rel.getR_info() & 0xFF;
+            int R_TYPE = R_INFO & 0xFF;
             if (pspRelocationFormat) {
-	            int OFS_BASE  = (rel.getR_info() >>  8) & 0xFF;
-	            int ADDR_BASE = (rel.getR_info() >> 16) & 0xFF;
+	            int OFS_BASE  = (R_INFO >>  8) & 0xFF;
+	            int ADDR_BASE = (R_INFO >> 16) & 0xFF;
 	            if (log.isTraceEnabled()) {
 	            	log.trace(String.format("Relocation #%d type=%d, Offset PH#%d, Base Offset PH#%d, Offset 0x%08X", i, R_TYPE, OFS_BASE, ADDR_BASE, R_OFFSET));
 	            }
@@ -837,7 +839,7 @@ public class Loader {
             	phOffset = 0;
             	phBaseOffset = 0;
 	            if (log.isTraceEnabled()) {
-	            	log.trace(String.format("Relocation #%d type=%d, Symbol 0x%06X, Offset 0x%08X", i, R_TYPE, rel.getR_info() >> 8, R_OFFSET));
+	            	log.trace(String.format("Relocation #%d type=%d, Symbol 0x%06X, Offset 0x%08X", i, R_TYPE, R_INFO >> 8, R_OFFSET));
 	            }
             }
 
@@ -890,7 +892,10 @@ public class Loader {
                 case 5: //R_MIPS_HI16
                     A = hi16;
                     AHL = A << 16;
-                    deferredHi16.add(data_addr);
+                    if (deferredHi16Count >= deferredHi16.length) {
+                    	deferredHi16 = Arrays.copyOf(deferredHi16, deferredHi16.length * 2);
+                    }
+                    deferredHi16[deferredHi16Count++] = data_addr;
                 	if (log.isTraceEnabled()) {
                 		log.trace(String.format("R_MIPS_HI16 addr=0x%08X", data_addr));
                 	}
@@ -904,8 +909,8 @@ public class Loader {
                     data &= ~0x0000FFFF;
                     data |= result & 0x0000FFFF; // truncate
                     // Process deferred R_MIPS_HI16
-                    for (Iterator<Integer> it = deferredHi16.iterator(); it.hasNext();) {
-                        int data_addr2 = it.next();
+                    for (int j = 0; j < deferredHi16Count; j++) {
+                        int data_addr2 = deferredHi16[j];
                         int data2 = readUnaligned32(mem, data_addr2);
                         result = ((data2 & 0x0000FFFF) << 16) + A + S;
                         // The low order 16 bits are always treated as a signed
@@ -926,8 +931,8 @@ public class Loader {
                     		log.trace(String.format("R_MIPS_HILO16 addr=0x%08X before=0x%08X after=0x%08X", data_addr2, readUnaligned32(mem, data_addr2), data2));
                         }
                     	writeUnaligned32(mem, data_addr2, data2);
-                        it.remove();
                     }
+                    deferredHi16Count = 0;
                 	if (log.isTraceEnabled()) {
                 		log.trace(String.format("R_MIPS_LO16 addr=0x%08X before=0x%08X after=0x%08X", data_addr, word32, data));
                 	}
@@ -1467,6 +1467,7 @@ private void OpenFileActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRS
             switch (FileUtil.getExtension(file)) {
                 case "iso":
                 case "cso":
+                case "bci":
                     loadUMD(file);
                     break;
                 default:
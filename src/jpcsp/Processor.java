@@ -27,6 +27,7 @@ import jpcsp.HLE.kernel.managers.IntrManager;
 import jpcsp.Allegrex.Common;
 import jpcsp.Allegrex.Cp0State;
 import jpcsp.Allegrex.CpuState;
+import jpcsp.Allegrex.DecodedInstructionCache;
 import jpcsp.Allegrex.Decoder;
 import jpcsp.Allegrex.Instructions;
 
@@ -38,6 +39,7 @@ public class Processor {
     public static final Memory memory = Memory.getInstance();
     protected Logger log = Logger.getLogger("cpu");
     private boolean interruptsEnabled;
+    private final DecodedInstructionCache decodedInstructionCache = new DecodedInstructionCache();
 
     public Processor() {
     	setLogger(log);
@@ -81,8 +83,9 @@ public class Processor {
     }
 
     public Instruction interpret() {
+        int address = cpu.pc;
         int opcode = cpu.fetchOpcode();
-        Instruction insn = Decoder.instruction(opcode);
+        Instruction insn = decodedInstructionCache.getInstruction(address, opcode);
         if (log.isTraceEnabled()) {
         	log.trace(String.format("Interpreting 0x%08X: [0x%08X] - %s", cpu.pc - 4, opcode, insn.disasm(cpu.pc - 4, opcode)));
         }
@@ -106,8 +109,9 @@ public class Processor {
     }
 
     public void interpretDelayslot() {
+        int address = cpu.pc;
         int opcode = cpu.nextOpcode();
-        Instruction insn = Decoder.instruction(opcode);
+        Instruction insn = decodedInstructionCache.getInstruction(address, opcode);
         if (log.isTraceEnabled()) {
         	log.trace(String.format("Interpreting 0x%08X: [0x%08X] - %s", cpu.pc - 4, opcode, insn.disasm(cpu.pc - 4, opcode)));
         }
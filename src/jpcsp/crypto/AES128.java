@@ -39,7 +39,9 @@ public class AES128 {
     private static final byte[] const_Rb = {0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0x87};
     private byte[] contentKey;
     private ByteArrayOutputStream barros;
-    private static Cipher cipher;
+    // A Cipher instance is not thread-safe: each thread is using its own instance
+    private static final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>();
+    private static String cipherMode;
     private static final byte[] iv0 = {0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
     // Do not use Bouncy Castle as the default implementation is much faster
     public static final boolean useBouncyCastle = false;
@@ -55,21 +57,32 @@ public class AES128 {
     	staticInit.start();
     }
 
-    private static void init(String mode) {
-        if (cipher == null) {
+    private static synchronized void init(String mode) {
+        if (cipherMode == null) {
         	if (useBouncyCastle) {
         		Security.addProvider(new BouncyCastleProvider());
         	}
+        	cipherMode = mode;
+        	getCipher();
+        }
+    }
+
+    private static Cipher getCipher() {
+    	Cipher cipher = ciphers.get();
+    	if (cipher == null) {
             try {
             	if (useBouncyCastle) {
-            		cipher = Cipher.getInstance(mode, "BC");
+            		cipher = Cipher.getInstance(cipherMode, "BC");
             	} else {
-            		cipher = Cipher.getInstance(mode);
+            		cipher = Cipher.getInstance(cipherMode);
             	}
+            	ciphers.set(cipher);
             } catch (Exception e) {
                 log.error("AES128 Cipher", e);
             }
-        }
+    	}
+
+    	return cipher;
     }
 
     public AES128(String mode) {
@@ -100,7 +113,7 @@ public class AES128 {
         IvParameterSpec ivec = new IvParameterSpec(iv);
         byte[] result = null;
         try {
-            Cipher c = cipher;
+            Cipher c = getCipher();
             c.init(Cipher.ENCRYPT_MODE, keySpec, ivec);
             result = c.doFinal(in);
         } catch (InvalidKeyException e) {
@@ -121,7 +134,7 @@ public class AES128 {
         IvParameterSpec ivec = new IvParameterSpec(iv);
         byte[] result = null;
         try {
-            Cipher c = cipher;
+            Cipher c = getCipher();
             c.init(Cipher.DECRYPT_MODE, keySpec, ivec);
             result = c.doFinal(in);
         } catch (Exception e) {
@@ -0,0 +1,257 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.crypto;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.Emulator;
+import jpcsp.settings.Settings;
+
+/**
+ * Cache of the decrypted PRX modules (~PSP format).
+ *
+ * The decryption of a module by KIRK is taking a noticeable time,
+ * especially for the large EBOOT.BIN of the games and for the flash0
+ * modules loaded at each boot. The decrypted images are stored on disk,
+ * keyed by the SHA-1 of the encrypted module, so that the next boots
+ * do not need to call KIRK anymore.
+ *
+ * Independent modules can also be decrypted in advance on a worker pool:
+ * their decrypted images are then kept in memory until they are
+ * requested by the Loader.
+ */
+public class DecryptedPRXCache {
+	private static Logger log = Emulator.log;
+	private static final String settingsEnabled = "emu.decryptedPrxCache";
+	// Modules decrypted in advance, not yet requested by the Loader
+	private static final Map<String, byte[]> decryptedModules = new ConcurrentHashMap<String, byte[]>();
+
+	private static boolean isEnabled() {
+		return Settings.getInstance().readBool(settingsEnabled);
+	}
+
+	private static File getCacheFile(String key) {
+		// Return "tmp/DecryptedPRX/<sha1>.bin"
+		return new File(String.format("%1$s%2$cDecryptedPRX%2$c%3$s.bin", Settings.getInstance().readString("emu.tmppath"), File.separatorChar, key));
+	}
+
+	/**
+	 * Compute the cache key of an encrypted module.
+	 *
+	 * @param buffer the encrypted module
+	 * @param size   the size of the encrypted module
+	 * @return       the cache key
+	 */
+	public static String getKey(byte[] buffer, int size) {
+		MessageDigest sha1;
+		try {
+			sha1 = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			log.error("DecryptedPRXCache", e);
+			return null;
+		}
+
+		sha1.update(buffer, 0, size);
+		byte[] digest = sha1.digest();
+
+		StringBuilder key = new StringBuilder(digest.length * 2);
+		for (byte b : digest) {
+			key.append(String.format("%02x", b & 0xFF));
+		}
+
+		return key.toString();
+	}
+
+	/**
+	 * Retrieve a decrypted module, either decrypted in advance
+	 * or from the disk.
+	 *
+	 * @param key    the cache key of the encrypted module
+	 * @param buffer the buffer receiving the decrypted module
+	 * @return       the size of the decrypted module,
+	 *               or -1 if the module is not cached
+	 */
+	public static int read(String key, byte[] buffer) {
+		if (key == null) {
+			return -1;
+		}
+
+		byte[] decryptedModule = decryptedModules.remove(key);
+		if (decryptedModule == null && isEnabled()) {
+			decryptedModule = readCacheFile(key);
+		}
+
+		if (decryptedModule == null || decryptedModule.length > buffer.length) {
+			return -1;
+		}
+
+		System.arraycopy(decryptedModule, 0, buffer, 0, decryptedModule.length);
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("DecryptedPRXCache hit for %s (size=0x%X)", key, decryptedModule.length));
+		}
+
+		return decryptedModule.length;
+	}
+
+	/**
+	 * Store a decrypted module on the disk.
+	 *
+	 * @param key    the cache key of the encrypted module
+	 * @param buffer the decrypted module
+	 * @param size   the size of the decrypted module
+	 */
+	public static void write(String key, byte[] buffer, int size) {
+		if (key == null || size <= 0 || !isEnabled()) {
+			return;
+		}
+
+		File cacheFile = getCacheFile(key);
+		cacheFile.getParentFile().mkdirs();
+
+		// Write to a temporary file first so that a partially written
+		// file is never seen by another emulator instance.
+		File tmpFile = new File(cacheFile.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			FileOutputStream os = new FileOutputStream(tmpFile);
+			try {
+				os.write(buffer, 0, size);
+			} finally {
+				os.close();
+			}
+			if (!tmpFile.renameTo(cacheFile)) {
+				tmpFile.delete();
+			}
+		} catch (IOException e) {
+			log.error(String.format("Cannot write %s: %s", cacheFile, e));
+			tmpFile.delete();
+		}
+	}
+
+	private static byte[] readCacheFile(String key) {
+		File cacheFile = getCacheFile(key);
+		if (!cacheFile.canRead()) {
+			return null;
+		}
+
+		try {
+			byte[] decryptedModule = new byte[(int) cacheFile.length()];
+			FileInputStream is = new FileInputStream(cacheFile);
+			try {
+				int offset = 0;
+				while (offset < decryptedModule.length) {
+					int length = is.read(decryptedModule, offset, decryptedModule.length - offset);
+					if (length < 0) {
+						return null;
+					}
+					offset += length;
+				}
+			} finally {
+				is.close();
+			}
+
+			return decryptedModule;
+		} catch (IOException e) {
+			log.error(String.format("Cannot read %s: %s", cacheFile, e));
+		}
+
+		return null;
+	}
+
+	private static void decrypt(byte[] encryptedModule) {
+		String key = getKey(encryptedModule, encryptedModule.length);
+		if (key == null || decryptedModules.containsKey(key)) {
+			return;
+		}
+
+		if (isEnabled()) {
+			byte[] decryptedModule = readCacheFile(key);
+			if (decryptedModule != null) {
+				decryptedModules.put(key, decryptedModule);
+				return;
+			}
+		}
+
+		// Each thread is using its own PRX and KIRK engines
+		byte[] buffer = encryptedModule.clone();
+		int size = new PRX().DecryptPRX(buffer, buffer.length, null, 0, 2, null, null);
+		if (size > 0) {
+			decryptedModules.put(key, Arrays.copyOf(buffer, size));
+			write(key, buffer, size);
+		}
+	}
+
+	/**
+	 * Decrypt independent modules in parallel, using one thread per processor.
+	 * The decrypted modules are kept in memory until they are requested
+	 * by the Loader.
+	 *
+	 * @param encryptedModules the encrypted modules (~PSP format)
+	 */
+	public static void decryptInParallel(List<byte[]> encryptedModules) {
+		int nThreads = Math.min(Runtime.getRuntime().availableProcessors(), encryptedModules.size());
+		if (nThreads <= 1) {
+			// No gain by decrypting in advance
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "PRX Decryption Thread");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (final byte[] encryptedModule : encryptedModules) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					decrypt(encryptedModule);
+				}
+			});
+		}
+		pool.shutdown();
+
+		try {
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			log.error("DecryptedPRXCache", e);
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Decrypted %d modules in parallel in %d ms", encryptedModules.size(), System.currentTimeMillis() - start));
+		}
+	}
+}
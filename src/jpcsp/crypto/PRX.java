@@ -21,7 +21,7 @@ import java.nio.ByteOrder;
 
 public class PRX {
     
-    private static KIRK kirk;
+    private KIRK kirk;
     
     public PRX() {
         kirk = new KIRK();
@@ -0,0 +1,344 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.filesystems.umdiso;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Sector device for the block-compressed ISO format (".bci" files)
+ * created by jpcsp.util.UmdToBlockCompressedIso.
+ *
+ * Compared to the CSO format, the sectors are compressed in large blocks
+ * (typically 64KB), giving a better compression ratio and requiring
+ * less inflater calls. The blocks read by readSectors() are inflated in parallel.
+ *
+ * File format (little-endian):
+ *     u32 magic 'JBCI'
+ *     u32 version
+ *     u32 header length
+ *     u32 block size in bytes (multiple of the sector length)
+ *     u32 number of sectors
+ *     u32 number of blocks
+ *     u32 flags (FLAG_DICTIONARY, FLAG_CHECKSUMS)
+ *     u32 dictionary length
+ *     u64 dictionary offset
+ *     u64 index offset
+ *     (padding up to the header length)
+ *     u64[number of blocks + 1] block offsets, UNCOMPRESSED_BLOCK is set when the block is stored uncompressed
+ *     u32[number of blocks] CRC32 of each uncompressed block (only when FLAG_CHECKSUMS is set)
+ *     the preset deflate dictionary (only when FLAG_DICTIONARY is set)
+ *     the raw deflate compressed blocks
+ */
+public class BlockCompressedFileSectorDevice extends AbstractFileSectorDevice {
+	public static final int MAGIC = 0x4943424A; // "JBCI"
+	public static final int VERSION = 1;
+	public static final int HEADER_LENGTH = 64;
+	public static final int FLAG_DICTIONARY = 0x1;
+	public static final int FLAG_CHECKSUMS = 0x2;
+	public static final long UNCOMPRESSED_BLOCK = 0x8000000000000000L;
+	public static final long BLOCK_OFFSET_MASK = ~UNCOMPRESSED_BLOCK;
+	private static final int NUMBER_CACHED_BLOCKS = 4;
+	private static ExecutorService inflaterPool;
+	private int blockSize;
+	private int sectorsPerBlock;
+	private int numSectors;
+	private int numBlocks;
+	private long[] blockOffsets;
+	private int[] blockChecksums;
+	private byte[] dictionary;
+	private final int[] cachedBlockNumbers = new int[NUMBER_CACHED_BLOCKS];
+	private final byte[][] cachedBlocks = new byte[NUMBER_CACHED_BLOCKS][];
+	private int nextCachedBlock;
+
+	private class InflateBlock implements Callable<byte[]> {
+		private final int blockNumber;
+		private final byte[] compressedData;
+		private final int offset;
+		private final int length;
+
+		public InflateBlock(int blockNumber, byte[] compressedData, int offset, int length) {
+			this.blockNumber = blockNumber;
+			this.compressedData = compressedData;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public byte[] call() throws IOException {
+			return inflateBlock(blockNumber, compressedData, offset, length);
+		}
+	}
+
+	public static boolean isBlockCompressed(byte[] header) {
+		return header.length >= 4 && ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt(0) == MAGIC;
+	}
+
+	public BlockCompressedFileSectorDevice(RandomAccessFile fileAccess) throws IOException {
+		super(fileAccess);
+
+		byte[] header = new byte[HEADER_LENGTH];
+		fileAccess.seek(0);
+		fileAccess.readFully(header);
+		ByteBuffer headerBuffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+		if (headerBuffer.getInt(0) != MAGIC) {
+			throw new IOException("Invalid block-compressed ISO header");
+		}
+		int version = headerBuffer.getInt(4);
+		if (version != VERSION) {
+			throw new IOException(String.format("Unsupported block-compressed ISO version %d", version));
+		}
+		blockSize = headerBuffer.getInt(12);
+		numSectors = headerBuffer.getInt(16);
+		numBlocks = headerBuffer.getInt(20);
+		int flags = headerBuffer.getInt(24);
+		int dictionaryLength = headerBuffer.getInt(28);
+		long dictionaryOffset = headerBuffer.getLong(32);
+		long indexOffset = headerBuffer.getLong(40);
+
+		if (blockSize <= 0 || (blockSize % sectorLength) != 0) {
+			throw new IOException(String.format("Invalid block size 0x%X in block-compressed ISO", blockSize));
+		}
+		sectorsPerBlock = blockSize / sectorLength;
+
+		// Read the complete index in one operation
+		int indexLength = (numBlocks + 1) * 8;
+		if ((flags & FLAG_CHECKSUMS) != 0) {
+			indexLength += numBlocks * 4;
+		}
+		byte[] indexData = new byte[indexLength];
+		fileAccess.seek(indexOffset);
+		fileAccess.readFully(indexData);
+		ByteBuffer indexBuffer = ByteBuffer.wrap(indexData).order(ByteOrder.LITTLE_ENDIAN);
+
+		blockOffsets = new long[numBlocks + 1];
+		for (int i = 0; i <= numBlocks; i++) {
+			blockOffsets[i] = indexBuffer.getLong();
+		}
+		if ((flags & FLAG_CHECKSUMS) != 0) {
+			blockChecksums = new int[numBlocks];
+			for (int i = 0; i < numBlocks; i++) {
+				blockChecksums[i] = indexBuffer.getInt();
+			}
+		}
+
+		if ((flags & FLAG_DICTIONARY) != 0) {
+			dictionary = new byte[dictionaryLength];
+			fileAccess.seek(dictionaryOffset);
+			fileAccess.readFully(dictionary);
+		}
+
+		for (int i = 0; i < NUMBER_CACHED_BLOCKS; i++) {
+			cachedBlockNumbers[i] = -1;
+		}
+	}
+
+	private static synchronized ExecutorService getInflaterPool() {
+		if (inflaterPool == null) {
+			inflaterPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Block-compressed ISO Inflater");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		return inflaterPool;
+	}
+
+	@Override
+	public int getNumSectors() {
+		return numSectors;
+	}
+
+	private int getBlockLength(int blockNumber) {
+		int firstSector = blockNumber * sectorsPerBlock;
+		return Math.min(sectorsPerBlock, numSectors - firstSector) * sectorLength;
+	}
+
+	private byte[] inflateBlock(int blockNumber, byte[] compressedData, int offset, int length) throws IOException {
+		int blockLength = getBlockLength(blockNumber);
+		byte[] block = new byte[blockLength];
+
+		if ((blockOffsets[blockNumber] & UNCOMPRESSED_BLOCK) != 0) {
+			System.arraycopy(compressedData, offset, block, 0, Math.min(length, blockLength));
+		} else {
+			Inflater inflater = new Inflater(true);
+			try {
+				if (dictionary != null) {
+					inflater.setDictionary(dictionary);
+				}
+				inflater.setInput(compressedData, offset, length);
+				int inflatedLength = 0;
+				while (inflatedLength < blockLength && !inflater.finished()) {
+					int n = inflater.inflate(block, inflatedLength, blockLength - inflatedLength);
+					if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+						break;
+					}
+					inflatedLength += n;
+				}
+				if (inflatedLength != blockLength) {
+					throw new IOException(String.format("Block %d truncated: 0x%X bytes inflated, 0x%X expected", blockNumber, inflatedLength, blockLength));
+				}
+			} catch (DataFormatException e) {
+				throw new IOException(String.format("Exception while uncompressing block %d: %s", blockNumber, e));
+			} finally {
+				inflater.end();
+			}
+		}
+
+		if (blockChecksums != null) {
+			CRC32 crc32 = new CRC32();
+			crc32.update(block, 0, blockLength);
+			if ((int) crc32.getValue() != blockChecksums[blockNumber]) {
+				throw new IOException(String.format("Checksum error in block %d", blockNumber));
+			}
+		}
+
+		return block;
+	}
+
+	private byte[] readCompressedBlocks(int firstBlock, int lastBlock) throws IOException {
+		long start = blockOffsets[firstBlock] & BLOCK_OFFSET_MASK;
+		long end = blockOffsets[lastBlock + 1] & BLOCK_OFFSET_MASK;
+		byte[] compressedData = new byte[(int) (end - start)];
+		fileAccess.seek(start);
+		fileAccess.readFully(compressedData);
+
+		return compressedData;
+	}
+
+	private byte[] getCachedBlock(int blockNumber) {
+		for (int i = 0; i < NUMBER_CACHED_BLOCKS; i++) {
+			if (cachedBlockNumbers[i] == blockNumber) {
+				return cachedBlocks[i];
+			}
+		}
+
+		return null;
+	}
+
+	private void addCachedBlock(int blockNumber, byte[] block) {
+		cachedBlockNumbers[nextCachedBlock] = blockNumber;
+		cachedBlocks[nextCachedBlock] = block;
+		nextCachedBlock = (nextCachedBlock + 1) % NUMBER_CACHED_BLOCKS;
+	}
+
+	private byte[] getBlock(int blockNumber) throws IOException {
+		byte[] block = getCachedBlock(blockNumber);
+		if (block == null) {
+			byte[] compressedData = readCompressedBlocks(blockNumber, blockNumber);
+			block = inflateBlock(blockNumber, compressedData, 0, compressedData.length);
+			addCachedBlock(blockNumber, block);
+		}
+
+		return block;
+	}
+
+	@Override
+	public void readSector(int sectorNumber, byte[] buffer, int offset) throws IOException {
+		int blockNumber = sectorNumber / sectorsPerBlock;
+		byte[] block = getBlock(blockNumber);
+		System.arraycopy(block, (sectorNumber % sectorsPerBlock) * sectorLength, buffer, offset, sectorLength);
+	}
+
+	@Override
+	public int readSectors(int sectorNumber, int numberSectors, byte[] buffer, int offset) throws IOException {
+		if (numberSectors <= 0) {
+			return 0;
+		}
+
+		int firstBlock = sectorNumber / sectorsPerBlock;
+		int lastBlock = (sectorNumber + numberSectors - 1) / sectorsPerBlock;
+		byte[][] blocks = new byte[lastBlock - firstBlock + 1][];
+
+		// Find the range of blocks not yet available in the cache
+		int firstMissingBlock = -1;
+		int lastMissingBlock = -1;
+		for (int blockNumber = firstBlock; blockNumber <= lastBlock; blockNumber++) {
+			blocks[blockNumber - firstBlock] = getCachedBlock(blockNumber);
+			if (blocks[blockNumber - firstBlock] == null) {
+				if (firstMissingBlock < 0) {
+					firstMissingBlock = blockNumber;
+				}
+				lastMissingBlock = blockNumber;
+			}
+		}
+
+		if (firstMissingBlock == lastMissingBlock && firstMissingBlock >= 0) {
+			blocks[firstMissingBlock - firstBlock] = getBlock(firstMissingBlock);
+		} else if (firstMissingBlock >= 0) {
+			// Read all the compressed blocks in one operation
+			// and inflate them in parallel
+			byte[] compressedData = readCompressedBlocks(firstMissingBlock, lastMissingBlock);
+			long start = blockOffsets[firstMissingBlock] & BLOCK_OFFSET_MASK;
+			List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+			ExecutorService pool = getInflaterPool();
+			for (int blockNumber = firstMissingBlock; blockNumber <= lastMissingBlock; blockNumber++) {
+				if (blocks[blockNumber - firstBlock] == null) {
+					int blockOffset = (int) ((blockOffsets[blockNumber] & BLOCK_OFFSET_MASK) - start);
+					int blockLength = (int) ((blockOffsets[blockNumber + 1] & BLOCK_OFFSET_MASK) - (blockOffsets[blockNumber] & BLOCK_OFFSET_MASK));
+					futures.add(pool.submit(new InflateBlock(blockNumber, compressedData, blockOffset, blockLength)));
+				} else {
+					futures.add(null);
+				}
+			}
+
+			for (int blockNumber = firstMissingBlock; blockNumber <= lastMissingBlock; blockNumber++) {
+				Future<byte[]> future = futures.get(blockNumber - firstMissingBlock);
+				if (future != null) {
+					try {
+						blocks[blockNumber - firstBlock] = future.get();
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof IOException) {
+							throw (IOException) e.getCause();
+						}
+						throw new IOException(e.getCause());
+					}
+				}
+			}
+
+			// Keep the last block in the cache for the next sequential read
+			addCachedBlock(lastMissingBlock, blocks[lastMissingBlock - firstBlock]);
+		}
+
+		for (int i = 0; i < numberSectors; i++) {
+			int currentSector = sectorNumber + i;
+			byte[] block = blocks[currentSector / sectorsPerBlock - firstBlock];
+			System.arraycopy(block, (currentSector % sectorsPerBlock) * sectorLength, buffer, offset + i * sectorLength, sectorLength);
+		}
+
+		return numberSectors;
+	}
+}
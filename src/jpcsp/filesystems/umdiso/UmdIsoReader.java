@@ -76,6 +76,8 @@ public class UmdIsoReader implements IBrowser {
 
 	        if (header[0] == 'C' && header[1] == 'I' && header[2] == 'S' && header[3] == 'O') {
 	            sectorDevice = new CSOFileSectorDevice(fileReader, header);
+	        } else if (BlockCompressedFileSectorDevice.isBlockCompressed(header)) {
+	        	sectorDevice = new BlockCompressedFileSectorDevice(fileReader);
 	        } else if (header[0] == 0 && header[1] == 'P' && header[2] == 'B' && header[3] == 'P') {
 	        	sectorDevice = new PBPFileSectorDevice(fileReader);
 	        	isPBP = true;
@@ -168,7 +170,7 @@ public class UmdIsoReader implements IBrowser {
      * @return the number of sectors read
      * @throws IOException
      */
-    public int readSectors(int sectorNumber, int numberSectors, byte[] buffer, int offset) throws IOException {
+    public synchronized int readSectors(int sectorNumber, int numberSectors, byte[] buffer, int offset) throws IOException {
         if (sectorNumber < 0 || (sectorNumber + numberSectors) > numSectors) {
             Arrays.fill(buffer, offset, offset + numberSectors * sectorLength, (byte) 0);
             Emulator.log.warn(String.format("Sectors start=%d, end=%d out of ISO (numSectors=%d)", sectorNumber, sectorNumber + numberSectors, numSectors));
@@ -186,7 +188,7 @@ public class UmdIsoReader implements IBrowser {
      * @param offset - offset into the byte array where to start writing
      * @throws IOException
      */
-    public void readSector(int sectorNumber, byte[] buffer, int offset) throws IOException {
+    public synchronized void readSector(int sectorNumber, byte[] buffer, int offset) throws IOException {
         if (sectorNumber < 0 || sectorNumber >= numSectors) {
             Arrays.fill(buffer, offset, offset + sectorLength, (byte) 0);
             Emulator.log.warn(String.format("Sector number %d out of ISO (numSectors=%d)", sectorNumber, numSectors));
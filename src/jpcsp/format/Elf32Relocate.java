@@ -20,6 +20,7 @@ import static jpcsp.util.Utilities.readUWord;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class Elf32Relocate {
     private int r_offset;
@@ -34,6 +35,21 @@ public class Elf32Relocate {
         setR_info(readUWord(f));
     }
 
+    /**
+     * Read a complete relocation table in one bulk transfer.
+     *
+     * @param f     the buffer positioned on the relocation table
+     * @param count the number of relocation entries
+     * @return      the r_offset and r_info values, interleaved
+     */
+    public static int[] readAll(ByteBuffer f, int count) throws IOException {
+        int[] relocations = new int[count * 2];
+        f.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(relocations);
+        f.position(f.position() + count * sizeof());
+
+        return relocations;
+    }
+
     @Override
 	public String toString() {
         StringBuilder str = new StringBuilder();
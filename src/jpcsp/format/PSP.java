@@ -27,6 +27,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 
 import jpcsp.crypto.CryptoEngine;
+import jpcsp.crypto.DecryptedPRXCache;
 import jpcsp.settings.Settings;
 
 /**
@@ -167,7 +168,12 @@ public class PSP {
         	f.position(currentPosition);
         }
         int inSize = inBuf.length;
-        int retsize = crypto.getPRXEngine().DecryptPRX(inBuf, inSize, null, 0, 2, null, null);
+        String cacheKey = DecryptedPRXCache.getKey(inBuf, inSize);
+        int retsize = DecryptedPRXCache.read(cacheKey, inBuf);
+        if (retsize < 0) {
+        	retsize = crypto.getPRXEngine().DecryptPRX(inBuf, inSize, null, 0, 2, null, null);
+        	DecryptedPRXCache.write(cacheKey, inBuf, retsize);
+        }
 
         if (CryptoEngine.getExtractEbootStatus()) {
             try {
@@ -0,0 +1,36 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.format.rco.vsmx.compiler;
+
+import jpcsp.format.rco.vsmx.interpreter.VSMXBaseObject;
+import jpcsp.format.rco.vsmx.interpreter.VSMXCallState;
+import jpcsp.format.rco.vsmx.interpreter.VSMXInterpreter;
+
+/**
+ * A VSMX function compiled into JVM bytecode by the VSMXCompiler.
+ */
+public interface IVSMXCompiledFunction {
+	/**
+	 * Execute the compiled function.
+	 *
+	 * @param interpreter  the interpreter calling the function
+	 * @param callState    the call state of the function, holding
+	 *                     its "this" object and its arguments
+	 * @return             the value returned by the function
+	 */
+	public VSMXBaseObject execute(VSMXInterpreter interpreter, VSMXCallState callState);
+}
@@ -0,0 +1,1468 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.format.rco.vsmx.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Stack;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.EmptyVisitor;
+
+import jpcsp.format.rco.vsmx.VSMX;
+import jpcsp.format.rco.vsmx.VSMXCode;
+import jpcsp.format.rco.vsmx.VSMXGroup;
+import jpcsp.format.rco.vsmx.VSMXMem;
+import jpcsp.format.rco.vsmx.interpreter.VSMXArray;
+import jpcsp.format.rco.vsmx.interpreter.VSMXBaseObject;
+import jpcsp.format.rco.vsmx.interpreter.VSMXBoolean;
+import jpcsp.format.rco.vsmx.interpreter.VSMXCallState;
+import jpcsp.format.rco.vsmx.interpreter.VSMXFunction;
+import jpcsp.format.rco.vsmx.interpreter.VSMXInterpreter;
+import jpcsp.format.rco.vsmx.interpreter.VSMXLocalVarReference;
+import jpcsp.format.rco.vsmx.interpreter.VSMXMethod;
+import jpcsp.format.rco.vsmx.interpreter.VSMXNull;
+import jpcsp.format.rco.vsmx.interpreter.VSMXNumber;
+import jpcsp.format.rco.vsmx.interpreter.VSMXObject;
+import jpcsp.format.rco.vsmx.interpreter.VSMXReference;
+import jpcsp.format.rco.vsmx.interpreter.VSMXString;
+
+/**
+ * Compiler translating the VSMX functions into JVM bytecode.
+ *
+ * The VSMX stack of a compiled function is held in JVM local variables.
+ * Inside a basic block, the numbers and booleans computed on this stack
+ * are kept unboxed and the references to local variables are only resolved
+ * when used. At the block boundaries, all the stack entries are boxed
+ * into VSMXBaseObject's, like for the interpreter.
+ *
+ * The VSMX local variables are also held in JVM local variables.
+ * A local variable which is only assigned numbers and which is always
+ * assigned before being read as an object is held as an unboxed float.
+ * A local variable whose reference is escaping a basic block is kept
+ * in the VSMXCallState, as for the interpreter.
+ *
+ * The functions using instructions not supported by the compiler
+ * (exceptions, "instanceof", "in"...) are not compiled and remain interpreted.
+ * When an instruction is not producing the stack layout expected by the
+ * compiled code (e.g. a function called as a method or a native function
+ * not returning any value), the compiled code is copying its state
+ * into the VSMXCallState and the interpreter is resuming the execution
+ * of the function at this instruction.
+ */
+public class VSMXCompiler {
+	private static final Logger log = VSMX.log;
+	// Kinds of the VSMX stack entries in a compiled function
+	private static final int KIND_OBJECT = 0;
+	private static final int KIND_NUMBER = 1;
+	private static final int KIND_BOOLEAN = 2;
+	private static final int KIND_LOCAL_VAR = 3;
+	// Storages of the VSMX local variables in a compiled function,
+	// from the most specific to the most generic one
+	private static final int STORAGE_NUMBER = 0;
+	private static final int STORAGE_OBJECT = 1;
+	private static final int STORAGE_CALL_STATE = 2;
+	// JVM local variables of the compiled execute() method
+	private static final int LOCAL_INTERPRETER = 1;
+	private static final int LOCAL_CALL_STATE = 2;
+	private static final int LOCAL_GLOBAL_VARIABLES = 3;
+	private static final int LOCAL_TMP1 = 4;
+	private static final int LOCAL_TMP2 = 5;
+	private static final int LOCAL_ARGUMENTS = 6;
+	private static final int LOCAL_TMP_FLOAT = 7;
+	private static final int LOCAL_TMP_INT = 8;
+	private static final int LOCAL_FIRST_VAR = 9;
+	private final VSMXMem mem;
+	private final String name;
+	private final HashMap<Integer, IVSMXCompiledFunction> compiledFunctions = new HashMap<Integer, IVSMXCompiledFunction>();
+	private final HashSet<Integer> notCompiledFunctions = new HashSet<Integer>();
+	private final CompiledFunctionClassLoader classLoader = new CompiledFunctionClassLoader();
+
+	private static class CompiledFunctionClassLoader extends ClassLoader {
+		public Class<?> defineClass(String name, byte[] b) {
+			return defineClass(name, b, 0, b.length);
+		}
+	}
+
+	private static class NotCompilableException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public NotCompilableException(String message) {
+			super(message);
+		}
+	}
+
+	private static class BlockState {
+		private final int depth;
+		private BitSet assigned;
+		private BitSet maybeAssigned;
+
+		public BlockState(int depth, BitSet assigned, BitSet maybeAssigned) {
+			this.depth = depth;
+			this.assigned = (BitSet) assigned.clone();
+			this.maybeAssigned = (BitSet) maybeAssigned.clone();
+		}
+	}
+
+	private static class Bailout {
+		private final Label label = new Label();
+		private final int resumePc;
+		private final int depth;
+		private final int[] kinds;
+		private final int[] refs;
+		private final BitSet assigned;
+
+		public Bailout(int resumePc, int depth, int[] kinds, int[] refs, BitSet assigned) {
+			this.resumePc = resumePc;
+			this.depth = depth;
+			this.kinds = Arrays.copyOf(kinds, depth);
+			this.refs = Arrays.copyOf(refs, depth);
+			this.assigned = (BitSet) assigned.clone();
+		}
+	}
+
+	public VSMXCompiler(VSMXMem mem, String name) {
+		this.mem = mem;
+		this.name = name;
+	}
+
+	/**
+	 * Retrieve the compiled code of a function, compiling it at its first call.
+	 *
+	 * @param function  the function
+	 * @return          the compiled function,
+	 *                  or null if the function has to be interpreted
+	 */
+	public IVSMXCompiledFunction getCompiledFunction(VSMXFunction function) {
+		int startLine = function.getStartLine();
+		// Native functions have no code
+		if (startLine < 0 || startLine >= mem.codes.length) {
+			return null;
+		}
+
+		IVSMXCompiledFunction compiledFunction = compiledFunctions.get(startLine);
+		if (compiledFunction == null && !notCompiledFunctions.contains(startLine)) {
+			compiledFunction = compile(startLine, function.getArgs(), function.getLocalVars());
+			if (compiledFunction == null) {
+				notCompiledFunctions.add(startLine);
+			} else {
+				compiledFunctions.put(startLine, compiledFunction);
+			}
+		}
+
+		return compiledFunction;
+	}
+
+	private IVSMXCompiledFunction compile(int startLine, int args, int localVars) {
+		String className = String.format("VSMXCompiledFunction%d", startLine);
+		try {
+			FunctionCompiler functionCompiler = new FunctionCompiler(startLine, args, localVars);
+			byte[] bytes = functionCompiler.compile(className);
+			Class<?> compiledClass = classLoader.defineClass(className, bytes);
+			IVSMXCompiledFunction compiledFunction = (IVSMXCompiledFunction) compiledClass.getDeclaredConstructor().newInstance();
+
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("VSMXCompiler %s: compiled function at line#%d (%d bytes)", name, startLine, bytes.length));
+			}
+
+			return compiledFunction;
+		} catch (NotCompilableException e) {
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("VSMXCompiler %s: function at line#%d is interpreted: %s", name, startLine, e.getMessage()));
+			}
+		} catch (Exception e) {
+			log.error(String.format("VSMXCompiler %s: cannot compile function at line#%d", name, startLine), e);
+		} catch (LinkageError e) {
+			log.error(String.format("VSMXCompiler %s: cannot compile function at line#%d", name, startLine), e);
+		}
+
+		return null;
+	}
+
+	private static String getMethodDescriptor(Class<?> returnType, Class<?>... parameterTypes) {
+		Type[] argumentTypes = new Type[parameterTypes.length];
+		for (int i = 0; i < parameterTypes.length; i++) {
+			argumentTypes[i] = Type.getType(parameterTypes[i]);
+		}
+
+		return Type.getMethodDescriptor(Type.getType(returnType), argumentTypes);
+	}
+
+	private class FunctionCompiler {
+		private final int startLine;
+		private final int numberArgs;
+		private final int numberVars;
+		private int[] storages;
+		private int[] newStorages;
+		private final TreeSet<Integer> leaders = new TreeSet<Integer>();
+		private HashMap<Integer, BlockState> blockStates;
+		private LinkedList<Integer> pendingBlocks;
+		private HashMap<Integer, Label> labels;
+		private List<Bailout> bailouts;
+		private boolean analyzing;
+		private boolean checking;
+		private MethodVisitor mv;
+		// Current state of the VSMX stack and local variables
+		private int depth;
+		private int[] kinds = new int[16];
+		private int[] refs = new int[16];
+		private BitSet assigned;
+		private BitSet maybeAssigned;
+
+		public FunctionCompiler(int startLine, int args, int localVars) {
+			this.startLine = startLine;
+			numberArgs = args;
+			numberVars = args + localVars;
+		}
+
+		public byte[] compile(String className) {
+			findBlocks();
+
+			// Start with the most specific storage for each local variable
+			// (the arguments can hold any object) and use more generic
+			// storages until the compiled code is consistent.
+			storages = new int[numberVars + 1];
+			for (int i = 1; i <= numberVars; i++) {
+				storages[i] = i <= numberArgs ? STORAGE_OBJECT : STORAGE_NUMBER;
+			}
+			while (true) {
+				analyze();
+
+				newStorages = storages.clone();
+				checking = true;
+				generate(new EmptyVisitor());
+				checking = false;
+
+				if (Arrays.equals(newStorages, storages)) {
+					break;
+				}
+				storages = newStorages;
+			}
+
+			ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+			cw.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, className, null, Type.getInternalName(Object.class), new String[] { Type.getInternalName(IVSMXCompiledFunction.class) });
+
+			MethodVisitor constructor = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+			constructor.visitCode();
+			constructor.visitVarInsn(Opcodes.ALOAD, 0);
+			constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(Object.class), "<init>", "()V");
+			constructor.visitInsn(Opcodes.RETURN);
+			constructor.visitMaxs(0, 0);
+			constructor.visitEnd();
+
+			generate(cw.visitMethod(Opcodes.ACC_PUBLIC, "execute", getMethodDescriptor(VSMXBaseObject.class, VSMXInterpreter.class, VSMXCallState.class), null, null));
+
+			cw.visitEnd();
+
+			return cw.toByteArray();
+		}
+
+		private boolean isSupported(VSMXGroup code) {
+			switch (code.getOpcode()) {
+				case VSMXCode.VID_OPERATOR_INSTANCEOF:
+				case VSMXCode.VID_OPERATOR_IN:
+				case VSMXCode.VID_OBJ_ADD_ATTR:
+				case VSMXCode.VID_THROW:
+				case VSMXCode.VID_TRY_BLOCK_IN:
+				case VSMXCode.VID_TRY_BLOCK_OUT:
+				case VSMXCode.VID_CATCH_FINALLY_BLOCK_IN:
+				case VSMXCode.VID_CATCH_FINALLY_BLOCK_OUT:
+				case VSMXCode.VID_END:
+				case VSMXCode.VID_MAKE_FLOAT_ARRAY:
+					return false;
+				case VSMXCode.VID_UNNAMED_VAR:
+					return code.value >= 1 && code.value <= numberVars;
+			}
+
+			return code.getOpcode() <= VSMXCode.VID_DEBUG_LINE;
+		}
+
+		/**
+		 * Find the basic blocks of the function,
+		 * starting at the function start line and following the jumps.
+		 */
+		private void findBlocks() {
+			HashSet<Integer> visited = new HashSet<Integer>();
+			LinkedList<Integer> pending = new LinkedList<Integer>();
+			leaders.add(startLine);
+			pending.add(startLine);
+			while (!pending.isEmpty()) {
+				int pc = pending.removeFirst();
+				boolean endOfBlock = false;
+				while (!endOfBlock && visited.add(pc)) {
+					if (pc < 0 || pc >= mem.codes.length) {
+						throw new NotCompilableException(String.format("jump outside of the code at line#%d", pc));
+					}
+					VSMXGroup code = mem.codes[pc];
+					if (!isSupported(code)) {
+						throw new NotCompilableException(String.format("unsupported %s at line#%d", code, pc));
+					}
+
+					switch (code.getOpcode()) {
+						case VSMXCode.VID_JUMP:
+							leaders.add(code.value);
+							pending.add(code.value);
+							endOfBlock = true;
+							break;
+						case VSMXCode.VID_JUMP_TRUE:
+						case VSMXCode.VID_JUMP_FALSE:
+							leaders.add(code.value);
+							pending.add(code.value);
+							leaders.add(pc + 1);
+							pending.add(pc + 1);
+							endOfBlock = true;
+							break;
+						case VSMXCode.VID_RETURN:
+							endOfBlock = true;
+							break;
+						default:
+							pc++;
+							break;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Data flow analysis computing, at the start of each block,
+		 * the depth of the VSMX stack and the local variables (maybe) assigned.
+		 */
+		private void analyze() {
+			blockStates = new HashMap<Integer, BlockState>();
+			pendingBlocks = new LinkedList<Integer>();
+			labels = new HashMap<Integer, Label>();
+			bailouts = new ArrayList<Bailout>();
+			mv = new EmptyVisitor();
+
+			blockStates.put(startLine, new BlockState(0, new BitSet(), new BitSet()));
+			pendingBlocks.add(startLine);
+			analyzing = true;
+			while (!pendingBlocks.isEmpty()) {
+				compileBlock(pendingBlocks.removeFirst());
+			}
+			analyzing = false;
+		}
+
+		private void generate(MethodVisitor mv) {
+			this.mv = mv;
+			labels = new HashMap<Integer, Label>();
+			bailouts = new ArrayList<Bailout>();
+
+			mv.visitCode();
+
+			mv.visitVarInsn(Opcodes.ALOAD, LOCAL_INTERPRETER);
+			invoke(Opcodes.INVOKEVIRTUAL, VSMXInterpreter.class, "getGlobalVariables", VSMXObject.class);
+			mv.visitVarInsn(Opcodes.ASTORE, LOCAL_GLOBAL_VARIABLES);
+			for (int i = 1; i <= numberVars; i++) {
+				switch (storages[i]) {
+					case STORAGE_OBJECT:
+						loadCallStateLocalVar(i);
+						mv.visitVarInsn(Opcodes.ASTORE, getLocalVarIndex(i));
+						break;
+					case STORAGE_NUMBER:
+						mv.visitInsn(Opcodes.FCONST_0);
+						mv.visitVarInsn(Opcodes.FSTORE, getLocalVarIndex(i));
+						break;
+				}
+			}
+
+			for (int leader : leaders) {
+				mv.visitLabel(getLabel(leader));
+				compileBlock(leader);
+			}
+
+			for (Bailout bailout : bailouts) {
+				generateBailout(bailout);
+			}
+
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		private void demote(int i, int storage) {
+			if (checking && storage > newStorages[i]) {
+				newStorages[i] = storage;
+			}
+		}
+
+		private Label getLabel(int pc) {
+			Label label = labels.get(pc);
+			if (label == null) {
+				label = new Label();
+				labels.put(pc, label);
+			}
+
+			return label;
+		}
+
+		private int getLocalVarIndex(int i) {
+			return LOCAL_FIRST_VAR + i - 1;
+		}
+
+		private int getObjectSlot(int d) {
+			return LOCAL_FIRST_VAR + numberVars + d * 3;
+		}
+
+		private int getNumberSlot(int d) {
+			return getObjectSlot(d) + 1;
+		}
+
+		private int getBooleanSlot(int d) {
+			return getObjectSlot(d) + 2;
+		}
+
+		private void propagate(int pc) {
+			if (!analyzing) {
+				return;
+			}
+
+			BlockState blockState = blockStates.get(pc);
+			if (blockState == null) {
+				blockStates.put(pc, new BlockState(depth, assigned, maybeAssigned));
+				pendingBlocks.add(pc);
+			} else {
+				if (blockState.depth != depth) {
+					throw new NotCompilableException(String.format("inconsistent stack depth at line#%d", pc));
+				}
+				BitSet newAssigned = (BitSet) blockState.assigned.clone();
+				newAssigned.and(assigned);
+				BitSet newMaybeAssigned = (BitSet) blockState.maybeAssigned.clone();
+				newMaybeAssigned.or(maybeAssigned);
+				if (!newAssigned.equals(blockState.assigned) || !newMaybeAssigned.equals(blockState.maybeAssigned)) {
+					blockState.assigned = newAssigned;
+					blockState.maybeAssigned = newMaybeAssigned;
+					if (!pendingBlocks.contains(pc)) {
+						pendingBlocks.add(pc);
+					}
+				}
+			}
+		}
+
+		private void invoke(int opcode, Class<?> owner, String methodName, Class<?> returnType, Class<?>... parameterTypes) {
+			mv.visitMethodInsn(opcode, Type.getInternalName(owner), methodName, getMethodDescriptor(returnType, parameterTypes));
+		}
+
+		private void invokeObject(String methodName, Class<?> returnType, Class<?>... parameterTypes) {
+			invoke(Opcodes.INVOKEVIRTUAL, VSMXBaseObject.class, methodName, returnType, parameterTypes);
+		}
+
+		private void invokeRuntime(String methodName, Class<?> returnType, Class<?>... parameterTypes) {
+			invoke(Opcodes.INVOKESTATIC, VSMXCompilerRuntime.class, methodName, returnType, parameterTypes);
+		}
+
+		private void newObject(Class<?> objectClass) {
+			mv.visitTypeInsn(Opcodes.NEW, Type.getInternalName(objectClass));
+			mv.visitInsn(Opcodes.DUP);
+			mv.visitVarInsn(Opcodes.ALOAD, LOCAL_INTERPRETER);
+		}
+
+		private void initObject(Class<?> objectClass, Class<?>... parameterTypes) {
+			Class<?>[] constructorParameterTypes = new Class<?>[parameterTypes.length + 1];
+			constructorParameterTypes[0] = VSMXInterpreter.class;
+			System.arraycopy(parameterTypes, 0, constructorParameterTypes, 1, parameterTypes.length);
+			invoke(Opcodes.INVOKESPECIAL, objectClass, "<init>", void.class, constructorParameterTypes);
+		}
+
+		private void loadImm(int value) {
+			if (value >= -1 && value <= 5) {
+				mv.visitInsn(Opcodes.ICONST_0 + value);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				mv.visitIntInsn(Opcodes.BIPUSH, value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				mv.visitIntInsn(Opcodes.SIPUSH, value);
+			} else {
+				mv.visitLdcInsn(value);
+			}
+		}
+
+		private void loadString(String s) {
+			if (s == null) {
+				mv.visitInsn(Opcodes.ACONST_NULL);
+			} else {
+				mv.visitLdcInsn(s);
+			}
+		}
+
+		private void loadCallStateLocalVar(int i) {
+			mv.visitVarInsn(Opcodes.ALOAD, LOCAL_CALL_STATE);
+			loadImm(i);
+			invoke(Opcodes.INVOKEVIRTUAL, VSMXCallState.class, "getLocalVar", VSMXBaseObject.class, int.class);
+		}
+
+		/**
+		 * Box the float value stored in a JVM local variable.
+		 */
+		private void loadBoxedNumber(int localVarIndex) {
+			newObject(VSMXNumber.class);
+			mv.visitVarInsn(Opcodes.FLOAD, localVarIndex);
+			initObject(VSMXNumber.class, float.class);
+		}
+
+		private boolean isNumberLocalVar(int d) {
+			if (kinds[d] != KIND_LOCAL_VAR || storages[refs[d]] != STORAGE_NUMBER) {
+				return false;
+			}
+
+			// An unassigned local variable is undefined, not a number
+			if (!assigned.get(refs[d])) {
+				demote(refs[d], STORAGE_OBJECT);
+			}
+
+			return true;
+		}
+
+		// The stack entry is a number, or a boolean which is also a number
+		private boolean isNumeric(int d) {
+			return kinds[d] == KIND_NUMBER || kinds[d] == KIND_BOOLEAN || isNumberLocalVar(d);
+		}
+
+		private boolean isNumber(int d) {
+			return kinds[d] == KIND_NUMBER || isNumberLocalVar(d);
+		}
+
+		/**
+		 * Load the value of a local variable as an object.
+		 */
+		private void loadLocalVarValue(int i) {
+			switch (storages[i]) {
+				case STORAGE_CALL_STATE:
+					loadCallStateLocalVar(i);
+					break;
+				case STORAGE_OBJECT:
+					mv.visitVarInsn(Opcodes.ALOAD, getLocalVarIndex(i));
+					break;
+				case STORAGE_NUMBER:
+					// An unassigned local variable is undefined, not a number
+					if (!assigned.get(i)) {
+						demote(i, STORAGE_OBJECT);
+					}
+					loadBoxedNumber(getLocalVarIndex(i));
+					break;
+			}
+		}
+
+		/**
+		 * Load the value of a stack entry as an object,
+		 * like VSMXBaseObject.getValue().
+		 */
+		private void loadValue(int d) {
+			switch (kinds[d]) {
+				case KIND_OBJECT:
+					mv.visitVarInsn(Opcodes.ALOAD, getObjectSlot(d));
+					invokeObject("getValue", VSMXBaseObject.class);
+					break;
+				case KIND_NUMBER:
+					loadBoxedNumber(getNumberSlot(d));
+					break;
+				case KIND_BOOLEAN:
+					mv.visitVarInsn(Opcodes.ILOAD, getBooleanSlot(d));
+					invoke(Opcodes.INVOKESTATIC, VSMXBoolean.class, "getValue", VSMXBoolean.class, boolean.class);
+					break;
+				case KIND_LOCAL_VAR:
+					loadLocalVarValue(refs[d]);
+					break;
+			}
+		}
+
+		/**
+		 * Load a stack entry as an object, without resolving it when it is a reference.
+		 * A reference to a local variable is resolved as it is only used
+		 * in operations delegated by the reference to its value.
+		 */
+		private void loadObject(int d) {
+			if (kinds[d] == KIND_OBJECT) {
+				mv.visitVarInsn(Opcodes.ALOAD, getObjectSlot(d));
+			} else {
+				loadValue(d);
+			}
+		}
+
+		private void loadFloat(int d) {
+			switch (kinds[d]) {
+				case KIND_OBJECT:
+					mv.visitVarInsn(Opcodes.ALOAD, getObjectSlot(d));
+					invokeObject("getFloatValue", float.class);
+					break;
+				case KIND_NUMBER:
+					mv.visitVarInsn(Opcodes.FLOAD, getNumberSlot(d));
+					break;
+				case KIND_BOOLEAN:
+					mv.visitVarInsn(Opcodes.ILOAD, getBooleanSlot(d));
+					mv.visitInsn(Opcodes.I2F);
+					break;
+				case KIND_LOCAL_VAR:
+					// An unassigned local variable has the float value 0, like a number local variable
+					if (storages[refs[d]] == STORAGE_NUMBER) {
+						mv.visitVarInsn(Opcodes.FLOAD, getLocalVarIndex(refs[d]));
+					} else {
+						loadLocalVarValue(refs[d]);
+						invokeObject("getFloatValue", float.class);
+					}
+					break;
+			}
+		}
+
+		private void loadInt(int d) {
+			if (isNumber(d)) {
+				loadFloat(d);
+				mv.visitInsn(Opcodes.F2I);
+			} else if (kinds[d] == KIND_BOOLEAN) {
+				mv.visitVarInsn(Opcodes.ILOAD, getBooleanSlot(d));
+			} else {
+				loadObject(d);
+				invokeObject("getIntValue", int.class);
+			}
+		}
+
+		private void loadBoolean(int d) {
+			if (isNumber(d)) {
+				loadFloat(d);
+				mv.visitInsn(Opcodes.FCONST_0);
+				generateCondition(Opcodes.FCMPL, Opcodes.IFEQ);
+			} else if (kinds[d] == KIND_BOOLEAN) {
+				mv.visitVarInsn(Opcodes.ILOAD, getBooleanSlot(d));
+			} else {
+				loadObject(d);
+				invokeObject("getBooleanValue", boolean.class);
+			}
+		}
+
+		/**
+		 * Compare the two floats on the JVM stack and load the boolean result.
+		 *
+		 * @param compareOpcode  FCMPL or FCMPG
+		 * @param falseOpcode    the jump opcode taken when the result is false
+		 */
+		private void generateCondition(int compareOpcode, int falseOpcode) {
+			Label falseLabel = new Label();
+			Label endLabel = new Label();
+			mv.visitInsn(compareOpcode);
+			mv.visitJumpInsn(falseOpcode, falseLabel);
+			mv.visitInsn(Opcodes.ICONST_1);
+			mv.visitJumpInsn(Opcodes.GOTO, endLabel);
+			mv.visitLabel(falseLabel);
+			mv.visitInsn(Opcodes.ICONST_0);
+			mv.visitLabel(endLabel);
+		}
+
+		private void ensureCapacity(int d) {
+			if (d >= kinds.length) {
+				kinds = Arrays.copyOf(kinds, kinds.length * 2);
+				refs = Arrays.copyOf(refs, refs.length * 2);
+			}
+		}
+
+		private void requireDepth(int n, int pc) {
+			if (depth < n) {
+				throw new NotCompilableException(String.format("stack underflow at line#%d", pc));
+			}
+		}
+
+		private void storeObject(int d) {
+			mv.visitVarInsn(Opcodes.ASTORE, getObjectSlot(d));
+			kinds[d] = KIND_OBJECT;
+		}
+
+		private void storeNumber(int d) {
+			mv.visitVarInsn(Opcodes.FSTORE, getNumberSlot(d));
+			kinds[d] = KIND_NUMBER;
+		}
+
+		private void storeBoolean(int d) {
+			mv.visitVarInsn(Opcodes.ISTORE, getBooleanSlot(d));
+			kinds[d] = KIND_BOOLEAN;
+		}
+
+		private void pushObject() {
+			ensureCapacity(depth);
+			storeObject(depth++);
+		}
+
+		private void pushNumber() {
+			ensureCapacity(depth);
+			storeNumber(depth++);
+		}
+
+		private void pushBoolean() {
+			ensureCapacity(depth);
+			storeBoolean(depth++);
+		}
+
+		private void copySlot(int from, int to) {
+			ensureCapacity(to);
+			switch (kinds[from]) {
+				case KIND_OBJECT:
+					mv.visitVarInsn(Opcodes.ALOAD, getObjectSlot(from));
+					mv.visitVarInsn(Opcodes.ASTORE, getObjectSlot(to));
+					break;
+				case KIND_NUMBER:
+					mv.visitVarInsn(Opcodes.FLOAD, getNumberSlot(from));
+					mv.visitVarInsn(Opcodes.FSTORE, getNumberSlot(to));
+					break;
+				case KIND_BOOLEAN:
+					mv.visitVarInsn(Opcodes.ILOAD, getBooleanSlot(from));
+					mv.visitVarInsn(Opcodes.ISTORE, getBooleanSlot(to));
+					break;
+			}
+			kinds[to] = kinds[from];
+			refs[to] = refs[from];
+		}
+
+		/**
+		 * Load a stack entry as the object the interpreter would have on its stack.
+		 */
+		private void loadStackObject(int d) {
+			switch (kinds[d]) {
+				case KIND_OBJECT:
+					mv.visitVarInsn(Opcodes.ALOAD, getObjectSlot(d));
+					break;
+				case KIND_LOCAL_VAR:
+					newObject(VSMXLocalVarReference.class);
+					mv.visitVarInsn(Opcodes.ALOAD, LOCAL_CALL_STATE);
+					loadImm(refs[d]);
+					initObject(VSMXLocalVarReference.class, VSMXCallState.class, int.class);
+					break;
+				default:
+					loadValue(d);
+					break;
+			}
+		}
+
+		/**
+		 * Box all the stack entries at the end of a block.
+		 */
+		private void materializeStack() {
+			for (int d = 0; d < depth; d++) {
+				if (kinds[d] != KIND_OBJECT) {
+					if (kinds[d] == KIND_LOCAL_VAR) {
+						// The reference to the local variable is escaping the block
+						demote(refs[d], STORAGE_CALL_STATE);
+					}
+					loadStackObject(d);
+					storeObject(d);
+				}
+			}
+		}
+
+		/**
+		 * Register a point where the interpreter has to resume the execution
+		 * of the function, with the current state of the VSMX stack.
+		 */
+		private Label addBailout(int resumePc) {
+			if (checking) {
+				for (int i = 1; i <= numberVars; i++) {
+					// Only the local variables which are assigned or which are undefined
+					// can be copied to the call state
+					if (storages[i] == STORAGE_NUMBER && maybeAssigned.get(i) && !assigned.get(i)) {
+						demote(i, STORAGE_OBJECT);
+					}
+				}
+			}
+
+			Bailout bailout = new Bailout(resumePc, depth, kinds, refs, assigned);
+			bailouts.add(bailout);
+
+			return bailout.label;
+		}
+
+		private void generateBailout(Bailout bailout) {
+			mv.visitLabel(bailout.label);
+
+			depth = bailout.depth;
+			kinds = Arrays.copyOf(bailout.kinds, Math.max(depth, 1));
+			refs = Arrays.copyOf(bailout.refs, Math.max(depth, 1));
+			assigned = bailout.assigned;
+
+			// Copy the local variables to the call state
+			for (int i = 1; i <= numberVars; i++) {
+				if (storages[i] == STORAGE_OBJECT || (storages[i] == STORAGE_NUMBER && assigned.get(i))) {
+					mv.visitVarInsn(Opcodes.ALOAD, LOCAL_CALL_STATE);
+					loadImm(i);
+					loadLocalVarValue(i);
+					invoke(Opcodes.INVOKEVIRTUAL, VSMXCallState.class, "setLocalVar", void.class, int.class, VSMXBaseObject.class);
+				}
+			}
+
+			// Copy the VSMX stack to the call state
+			if (depth > 0) {
+				mv.visitVarInsn(Opcodes.ALOAD, LOCAL_CALL_STATE);
+				invoke(Opcodes.INVOKEVIRTUAL, VSMXCallState.class, "getStack", Stack.class);
+				mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP1);
+				for (int d = 0; d < depth; d++) {
+					mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+					loadStackObject(d);
+					invoke(Opcodes.INVOKEVIRTUAL, Stack.class, "push", Object.class, Object.class);
+					mv.visitInsn(Opcodes.POP);
+				}
+			}
+
+			mv.visitVarInsn(Opcodes.ALOAD, LOCAL_INTERPRETER);
+			loadImm(bailout.resumePc);
+			invoke(Opcodes.INVOKEVIRTUAL, VSMXInterpreter.class, "resumeFunction", VSMXBaseObject.class, int.class);
+			mv.visitInsn(Opcodes.ARETURN);
+		}
+
+		private void assignLocalVar(int i) {
+			assigned.set(i);
+			maybeAssigned.set(i);
+		}
+
+		private void setCallStateLocalVar(int i, int localVarIndex) {
+			mv.visitVarInsn(Opcodes.ALOAD, LOCAL_CALL_STATE);
+			loadImm(i);
+			mv.visitVarInsn(Opcodes.ALOAD, localVarIndex);
+			invoke(Opcodes.INVOKEVIRTUAL, VSMXCallState.class, "setLocalVar", void.class, int.class, VSMXBaseObject.class);
+		}
+
+		private void generateAssign(int pc) {
+			requireDepth(2, pc);
+			int value = depth - 1;
+			int target = depth - 2;
+			switch (kinds[target]) {
+				case KIND_LOCAL_VAR:
+					int i = refs[target];
+					switch (storages[i]) {
+						case STORAGE_NUMBER:
+							if (!isNumber(value)) {
+								demote(i, STORAGE_OBJECT);
+							}
+							loadFloat(value);
+							mv.visitInsn(Opcodes.DUP);
+							mv.visitVarInsn(Opcodes.FSTORE, getLocalVarIndex(i));
+							storeNumber(target);
+							break;
+						case STORAGE_OBJECT:
+							loadValue(value);
+							mv.visitInsn(Opcodes.DUP);
+							mv.visitVarInsn(Opcodes.ASTORE, getLocalVarIndex(i));
+							storeObject(target);
+							break;
+						case STORAGE_CALL_STATE:
+							loadValue(value);
+							mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP1);
+							setCallStateLocalVar(i, LOCAL_TMP1);
+							mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+							storeObject(target);
+							break;
+					}
+					assignLocalVar(i);
+					break;
+				case KIND_OBJECT:
+					// The interpreter is only logging the assignment to a non-reference
+					Label bailout = addBailout(pc);
+					loadValue(value);
+					mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP1);
+					mv.visitVarInsn(Opcodes.ALOAD, getObjectSlot(target));
+					mv.visitTypeInsn(Opcodes.INSTANCEOF, Type.getInternalName(VSMXReference.class));
+					mv.visitJumpInsn(Opcodes.IFEQ, bailout);
+					mv.visitVarInsn(Opcodes.ALOAD, getObjectSlot(target));
+					mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(VSMXReference.class));
+					mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+					invoke(Opcodes.INVOKEVIRTUAL, VSMXReference.class, "assign", void.class, VSMXBaseObject.class);
+					mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+					storeObject(target);
+					break;
+				default:
+					throw new NotCompilableException(String.format("non-ref assignment at line#%d", pc));
+			}
+			depth--;
+		}
+
+		/**
+		 * VID_P_INCREMENT, VID_P_DECREMENT, VID_INCREMENT and VID_DECREMENT.
+		 *
+		 * @param increment  the value added to the reference
+		 * @param prefix     true if the new value is pushed, false if the previous value is pushed
+		 */
+		private void generateIncrement(int pc, float increment, boolean prefix) {
+			requireDepth(1, pc);
+			int d = depth - 1;
+			int kind = kinds[d];
+			int i = refs[d];
+
+			if (kind == KIND_NUMBER || kind == KIND_BOOLEAN) {
+				throw new NotCompilableException(String.format("non-ref increment at line#%d", pc));
+			}
+
+			// Compute the previous value in LOCAL_TMP_FLOAT
+			loadFloat(d);
+			mv.visitVarInsn(Opcodes.FSTORE, LOCAL_TMP_FLOAT);
+
+			// Push the new or previous value
+			mv.visitVarInsn(Opcodes.FLOAD, LOCAL_TMP_FLOAT);
+			if (prefix) {
+				mv.visitLdcInsn(increment);
+				mv.visitInsn(Opcodes.FADD);
+			}
+			mv.visitVarInsn(Opcodes.FSTORE, getNumberSlot(d));
+
+			// Assign the new value
+			if (kind == KIND_LOCAL_VAR && storages[i] == STORAGE_NUMBER) {
+				mv.visitVarInsn(Opcodes.FLOAD, LOCAL_TMP_FLOAT);
+				mv.visitLdcInsn(increment);
+				mv.visitInsn(Opcodes.FADD);
+				mv.visitVarInsn(Opcodes.FSTORE, getLocalVarIndex(i));
+			} else {
+				if (kind == KIND_OBJECT) {
+					mv.visitVarInsn(Opcodes.ALOAD, LOCAL_INTERPRETER);
+					mv.visitVarInsn(Opcodes.ALOAD, getObjectSlot(d));
+				}
+				mv.visitVarInsn(Opcodes.FLOAD, LOCAL_TMP_FLOAT);
+				mv.visitLdcInsn(increment);
+				mv.visitInsn(Opcodes.FADD);
+				mv.visitVarInsn(Opcodes.FSTORE, LOCAL_TMP_FLOAT);
+				if (kind == KIND_OBJECT) {
+					mv.visitVarInsn(Opcodes.FLOAD, LOCAL_TMP_FLOAT);
+					loadImm(pc);
+					invokeRuntime("assign", void.class, VSMXInterpreter.class, VSMXBaseObject.class, float.class, int.class);
+				} else {
+					loadBoxedNumber(LOCAL_TMP_FLOAT);
+					mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP1);
+					if (storages[i] == STORAGE_OBJECT) {
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+						mv.visitVarInsn(Opcodes.ASTORE, getLocalVarIndex(i));
+					} else {
+						setCallStateLocalVar(i, LOCAL_TMP1);
+					}
+				}
+			}
+
+			if (kind == KIND_LOCAL_VAR) {
+				assignLocalVar(i);
+			}
+			kinds[d] = KIND_NUMBER;
+		}
+
+		/**
+		 * Load the 2 floats at the top of the stack, in the interpreter order.
+		 */
+		private void loadFloats() {
+			loadFloat(depth - 1);
+			mv.visitVarInsn(Opcodes.FSTORE, LOCAL_TMP_FLOAT);
+			loadFloat(depth - 2);
+			mv.visitVarInsn(Opcodes.FLOAD, LOCAL_TMP_FLOAT);
+			depth -= 2;
+		}
+
+		private void loadInts() {
+			loadInt(depth - 1);
+			mv.visitVarInsn(Opcodes.ISTORE, LOCAL_TMP_INT);
+			loadInt(depth - 2);
+			mv.visitVarInsn(Opcodes.ILOAD, LOCAL_TMP_INT);
+			depth -= 2;
+		}
+
+		/**
+		 * Store the values of the 2 objects at the top of the stack,
+		 * the top one in LOCAL_TMP1 and the other one in LOCAL_TMP2.
+		 */
+		private void storeValues() {
+			loadValue(depth - 1);
+			mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP1);
+			loadValue(depth - 2);
+			mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP2);
+			depth -= 2;
+		}
+
+		private void generateFloatOperator(int pc, int opcode) {
+			requireDepth(2, pc);
+			loadFloats();
+			mv.visitInsn(opcode);
+			pushNumber();
+		}
+
+		private void generateIntOperator(int pc, int opcode) {
+			requireDepth(2, pc);
+			loadInts();
+			mv.visitInsn(opcode);
+			mv.visitInsn(Opcodes.I2F);
+			pushNumber();
+		}
+
+		private void generateCompare(int pc, int compareOpcode, int falseOpcode) {
+			requireDepth(2, pc);
+			loadFloats();
+			generateCondition(compareOpcode, falseOpcode);
+			pushBoolean();
+		}
+
+		private void generateEquals(int pc, boolean not, boolean identity) {
+			requireDepth(2, pc);
+			if (identity ? isNumber(depth - 1) && isNumber(depth - 2) : isNumeric(depth - 1) && isNumeric(depth - 2)) {
+				loadFloats();
+				generateCondition(Opcodes.FCMPL, Opcodes.IFNE);
+			} else {
+				storeValues();
+				mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+				mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP2);
+				invokeObject(identity ? "identity" : "equals", boolean.class, VSMXBaseObject.class);
+			}
+			if (not) {
+				mv.visitInsn(Opcodes.ICONST_1);
+				mv.visitInsn(Opcodes.IXOR);
+			}
+			pushBoolean();
+		}
+
+		/**
+		 * Pop the arguments of a call into the array LOCAL_ARGUMENTS.
+		 */
+		private void popArguments(int n, int pc) {
+			requireDepth(n + 1, pc);
+			loadImm(n);
+			mv.visitTypeInsn(Opcodes.ANEWARRAY, Type.getInternalName(VSMXBaseObject.class));
+			mv.visitVarInsn(Opcodes.ASTORE, LOCAL_ARGUMENTS);
+			for (int i = n - 1; i >= 0; i--) {
+				mv.visitVarInsn(Opcodes.ALOAD, LOCAL_ARGUMENTS);
+				loadImm(i);
+				loadValue(depth - n + i);
+				mv.visitInsn(Opcodes.AASTORE);
+			}
+			depth -= n;
+
+			if (kinds[depth - 1] != KIND_OBJECT) {
+				throw new NotCompilableException(String.format("non-object call at line#%d", pc));
+			}
+		}
+
+		/**
+		 * Push the value returned by a call, or resume the interpreter
+		 * at the next instruction if no value has been returned.
+		 */
+		private void pushReturnValue(int pc) {
+			if (pc + 1 < mem.codes.length && mem.codes[pc + 1].isOpcode(VSMXCode.VID_END_STMT)) {
+				// The returned value, if any, is discarded by the next instruction
+				pushObject();
+			} else {
+				mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP2);
+				Label bailout = addBailout(pc + 1);
+				mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP2);
+				mv.visitJumpInsn(Opcodes.IFNULL, bailout);
+				mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP2);
+				pushObject();
+			}
+		}
+
+		private void compileBlock(int leader) {
+			BlockState blockState = blockStates.get(leader);
+			depth = blockState.depth;
+			ensureCapacity(depth);
+			Arrays.fill(kinds, KIND_OBJECT);
+			assigned = (BitSet) blockState.assigned.clone();
+			maybeAssigned = (BitSet) blockState.maybeAssigned.clone();
+
+			for (int pc = leader; true; pc++) {
+				if (pc != leader && leaders.contains(pc)) {
+					// Falling through the next block
+					materializeStack();
+					propagate(pc);
+					mv.visitJumpInsn(Opcodes.GOTO, getLabel(pc));
+					return;
+				}
+
+				VSMXGroup code = mem.codes[pc];
+				switch (code.getOpcode()) {
+					case VSMXCode.VID_NOTHING:
+					case VSMXCode.VID_CONST_OBJECT:
+						break;
+					case VSMXCode.VID_OPERATOR_ASSIGN:
+						generateAssign(pc);
+						break;
+					case VSMXCode.VID_OPERATOR_ADD:
+						requireDepth(2, pc);
+						if (isNumeric(depth - 1) && isNumeric(depth - 2)) {
+							generateFloatOperator(pc, Opcodes.FADD);
+						} else {
+							storeValues();
+							mv.visitVarInsn(Opcodes.ALOAD, LOCAL_INTERPRETER);
+							mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP2);
+							mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+							invokeRuntime("add", VSMXBaseObject.class, VSMXInterpreter.class, VSMXBaseObject.class, VSMXBaseObject.class);
+							pushObject();
+						}
+						break;
+					case VSMXCode.VID_OPERATOR_SUBTRACT:
+						generateFloatOperator(pc, Opcodes.FSUB);
+						break;
+					case VSMXCode.VID_OPERATOR_MULTIPLY:
+						generateFloatOperator(pc, Opcodes.FMUL);
+						break;
+					case VSMXCode.VID_OPERATOR_DIVIDE:
+						generateFloatOperator(pc, Opcodes.FDIV);
+						break;
+					case VSMXCode.VID_OPERATOR_MOD:
+						generateFloatOperator(pc, Opcodes.FREM);
+						break;
+					case VSMXCode.VID_OPERATOR_POSITIVE:
+						requireDepth(1, pc);
+						loadFloat(depth - 1);
+						storeNumber(depth - 1);
+						break;
+					case VSMXCode.VID_OPERATOR_NEGATE:
+						requireDepth(1, pc);
+						loadFloat(depth - 1);
+						mv.visitInsn(Opcodes.FNEG);
+						storeNumber(depth - 1);
+						break;
+					case VSMXCode.VID_OPERATOR_NOT:
+						requireDepth(1, pc);
+						loadBoolean(depth - 1);
+						mv.visitInsn(Opcodes.ICONST_1);
+						mv.visitInsn(Opcodes.IXOR);
+						storeBoolean(depth - 1);
+						break;
+					case VSMXCode.VID_P_INCREMENT:
+						generateIncrement(pc, 1f, true);
+						break;
+					case VSMXCode.VID_P_DECREMENT:
+						generateIncrement(pc, -1f, true);
+						break;
+					case VSMXCode.VID_INCREMENT:
+						generateIncrement(pc, 1f, false);
+						break;
+					case VSMXCode.VID_DECREMENT:
+						generateIncrement(pc, -1f, false);
+						break;
+					case VSMXCode.VID_OPERATOR_EQUAL:
+						generateEquals(pc, false, false);
+						break;
+					case VSMXCode.VID_OPERATOR_NOT_EQUAL:
+						generateEquals(pc, true, false);
+						break;
+					case VSMXCode.VID_OPERATOR_IDENTITY:
+						generateEquals(pc, false, true);
+						break;
+					case VSMXCode.VID_OPERATOR_NON_IDENTITY:
+						generateEquals(pc, true, true);
+						break;
+					case VSMXCode.VID_OPERATOR_LT:
+						generateCompare(pc, Opcodes.FCMPG, Opcodes.IFGE);
+						break;
+					case VSMXCode.VID_OPERATOR_LTE:
+						generateCompare(pc, Opcodes.FCMPG, Opcodes.IFGT);
+						break;
+					case VSMXCode.VID_OPERATOR_GTE:
+						generateCompare(pc, Opcodes.FCMPL, Opcodes.IFLT);
+						break;
+					case VSMXCode.VID_OPERATOR_GT:
+						generateCompare(pc, Opcodes.FCMPL, Opcodes.IFLE);
+						break;
+					case VSMXCode.VID_OPERATOR_TYPEOF:
+						requireDepth(1, pc);
+						newObject(VSMXString.class);
+						loadValue(depth - 1);
+						invokeObject("typeOf", String.class);
+						initObject(VSMXString.class, String.class);
+						storeObject(depth - 1);
+						break;
+					case VSMXCode.VID_OPERATOR_B_AND:
+						generateIntOperator(pc, Opcodes.IAND);
+						break;
+					case VSMXCode.VID_OPERATOR_B_XOR:
+						generateIntOperator(pc, Opcodes.IXOR);
+						break;
+					case VSMXCode.VID_OPERATOR_B_OR:
+						generateIntOperator(pc, Opcodes.IOR);
+						break;
+					case VSMXCode.VID_OPERATOR_B_NOT:
+						requireDepth(1, pc);
+						loadInt(depth - 1);
+						mv.visitInsn(Opcodes.ICONST_M1);
+						mv.visitInsn(Opcodes.IXOR);
+						mv.visitInsn(Opcodes.I2F);
+						storeNumber(depth - 1);
+						break;
+					case VSMXCode.VID_OPERATOR_LSHIFT:
+						generateIntOperator(pc, Opcodes.ISHL);
+						break;
+					case VSMXCode.VID_OPERATOR_RSHIFT:
+						generateIntOperator(pc, Opcodes.ISHR);
+						break;
+					case VSMXCode.VID_OPERATOR_URSHIFT:
+						generateIntOperator(pc, Opcodes.IUSHR);
+						break;
+					case VSMXCode.VID_STACK_COPY:
+						requireDepth(1, pc);
+						if (kinds[depth - 1] == KIND_NUMBER) {
+							// Both stack entries have to be the same object
+							loadValue(depth - 1);
+							storeObject(depth - 1);
+						}
+						copySlot(depth - 1, depth);
+						depth++;
+						break;
+					case VSMXCode.VID_STACK_SWAP:
+						requireDepth(2, pc);
+						copySlot(depth - 1, depth);
+						copySlot(depth - 2, depth - 1);
+						copySlot(depth, depth - 2);
+						break;
+					case VSMXCode.VID_END_STMT:
+						depth = 0;
+						break;
+					case VSMXCode.VID_CONST_NULL:
+						mv.visitFieldInsn(Opcodes.GETSTATIC, Type.getInternalName(VSMXNull.class), "singleton", Type.getDescriptor(VSMXNull.class));
+						pushObject();
+						break;
+					case VSMXCode.VID_CONST_EMPTYARRAY:
+					case VSMXCode.VID_ARRAY:
+						newObject(VSMXArray.class);
+						initObject(VSMXArray.class);
+						pushObject();
+						break;
+					case VSMXCode.VID_CONST_BOOL:
+						loadImm(code.value != 0 ? 1 : 0);
+						pushBoolean();
+						break;
+					case VSMXCode.VID_CONST_INT:
+						mv.visitLdcInsn((float) code.value);
+						pushNumber();
+						break;
+					case VSMXCode.VID_CONST_FLOAT:
+						mv.visitLdcInsn(code.getFloatValue());
+						pushNumber();
+						break;
+					case VSMXCode.VID_CONST_STRING:
+						newObject(VSMXString.class);
+						loadString(mem.texts[code.value]);
+						initObject(VSMXString.class, String.class);
+						pushObject();
+						break;
+					case VSMXCode.VID_FUNCTION:
+						newObject(VSMXFunction.class);
+						loadImm((code.id >> 8) & 0xFF);
+						loadImm((code.id >> 24) & 0xFF);
+						loadImm(code.value);
+						initObject(VSMXFunction.class, int.class, int.class, int.class);
+						pushObject();
+						break;
+					case VSMXCode.VID_THIS:
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_CALL_STATE);
+						invoke(Opcodes.INVOKEVIRTUAL, VSMXCallState.class, "getThisObject", VSMXBaseObject.class);
+						pushObject();
+						break;
+					case VSMXCode.VID_UNNAMED_VAR:
+						ensureCapacity(depth);
+						kinds[depth] = KIND_LOCAL_VAR;
+						refs[depth] = code.value;
+						depth++;
+						break;
+					case VSMXCode.VID_VARIABLE:
+						newObject(VSMXReference.class);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_GLOBAL_VARIABLES);
+						loadString(mem.names[code.value]);
+						initObject(VSMXReference.class, VSMXObject.class, String.class);
+						pushObject();
+						break;
+					case VSMXCode.VID_PROPERTY:
+						requireDepth(1, pc);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_INTERPRETER);
+						loadValue(depth - 1);
+						loadString(mem.properties[code.value]);
+						invokeRuntime("property", VSMXBaseObject.class, VSMXInterpreter.class, VSMXBaseObject.class, String.class);
+						storeObject(depth - 1);
+						break;
+					case VSMXCode.VID_METHOD:
+						requireDepth(1, pc);
+						newObject(VSMXMethod.class);
+						loadValue(depth - 1);
+						loadString(mem.properties[code.value]);
+						initObject(VSMXMethod.class, VSMXBaseObject.class, String.class);
+						storeObject(depth - 1);
+						break;
+					case VSMXCode.VID_SET_ATTR:
+						requireDepth(2, pc);
+						loadValue(depth - 1);
+						mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP1);
+						loadObject(depth - 2);
+						loadString(mem.properties[code.value]);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+						invokeObject("setPropertyValue", void.class, String.class, VSMXBaseObject.class);
+						depth -= 2;
+						break;
+					case VSMXCode.VID_UNSET:
+						requireDepth(1, pc);
+						loadObject(depth - 1);
+						loadString(mem.properties[code.value]);
+						invokeObject("deletePropertyValue", void.class, String.class);
+						depth--;
+						break;
+					case VSMXCode.VID_ARRAY_INDEX:
+						requireDepth(2, pc);
+						loadObject(depth - 1);
+						mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP1);
+						loadValue(depth - 2);
+						mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP2);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_INTERPRETER);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP2);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+						invokeRuntime("arrayIndex", VSMXBaseObject.class, VSMXInterpreter.class, VSMXBaseObject.class, VSMXBaseObject.class);
+						depth -= 2;
+						pushObject();
+						break;
+					case VSMXCode.VID_ARRAY_INDEX_KEEP_OBJ:
+						requireDepth(2, pc);
+						loadObject(depth - 1);
+						mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP1);
+						loadValue(depth - 2);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+						invokeRuntime("arrayIndexKeepObject", VSMXBaseObject.class, VSMXBaseObject.class, VSMXBaseObject.class);
+						storeObject(depth - 1);
+						break;
+					case VSMXCode.VID_ARRAY_INDEX_ASSIGN:
+						requireDepth(3, pc);
+						loadValue(depth - 1);
+						mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP1);
+						loadObject(depth - 2);
+						mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP2);
+						loadValue(depth - 3);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP2);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+						loadImm(pc);
+						invokeRuntime("arrayIndexAssign", void.class, VSMXBaseObject.class, VSMXBaseObject.class, VSMXBaseObject.class, int.class);
+						depth -= 3;
+						break;
+					case VSMXCode.VID_ARRAY_DELETE:
+						requireDepth(2, pc);
+						loadObject(depth - 1);
+						mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP1);
+						loadValue(depth - 2);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+						loadImm(pc);
+						invokeRuntime("arrayDelete", void.class, VSMXBaseObject.class, VSMXBaseObject.class, int.class);
+						depth -= 2;
+						break;
+					case VSMXCode.VID_ARRAY_PUSH: {
+						requireDepth(2, pc);
+						// The interpreter is only logging a push to a non-array
+						Label bailout = addBailout(pc);
+						storeValues();
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP2);
+						mv.visitTypeInsn(Opcodes.INSTANCEOF, Type.getInternalName(VSMXArray.class));
+						mv.visitJumpInsn(Opcodes.IFEQ, bailout);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP2);
+						mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(VSMXArray.class));
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+						invokeRuntime("arrayPush", void.class, VSMXArray.class, VSMXBaseObject.class);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP2);
+						pushObject();
+						break;
+					}
+					case VSMXCode.VID_JUMP:
+						materializeStack();
+						propagate(code.value);
+						mv.visitJumpInsn(Opcodes.GOTO, getLabel(code.value));
+						return;
+					case VSMXCode.VID_JUMP_TRUE:
+					case VSMXCode.VID_JUMP_FALSE:
+						requireDepth(1, pc);
+						loadBoolean(depth - 1);
+						mv.visitVarInsn(Opcodes.ISTORE, LOCAL_TMP_INT);
+						depth--;
+						materializeStack();
+						propagate(code.value);
+						propagate(pc + 1);
+						mv.visitVarInsn(Opcodes.ILOAD, LOCAL_TMP_INT);
+						mv.visitJumpInsn(code.isOpcode(VSMXCode.VID_JUMP_TRUE) ? Opcodes.IFNE : Opcodes.IFEQ, getLabel(code.value));
+						mv.visitJumpInsn(Opcodes.GOTO, getLabel(pc + 1));
+						return;
+					case VSMXCode.VID_CALL_FUNC:
+						popArguments(code.value, pc);
+						depth--;
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_INTERPRETER);
+						mv.visitVarInsn(Opcodes.ALOAD, getObjectSlot(depth));
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_ARGUMENTS);
+						loadImm(pc);
+						invokeRuntime("callFunction", VSMXBaseObject.class, VSMXInterpreter.class, VSMXBaseObject.class, VSMXBaseObject[].class, int.class);
+						pushReturnValue(pc);
+						break;
+					case VSMXCode.VID_CALL_METHOD: {
+						int stackDepth = depth;
+						popArguments(code.value, pc);
+						mv.visitVarInsn(Opcodes.ALOAD, getObjectSlot(depth - 1));
+						loadImm(code.value);
+						invokeObject("getValueWithArguments", VSMXBaseObject.class, int.class);
+						mv.visitVarInsn(Opcodes.ASTORE, LOCAL_TMP1);
+						// A function called as a method is also popping the "this" object
+						depth = stackDepth;
+						Label bailout = addBailout(pc);
+						depth -= code.value + 1;
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+						mv.visitTypeInsn(Opcodes.INSTANCEOF, Type.getInternalName(VSMXFunction.class));
+						mv.visitJumpInsn(Opcodes.IFNE, bailout);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_INTERPRETER);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_TMP1);
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_ARGUMENTS);
+						loadImm(pc);
+						invokeRuntime("callMethod", VSMXBaseObject.class, VSMXInterpreter.class, VSMXBaseObject.class, VSMXBaseObject[].class, int.class);
+						pushReturnValue(pc);
+						break;
+					}
+					case VSMXCode.VID_CALL_NEW:
+						if (code.value != 0) {
+							// "new" with a wrong number of arguments is not returning any value
+							requireDepth(code.value + 1, pc);
+							Label bailout = addBailout(pc);
+							mv.visitVarInsn(Opcodes.ALOAD, getObjectSlot(depth - code.value - 1));
+							if (kinds[depth - code.value - 1] != KIND_OBJECT) {
+								throw new NotCompilableException(String.format("non-object new at line#%d", pc));
+							}
+							invokeObject("getValue", VSMXBaseObject.class);
+							loadImm(code.value);
+							invokeRuntime("isCallNewWithoutResult", boolean.class, VSMXBaseObject.class, int.class);
+							mv.visitJumpInsn(Opcodes.IFNE, bailout);
+						}
+						popArguments(code.value, pc);
+						depth--;
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_INTERPRETER);
+						mv.visitVarInsn(Opcodes.ALOAD, getObjectSlot(depth));
+						mv.visitVarInsn(Opcodes.ALOAD, LOCAL_ARGUMENTS);
+						loadImm(pc);
+						invokeRuntime("callNew", VSMXBaseObject.class, VSMXInterpreter.class, VSMXBaseObject.class, VSMXBaseObject[].class, int.class);
+						pushObject();
+						break;
+					case VSMXCode.VID_RETURN:
+						requireDepth(1, pc);
+						loadValue(depth - 1);
+						mv.visitInsn(Opcodes.ARETURN);
+						return;
+					case VSMXCode.VID_DEBUG_FILE:
+						loadString(mem.texts[code.value]);
+						invokeRuntime("debugFile", void.class, String.class);
+						break;
+					case VSMXCode.VID_DEBUG_LINE:
+						loadImm(code.value);
+						invokeRuntime("debugLine", void.class, int.class);
+						break;
+					default:
+						throw new NotCompilableException(String.format("unsupported %s at line#%d", code, pc));
+				}
+			}
+		}
+	}
+}
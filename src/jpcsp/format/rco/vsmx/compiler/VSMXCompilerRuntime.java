@@ -0,0 +1,199 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.format.rco.vsmx.compiler;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.format.rco.vsmx.VSMX;
+import jpcsp.format.rco.vsmx.interpreter.VSMXArray;
+import jpcsp.format.rco.vsmx.interpreter.VSMXBaseObject;
+import jpcsp.format.rco.vsmx.interpreter.VSMXFunction;
+import jpcsp.format.rco.vsmx.interpreter.VSMXInterpreter;
+import jpcsp.format.rco.vsmx.interpreter.VSMXMethod;
+import jpcsp.format.rco.vsmx.interpreter.VSMXNull;
+import jpcsp.format.rco.vsmx.interpreter.VSMXNumber;
+import jpcsp.format.rco.vsmx.interpreter.VSMXObject;
+import jpcsp.format.rco.vsmx.interpreter.VSMXReference;
+import jpcsp.format.rco.vsmx.interpreter.VSMXString;
+
+/**
+ * Runtime support for the functions compiled by the VSMXCompiler.
+ *
+ * The methods are implementing the VSMX instructions having no direct
+ * JVM bytecode equivalent, with the same semantic as VSMXInterpreter.
+ * They have to be public as they are called by the compiled classes.
+ */
+public class VSMXCompilerRuntime {
+	private static final Logger log = VSMX.log;
+
+	public static VSMXBaseObject add(VSMXInterpreter interpreter, VSMXBaseObject o2, VSMXBaseObject o1) {
+		if (o1 instanceof VSMXString || o2 instanceof VSMXString) {
+			String s1 = o1.getStringValue();
+			String s2 = o2.getStringValue();
+			return new VSMXString(interpreter, s2 + s1);
+		}
+
+		return new VSMXNumber(interpreter, o2.getFloatValue() + o1.getFloatValue());
+	}
+
+	public static void assign(VSMXInterpreter interpreter, VSMXBaseObject o, float f, int line) {
+		if (o instanceof VSMXReference) {
+			((VSMXReference) o).assign(new VSMXNumber(interpreter, f));
+		} else {
+			log.warn(String.format("Line#%d non-ref increment", line));
+		}
+	}
+
+	public static VSMXBaseObject property(VSMXInterpreter interpreter, VSMXBaseObject o, String name) {
+		if (o instanceof VSMXObject) {
+			return new VSMXReference(interpreter, (VSMXObject) o, name);
+		}
+
+		return o.getPropertyValue(name);
+	}
+
+	public static VSMXBaseObject arrayIndex(VSMXInterpreter interpreter, VSMXBaseObject o2, VSMXBaseObject o1) {
+		if (o2 instanceof VSMXArray) {
+			return new VSMXReference(interpreter, (VSMXObject) o2, o1.getIntValue());
+		}
+		if (o2 instanceof VSMXObject) {
+			return new VSMXReference(interpreter, (VSMXObject) o2, o1.getStringValue());
+		}
+
+		return o2.getPropertyValue(o1.getStringValue());
+	}
+
+	public static VSMXBaseObject arrayIndexKeepObject(VSMXBaseObject o2, VSMXBaseObject o1) {
+		if (o2 instanceof VSMXArray) {
+			return o2.getPropertyValue(o1.getIntValue());
+		}
+
+		return o2.getPropertyValue(o1.getStringValue());
+	}
+
+	public static void arrayIndexAssign(VSMXBaseObject o3, VSMXBaseObject o2, VSMXBaseObject o1, int line) {
+		if (o3 instanceof VSMXArray) {
+			o3.setPropertyValue(o2.getIntValue(), o1);
+		} else {
+			log.warn(String.format("Line#%d non-array index assignment", line));
+		}
+	}
+
+	public static void arrayDelete(VSMXBaseObject o2, VSMXBaseObject o1, int line) {
+		if (o2 instanceof VSMXArray) {
+			o2.deletePropertyValue(o1.getIntValue());
+		} else {
+			log.warn(String.format("Line#%d non-array delete", line));
+		}
+	}
+
+	public static void arrayPush(VSMXArray array, VSMXBaseObject o1) {
+		array.setPropertyValue(array.getLength(), o1);
+	}
+
+	/**
+	 * Call a function.
+	 *
+	 * @return the value returned by the function,
+	 *         or null if the function did not return any value
+	 */
+	public static VSMXBaseObject callFunction(VSMXInterpreter interpreter, VSMXBaseObject functionObject, VSMXBaseObject[] arguments, int line) {
+		VSMXBaseObject o = functionObject.getValueWithArguments(arguments.length);
+		if (o instanceof VSMXFunction) {
+			return interpreter.invokeFunction((VSMXFunction) o, VSMXNull.singleton, arguments, arguments.length, false);
+		}
+
+		log.warn(String.format("Line#%d non-function call", line));
+		return VSMXNull.singleton;
+	}
+
+	/**
+	 * Call a method. A function called as a method is not handled here.
+	 *
+	 * @return the value returned by the method,
+	 *         or null if the method did not return any value
+	 */
+	public static VSMXBaseObject callMethod(VSMXInterpreter interpreter, VSMXBaseObject o, VSMXBaseObject[] arguments, int line) {
+		if (o instanceof VSMXMethod) {
+			VSMXMethod method = (VSMXMethod) o;
+			VSMXFunction function = method.getFunction(arguments.length, arguments);
+			if (function == null) {
+				log.warn(String.format("Line#%d non existing method %s()", line, method.getName()));
+				return VSMXNull.singleton;
+			}
+
+			return interpreter.invokeFunction(function, method.getThisObject(), method.getArguments(), method.getNumberOfArguments(), false);
+		}
+
+		log.warn(String.format("Line#%d non-method call", line));
+		return VSMXNull.singleton;
+	}
+
+	/**
+	 * @return true if the "new" operator is not returning any value
+	 *         (wrong number of arguments)
+	 */
+	public static boolean isCallNewWithoutResult(VSMXBaseObject o, int numberArguments) {
+		if (o instanceof VSMXArray) {
+			return numberArguments > 1;
+		}
+		if (o instanceof VSMXFunction) {
+			return false;
+		}
+		if (o instanceof VSMXObject) {
+			return numberArguments != 0;
+		}
+
+		return false;
+	}
+
+	public static VSMXBaseObject callNew(VSMXInterpreter interpreter, VSMXBaseObject r, VSMXBaseObject[] arguments, int line) {
+		VSMXBaseObject o = r.getValue();
+		if (o instanceof VSMXArray) {
+			if (arguments.length == 0) {
+				return new VSMXArray(interpreter);
+			}
+			return new VSMXArray(interpreter, arguments[0].getIntValue());
+		}
+		if (o instanceof VSMXFunction) {
+			String className = null;
+			if (r instanceof VSMXReference) {
+				className = ((VSMXReference) r).getRefProperty();
+			}
+			VSMXObject thisObject = new VSMXObject(interpreter, className);
+			return interpreter.invokeFunction((VSMXFunction) o, thisObject, arguments, arguments.length, true);
+		}
+		if (o instanceof VSMXObject) {
+			return new VSMXObject(interpreter, null);
+		}
+
+		log.warn(String.format("Line#%d unimplemented new", line));
+		return new VSMXArray(interpreter);
+	}
+
+	public static void debugFile(String file) {
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("debug file '%s'", file));
+		}
+	}
+
+	public static void debugLine(int line) {
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("debug line %d", line));
+		}
+	}
+}
@@ -26,6 +26,8 @@ import jpcsp.format.rco.vsmx.VSMX;
 import jpcsp.format.rco.vsmx.VSMXCode;
 import jpcsp.format.rco.vsmx.VSMXGroup;
 import jpcsp.format.rco.vsmx.VSMXMem;
+import jpcsp.format.rco.vsmx.compiler.IVSMXCompiledFunction;
+import jpcsp.format.rco.vsmx.compiler.VSMXCompiler;
 
 public class VSMXInterpreter {
 	private static final Logger log = VSMX.log;
@@ -38,6 +40,9 @@ public class VSMXInterpreter {
 	private VSMXObject globalVariables;
 	private String prefix;
 	private String name;
+	private VSMXCompiler compiler;
+	// Value returned by the last VID_RETURN
+	private VSMXBaseObject returnValue;
 
 	private class InterpretFunctionAction implements IAction {
 		private VSMXFunction function;
@@ -62,6 +67,7 @@ public class VSMXInterpreter {
 	public void setVSMX(VSMX vsmx) {
 		mem = vsmx.getMem();
 		name = vsmx.getName();
+		compiler = new VSMXCompiler(mem, name);
 	}
 
 	public VSMXObject getGlobalVariables() {
@@ -492,7 +498,7 @@ public class VSMXInterpreter {
 				if (o instanceof VSMXFunction) {
 					VSMXFunction function = (VSMXFunction) o;
 
-					callFunction(function, VSMXNull.singleton, arguments, code.value, false);
+					callFunction(function, VSMXNull.singleton, arguments, code.value, false, false);
 				} else {
 					stack.push(VSMXNull.singleton);
 					log.warn(String.format("Line#%d non-function call %s", pc - 1, code));
@@ -509,12 +515,12 @@ public class VSMXInterpreter {
 						stack.push(VSMXNull.singleton);
 						log.warn(String.format("Line#%d non existing method %s()", pc - 1, method.getName()));
 					} else {
-						callFunction(function, method.getThisObject(), method.getArguments(), method.getNumberOfArguments(), false);
+						callFunction(function, method.getThisObject(), method.getArguments(), method.getNumberOfArguments(), false, false);
 					}
 				} else if (o instanceof VSMXFunction) {
 					VSMXFunction function = (VSMXFunction) o;
 					o = stack.pop().getValue();
-					callFunction(function, o, arguments, code.value, false);
+					callFunction(function, o, arguments, code.value, false, false);
 				} else {
 					stack.push(VSMXNull.singleton);
 					log.warn(String.format("Line#%d non-method call %s", pc - 1, code));
@@ -540,7 +546,7 @@ public class VSMXInterpreter {
 						className = ((VSMXReference) r).getRefProperty();
 					}
 					VSMXObject thisObject = new VSMXObject(this, className);
-					callFunction(function, thisObject, arguments, code.value, true);
+					callFunction(function, thisObject, arguments, code.value, true, false);
 				} else if (o instanceof VSMXObject) {
 					if (code.value == 0) {
 						stack.push(new VSMXObject(this, null));
@@ -557,6 +563,7 @@ public class VSMXInterpreter {
 				if (callState.getReturnThis()) {
 					o = callState.getThisObject();
 				}
+				returnValue = o;
 				pc = callState.getReturnPc();
 				if (callState.getExitAfterCall()) {
 					exit = true;
@@ -641,14 +648,53 @@ public class VSMXInterpreter {
 		}
 	}
 
-	private void callFunction(VSMXFunction function, VSMXBaseObject thisObject, VSMXBaseObject[] arguments, int numberArguments, boolean returnThis) {
-		pushCallState(thisObject, function.getLocalVars() + function.getArgs(), returnThis, false);
+	private IVSMXCompiledFunction getCompiledFunction(VSMXFunction function) {
+		// The compiled functions are not tracing their execution
+		if (compiler == null || log.isTraceEnabled()) {
+			return null;
+		}
+
+		return compiler.getCompiledFunction(function);
+	}
+
+	/**
+	 * Execute a compiled function with the current call state.
+	 * As for VID_RETURN, the call state is popped and the returned value
+	 * is pushed on the stack of the caller.
+	 */
+	private void executeCompiledFunction(IVSMXCompiledFunction compiledFunction) {
+		VSMXCallState functionCallState = callState;
+		VSMXBaseObject o = compiledFunction.execute(this, functionCallState);
+
+		// The call state has already been popped when the interpreter
+		// has resumed the execution of the function (see resumeFunction)
+		if (callState == functionCallState) {
+			if (callState.getReturnThis()) {
+				o = callState.getThisObject();
+			}
+			pc = callState.getReturnPc();
+			popCallState();
+			if (callState != null) {
+				stack.push(o);
+			}
+		}
+	}
+
+	private void callFunction(VSMXFunction function, VSMXBaseObject thisObject, VSMXBaseObject[] arguments, int numberArguments, boolean returnThis, boolean exitAfterCall) {
+		IVSMXCompiledFunction compiledFunction = getCompiledFunction(function);
+
+		pushCallState(thisObject, function.getLocalVars() + function.getArgs(), returnThis, exitAfterCall || compiledFunction != null);
 		for (int i = 1; i <= function.getArgs() && i <= numberArguments; i++) {
 			callState.setLocalVar(i, arguments[i - 1]);
 		}
 
 		function.call(callState);
 
+		if (compiledFunction != null) {
+			executeCompiledFunction(compiledFunction);
+			return;
+		}
+
 		int startLine = function.getStartLine();
 		if (startLine >= 0 && startLine < mem.codes.length) {
 			pc = startLine;
@@ -664,8 +710,46 @@ public class VSMXInterpreter {
 		}
 	}
 
+	/**
+	 * Call a function from a compiled function.
+	 *
+	 * @return the value returned by the function,
+	 *         or null if the function did not return any value
+	 */
+	public VSMXBaseObject invokeFunction(VSMXFunction function, VSMXBaseObject thisObject, VSMXBaseObject[] arguments, int numberArguments, boolean returnThis) {
+		VSMXCallState callerCallState = callState;
+		callFunction(function, thisObject, arguments, numberArguments, returnThis, true);
+		if (callState != callerCallState) {
+			// Interpret the function until its VID_RETURN
+			interpret();
+		}
+
+		// The stack of a compiled function is only used to receive the returned value
+		if (stack.isEmpty()) {
+			return null;
+		}
+
+		return stack.pop();
+	}
+
+	/**
+	 * Resume the interpretation of a compiled function, after the compiled code
+	 * has copied its state to the current call state.
+	 *
+	 * @param resumePc  the instruction where the interpretation is resumed
+	 * @return          the value returned by the function
+	 */
+	public VSMXBaseObject resumeFunction(int resumePc) {
+		pc = resumePc;
+		interpret();
+
+		return returnValue;
+	}
+
 	public synchronized void interpretFunction(VSMXFunction function, VSMXBaseObject object, VSMXBaseObject[] arguments) {
-		pushCallState(object, function.getLocalVars(), false, true);
+		IVSMXCompiledFunction compiledFunction = getCompiledFunction(function);
+
+		pushCallState(object, function.getLocalVars() + function.getArgs(), false, true);
 		for (int i = 1; i <= function.getArgs(); i++) {
 			if (arguments == null || i > arguments.length) {
 				callState.setLocalVar(i, VSMXNull.singleton);
@@ -673,9 +757,13 @@ public class VSMXInterpreter {
 				callState.setLocalVar(i, arguments[i - 1]);
 			}
 		}
-		pc = function.getStartLine();
 
-		interpret();
+		if (compiledFunction != null) {
+			executeCompiledFunction(compiledFunction);
+		} else {
+			pc = function.getStartLine();
+			interpret();
+		}
 	}
 
 	public synchronized void delayInterpretFunction(VSMXFunction function, VSMXBaseObject object, VSMXBaseObject[] arguments) {
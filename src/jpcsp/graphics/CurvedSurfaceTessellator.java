@@ -0,0 +1,500 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jpcsp.util.CacheStatistics;
+import jpcsp.util.DurationStatistics;
+
+/**
+ * Tessellation of the Bezier and spline surfaces (GE commands BEZIER and SPLINE).
+ *
+ * The weights of the control points only depend on the number of control points,
+ * on the knot types (for splines) and on the number of subdivisions:
+ * they are computed once and kept in basis tables.
+ *
+ * The tessellated vertices are cached, keyed by the content of the control points,
+ * so that static surfaces are not tessellated again at each frame.
+ *
+ * The control points and the tessellated vertices are stored in float arrays,
+ * VERTEX_SIZE floats per vertex, in the order texture, color, normal, position.
+ */
+public class CurvedSurfaceTessellator {
+	public static final int VERTEX_TEXTURE = 0;
+	public static final int VERTEX_COLOR = 2;
+	public static final int VERTEX_NORMAL = 6;
+	public static final int VERTEX_POSITION = 9;
+	public static final int VERTEX_SIZE = 12;
+	public static final int cacheMaxSize = 256;
+	// Maximum number of floats stored in all the cached surfaces (16MB)
+	public static final int cacheMaxFloats = 4 * 1024 * 1024;
+	public static final int basisCacheMaxSize = 64;
+	public static final float cacheLoadFactor = 0.75f;
+	private static final int TYPE_BEZIER = 0;
+	private static final int TYPE_SPLINE = 1;
+	private static final int SPLINE_DEGREE = 3;
+	// The spline grows to a limit defined by n - 2 for u and m - 2 for v.
+	// This limit is open, so we need to get a very close approximation of it.
+	private static final float SPLINE_LIMIT = 2.000001f;
+	protected static CurvedSurfaceTessellator instance = null;
+	private LinkedHashMap<Integer, BasisTable> basisCache;
+	private LinkedHashMap<Integer, Surface> cache;
+	private int cacheFloats;
+	protected CacheStatistics statistics = new CacheStatistics("CurvedSurface", cacheMaxSize);
+	private float[] controlPoints = new float[16 * VERTEX_SIZE];
+
+	/**
+	 * Weights of the control points along one direction (u or v).
+	 * For each subdivision, only the control points first..first+count-1
+	 * can have a non-zero weight.
+	 */
+	private static class BasisTable {
+		public final int size;
+		public final int stride;
+		public final int[] first;
+		public final int[] count;
+		public final float[] weights;
+		// Texture coordinate generated for each subdivision
+		public final float[] coords;
+
+		public BasisTable(int size, int stride) {
+			this.size = size;
+			this.stride = stride;
+			first = new int[size];
+			count = new int[size];
+			weights = new float[size * stride];
+			coords = new float[size];
+		}
+	}
+
+	private static class Surface {
+		public final int[] parameters;
+		public final float[] controlPoints;
+		public final float[] vertices;
+
+		public Surface(int[] parameters, float[] controlPoints, float[] vertices) {
+			this.parameters = parameters;
+			this.controlPoints = controlPoints;
+			this.vertices = vertices;
+		}
+
+		public boolean equals(int[] parameters, float[] controlPoints) {
+			for (int i = 0; i < parameters.length; i++) {
+				if (this.parameters[i] != parameters[i]) {
+					return false;
+				}
+			}
+
+			for (int i = 0; i < this.controlPoints.length; i++) {
+				if (Float.floatToRawIntBits(this.controlPoints[i]) != Float.floatToRawIntBits(controlPoints[i])) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	public static CurvedSurfaceTessellator getInstance() {
+		if (instance == null) {
+			instance = new CurvedSurfaceTessellator();
+		}
+
+		return instance;
+	}
+
+	protected CurvedSurfaceTessellator() {
+		//
+		// Create caches having
+		// - initial size large enough so that no rehash will occur
+		// - the LinkedList is based on access-order for LRU
+		//
+		cache = new LinkedHashMap<Integer, Surface>((int) (cacheMaxSize / cacheLoadFactor) + 1, cacheLoadFactor, true);
+		basisCache = new LinkedHashMap<Integer, BasisTable>((int) (basisCacheMaxSize / cacheLoadFactor) + 1, cacheLoadFactor, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, BasisTable> eldest) {
+				return size() > basisCacheMaxSize;
+			}
+		};
+	}
+
+	public void exit() {
+		if (DurationStatistics.collectStatistics) {
+			VideoEngine.log.info(statistics);
+		}
+	}
+
+	public void reset() {
+		cache.clear();
+		cacheFloats = 0;
+	}
+
+	/**
+	 * Return the buffer receiving the control points before a tessellation.
+	 * The control point (u, v) is stored at the index (u * vcount + v).
+	 *
+	 * @param numberOfControlPoints the number of control points (ucount * vcount)
+	 * @return                      the buffer, valid until the next call
+	 */
+	public float[] getControlPointsBuffer(int numberOfControlPoints) {
+		int length = numberOfControlPoints * VERTEX_SIZE;
+		if (controlPoints.length < length) {
+			controlPoints = new float[length];
+		}
+
+		return controlPoints;
+	}
+
+	public static void setControlPoint(float[] controlPoints, int index, VertexState vs) {
+		int offset = index * VERTEX_SIZE;
+		controlPoints[offset + VERTEX_TEXTURE + 0] = vs.t[0];
+		controlPoints[offset + VERTEX_TEXTURE + 1] = vs.t[1];
+		controlPoints[offset + VERTEX_COLOR + 0] = vs.c[0];
+		controlPoints[offset + VERTEX_COLOR + 1] = vs.c[1];
+		controlPoints[offset + VERTEX_COLOR + 2] = vs.c[2];
+		controlPoints[offset + VERTEX_COLOR + 3] = vs.c[3];
+		controlPoints[offset + VERTEX_NORMAL + 0] = vs.n[0];
+		controlPoints[offset + VERTEX_NORMAL + 1] = vs.n[1];
+		controlPoints[offset + VERTEX_NORMAL + 2] = vs.n[2];
+		controlPoints[offset + VERTEX_POSITION + 0] = vs.p[0];
+		controlPoints[offset + VERTEX_POSITION + 1] = vs.p[1];
+		controlPoints[offset + VERTEX_POSITION + 2] = vs.p[2];
+	}
+
+	/**
+	 * Tessellate a Bezier surface.
+	 *
+	 * @param controlPoints   the control points, as returned by getControlPointsBuffer()
+	 * @param ucount          the number of control points in the u direction (3*n+1)
+	 * @param vcount          the number of control points in the v direction (3*m+1)
+	 * @param divS            the number of subdivisions in the u direction
+	 * @param divT            the number of subdivisions in the v direction
+	 * @param useVertexColor  true if the colors have to be interpolated
+	 * @param useTexture      true if the texture coordinates have to be interpolated
+	 * @param useNormal       true if the normals have to be interpolated
+	 * @param generateTexture true if the texture coordinates have to be generated
+	 *                        from the surface parameters
+	 * @return                the (divS+1)*(divT+1) tessellated vertices, row by row.
+	 *                        The returned array is shared with the cache and must not be modified.
+	 */
+	public float[] tessellateBezier(float[] controlPoints, int ucount, int vcount, int divS, int divT, boolean useVertexColor, boolean useTexture, boolean useNormal, boolean generateTexture) {
+		return tessellate(TYPE_BEZIER, controlPoints, ucount, vcount, 0, 0, divS, divT, useVertexColor, useTexture, useNormal, generateTexture);
+	}
+
+	/**
+	 * Tessellate a spline surface.
+	 *
+	 * @param controlPoints   the control points, as returned by getControlPointsBuffer()
+	 * @param ucount          the number of control points in the u direction
+	 * @param vcount          the number of control points in the v direction
+	 * @param utype           the knot type in the u direction
+	 * @param vtype           the knot type in the v direction
+	 * @param divS            the number of subdivisions in the u direction
+	 * @param divT            the number of subdivisions in the v direction
+	 * @param useVertexColor  true if the colors have to be interpolated
+	 * @param useTexture      true if the texture coordinates have to be interpolated
+	 * @param useNormal       true if the normals have to be interpolated
+	 * @param generateTexture true if the texture coordinates have to be generated
+	 *                        from the surface parameters
+	 * @return                the (divS+1)*(divT+1) tessellated vertices, row by row.
+	 *                        The returned array is shared with the cache and must not be modified.
+	 */
+	public float[] tessellateSpline(float[] controlPoints, int ucount, int vcount, int utype, int vtype, int divS, int divT, boolean useVertexColor, boolean useTexture, boolean useNormal, boolean generateTexture) {
+		return tessellate(TYPE_SPLINE, controlPoints, ucount, vcount, utype, vtype, divS, divT, useVertexColor, useTexture, useNormal, generateTexture);
+	}
+
+	private float[] tessellate(int type, float[] controlPoints, int ucount, int vcount, int utype, int vtype, int divS, int divT, boolean useVertexColor, boolean useTexture, boolean useNormal, boolean generateTexture) {
+		int flags = (useVertexColor ? 1 : 0) | (useTexture ? 2 : 0) | (useNormal ? 4 : 0) | (generateTexture ? 8 : 0);
+		int[] parameters = new int[] { type, ucount, vcount, utype, vtype, divS, divT, flags };
+		int numberOfControlPointFloats = ucount * vcount * VERTEX_SIZE;
+
+		int hash = 0;
+		for (int i = 0; i < parameters.length; i++) {
+			hash = 31 * hash + parameters[i];
+		}
+		for (int i = 0; i < numberOfControlPointFloats; i++) {
+			hash = 31 * hash + Float.floatToRawIntBits(controlPoints[i]);
+		}
+		Integer key = hash;
+
+		statistics.totalHits++;
+		Surface surface = cache.get(key);
+		if (surface != null) {
+			if (surface.controlPoints.length == numberOfControlPointFloats && surface.equals(parameters, controlPoints)) {
+				statistics.successfulHits++;
+				return surface.vertices;
+			}
+			statistics.changedHits++;
+		} else {
+			statistics.notPresentHits++;
+		}
+
+		BasisTable uBasis;
+		BasisTable vBasis;
+		if (type == TYPE_BEZIER) {
+			uBasis = getBezierBasis(ucount, divS);
+			vBasis = getBezierBasis(vcount, divT);
+		} else {
+			uBasis = getSplineBasis(ucount, utype, divS);
+			vBasis = getSplineBasis(vcount, vtype, divT);
+		}
+
+		float[] vertices = new float[(divS + 1) * (divT + 1) * VERTEX_SIZE];
+		evaluate(controlPoints, vcount, uBasis, vBasis, vertices, useVertexColor, useTexture, useNormal, generateTexture);
+
+		float[] savedControlPoints = new float[numberOfControlPointFloats];
+		System.arraycopy(controlPoints, 0, savedControlPoints, 0, numberOfControlPointFloats);
+		addSurface(key, new Surface(parameters, savedControlPoints, vertices));
+
+		return vertices;
+	}
+
+	private void addSurface(Integer key, Surface surface) {
+		int surfaceFloats = surface.controlPoints.length + surface.vertices.length;
+		if (surfaceFloats > cacheMaxFloats) {
+			// Too large to be cached
+			return;
+		}
+
+		Surface previousSurface = cache.remove(key);
+		if (previousSurface != null) {
+			cacheFloats -= previousSurface.controlPoints.length + previousSurface.vertices.length;
+		}
+
+		// Check if the cache is not growing too large
+		for (Iterator<Surface> it = cache.values().iterator(); it.hasNext() && (cache.size() >= cacheMaxSize || cacheFloats + surfaceFloats > cacheMaxFloats); ) {
+			// Remove the LRU cache entry
+			Surface eldestSurface = it.next();
+			cacheFloats -= eldestSurface.controlPoints.length + eldestSurface.vertices.length;
+			it.remove();
+
+			statistics.entriesRemoved++;
+		}
+
+		cache.put(key, surface);
+		cacheFloats += surfaceFloats;
+
+		if (cache.size() > statistics.maxSizeUsed) {
+			statistics.maxSizeUsed = cache.size();
+		}
+	}
+
+	/**
+	 * Evaluate all the vertices of the surface.
+	 * Only the control points having a non-zero weight are visited.
+	 */
+	private static void evaluate(float[] controlPoints, int vcount, BasisTable uBasis, BasisTable vBasis, float[] vertices, boolean useVertexColor, boolean useTexture, boolean useNormal, boolean generateTexture) {
+		float[] uWeights = uBasis.weights;
+		float[] vWeights = vBasis.weights;
+		int offset = 0;
+		for (int j = 0; j < vBasis.size; j++) {
+			int vOffset = j * vBasis.stride;
+			int vFirst = vBasis.first[j];
+			int vEnd = vFirst + vBasis.count[j];
+
+			for (int i = 0; i < uBasis.size; i++, offset += VERTEX_SIZE) {
+				int uOffset = i * uBasis.stride;
+				int uFirst = uBasis.first[i];
+				int uEnd = uFirst + uBasis.count[i];
+
+				float t0 = 0f, t1 = 0f;
+				float c0 = 0f, c1 = 0f, c2 = 0f, c3 = 0f;
+				float n0 = 0f, n1 = 0f, n2 = 0f;
+				float p0 = 0f, p1 = 0f, p2 = 0f;
+				for (int ii = uFirst; ii < uEnd; ii++) {
+					float uWeight = uWeights[uOffset + ii];
+					int controlPointOffset = (ii * vcount + vFirst) * VERTEX_SIZE;
+					for (int jj = vFirst; jj < vEnd; jj++, controlPointOffset += VERTEX_SIZE) {
+						float f = uWeight * vWeights[vOffset + jj];
+						p0 += f * controlPoints[controlPointOffset + VERTEX_POSITION + 0];
+						p1 += f * controlPoints[controlPointOffset + VERTEX_POSITION + 1];
+						p2 += f * controlPoints[controlPointOffset + VERTEX_POSITION + 2];
+						if (useTexture) {
+							t0 += f * controlPoints[controlPointOffset + VERTEX_TEXTURE + 0];
+							t1 += f * controlPoints[controlPointOffset + VERTEX_TEXTURE + 1];
+						}
+						if (useVertexColor) {
+							c0 += f * controlPoints[controlPointOffset + VERTEX_COLOR + 0];
+							c1 += f * controlPoints[controlPointOffset + VERTEX_COLOR + 1];
+							c2 += f * controlPoints[controlPointOffset + VERTEX_COLOR + 2];
+							c3 += f * controlPoints[controlPointOffset + VERTEX_COLOR + 3];
+						}
+						if (useNormal) {
+							n0 += f * controlPoints[controlPointOffset + VERTEX_NORMAL + 0];
+							n1 += f * controlPoints[controlPointOffset + VERTEX_NORMAL + 1];
+							n2 += f * controlPoints[controlPointOffset + VERTEX_NORMAL + 2];
+						}
+					}
+				}
+
+				if (generateTexture) {
+					t0 = uBasis.coords[i];
+					t1 = vBasis.coords[j];
+				}
+
+				vertices[offset + VERTEX_TEXTURE + 0] = t0;
+				vertices[offset + VERTEX_TEXTURE + 1] = t1;
+				vertices[offset + VERTEX_COLOR + 0] = c0;
+				vertices[offset + VERTEX_COLOR + 1] = c1;
+				vertices[offset + VERTEX_COLOR + 2] = c2;
+				vertices[offset + VERTEX_COLOR + 3] = c3;
+				vertices[offset + VERTEX_NORMAL + 0] = n0;
+				vertices[offset + VERTEX_NORMAL + 1] = n1;
+				vertices[offset + VERTEX_NORMAL + 2] = n2;
+				vertices[offset + VERTEX_POSITION + 0] = p0;
+				vertices[offset + VERTEX_POSITION + 1] = p1;
+				vertices[offset + VERTEX_POSITION + 2] = p2;
+			}
+		}
+	}
+
+	private BasisTable getBezierBasis(int count, int div) {
+		Integer key = (TYPE_BEZIER << 30) | (count << 16) | div;
+		BasisTable basis = basisCache.get(key);
+		if (basis == null) {
+			basis = createBezierBasis(count, div);
+			basisCache.put(key, basis);
+		}
+
+		return basis;
+	}
+
+	private BasisTable getSplineBasis(int count, int type, int div) {
+		Integer key = (TYPE_SPLINE << 30) | (type << 28) | (count << 16) | div;
+		BasisTable basis = basisCache.get(key);
+		if (basis == null) {
+			basis = createSplineBasis(count, type, div);
+			basisCache.put(key, basis);
+		}
+
+		return basis;
+	}
+
+	private static BasisTable createBezierBasis(int count, int div) {
+		BasisTable basis = new BasisTable(div + 1, count);
+
+		// Number of patches
+		int pcount = count / 3;
+
+		for (int i = 0; i <= div; i++) {
+			float global = (float) i * pcount / (float) div;
+			int patch = (int) global; // Patch number
+			float u = global - patch;
+			if (i == div) {
+				patch--;
+				u = 1.f;
+			}
+
+			float uPow2 = u * u;
+			float uPow3 = uPow2 * u;
+			float u1 = 1 - u;
+			float u1Pow2 = u1 * u1;
+			float u1Pow3 = u1Pow2 * u1;
+
+			int first = 3 * patch;
+			int offset = i * basis.stride + first;
+			basis.weights[offset + 0] = u1Pow3;
+			basis.weights[offset + 1] = 3 * u * u1Pow2;
+			basis.weights[offset + 2] = 3 * uPow2 * u1;
+			basis.weights[offset + 3] = uPow3;
+			basis.first[i] = first;
+			basis.count[i] = 4;
+			basis.coords[i] = global;
+		}
+
+		return basis;
+	}
+
+	private static BasisTable createSplineBasis(int count, int type, int div) {
+		int n = count - 1;
+		int[] knot = splineKnot(n, type);
+		BasisTable basis = new BasisTable(div + 1, count);
+
+		for (int i = 0; i <= div; i++) {
+			float u = (float) i * (float) (n - SPLINE_LIMIT) / (float) div;
+
+			// Process the spline weights with Cox-deBoor's algorithm.
+			int first = -1;
+			int last = -1;
+			for (int ii = 0; ii <= n; ii++) {
+				float weight = splineN(ii, SPLINE_DEGREE, u, knot);
+				if (weight != 0) {
+					basis.weights[i * basis.stride + ii] = weight;
+					if (first < 0) {
+						first = ii;
+					}
+					last = ii;
+				}
+			}
+
+			basis.first[i] = Math.max(first, 0);
+			basis.count[i] = last - first;
+			if (first >= 0) {
+				basis.count[i]++;
+			}
+			basis.coords[i] = u;
+		}
+
+		return basis;
+	}
+
+	private static float splineN(int i, int j, float u, int[] knot) {
+		if (j == 0) {
+			if (knot[i] <= u && u < knot[i + 1]) {
+				return 1;
+			}
+			return 0;
+		}
+		float res = 0;
+		if (knot[i + j] - knot[i] != 0) {
+			res += (u - knot[i]) / (knot[i + j] - knot[i]) * splineN(i, j - 1, u, knot);
+		}
+		if (knot[i + j + 1] - knot[i + 1] != 0) {
+			res += (knot[i + j + 1] - u) / (knot[i + j + 1] - knot[i + 1]) * splineN(i + 1, j - 1, u, knot);
+		}
+		return res;
+	}
+
+	private static int[] splineKnot(int n, int type) {
+		int[] knot = new int[n + 5];
+		for (int i = 0; i < n - 1; i++) {
+			knot[i + 3] = i;
+		}
+
+		if ((type & 1) == 0) {
+			knot[0] = -3;
+			knot[1] = -2;
+			knot[2] = -1;
+		}
+		if ((type & 2) == 0) {
+			knot[n + 2] = n - 1;
+			knot[n + 3] = n;
+			knot[n + 4] = n + 1;
+		} else {
+			knot[n + 2] = n - 2;
+			knot[n + 3] = n - 2;
+			knot[n + 4] = n - 2;
+		}
+
+		return knot;
+	}
+}
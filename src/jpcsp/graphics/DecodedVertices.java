@@ -0,0 +1,79 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics;
+
+/**
+ * Reusable arrays receiving decoded vertices, one slot per vertex.
+ *
+ * The components of the vertex in slot i are stored at
+ * - positions[i * 3 .. i * 3 + 2]: X, Y, Z
+ * - normals[i * 3 .. i * 3 + 2]: NX, NY, NZ
+ * - textures[i * 2 .. i * 2 + 1]: U, V
+ * - colors[i * 4 .. i * 4 + 3]: R, G, B, A
+ * - boneWeights[i * 8 .. i * 8 + 7]
+ *
+ * The vertices are written there by the compiled vertex readers
+ * (see VertexInfo.readVertex) without going through a VertexState.
+ */
+public class DecodedVertices {
+	public float[] positions = new float[0];
+	public float[] normals = new float[0];
+	public float[] textures = new float[0];
+	public float[] colors = new float[0];
+	public float[] boneWeights = new float[0];
+	private int capacity;
+
+	/**
+	 * Make sure that the arrays can hold at least the given number of vertices.
+	 * The previous content of the arrays is lost when they have to be enlarged.
+	 *
+	 * @param numberVertices  the number of vertices
+	 * @return                true if the arrays have been enlarged
+	 */
+	public boolean ensureCapacity(int numberVertices) {
+		if (capacity >= numberVertices) {
+			return false;
+		}
+
+		positions = new float[numberVertices * 3];
+		normals = new float[numberVertices * 3];
+		textures = new float[numberVertices * 2];
+		colors = new float[numberVertices * 4];
+		boneWeights = new float[numberVertices * 8];
+		capacity = numberVertices;
+
+		return true;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Copy the vertex stored in a slot into a vertex state.
+	 *
+	 * @param slot  the slot
+	 * @param v     the vertex state to be filled
+	 */
+	public void getVertex(int slot, VertexState v) {
+		System.arraycopy(positions, slot * 3, v.p, 0, 3);
+		System.arraycopy(normals, slot * 3, v.n, 0, 3);
+		System.arraycopy(textures, slot * 2, v.t, 0, 2);
+		System.arraycopy(colors, slot * 4, v.c, 0, 4);
+		System.arraycopy(boneWeights, slot * 8, v.boneWeights, 0, 8);
+	}
+}
@@ -41,9 +41,13 @@ public class GEProfiler {
     private static HashMap<Integer, Long> cmdCounts = new HashMap<Integer, Long>();
     private static HashMap<Integer, Long> primVtypeCounts = new HashMap<Integer, Long>();
     private static HashMap<Integer, String> vtypeNames = new HashMap<Integer, String>();
+    // The compiled vertex readers are not cleared by reset(), like the VertexInfoCompiler
+    private static final List<String> compiledVertexInfoReaders = new ArrayList<String>();
     private static long geListCount;
     private static long textureLoadCount;
     private static long copyGeToMemoryCount;
+    private static long copyGeToMemoryAvoidedCount;
+    private static long copyGeToMemoryAvoidedBytes;
     private static long copyStencilToMemoryCount;
     private static long geListDurationMicros;
 
@@ -82,6 +86,8 @@ public class GEProfiler {
         geListCount = 0;
         textureLoadCount = 0;
         copyGeToMemoryCount = 0;
+        copyGeToMemoryAvoidedCount = 0;
+        copyGeToMemoryAvoidedBytes = 0;
         geListDurationMicros = 0;
     }
 
@@ -94,6 +100,7 @@ public class GEProfiler {
         log.info(String.format("GE list count: %d", geListCount));
         log.info(String.format("Texture load count: %d, average %.1f per GE list", textureLoadCount, textureLoadCount / (double) geListCount));
         log.info(String.format("Copy GE to memory: %d, average %.1f per GE list", copyGeToMemoryCount, copyGeToMemoryCount / (double) geListCount));
+        log.info(String.format("Copy GE to memory avoided: %d, average %.1f per GE list, %d KB", copyGeToMemoryAvoidedCount, copyGeToMemoryAvoidedCount / (double) geListCount, copyGeToMemoryAvoidedBytes >> 10));
         log.info(String.format("Copy Stencil to memory: %d, average %.1f per GE list", copyStencilToMemoryCount, copyStencilToMemoryCount / (double) geListCount));
         log.info(String.format("GE list duration: %dms, average %.1fms per GE list, max FPS is %.1f", geListDurationMicros / 1000, geListDurationMicros / (double) geListCount / 1000, 1000000 / (geListDurationMicros / (double) geListCount)));
         GeCommands geCommands = GeCommands.getInstance();
@@ -115,6 +122,13 @@ public class GEProfiler {
         	Long vtypeCount = primVtypeCounts.get(vtype);
         	log.info(String.format("%s: used %d times in PRIM, average %.1f per GE list", vtypeNames.get(vtype), vtypeCount.longValue(), vtypeCount.longValue() / (double) geListCount));
         }
+
+        synchronized (compiledVertexInfoReaders) {
+        	log.info(String.format("Compiled vertex readers: %d", compiledVertexInfoReaders.size()));
+        	for (String compiledVertexInfoReader : compiledVertexInfoReaders) {
+        		log.info(String.format("Compiled vertex reader for %s", compiledVertexInfoReader));
+        	}
+        }
     }
 
     public static void startGeList() {
@@ -141,6 +155,18 @@ public class GEProfiler {
     	}
     }
 
+    /**
+     * Record the compilation of a vertex reader by the VertexInfoCompiler.
+     * Can be called by any thread.
+     *
+     * @param name  the vertex format of the compiled reader
+     */
+    public static void compileVertexInfoReader(String name) {
+    	synchronized (compiledVertexInfoReaders) {
+    		compiledVertexInfoReaders.add(name);
+    	}
+    }
+
     public static void loadTexture() {
     	textureLoadCount++;
     }
@@ -149,6 +175,11 @@ public class GEProfiler {
     	copyGeToMemoryCount++;
     }
 
+    public static void copyGeToMemoryAvoided(int length) {
+    	copyGeToMemoryAvoidedCount++;
+    	copyGeToMemoryAvoidedBytes += length;
+    }
+
     public static void copyStencilToMemory() {
     	copyStencilToMemoryCount++;
     }
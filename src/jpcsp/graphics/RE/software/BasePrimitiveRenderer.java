@@ -64,6 +64,7 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 	protected boolean needTextureWrapV;
 	protected boolean sameVertexColor;
 	protected boolean needSourceDepthClamp;
+	protected boolean useBlockRasterizer;
 	public int fbAddress;
 	public int depthAddress;
     public IRendererWriter rendererWriter;
@@ -86,6 +87,7 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 		depthAddress = from.depthAddress;
 		rendererWriter = from.rendererWriter;
 		needSourceDepthClamp = from.needSourceDepthClamp;
+		useBlockRasterizer = from.useBlockRasterizer;
 	}
 
 	@Override
@@ -430,11 +432,13 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 				needSourceDepthClamp = true;
 			}
 		}
+		useBlockRasterizer = RESoftware.isUseBlockRasterizer();
 
 		prepareWriters();
 
 		LongLongKey rendererKey = getRendererKey();
-    	if (compiledRenderer == null || !rendererKey.equals(compiledRendererKey)) {
+    	// A generic renderer is only used until the specialized renderer is available
+    	if (compiledRenderer == null || !rendererKey.equals(compiledRendererKey) || compiledRenderer instanceof GenericRenderer) {
 			compiledRendererKey = rendererKey;
 			compiledRenderer = FilterCompiler.getInstance().getCompiledRenderer(this, rendererKey, context);
 			if (isLogTraceEnabled) {
@@ -563,17 +567,17 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 	        prim.pzMin = minInt(prim.p1z, prim.p2z);
 		} else {
 			float[] screenCoordinates = new float[4];
-			getScreenCoordinates(screenCoordinates, pixel.v1x, pixel.v1y, pixel.v1z);
-			prim.p1x = screenCoordinates[0];
-			prim.p1y = screenCoordinates[1];
-			prim.p1z = screenCoordinates[2];
-			prim.p1w = screenCoordinates[3];
+			float[] s1 = getScreenCoordinates(screenCoordinates, v1);
+			prim.p1x = s1[0];
+			prim.p1y = s1[1];
+			prim.p1z = s1[2];
+			prim.p1w = s1[3];
 			prim.p1wInverted = 1.f / prim.p1w;
-			getScreenCoordinates(screenCoordinates, pixel.v2x, pixel.v2y, pixel.v2z);
-			prim.p2x = screenCoordinates[0];
-			prim.p2y = screenCoordinates[1];
-			prim.p2z = screenCoordinates[2];
-			prim.p2w = screenCoordinates[3];
+			float[] s2 = getScreenCoordinates(screenCoordinates, v2);
+			prim.p2x = s2[0];
+			prim.p2y = s2[1];
+			prim.p2z = s2[2];
+			prim.p2w = s2[3];
 			prim.p2wInverted = 1.f / prim.p2w;
 
 			prim.pxMax = maxInt(prim.p1x, prim.p2x);
@@ -615,11 +619,11 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 	        prim.pzMin = minInt(prim.pzMin, prim.p3z);
         } else {
 			float[] screenCoordinates = new float[4];
-			getScreenCoordinates(screenCoordinates, pixel.v3x, pixel.v3y, pixel.v3z);
-			prim.p3x = screenCoordinates[0];
-			prim.p3y = screenCoordinates[1];
-			prim.p3z = screenCoordinates[2];
-			prim.p3w = screenCoordinates[3];
+			float[] s3 = getScreenCoordinates(screenCoordinates, v3);
+			prim.p3x = s3[0];
+			prim.p3y = s3[1];
+			prim.p3z = s3[2];
+			prim.p3w = s3[3];
 			prim.p3wInverted = 1.f / prim.p3w;
 
 	        prim.pxMax = maxInt(prim.pxMax, prim.p3x);
@@ -796,6 +800,47 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
         return true;
 	}
 
+	private float[] getScreenCoordinates(float[] screenCoordinates, VertexState v) {
+		// Use the screen coordinates already computed by the VertexProcessor
+		if (v instanceof TransformedVertexState) {
+			TransformedVertexState transformedVertex = (TransformedVertexState) v;
+			if (transformedVertex.hasScreenCoordinates) {
+				return transformedVertex.s;
+			}
+		}
+
+		getScreenCoordinates(screenCoordinates, v.p);
+		return screenCoordinates;
+	}
+
+	/**
+	 * Compute the screen coordinates of multiple vertices,
+	 * giving the same results as getScreenCoordinates() for each vertex.
+	 *
+	 * @param positions          the vertex positions, 3 floats per vertex
+	 * @param screenCoordinates  the screen coordinates (X, Y, Z, W), 4 floats per vertex
+	 * @param start              the first vertex
+	 * @param end                the last vertex (exclusive)
+	 */
+	protected void getScreenCoordinates(float[] positions, float[] screenCoordinates, int start, int end) {
+		final float[] m = pixel.modelViewProjectionMatrix;
+		final float m0 = m[0], m1 = m[1], m2 = m[2], m3 = m[3];
+		final float m4 = m[4], m5 = m[5], m6 = m[6], m7 = m[7];
+		final float m8 = m[8], m9 = m[9], m10 = m[10], m11 = m[11];
+		final float m12 = m[12], m13 = m[13], m14 = m[14], m15 = m[15];
+		for (int i = start, p = start * 3, s = start * 4; i < end; i++, p += 3, s += 4) {
+			final float x = positions[p];
+			final float y = positions[p + 1];
+			final float z = positions[p + 2];
+			final float w = x * m3 + y * m7 + z * m11 + m15;
+			final float wInverted = 1.f / w;
+			screenCoordinates[s] = (x * m0 + y * m4 + z * m8 + m12) * wInverted * viewportWidth + viewportX - screenOffsetX;
+			screenCoordinates[s + 1] = (x * m1 + y * m5 + z * m9 + m13) * wInverted * viewportHeight + viewportY - screenOffsetY;
+			screenCoordinates[s + 2] = (x * m2 + y * m6 + z * m10 + m14) * wInverted * zscale + zpos;
+			screenCoordinates[s + 3] = w;
+		}
+	}
+
 	private void getScreenCoordinates(float[] screenCoordinates, float[] position) {
 		getScreenCoordinates(screenCoordinates, position[0], position[1], position[2]);
 	}
@@ -900,6 +945,7 @@ public abstract class BasePrimitiveRenderer extends BaseRenderer {
 		key.addKeyComponent(needTextureWrapV);
 		key.addKeyComponent(sameVertexColor);
 		key.addKeyComponent(needSourceDepthClamp);
+		key.addKeyComponent(useBlockRasterizer);
 
 		return key;
 	}
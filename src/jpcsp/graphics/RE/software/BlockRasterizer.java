@@ -0,0 +1,245 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics.RE.software;
+
+/**
+ * Classification of the 16x16 pixel blocks covered by a triangle.
+ *
+ * The triangle weights (Barycentric coordinates) as computed by
+ * PrimitiveState.computeTriangleWeights() are linear functions of the
+ * pixel coordinates. Evaluating them at the corners of a block allows to
+ * find the blocks having no pixel inside the triangle.
+ * The classification is conservative: a block is only classified as outside
+ * when the float test performed by PixelState.isInsideTriangle() would fail
+ * for all its pixels, taking into account the float rounding errors
+ * accumulated by PrimitiveState.deltaXTriangleWeigths().
+ *
+ * When a CoarseDepthBuffer is available, the blocks for which all the pixels
+ * would fail the depth test are classified as occluded.
+ *
+ * The classification is only used to narrow each line: the RendererTemplate
+ * is rendering the pixels from the first to the last block being neither
+ * outside nor occluded. Outside or occluded blocks between them are not
+ * skipped and fully covered blocks are not rendered by a faster path:
+ * the pixels are still tested individually, producing exactly the same rendering.
+ *
+ * The instances are reused for all the triangles rendered by a thread,
+ * see getInstance().
+ */
+public class BlockRasterizer {
+	public static final int BLOCK_SIZE_SHIFT = 4;
+	public static final int BLOCK_SIZE = 1 << BLOCK_SIZE_SHIFT;
+	// Relative precision of a float
+	private static final double FLOAT_EPSILON = Math.ulp(1f);
+	// Limit used by PixelState.isInsideTriangle()
+	private static final double INSIDE_LIMIT = -1e-5f;
+	// Each rendering thread is using its own instance
+	private static final ThreadLocal<BlockRasterizer> instances = new ThreadLocal<BlockRasterizer>();
+	// Triangle weights w(x, y) = a * x + b * y + c
+	private double a1, b1, c1;
+	private double a2, b2, c2;
+	private double a3, b3, c3;
+	private double outsideLimit;
+	// Depth plane z(x, y) = zA * x + zB * y + zC
+	private double zA, zB, zC;
+	private double zSlack;
+	private int blockXMin;
+	private int blockXMax;
+	// Pixel x coordinates that have to be rendered in the current row of blocks
+	private int firstRenderedX;
+	private int lastRenderedX;
+
+	/**
+	 * Return the block rasterizer of the current thread.
+	 *
+	 * @return the block rasterizer, to be prepared by init()
+	 */
+	public static BlockRasterizer getInstance() {
+		BlockRasterizer blockRasterizer = instances.get();
+		if (blockRasterizer == null) {
+			blockRasterizer = new BlockRasterizer();
+			instances.set(blockRasterizer);
+		}
+
+		return blockRasterizer;
+	}
+
+	private BlockRasterizer() {
+	}
+
+	private static boolean isInvalid(double value) {
+		return Double.isInfinite(value) || Double.isNaN(value);
+	}
+
+	private static double maxAbs(double a, double b) {
+		return Math.max(Math.abs(a), Math.abs(b));
+	}
+
+	/**
+	 * Prepare the triangle weights.
+	 * PrimitiveState.preComputeTriangleWeights() has to be called first.
+	 *
+	 * @param prim the triangle to be rendered
+	 * @return true if the triangle can be rendered using the block classification,
+	 *         false if the triangle is degenerated.
+	 */
+	public boolean init(PrimitiveState prim) {
+		double denomInverted = prim.denomInverted;
+		if (isInvalid(denomInverted) || denomInverted == 0.0) {
+			return false;
+		}
+
+		// Same formulas as PrimitiveState.computeTriangleWeights(),
+		// the pixels being sampled at x + 0.01
+		double x3 = prim.p3x - 0.01;
+		double y3 = prim.p3y;
+		a1 = prim.diff23y * denomInverted;
+		b1 = prim.diff32x * denomInverted;
+		c1 = -(a1 * x3 + b1 * y3);
+		a2 = -prim.diff13y * denomInverted;
+		b2 = prim.diff13x * denomInverted;
+		c2 = -(a2 * x3 + b2 * y3);
+		a3 = -a1 - a2;
+		b3 = -b1 - b2;
+		c3 = 1.0 - c1 - c2;
+
+		blockXMin = prim.pxMin >> BLOCK_SIZE_SHIFT;
+		blockXMax = prim.pxMax >> BLOCK_SIZE_SHIFT;
+
+		// Extent of the area covered by the blocks, in pixels
+		double xMin = blockXMin << BLOCK_SIZE_SHIFT;
+		double xMax = ((blockXMax + 1) << BLOCK_SIZE_SHIFT) - 1;
+		double yMin = (prim.pyMin >> BLOCK_SIZE_SHIFT) << BLOCK_SIZE_SHIFT;
+		double yMax = (((prim.pyMax >> BLOCK_SIZE_SHIFT) + 1) << BLOCK_SIZE_SHIFT) - 1;
+
+		// Largest absolute value of a triangle weight and of the terms
+		// used to compute it, over the blocks area
+		double maxWeight = 0.0;
+		for (int i = 0; i < 4; i++) {
+			double x = (i & 1) == 0 ? xMin : xMax;
+			double y = (i & 2) == 0 ? yMin : yMax;
+			maxWeight = Math.max(maxWeight, Math.abs(a1 * x + b1 * y + c1));
+			maxWeight = Math.max(maxWeight, Math.abs(a2 * x + b2 * y + c2));
+			maxWeight = Math.max(maxWeight, Math.abs(a3 * x + b3 * y + c3));
+		}
+		double dx3 = maxAbs(xMin - x3, xMax - x3) + 1.0;
+		double dy3 = maxAbs(yMin - y3, yMax - y3) + 1.0;
+		double maxTerm = Math.max(Math.abs(a1) * dx3 + Math.abs(b1) * dy3, Math.abs(a2) * dx3 + Math.abs(b2) * dy3);
+
+		// Error of the float triangle weights: the initial computation on each line,
+		// followed by one rounded increment per pixel along the line
+		double lineLength = xMax - xMin + 1.0;
+		double floatWeightError = 8.0 * FLOAT_EPSILON * (lineLength + 16.0) * (maxTerm + maxWeight + 1.0);
+		if (isInvalid(floatWeightError) || floatWeightError >= 0.5) {
+			return false;
+		}
+
+		outsideLimit = INSIDE_LIMIT - floatWeightError;
+
+		// Depth plane, computed like PixelState.getTriangleWeightedValue()
+		zA = a1 * prim.p1z + a2 * prim.p2z + a3 * prim.p3z;
+		zB = b1 * prim.p1z + b2 * prim.p2z + b3 * prim.p3z;
+		zC = c1 * prim.p1z + c2 * prim.p2z + c3 * prim.p3z;
+		double sumZ = Math.abs(prim.p1z) + Math.abs(prim.p2z) + Math.abs(prim.p3z);
+		zSlack = (floatWeightError + 8.0 * FLOAT_EPSILON * (maxWeight + 1.0)) * sumZ + 2.0;
+		if (isInvalid(zA) || isInvalid(zB) || isInvalid(zC) || isInvalid(zSlack)) {
+			return false;
+		}
+
+		return true;
+	}
+
+	private boolean isOutside(double x, double y) {
+		final double extent = BLOCK_SIZE - 1;
+		double w1 = a1 * x + b1 * y + c1;
+		double w2 = a2 * x + b2 * y + c2;
+		double w3 = a3 * x + b3 * y + c3;
+
+		// All the block corners are outside one edge
+		if (w1 + Math.max(a1 * extent, 0.0) + Math.max(b1 * extent, 0.0) < outsideLimit) {
+			return true;
+		}
+		if (w2 + Math.max(a2 * extent, 0.0) + Math.max(b2 * extent, 0.0) < outsideLimit) {
+			return true;
+		}
+		if (w3 + Math.max(a3 * extent, 0.0) + Math.max(b3 * extent, 0.0) < outsideLimit) {
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Classify all the blocks of one row of blocks.
+	 *
+	 * @param blockY             the row of blocks (y >> BLOCK_SIZE_SHIFT)
+	 * @param coarseDepthBuffer  the coarse depth buffer, or null
+	 * @param depthFunc          the depth test function used for the occlusion,
+	 *                           or -1 if the blocks cannot be occluded
+	 * @param depthWrite         true if the rendered blocks are writing to the depth buffer
+	 */
+	public void prepareBlockRow(int blockY, CoarseDepthBuffer coarseDepthBuffer, int depthFunc, boolean depthWrite) {
+		int y = blockY << BLOCK_SIZE_SHIFT;
+		double yPixel = y;
+		double zRowMin = zC + zB * yPixel + Math.min(0.0, zB * (BLOCK_SIZE - 1));
+		double zRowMax = zC + zB * yPixel + Math.max(0.0, zB * (BLOCK_SIZE - 1));
+		double zColumnMin = Math.min(0.0, zA * (BLOCK_SIZE - 1)) - zSlack;
+		double zColumnMax = Math.max(0.0, zA * (BLOCK_SIZE - 1)) + zSlack;
+		firstRenderedX = Integer.MAX_VALUE;
+		lastRenderedX = Integer.MIN_VALUE;
+
+		for (int blockX = blockXMin; blockX <= blockXMax; blockX++) {
+			int x = blockX << BLOCK_SIZE_SHIFT;
+			double xPixel = x;
+			if (isOutside(xPixel, yPixel)) {
+				continue;
+			}
+			if (coarseDepthBuffer != null) {
+				if (depthFunc >= 0) {
+					int zMin = CoarseDepthBuffer.toDepth(Math.floor(zRowMin + zA * xPixel + zColumnMin));
+					int zMax = CoarseDepthBuffer.toDepth(Math.ceil(zRowMax + zA * xPixel + zColumnMax));
+					if (coarseDepthBuffer.isOccluded(blockX, blockY, zMin, zMax, depthFunc)) {
+						continue;
+					}
+				}
+				if (depthWrite) {
+					// The tile values will be read again from the depth buffer when needed
+					coarseDepthBuffer.invalidate(x, y, x + BLOCK_SIZE - 1, y + BLOCK_SIZE - 1);
+				}
+			}
+
+			firstRenderedX = Math.min(firstRenderedX, x);
+			lastRenderedX = x + BLOCK_SIZE - 1;
+		}
+	}
+
+	/**
+	 * @return  the first pixel x coordinate that has to be rendered in the current
+	 *          row of blocks, or Integer.MAX_VALUE if the complete row can be skipped
+	 */
+	public int getFirstRenderedX() {
+		return firstRenderedX;
+	}
+
+	/**
+	 * @return  the last pixel x coordinate that has to be rendered in the current
+	 *          row of blocks, or Integer.MIN_VALUE if the complete row can be skipped
+	 */
+	public int getLastRenderedX() {
+		return lastRenderedX;
+	}
+}
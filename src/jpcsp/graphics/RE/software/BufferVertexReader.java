@@ -22,6 +22,7 @@ import java.nio.FloatBuffer;
 
 import org.apache.log4j.Logger;
 
+import jpcsp.graphics.DecodedVertices;
 import jpcsp.graphics.VertexState;
 import jpcsp.graphics.VideoEngine;
 import jpcsp.graphics.RE.IRenderingEngine;
@@ -68,44 +69,75 @@ public class BufferVertexReader {
 		componentInfo.stride = stride;
 		componentInfo.offset = buffer.position();
 		componentInfo.buffer = buffer;
+		// Build the float view of a ByteBuffer only once, not for each value read
+		if (buffer instanceof ByteBuffer) {
+			componentInfo.floatBuffer = ((ByteBuffer) buffer).asFloatBuffer();
+		} else if (buffer instanceof FloatBuffer) {
+			componentInfo.floatBuffer = (FloatBuffer) buffer;
+		} else {
+			componentInfo.floatBuffer = null;
+		}
 	}
 
 	public void readVertex(int index, VertexState v) {
-		readComponent(weightComponentInfo, index, v.boneWeights);
-		readComponent(textureComponentInfo, index, v.t);
-		readComponent(colorComponentInfo, index, v.c);
-		readComponent(normalComponentInfo, index, v.n);
-		readComponent(vertexComponentInfo, index, v.p);
+		readVertex(index, v.boneWeights, 0, v.t, 0, v.c, 0, v.n, 0, v.p, 0);
+	}
+
+	/**
+	 * Read a vertex directly into the arrays of a DecodedVertices.
+	 *
+	 * @param index     the vertex index
+	 * @param vertices  the decoded vertices
+	 * @param slot      the slot where to store the vertex in the decoded vertices
+	 */
+	public void readVertex(int index, DecodedVertices vertices, int slot) {
+		readVertex(index, vertices.boneWeights, slot * 8, vertices.textures, slot * 2, vertices.colors, slot * 4, vertices.normals, slot * 3, vertices.positions, slot * 3);
+	}
+
+	private void readVertex(int index, float[] boneWeights, int w, float[] textures, int t, float[] colors, int c, float[] normals, int n, float[] positions, int p) {
+		readComponent(weightComponentInfo, index, boneWeights, w);
+		readComponent(textureComponentInfo, index, textures, t);
+		readComponent(colorComponentInfo, index, colors, c);
+		readComponent(normalComponentInfo, index, normals, n);
+		readComponent(vertexComponentInfo, index, positions, p);
 
 		if (log.isTraceEnabled()) {
 			log.trace(String.format("Vertex %d:", index));
 			if (weightComponentInfo.enabled) {
-				log.trace(String.format("  Weights(%d) %f, %f, %f, %f, %f, %f, %f, %f", weightComponentInfo.size, v.boneWeights[0], v.boneWeights[1], v.boneWeights[2], v.boneWeights[3], v.boneWeights[4], v.boneWeights[5], v.boneWeights[6], v.boneWeights[7]));
+				log.trace(String.format("  Weights(%d) %f, %f, %f, %f, %f, %f, %f, %f", weightComponentInfo.size, boneWeights[w], boneWeights[w + 1], boneWeights[w + 2], boneWeights[w + 3], boneWeights[w + 4], boneWeights[w + 5], boneWeights[w + 6], boneWeights[w + 7]));
 			}
 			if (textureComponentInfo.enabled) {
-				log.trace(String.format("  Texture %f, %f", v.t[0], v.t[1]));
+				log.trace(String.format("  Texture %f, %f", textures[t], textures[t + 1]));
 			}
 			if (colorComponentInfo.enabled) {
-				log.trace(String.format("  Color 0x%08X", PixelColor.getColor(v.c)));
+				log.trace(String.format("  Color 0x%08X", PixelColor.getColor(PixelColor.getColor(colors[c + 3]), PixelColor.getColor(colors[c + 2]), PixelColor.getColor(colors[c + 1]), PixelColor.getColor(colors[c]))));
 			}
 			if (normalComponentInfo.enabled) {
-				log.trace(String.format("  Normal %f, %f, %f", v.n[0], v.n[1], v.n[2]));
+				log.trace(String.format("  Normal %f, %f, %f", normals[n], normals[n + 1], normals[n + 2]));
 			}
 			if (vertexComponentInfo.enabled) {
-				log.trace(String.format("  Position %f, %f, %f", v.p[0], v.p[1], v.p[2]));
+				log.trace(String.format("  Position %f, %f, %f", positions[p], positions[p + 1], positions[p + 2]));
 			}
 		}
 	}
 
-	private void readComponent(ComponentInfo componentInfo, int index, float[] values) {
+	private void readComponent(ComponentInfo componentInfo, int index, float[] values, int offset) {
 		if (!componentInfo.enabled) {
 			return;
 		}
 
 		switch (componentInfo.type) {
 			case IRenderingEngine.RE_FLOAT:
-				for (int i = 0; i < componentInfo.size; i++) {
-					values[i] = readFloat(componentInfo, index, i);
+				FloatBuffer floatBuffer = componentInfo.floatBuffer;
+				if (floatBuffer == null) {
+					for (int i = 0; i < componentInfo.size; i++) {
+						values[offset + i] = 0.f;
+					}
+				} else {
+					int position = getPosition(componentInfo, index, 0);
+					for (int i = 0; i < componentInfo.size; i++) {
+						values[offset + i] = floatBuffer.get(position + i);
+					}
 				}
 				break;
 		}
@@ -115,19 +147,6 @@ public class BufferVertexReader {
 		return componentInfo.stride * index / IRenderingEngine.sizeOfType[componentInfo.type] + n + componentInfo.offset;
 	}
 
-	private float readFloat(ComponentInfo componentInfo, int index, int n) {
-		if (componentInfo.buffer instanceof FloatBuffer) {
-			FloatBuffer floatBuffer = (FloatBuffer) componentInfo.buffer;
-			return floatBuffer.get(getPosition(componentInfo, index, n));
-		} else if (componentInfo.buffer instanceof ByteBuffer) {
-			ByteBuffer byteBuffer = (ByteBuffer) componentInfo.buffer;
-			FloatBuffer floatBuffer = byteBuffer.asFloatBuffer();
-			return floatBuffer.get(getPosition(componentInfo, index, n));
-		}
-
-		return 0.f;
-	}
-
 	private static class ComponentInfo {
 		public boolean enabled = false;
 		public int size;
@@ -135,5 +154,6 @@ public class BufferVertexReader {
 		public int stride;
 		public int offset;
 		public Buffer buffer;
+		public FloatBuffer floatBuffer;
 	}
 }
@@ -147,9 +147,7 @@ public abstract class CachedTexture implements IRandomTextureAccess {
 
 	protected void setBuffer(IMemoryReader imageReader) {
 		buffer = new int[width * height];
-		for (int i = 0; i < buffer.length; i++) {
-			buffer[i] = imageReader.readNext();
-		}
+		imageReader.readNext(buffer, 0, buffer.length);
 	}
 
 	protected void setBuffer(int[] buffer, int bufferOffset, int bufferLength) {
@@ -25,6 +25,7 @@ import static jpcsp.util.Utilities.round;
 
 import java.util.LinkedList;
 
+import jpcsp.Allegrex.compiler.RuntimeContext;
 import jpcsp.graphics.GeCommands;
 import jpcsp.graphics.VideoEngine;
 import jpcsp.graphics.RE.software.CachedTexture.CachedTexturePow2;
@@ -294,6 +295,23 @@ public class CachedTextureResampled {
 		cachedTextureOriginal.setClut();
 	}
 
+	/**
+	 * @return the number of bytes used by the original texture
+	 *         and by all its resampled textures
+	 */
+	public synchronized int getSizeInBytes() {
+		int sizeInBytes = 0;
+		for (ResampleInfo resampleInfo : resampleInfos) {
+			int[] buffer = resampleInfo.getCachedTextureResampled().buffer;
+			// A texture directly using the memory array is not using any memory
+			if (buffer != null && buffer != RuntimeContext.getMemoryInt()) {
+				sizeInBytes += buffer.length << 2;
+			}
+		}
+
+		return sizeInBytes;
+	}
+
 	private static class ResampleInfo {
 		private int resampleWidth;
 		private int resampleHeight;
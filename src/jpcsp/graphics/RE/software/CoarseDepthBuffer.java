@@ -0,0 +1,271 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics.RE.software;
+
+import static jpcsp.graphics.RE.software.BlockRasterizer.BLOCK_SIZE;
+import static jpcsp.graphics.RE.software.BlockRasterizer.BLOCK_SIZE_SHIFT;
+
+import java.util.Arrays;
+
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.Allegrex.compiler.RuntimeContext;
+import jpcsp.graphics.GeCommands;
+import jpcsp.graphics.RE.IRenderingEngine;
+
+/**
+ * Coarse depth buffer, keeping the minimum and maximum depth values
+ * of each 16x16 tile of the current depth buffer.
+ *
+ * The tile values are read lazily from the depth buffer in memory.
+ * Any primitive writing to the depth buffer is discarding the values
+ * of the tiles it might have modified, they will be read again when needed.
+ *
+ * This class is only accessed by the thread performing the rendering,
+ * except for invalidateAll().
+ */
+public class CoarseDepthBuffer {
+	// Tiles are tracked for the pixels (0..1023, 0..1023)
+	private static final int TILES_SHIFT = 6;
+	private static final int TILES = 1 << TILES_SHIFT;
+	private static final int MIN_DEPTH = -(1 << 30);
+	private static final int MAX_DEPTH = 1 << 30;
+	private static final int depthBytesPerPixel = IRenderingEngine.sizeOfTextureType[BaseRenderer.depthBufferPixelFormat];
+	private static CoarseDepthBuffer instance;
+	private static volatile int invalidationCount;
+	private int currentInvalidationCount;
+	private final int[] tileMin = new int[TILES * TILES];
+	private final int[] tileMax = new int[TILES * TILES];
+	private final boolean[] tileKnown = new boolean[TILES * TILES];
+	private int zbp;
+	private int zbw;
+	// Only the tiles (0..tilesX-1, 0..tilesY-1) are tracked
+	private int tilesX;
+	private int tilesY;
+	private int trackedLength;
+
+	public static CoarseDepthBuffer getInstance() {
+		if (instance == null) {
+			instance = new CoarseDepthBuffer();
+		}
+		return instance;
+	}
+
+	private CoarseDepthBuffer() {
+	}
+
+	/**
+	 * Discard the values of all the tiles.
+	 * To be called when the depth buffer might have been modified
+	 * outside of the rendering, e.g. by the CPU or by a GE block transfer.
+	 * Can be called from any thread while the rendering is idle.
+	 */
+	public static void invalidateAll() {
+		invalidationCount++;
+	}
+
+	/**
+	 * Convert a depth bound to an int, avoiding overflows.
+	 */
+	public static int toDepth(double depth) {
+		if (depth <= MIN_DEPTH) {
+			return MIN_DEPTH;
+		}
+		if (depth >= MAX_DEPTH) {
+			return MAX_DEPTH;
+		}
+		return (int) depth;
+	}
+
+	private void reset(int zbp, int zbw) {
+		this.zbp = zbp;
+		this.zbw = zbw;
+		Arrays.fill(tileKnown, false);
+
+		// Tiles must not wrap around the depth buffer width
+		// and must be completely inside the VRAM.
+		tilesX = 0;
+		tilesY = 0;
+		if (zbw > 0 && zbp >= MemoryMap.START_VRAM && zbp <= MemoryMap.END_VRAM) {
+			int tileLineLength = zbw * BLOCK_SIZE * depthBytesPerPixel;
+			tilesX = Math.min(zbw >> BLOCK_SIZE_SHIFT, TILES);
+			tilesY = Math.min((MemoryMap.END_VRAM + 1 - zbp) / tileLineLength, TILES);
+			trackedLength = tilesY * tileLineLength;
+		}
+		if (tilesX == 0 || tilesY == 0) {
+			tilesX = 0;
+			tilesY = 0;
+			trackedLength = 0;
+		}
+	}
+
+	/**
+	 * Start the rendering of a primitive.
+	 *
+	 * @param renderer        the primitive renderer
+	 * @param blockRendering  true if the primitive is rendered using a BlockRasterizer
+	 * @return                true if the BlockRasterizer can use the coarse depth buffer
+	 *                        for this primitive
+	 */
+	public boolean startRender(BasePrimitiveRenderer renderer, boolean blockRendering) {
+		if (currentInvalidationCount != invalidationCount) {
+			currentInvalidationCount = invalidationCount;
+			reset(zbp, zbw);
+		}
+
+		boolean useDepthBuffer = renderer.needDepthWrite || renderer.needDestinationDepthRead;
+		if (useDepthBuffer && (renderer.zbp != zbp || renderer.zbw != zbw)) {
+			reset(renderer.zbp, renderer.zbw);
+		}
+
+		// Drawing into the depth buffer as a color buffer?
+		// Only the lines inside the scissor area can be written.
+		final PrimitiveState prim = renderer.prim;
+		int yMin = Math.max(prim.pyMin, renderer.scissorY1);
+		int yMax = Math.min(prim.pyMax, renderer.scissorY2);
+		if (trackedLength > 0 && yMin <= yMax) {
+			int bytesPerPixel = IRenderingEngine.sizeOfTextureType[renderer.psm];
+			int fbStart = renderer.fbAddress + (yMin - prim.pyMin) * renderer.fbw * bytesPerPixel;
+			int fbLength = ((yMax - yMin) * renderer.fbw + prim.destinationWidth) * bytesPerPixel;
+			if (fbStart < zbp + trackedLength && fbStart + fbLength > zbp) {
+				Arrays.fill(tileKnown, false);
+			}
+		}
+
+		if (!useDepthBuffer) {
+			return false;
+		}
+
+		if (prim.pxMax >= zbw) {
+			// The pixels are wrapping around the depth buffer width
+			if (renderer.needDepthWrite) {
+				Arrays.fill(tileKnown, false);
+			}
+			return false;
+		}
+
+		if (!blockRendering) {
+			if (renderer.needDepthWrite) {
+				invalidate(prim.pxMin, prim.pyMin, prim.pxMax, prim.pyMax);
+			}
+			return false;
+		}
+
+		return true;
+	}
+
+	private boolean isTracked(int tileX, int tileY) {
+		return tileX >= 0 && tileX < tilesX && tileY >= 0 && tileY < tilesY;
+	}
+
+	private int getTileIndex(int tileX, int tileY) {
+		return (tileY << TILES_SHIFT) + tileX;
+	}
+
+	private void readTile(int tileX, int tileY, int index) {
+		int address = zbp + ((tileY << BLOCK_SIZE_SHIFT) * zbw + (tileX << BLOCK_SIZE_SHIFT)) * depthBytesPerPixel;
+		int lineLength = zbw * depthBytesPerPixel;
+		int min = 0xFFFF;
+		int max = 0;
+		final int[] memInt = RuntimeContext.getMemoryInt();
+		if (memInt != null) {
+			// Faster access reading 2 depth values at once
+			for (int y = 0; y < BLOCK_SIZE; y++) {
+				int memIndex = address >> 2;
+				for (int x = 0; x < BLOCK_SIZE; x += 2, memIndex++) {
+					int depth2 = memInt[memIndex];
+					int depth1 = depth2 & 0xFFFF;
+					depth2 >>>= 16;
+					min = Math.min(min, Math.min(depth1, depth2));
+					max = Math.max(max, Math.max(depth1, depth2));
+				}
+				address += lineLength;
+			}
+		} else {
+			Memory mem = Memory.getInstance();
+			for (int y = 0; y < BLOCK_SIZE; y++) {
+				for (int x = 0; x < BLOCK_SIZE; x++) {
+					int depth = mem.read16(address + x * depthBytesPerPixel);
+					min = Math.min(min, depth);
+					max = Math.max(max, depth);
+				}
+				address += lineLength;
+			}
+		}
+
+		tileMin[index] = min;
+		tileMax[index] = max;
+		tileKnown[index] = true;
+	}
+
+	/**
+	 * Check if all the pixels of a tile would fail the depth test.
+	 *
+	 * @param tileX      the tile x coordinate (x >> BLOCK_SIZE_SHIFT)
+	 * @param tileY      the tile y coordinate (y >> BLOCK_SIZE_SHIFT)
+	 * @param zMin       the minimum source depth of the pixels in the tile
+	 * @param zMax       the maximum source depth of the pixels in the tile
+	 * @param depthFunc  the depth test function
+	 * @return           true if the depth test is failing for all the pixels of the tile
+	 */
+	public boolean isOccluded(int tileX, int tileY, int zMin, int zMax, int depthFunc) {
+		if (!isTracked(tileX, tileY)) {
+			return false;
+		}
+
+		int index = getTileIndex(tileX, tileY);
+		if (!tileKnown[index]) {
+			readTile(tileX, tileY, index);
+		}
+
+		switch (depthFunc) {
+			case GeCommands.ZTST_FUNCTION_PASS_PX_WHEN_DEPTH_IS_EQUAL:
+				return zMax < tileMin[index] || zMin > tileMax[index];
+			case GeCommands.ZTST_FUNCTION_PASS_PX_WHEN_DEPTH_IS_LESS:
+				return zMin >= tileMax[index];
+			case GeCommands.ZTST_FUNCTION_PASS_PX_WHEN_DEPTH_IS_LESS_OR_EQUAL:
+				return zMin > tileMax[index];
+			case GeCommands.ZTST_FUNCTION_PASS_PX_WHEN_DEPTH_IS_GREATER:
+				return zMax <= tileMin[index];
+			case GeCommands.ZTST_FUNCTION_PASS_PX_WHEN_DEPTH_IS_GREATER_OR_EQUAL:
+				return zMax < tileMin[index];
+		}
+
+		return false;
+	}
+
+	/**
+	 * Discard the values of the tiles covering the given area.
+	 *
+	 * @param x1  the left coordinate of the area
+	 * @param y1  the top coordinate of the area
+	 * @param x2  the right coordinate of the area (inclusive)
+	 * @param y2  the bottom coordinate of the area (inclusive)
+	 */
+	public void invalidate(int x1, int y1, int x2, int y2) {
+		int tileX1 = Math.max(x1 >> BLOCK_SIZE_SHIFT, 0);
+		int tileY1 = Math.max(y1 >> BLOCK_SIZE_SHIFT, 0);
+		int tileX2 = Math.min(x2 >> BLOCK_SIZE_SHIFT, tilesX - 1);
+		int tileY2 = Math.min(y2 >> BLOCK_SIZE_SHIFT, tilesY - 1);
+		for (int tileY = tileY1; tileY <= tileY2; tileY++) {
+			int index = getTileIndex(tileX1, tileY);
+			for (int tileX = tileX1; tileX <= tileX2; tileX++, index++) {
+				tileKnown[index] = false;
+			}
+		}
+	}
+}
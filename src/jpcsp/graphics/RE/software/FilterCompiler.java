@@ -20,14 +20,33 @@ import static jpcsp.graphics.GeCommands.CMAT_FLAG_AMBIENT;
 import static jpcsp.graphics.GeCommands.CMAT_FLAG_DIFFUSE;
 import static jpcsp.graphics.GeCommands.CMAT_FLAG_SPECULAR;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
 
 import org.apache.log4j.Logger;
 
+import jpcsp.State;
 import jpcsp.Allegrex.compiler.RuntimeContext;
 import jpcsp.graphics.GeContext;
 import jpcsp.graphics.VideoEngine;
+import jpcsp.settings.Settings;
 import jpcsp.util.ClassSpecializer;
 import jpcsp.util.DurationStatistics;
 import jpcsp.util.LongLongKey;
@@ -37,12 +56,42 @@ import jpcsp.util.LongLongKey;
  *
  * Implementation of a filter compilation.
  * The class RendererTemplate is specialized using fixed GE values/flags.
+ *
+ * The specialization is performed by a background thread: until it is
+ * completed, the primitives are rendered by a GenericRenderer.
+ * The GE states specialized for a game are saved in the disc tmp directory
+ * and are specialized again in advance when the game is started the next time.
  */
 public class FilterCompiler {
 	private static Logger log = VideoEngine.log;
+	private static final String settingsAsyncCompilation = "emu.asyncRendererCompilation";
+	private static final String cacheFileName = "SoftwareRenderers.dat";
+	private static final int cacheFileVersion = 2;
+	// The classes defining the layout of the renderer keys and their variables
+	private static final Class<?>[] layoutClasses = { BaseRenderer.class, BasePrimitiveRenderer.class, RendererTemplate.class, FilterCompiler.class, LongLongKey.class };
+	private static long layoutHash;
+	private static final byte TYPE_BOOLEAN = 0;
+	private static final byte TYPE_INT = 1;
+	private static final byte TYPE_FLOAT = 2;
 	private static FilterCompiler instance;
-	private HashMap<LongLongKey, RendererTemplate> compiledRenderers = new HashMap<LongLongKey, RendererTemplate>();
+	private final Map<LongLongKey, RendererTemplate> compiledRenderers = new ConcurrentHashMap<LongLongKey, RendererTemplate>();
+	// Renderers used while their specialization is pending
+	private final Map<LongLongKey, GenericRenderer> genericRenderers = new ConcurrentHashMap<LongLongKey, GenericRenderer>();
+	// The variables of all the GE states seen for the current game
+	private final Map<LongLongKey, HashMap<String, Object>> knownVariables = new ConcurrentHashMap<LongLongKey, HashMap<String, Object>>();
 	private static int classNameId = 0;
+	private final ExecutorService compilerThread;
+	private boolean asyncCompilation = true;
+	private String cacheDirectory;
+	private boolean knownVariablesChanged;
+	// Statistics
+	private volatile long compilationDurationMillis;
+	private volatile int compilationCount;
+	private int preloadedCount;
+	private int genericPrimitivesCount;
+	private int framesCount;
+	private int genericFramesCount;
+	private boolean genericUsedInFrame;
 
 	public static FilterCompiler getInstance() {
 		if (instance == null) {
@@ -52,29 +101,113 @@ public class FilterCompiler {
 	}
 
 	private FilterCompiler() {
+		// All the class specializations are performed by this single thread
+		compilerThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "FilterCompiler Thread");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * To be called at the start of each display.
+	 * Loads the GE states known for the current game when the game has changed.
+	 */
+	public void startDisplay() {
+		asyncCompilation = Settings.getInstance().readBool(settingsAsyncCompilation);
+
+		framesCount++;
+		if (genericUsedInFrame) {
+			genericFramesCount++;
+			genericUsedInFrame = false;
+		}
+
+		String discId = State.discId;
+		String directory = null;
+		if (!State.DISCID_UNKNOWN_NOTHING_LOADED.equals(discId) && !State.DISCID_UNKNOWN_FILE.equals(discId) && !State.DISCID_UNKNOWN_UMD.equals(discId)) {
+			directory = Settings.getInstance().getDiscTmpDirectory();
+		}
+		if (directory != null && !directory.equals(cacheDirectory)) {
+			saveKnownVariables();
+			knownVariables.clear();
+			cacheDirectory = directory;
+			loadKnownVariables();
+		}
 	}
 
 	public RendererTemplate getCompiledRenderer(BasePrimitiveRenderer renderer, LongLongKey id, GeContext context) {
 		RendererTemplate compiledRenderer = compiledRenderers.get(id);
-		if (compiledRenderer == null) {
-			compiledRenderer = compileRenderer(renderer, id, context);
-			if (compiledRenderer != null) {
-				compiledRenderers.put(id, compiledRenderer);
+		if (compiledRenderer != null) {
+			return compiledRenderer;
+		}
+
+		GenericRenderer genericRenderer = genericRenderers.get(id);
+		if (genericRenderer == null) {
+			HashMap<String, Object> variables = getVariables(renderer, context);
+			if (knownVariables.put(id, variables) == null) {
+				knownVariablesChanged = true;
+			}
+
+			if (!asyncCompilation) {
+				// Wait for the specialization
+				Future<?> future = submitCompilation(id, variables);
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					log.error("FilterCompiler", e);
+				} catch (ExecutionException e) {
+					log.error("FilterCompiler", e);
+				}
+
+				compiledRenderer = compiledRenderers.get(id);
+				if (compiledRenderer != null) {
+					return compiledRenderer;
+				}
+			}
+
+			genericRenderer = new GenericRenderer(variables);
+			genericRenderers.put(id, genericRenderer);
+			if (asyncCompilation) {
+				submitCompilation(id, variables);
 			}
 		}
 
-		return compiledRenderer;
+		genericPrimitivesCount++;
+		genericUsedInFrame = true;
+
+		return genericRenderer;
+	}
+
+	private Future<?> submitCompilation(final LongLongKey id, final HashMap<String, Object> variables) {
+		return compilerThread.submit(new Runnable() {
+			@Override
+			public void run() {
+				if (compiledRenderers.containsKey(id)) {
+					return;
+				}
+
+				long start = System.currentTimeMillis();
+				RendererTemplate compiledRenderer = compileRenderer(id, variables);
+				compilationDurationMillis += System.currentTimeMillis() - start;
+				compilationCount++;
+
+				if (compiledRenderer != null) {
+					compiledRenderers.put(id, compiledRenderer);
+					genericRenderers.remove(id);
+				}
+			}
+		});
 	}
 
 	private static String getNewCompiledRendererClassName() {
 		return String.format("Renderer%d", classNameId++);
 	}
 
-	private RendererTemplate compileRenderer(BasePrimitiveRenderer renderer, LongLongKey id, GeContext context) {
-		if (log.isInfoEnabled()) {
-			log.info(String.format("Compiling Renderer %s", id));
-		}
-
+	private static HashMap<String, Object> getVariables(BasePrimitiveRenderer renderer, GeContext context) {
 		HashMap<String, Object> variables = new HashMap<String, Object>();
 		// All these variables have to be defined as static members in the class RendererTemplate.
 		variables.put("hasMemInt", Boolean.valueOf(RuntimeContext.hasMemoryInt()));
@@ -145,10 +278,19 @@ public class FilterCompiler {
 		variables.put("needTextureWrapU", Boolean.valueOf(renderer.needTextureWrapU));
 		variables.put("needTextureWrapV", Boolean.valueOf(renderer.needTextureWrapV));
 		variables.put("needSourceDepthClamp", Boolean.valueOf(renderer.needSourceDepthClamp));
+		variables.put("useBlockRasterizer", Boolean.valueOf(renderer.useBlockRasterizer));
 		variables.put("isLogTraceEnabled", Boolean.valueOf(renderer.isLogTraceEnabled));
 		variables.put("collectStatistics", Boolean.valueOf(DurationStatistics.collectStatistics));
 		variables.put("ditherFlagEnabled", Boolean.valueOf(context.ditherFlag.isEnabled()));
 
+		return variables;
+	}
+
+	private RendererTemplate compileRenderer(LongLongKey id, HashMap<String, Object> variables) {
+		if (log.isInfoEnabled()) {
+			log.info(String.format("Compiling Renderer %s", id));
+		}
+
 		String specializedClassName = getNewCompiledRendererClassName();
 		ClassSpecializer cs = new ClassSpecializer();
 		Class<?> specializedClass = cs.specialize(specializedClassName, RendererTemplate.class, variables);
@@ -166,15 +308,179 @@ public class FilterCompiler {
 		return compiledRenderer;
 	}
 
+	private File getCacheFile() {
+		return new File(cacheDirectory + cacheFileName);
+	}
+
+	/**
+	 * Compute a hash of the class files defining the layout of the renderer keys.
+	 * The saved renderer keys are only valid for the same layout,
+	 * even when the variable names are unchanged.
+	 *
+	 * @return the hash, or 0 if it cannot be computed
+	 */
+	private static synchronized long getLayoutHash() {
+		if (layoutHash == 0L) {
+			CRC32 crc = new CRC32();
+			byte[] buffer = new byte[4096];
+			for (Class<?> c : layoutClasses) {
+				InputStream is = c.getResourceAsStream(c.getSimpleName() + ".class");
+				if (is == null) {
+					return 0L;
+				}
+				try {
+					try {
+						for (int length = is.read(buffer); length > 0; length = is.read(buffer)) {
+							crc.update(buffer, 0, length);
+						}
+					} finally {
+						is.close();
+					}
+				} catch (IOException e) {
+					return 0L;
+				}
+			}
+			// Keep the value 0 for "cannot be computed"
+			layoutHash = (crc.getValue() << 1) | 1L;
+		}
+
+		return layoutHash;
+	}
+
+	/**
+	 * Read the GE states known for the current game
+	 * and specialize them in advance.
+	 */
+	private void loadKnownVariables() {
+		File cacheFile = getCacheFile();
+		if (!cacheFile.canRead() || getLayoutHash() == 0L) {
+			return;
+		}
+
+		try {
+			DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+			try {
+				// Drop the GE states saved with a different renderer key layout
+				if (is.readInt() != cacheFileVersion || is.readLong() != getLayoutHash()) {
+					if (log.isDebugEnabled()) {
+						log.debug(String.format("Ignoring %s saved by a different version of the renderers", cacheFile));
+					}
+					return;
+				}
+				int count = is.readInt();
+				for (int i = 0; i < count; i++) {
+					LongLongKey id = new LongLongKey(is.readLong(), is.readLong());
+					int numberVariables = is.readInt();
+					HashMap<String, Object> variables = new HashMap<String, Object>();
+					for (int j = 0; j < numberVariables; j++) {
+						String name = is.readUTF();
+						byte type = is.readByte();
+						switch (type) {
+							case TYPE_BOOLEAN: variables.put(name, Boolean.valueOf(is.readBoolean())); break;
+							case TYPE_INT:     variables.put(name, Integer.valueOf(is.readInt())); break;
+							case TYPE_FLOAT:   variables.put(name, Float.valueOf(is.readFloat())); break;
+							default:
+								log.error(String.format("Invalid variable type %d in %s", type, cacheFile));
+								return;
+						}
+					}
+
+					// Ignore the GE states saved by a different version of RendererTemplate
+					if (GenericRenderer.isValidVariables(variables)) {
+						knownVariables.put(id, variables);
+					}
+				}
+			} finally {
+				is.close();
+			}
+		} catch (IOException e) {
+			log.error(String.format("Cannot read %s: %s", cacheFile, e));
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Specializing %d renderers in advance from %s", knownVariables.size(), cacheFile));
+		}
+
+		for (Map.Entry<LongLongKey, HashMap<String, Object>> entry : knownVariables.entrySet()) {
+			LongLongKey id = entry.getKey();
+			if (!compiledRenderers.containsKey(id) && !genericRenderers.containsKey(id)) {
+				genericRenderers.put(id, new GenericRenderer(entry.getValue()));
+				submitCompilation(id, entry.getValue());
+				preloadedCount++;
+			}
+		}
+	}
+
+	/**
+	 * Save the GE states known for the current game.
+	 */
+	private void saveKnownVariables() {
+		if (cacheDirectory == null || !knownVariablesChanged || getLayoutHash() == 0L) {
+			return;
+		}
+		knownVariablesChanged = false;
+
+		File cacheFile = getCacheFile();
+		cacheFile.getParentFile().mkdirs();
+
+		// Write to a temporary file first so that a partially written
+		// file is never read at the next start.
+		File tmpFile = new File(cacheFile.getPath() + ".tmp");
+		try {
+			DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				os.writeInt(cacheFileVersion);
+				os.writeLong(getLayoutHash());
+				os.writeInt(knownVariables.size());
+				for (Map.Entry<LongLongKey, HashMap<String, Object>> entry : knownVariables.entrySet()) {
+					os.writeLong(entry.getKey().getKey1());
+					os.writeLong(entry.getKey().getKey2());
+					HashMap<String, Object> variables = entry.getValue();
+					os.writeInt(variables.size());
+					for (Map.Entry<String, Object> variable : variables.entrySet()) {
+						os.writeUTF(variable.getKey());
+						Object value = variable.getValue();
+						if (value instanceof Boolean) {
+							os.writeByte(TYPE_BOOLEAN);
+							os.writeBoolean(((Boolean) value).booleanValue());
+						} else if (value instanceof Float) {
+							os.writeByte(TYPE_FLOAT);
+							os.writeFloat(((Float) value).floatValue());
+						} else {
+							os.writeByte(TYPE_INT);
+							os.writeInt(((Number) value).intValue());
+						}
+					}
+				}
+			} finally {
+				os.close();
+			}
+			cacheFile.delete();
+			if (!tmpFile.renameTo(cacheFile)) {
+				tmpFile.delete();
+			}
+		} catch (IOException e) {
+			log.error(String.format("Cannot write %s: %s", cacheFile, e));
+			tmpFile.delete();
+		}
+	}
+
 	public static void exit() {
 		if (instance == null) {
 			return;
 		}
 
+		instance.saveKnownVariables();
+
+		if (log.isInfoEnabled() && instance.framesCount > 0) {
+			log.info(String.format("FilterCompiler: %d renderers compiled in %d ms (%d in advance), generic renderer used by %d primitives in %d of %d frames", instance.compilationCount, instance.compilationDurationMillis, instance.preloadedCount, instance.genericPrimitivesCount, instance.genericFramesCount, instance.framesCount));
+		}
+
 		if (log.isInfoEnabled() && DurationStatistics.collectStatistics) {
-			DurationStatistics[] statistics = new DurationStatistics[instance.compiledRenderers.size()];
+			RendererTemplate[] renderers = instance.compiledRenderers.values().toArray(new RendererTemplate[0]);
+			DurationStatistics[] statistics = new DurationStatistics[renderers.length];
 			int n = 0;
-			for (RendererTemplate renderer : instance.compiledRenderers.values()) {
+			for (RendererTemplate renderer : renderers) {
 				statistics[n++] = renderer.getStatistics();
 			}
 			Arrays.sort(statistics, 0, n);
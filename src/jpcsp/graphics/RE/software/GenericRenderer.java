@@ -0,0 +1,102 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics.RE.software;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.graphics.VideoEngine;
+
+/**
+ * Renderer used while the specialized renderer for a GE state
+ * is being compiled by the FilterCompiler.
+ *
+ * The non-specialized code of RendererTemplate is executed, after having
+ * set its static members to the values of the GE state.
+ * This is slower than a specialized renderer but does not require
+ * to wait for the class specialization.
+ */
+public class GenericRenderer extends RendererTemplate {
+	private static Logger log = VideoEngine.log;
+	private static final HashMap<String, Field> variableFields = getVariableFields();
+	// The renderer whose variables are currently set in RendererTemplate
+	private static GenericRenderer currentRenderer;
+	private final Field[] fields;
+	private final Object[] values;
+
+	public GenericRenderer(Map<String, Object> variables) {
+		fields = new Field[variables.size()];
+		values = new Object[variables.size()];
+		int n = 0;
+		for (Map.Entry<String, Object> entry : variables.entrySet()) {
+			fields[n] = variableFields.get(entry.getKey());
+			values[n] = entry.getValue();
+			n++;
+		}
+	}
+
+	private static HashMap<String, Field> getVariableFields() {
+		HashMap<String, Field> variableFields = new HashMap<String, Field>();
+		for (Field field : RendererTemplate.class.getFields()) {
+			int modifiers = field.getModifiers();
+			if (Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+				variableFields.put(field.getName(), field);
+			}
+		}
+
+		return variableFields;
+	}
+
+	/**
+	 * Check if a set of variables is defining all the static members
+	 * of RendererTemplate and only those.
+	 *
+	 * @param variables  the variables
+	 * @return           true if the variables can be used to specialize RendererTemplate
+	 */
+	public static boolean isValidVariables(Map<String, Object> variables) {
+		return variables.keySet().equals(variableFields.keySet());
+	}
+
+	private void setVariables() {
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				fields[i].set(null, values[i]);
+			}
+		} catch (IllegalAccessException e) {
+			log.error("GenericRenderer", e);
+		}
+		initStatistics();
+	}
+
+	@Override
+	public void render(BasePrimitiveRenderer renderer) {
+		// The static members of RendererTemplate are shared by all
+		// the generic renderers.
+		synchronized (GenericRenderer.class) {
+			if (currentRenderer != this) {
+				setVariables();
+				currentRenderer = this;
+			}
+			super.render(renderer);
+		}
+	}
+}
@@ -80,6 +80,38 @@ public class ImageWriter {
 			}
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			while (n > 0) {
+				// Write up to the end of the current line
+				int count = Math.min(n, minWidth - x);
+				imageWriter.writeNext(values, valuesOffset, count);
+				valuesOffset += count;
+				n -= count;
+				x += count;
+				if (x >= minWidth) {
+					imageWriter.skip(skipWidth);
+					x = 0;
+				}
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			while (n > 0) {
+				// Write up to the end of the current line
+				int count = Math.min(n, minWidth - x);
+				imageWriter.writeNext(values, valuesOffset, count);
+				valuesOffset += count;
+				n -= count;
+				x += count;
+				if (x >= minWidth) {
+					imageWriter.skip(skipWidth);
+					x = 0;
+				}
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			if (n > 0) {
@@ -179,6 +211,20 @@ public class ImageWriter {
 			memoryReaderWriter.writeNext(color8888to4444(value));
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			memoryReaderWriter.skip(n);
@@ -212,6 +258,20 @@ public class ImageWriter {
 			memoryReaderWriter.writeNext(color8888to5551(value));
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			memoryReaderWriter.skip(n);
@@ -245,6 +305,20 @@ public class ImageWriter {
 			memoryReaderWriter.writeNext(color8888to565(value));
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			memoryReaderWriter.skip(n);
@@ -29,6 +29,7 @@ import jpcsp.graphics.RE.IRenderingEngine;
 import jpcsp.graphics.RE.NullRenderingEngine;
 import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.ImageReader;
+import jpcsp.settings.Settings;
 import jpcsp.util.DurationStatistics;
 import jpcsp.util.Utilities;
 
@@ -41,16 +42,19 @@ import jpcsp.util.Utilities;
  */
 public class RESoftware extends NullRenderingEngine {
 	private static final boolean useTextureCache = true;
+	private static boolean useBlockRasterizer;
     protected int genTextureId;
     protected int bindTexture;
-    protected VertexState v1 = new VertexState();
-    protected VertexState v2 = new VertexState();
-    protected VertexState v3 = new VertexState();
-    protected VertexState v4 = new VertexState();
-    protected VertexState v5 = new VertexState();
-    protected VertexState v6 = new VertexState();
+    protected TransformedVertexState v1 = new TransformedVertexState();
+    protected TransformedVertexState v2 = new TransformedVertexState();
+    protected TransformedVertexState v3 = new TransformedVertexState();
+    protected TransformedVertexState v4 = new TransformedVertexState();
+    protected TransformedVertexState v5 = new TransformedVertexState();
+    protected TransformedVertexState v6 = new TransformedVertexState();
     protected RendererExecutor rendererExecutor;
     protected HashMap<Integer, CachedTextureResampled> cachedTextures = new HashMap<Integer, CachedTextureResampled>();
+    protected SoftwareTextureCache softwareTextureCache;
+    protected VertexProcessor vertexProcessor = new VertexProcessor();
     protected int textureBufferWidth;
     protected static DurationStatistics drawArraysStatistics = new DurationStatistics("RESoftware drawArrays");
     public static DurationStatistics triangleRender3DStatistics = new DurationStatistics("RESoftware TriangleRender3D");
@@ -65,6 +69,8 @@ public class RESoftware extends NullRenderingEngine {
 
     public RESoftware() {
     	log.info("Using SoftwareRenderer");
+    	// The cache size is defined in MB
+    	softwareTextureCache = new SoftwareTextureCache(Settings.getInstance().readInt("emu.softwareTextureCacheSize") * 1024);
     }
 
     @Override
@@ -76,13 +82,26 @@ public class RESoftware extends NullRenderingEngine {
 			log.info(spriteRenderStatistics);
 			log.info(cachedTextureStatistics);
 			log.info(textureResamplingStatistics);
+			log.info(softwareTextureCache.statistics);
+			log.info(VertexProcessor.vertexProcessingStatistics);
 		}
+		vertexProcessor.exit();
 	}
 
 	@Override
 	public void startDisplay() {
 		context = VideoEngine.getInstance().getContext();
 		rendererExecutor = RendererExecutor.getInstance();
+		useBlockRasterizer = Settings.getInstance().readBool("emu.useBlockRasterizer");
+		FilterCompiler.getInstance().startDisplay();
+	}
+
+	public static boolean isUseBlockRasterizer() {
+		return useBlockRasterizer;
+	}
+
+	public static void setUseBlockRasterizer(boolean useBlockRasterizer) {
+		RESoftware.useBlockRasterizer = useBlockRasterizer;
 	}
 
 	@Override
@@ -120,6 +139,9 @@ public class RESoftware extends NullRenderingEngine {
 			int addr2 = context.vinfo.getAddress(mem, i + 1);
 			context.vinfo.readVertex(mem, addr1, v1, readTexture, VideoEngine.getInstance().isDoubleTexture2DCoords());
 			context.vinfo.readVertex(mem, addr2, v2, readTexture, VideoEngine.getInstance().isDoubleTexture2DCoords());
+			// The screen coordinates have not been computed for these vertices
+			v1.hasScreenCoordinates = false;
+			v2.hasScreenCoordinates = false;
 
 			drawSprite(spriteRenderer, v1, v2);
 		}
@@ -203,32 +225,30 @@ public class RESoftware extends NullRenderingEngine {
 		bufferVertexReader = null;
 	}
 
-	protected void readVertex(Memory mem, int index, VertexState v, boolean readTexture) {
-		if (bufferVertexReader == null) {
-			int addr = context.vinfo.getAddress(mem, index);
-			context.vinfo.readVertex(mem, addr, v, readTexture, VideoEngine.getInstance().isDoubleTexture2DCoords());
-		} else {
-			// This is used for spline and bezier curves:
-			// the VideoEngine is computing the vertices and is pushing them into a buffer.
-			bufferVertexReader.readVertex(index, v);
-		}
-		if (context.vinfo.weight != 0) {
-			VideoEngine.doSkinning(context.bone_uploaded_matrix, context.vinfo, v);
-		}
+	protected void processVertices(TriangleRenderer triangleRenderer, int first, int count) {
+		boolean readTexture = context.textureFlag.isEnabled() && !context.clearMode;
+		// When bufferVertexReader is set, it is used for spline and bezier curves:
+		// the VideoEngine is computing the vertices and is pushing them into a buffer.
+		// Otherwise, the vertices are read from the memory.
+		vertexProcessor.process(context, bufferVertexReader, triangleRenderer, first, count, readTexture);
+	}
+
+	protected void readVertex(int index, TransformedVertexState v) {
+		// The vertex has already been read, skinned and transformed by processVertices()
+		vertexProcessor.readVertex(index, v);
 	}
 
 	protected void drawArraysTriangleStrips(int first, int count) {
-		Memory mem = Memory.getInstance();
 		CachedTextureResampled cachedTexture = getCachedTexture();
 		TriangleRenderer triangleRenderer = new TriangleRenderer(context, cachedTexture, useVertexTexture);
+		processVertices(triangleRenderer, first, count);
 		SpriteRenderer spriteRenderer = null;
-		VertexState tv1 = null;
-		VertexState tv2 = null;
-		VertexState tv3 = null;
-		VertexState tv4 = v1;
-		boolean readTexture = context.textureFlag.isEnabled() && !context.clearMode;
+		TransformedVertexState tv1 = null;
+		TransformedVertexState tv2 = null;
+		TransformedVertexState tv3 = null;
+		TransformedVertexState tv4 = v1;
 		for (int i = 0; i < count; i++) {
-			readVertex(mem, first + i, tv4, readTexture);
+			readVertex(first + i, tv4);
 			if (tv3 != null) {
 				// Displaying a sprite (i.e. rectangular area) is faster.
 				// Try to merge adjacent triangles if they form a sprite.
@@ -248,7 +268,7 @@ public class RESoftware extends NullRenderingEngine {
 				} else {
 					// The Front face direction is inverted every 2 triangles in the strip.
 					drawTriangle(triangleRenderer, tv1, tv2, tv3, ((i - 3) & 1) != 0);
-					VertexState v = tv1;
+					TransformedVertexState v = tv1;
 					tv1 = tv2;
 					tv2 = tv3;
 					tv3 = tv4;
@@ -273,32 +293,30 @@ public class RESoftware extends NullRenderingEngine {
 	}
 
 	protected void drawArraysTriangles(int first, int count) {
-		Memory mem = Memory.getInstance();
 		CachedTextureResampled cachedTexture = getCachedTexture();
 		TriangleRenderer triangleRenderer = new TriangleRenderer(context, cachedTexture, useVertexTexture);
-		boolean readTexture = context.textureFlag.isEnabled() && !context.clearMode;
-		for (int i = 0; i < count; i += 3) {
-			readVertex(mem, first + i, v1, readTexture);
-			readVertex(mem, first + i + 1, v2, readTexture);
-			readVertex(mem, first + i + 2, v3, readTexture);
+		processVertices(triangleRenderer, first, count);
+		for (int i = 0; i + 2 < count; i += 3) {
+			readVertex(first + i, v1);
+			readVertex(first + i + 1, v2);
+			readVertex(first + i + 2, v3);
 
 			drawTriangle(triangleRenderer, v1, v2, v3, false);
 		}
 	}
 
 	protected void drawArraysTriangleFan(int first, int count) {
-		Memory mem = Memory.getInstance();
 		CachedTextureResampled cachedTexture = getCachedTexture();
 		TriangleRenderer triangleRenderer = new TriangleRenderer(context, cachedTexture, useVertexTexture);
-		VertexState tv1 = null;
-		VertexState tv2 = null;
-		VertexState tv3 = v1;
-		boolean readTexture = context.textureFlag.isEnabled() && !context.clearMode;
+		processVertices(triangleRenderer, first, count);
+		TransformedVertexState tv1 = null;
+		TransformedVertexState tv2 = null;
+		TransformedVertexState tv3 = v1;
 		for (int i = 0; i < count; i++) {
-			readVertex(mem, first + i, tv3, readTexture);
+			readVertex(first + i, tv3);
 			if (tv2 != null) {
 				drawTriangle(triangleRenderer, tv1, tv2, tv3, false);
-				VertexState v = tv2;
+				TransformedVertexState v = tv2;
 				tv2 = tv3;
 				tv3 = v;
 			} else if (tv1 == null) {
@@ -398,9 +416,17 @@ public class RESoftware extends NullRenderingEngine {
 			// TODO Cache all the texture levels
 			if (level == 0) {
 				int bufferWidth = context.texture_buffer_width[level];
-				IMemoryReader imageReader = ImageReader.getImageReader(context.texture_base_pointer[level], width, height, bufferWidth, internalFormat, false, 0, 0, 0, 0, 0, 0, null, null);
-				CachedTexture cachedTexture = CachedTexture.getCachedTexture(Math.min(width, bufferWidth), height, internalFormat, imageReader);
-				CachedTextureResampled cachedTextureResampled = new CachedTextureResampled(cachedTexture);
+				// The buffer is containing the compressed texture read from the memory
+				SoftwareTextureCache.TextureKey key = softwareTextureCache.getKey(width, height, bufferWidth, internalFormat, buffer, compressedSize, true);
+				CachedTextureResampled cachedTextureResampled = key == null ? null : softwareTextureCache.getTexture(key);
+				if (cachedTextureResampled == null) {
+					IMemoryReader imageReader = ImageReader.getImageReader(context.texture_base_pointer[level], width, height, bufferWidth, internalFormat, false, 0, 0, 0, 0, 0, 0, null, null);
+					CachedTexture cachedTexture = CachedTexture.getCachedTexture(Math.min(width, bufferWidth), height, internalFormat, imageReader);
+					cachedTextureResampled = new CachedTextureResampled(cachedTexture);
+					if (key != null) {
+						softwareTextureCache.addTexture(key, cachedTextureResampled);
+					}
+				}
 				cachedTextures.put(bindTexture, cachedTextureResampled);
 			}
 			cachedTextureStatistics.end();
@@ -413,13 +439,20 @@ public class RESoftware extends NullRenderingEngine {
 			cachedTextureStatistics.start();
 			// TODO Cache all the texture levels
 			if (level == 0) {
-				CachedTexture cachedTexture = null;
-				if (buffer instanceof IntBuffer) {
-					cachedTexture = CachedTexture.getCachedTexture(textureBufferWidth, height, format, ((IntBuffer) buffer).array(), buffer.arrayOffset(), textureSize >> 2);
-				} else if (buffer instanceof ShortBuffer) {
-					cachedTexture = CachedTexture.getCachedTexture(textureBufferWidth, height, format, ((ShortBuffer) buffer).array(), buffer.arrayOffset(), textureSize >> 1);
+				SoftwareTextureCache.TextureKey key = softwareTextureCache.getKey(textureBufferWidth, height, textureBufferWidth, format, buffer, textureSize, false);
+				CachedTextureResampled cachedTextureResampled = key == null ? null : softwareTextureCache.getTexture(key);
+				if (cachedTextureResampled == null) {
+					CachedTexture cachedTexture = null;
+					if (buffer instanceof IntBuffer) {
+						cachedTexture = CachedTexture.getCachedTexture(textureBufferWidth, height, format, ((IntBuffer) buffer).array(), buffer.arrayOffset(), textureSize >> 2);
+					} else if (buffer instanceof ShortBuffer) {
+						cachedTexture = CachedTexture.getCachedTexture(textureBufferWidth, height, format, ((ShortBuffer) buffer).array(), buffer.arrayOffset(), textureSize >> 1);
+					}
+					cachedTextureResampled = new CachedTextureResampled(cachedTexture);
+					if (key != null) {
+						softwareTextureCache.addTexture(key, cachedTextureResampled);
+					}
 				}
-				CachedTextureResampled cachedTextureResampled = new CachedTextureResampled(cachedTexture);
 				cachedTextures.put(bindTexture, cachedTextureResampled);
 			}
 			cachedTextureStatistics.end();
@@ -478,6 +511,9 @@ public class RESoftware extends NullRenderingEngine {
 	@Override
 	public void waitForRenderingCompletion() {
 		rendererExecutor.waitForRenderingCompletion();
+
+		// The depth buffer might now be modified outside of the rendering
+		CoarseDepthBuffer.invalidateAll();
 	}
 
 	@Override
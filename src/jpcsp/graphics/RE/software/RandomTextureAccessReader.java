@@ -34,9 +34,7 @@ public class RandomTextureAccessReader implements IRandomTextureAccess {
 		// Read the whole texture into the "pixels" array
 		final int length = width * height;
 		pixels = new int[length];
-		for (int i = 0; i < length; i++) {
-			pixels[i] = imageReader.readNext();
-		}
+		imageReader.readNext(pixels, 0, length);
 	}
 
 	@Override
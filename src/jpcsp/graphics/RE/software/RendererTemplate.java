@@ -109,6 +109,7 @@ public class RendererTemplate {
 	public static boolean setVertexPrimaryColor;
 	public static boolean primaryColorSetGlobally;
 	public static boolean isTriangle;
+	public static boolean useBlockRasterizer;
 	public static boolean matFlagAmbient;
 	public static boolean matFlagDiffuse;
 	public static boolean matFlagSpecular;
@@ -138,6 +139,10 @@ public class RendererTemplate {
 	private static DurationStatistics statistics;
 
 	public RendererTemplate() {
+		initStatistics();
+	}
+
+	protected void initStatistics() {
 		if (collectStatistics) {
 			if (statistics == null) {
 				statistics = new DurationStatistics(String.format("Duration %s", getClass().getName()));
@@ -336,6 +341,30 @@ public class RendererTemplate {
 		float pixelV = 0f;
 		boolean needResample = prim.needResample;
 
+		// Classify the triangle blocks as outside or occluded
+		BlockRasterizer blockRasterizer = null;
+		CoarseDepthBuffer coarseDepthBuffer = null;
+		int depthCullingFunc = -1;
+		if (useBlockRasterizer) {
+			if (rasterizer != null) {
+				blockRasterizer = BlockRasterizer.getInstance();
+				if (!blockRasterizer.init(prim)) {
+					blockRasterizer = null;
+				}
+			}
+			coarseDepthBuffer = CoarseDepthBuffer.getInstance();
+			if (!coarseDepthBuffer.startRender(renderer, blockRasterizer != null)) {
+				coarseDepthBuffer = null;
+			}
+			// The pixels failing the stencil or depth test might still update the stencil value
+			boolean stencilUpdate = stencilTestFlagEnabled && (stencilOpFail != GeCommands.SOP_KEEP_STENCIL_VALUE || stencilOpZFail != GeCommands.SOP_KEEP_STENCIL_VALUE);
+			if (depthTestFlagEnabled && !clearMode && needDestinationDepthRead && !stencilUpdate) {
+				if (depthFunc != GeCommands.ZTST_FUNCTION_NEVER_PASS_PIXEL && depthFunc != GeCommands.ZTST_FUNCTION_ALWAYS_PASS_PIXEL && depthFunc != GeCommands.ZTST_FUNCTION_PASS_PX_WHEN_DEPTH_ISNOT_EQUAL) {
+					depthCullingFunc = depthFunc;
+				}
+			}
+		}
+
         for (int y = prim.pyMin; y <= prim.pyMax; y++) {
     		int startX = prim.pxMin;
     		int endX = prim.pxMax;
@@ -347,6 +376,17 @@ public class RendererTemplate {
         			VideoEngine.log.trace(String.format("Rasterizer line (%d-%d,%d)", startX, endX, y));
     			}
     		}
+    		if (useBlockRasterizer && blockRasterizer != null) {
+    			if (y == prim.pyMin || (y & (BlockRasterizer.BLOCK_SIZE - 1)) == 0) {
+    				blockRasterizer.prepareBlockRow(y >> BlockRasterizer.BLOCK_SIZE_SHIFT, coarseDepthBuffer, depthCullingFunc, needDepthWrite);
+    			}
+    			// The pixels after the last rendered block are skipped at the end of the line
+    			endX = min(endX, blockRasterizer.getLastRenderedX());
+    			if (blockRasterizer.getFirstRenderedX() > endX) {
+    				// No pixel to be rendered on this line
+    				endX = startX - 1;
+    			}
+    		}
     		if (isTriangle && startX > endX) {
     			if (hasMemInt && psm == TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888) {
     				fbIndex += prim.destinationWidth + renderer.imageWriterSkipEOL;
@@ -388,6 +428,25 @@ public class RendererTemplate {
 	    				}
 	    			}
 	    			prim.computeTriangleWeights(pixel, startX, y);
+	    			if (useBlockRasterizer && blockRasterizer != null && blockRasterizer.getFirstRenderedX() > startX) {
+	    				// Skip the pixels before the first rendered block.
+	    				// The triangle weights are updated as if each pixel was rendered.
+	    				int blockSkip = blockRasterizer.getFirstRenderedX() - startX;
+	        			if (hasMemInt && psm == TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888) {
+	        				fbIndex += blockSkip;
+	        				if (needDepthWrite || needDestinationDepthRead) {
+	    	    				depthOffset += blockSkip;
+	    	    				depthIndex += depthOffset >> 1;
+	    	    				depthOffset &= 1;
+	        				}
+	        			} else {
+		    				rendererWriter.skip(blockSkip, blockSkip);
+	        			}
+	        			for (int i = 0; i < blockSkip; i++) {
+	        				prim.deltaXTriangleWeigths(pixel);
+	        			}
+	        			startX += blockSkip;
+	    			}
 	    		}
 	        	for (int x = startX; x <= endX; x++) {
 	            	// Use a dummy "do { } while (false);" loop to allow to exit
@@ -0,0 +1,239 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics.RE.software;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.Memory;
+import jpcsp.Allegrex.compiler.RuntimeContext;
+import jpcsp.graphics.GeCommands;
+import jpcsp.graphics.VideoEngine;
+import jpcsp.graphics.RE.IRenderingEngine;
+import jpcsp.util.CacheStatistics;
+import jpcsp.util.Hash;
+
+/**
+ * Cache of the textures decoded by the software Rendering Engine (RESoftware).
+ *
+ * The textures are identified by their content, not by their texture id:
+ * the same texels (after the CLUT has been applied) uploaded under different
+ * texture ids are decoded only once and share their resampled textures.
+ * The resampled textures are still only built when a primitive requires them.
+ *
+ * The cache is limited by the number of bytes used by the decoded and
+ * resampled textures, the least recently used textures are removed first.
+ * A removed texture is still available to the texture ids currently bound to it.
+ *
+ * This class is only accessed by the GE thread.
+ */
+public class SoftwareTextureCache {
+	private static Logger log = VideoEngine.log;
+	private final LinkedHashMap<TextureKey, Entry> cache = new LinkedHashMap<TextureKey, Entry>(16, 0.75f, true);
+	private final long maxSizeInBytes;
+	private long sizeInBytes;
+	// Sizes are reported in KB
+	public CacheStatistics statistics;
+
+	private static class Entry {
+		private final CachedTextureResampled texture;
+		private int sizeInBytes;
+
+		public Entry(CachedTextureResampled texture) {
+			this.texture = texture;
+		}
+	}
+
+	/**
+	 * Identification of a texture by its dimensions, its pixel format,
+	 * the number of its texels, a 64-bit hash of its texels
+	 * and a checksum of its texels.
+	 * The checksum, computed independently of the hash, is compared
+	 * on a hit so that a hash collision does not return a wrong texture.
+	 */
+	public static class TextureKey {
+		private final int width;
+		private final int height;
+		private final int bufferWidth;
+		private final int pixelFormat;
+		private final int length;
+		private final long hashCode;
+		private final long checksum;
+
+		public TextureKey(int width, int height, int bufferWidth, int pixelFormat, int length, long hashCode, long checksum) {
+			this.width = width;
+			this.height = height;
+			this.bufferWidth = bufferWidth;
+			this.pixelFormat = pixelFormat;
+			this.length = length;
+			this.hashCode = hashCode;
+			this.checksum = checksum;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof TextureKey) {
+				TextureKey key = (TextureKey) obj;
+				return hashCode == key.hashCode &&
+				       width == key.width &&
+				       height == key.height &&
+				       bufferWidth == key.bufferWidth &&
+				       pixelFormat == key.pixelFormat &&
+				       length == key.length &&
+				       checksum == key.checksum;
+			}
+			return super.equals(obj);
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (hashCode ^ (hashCode >>> 32));
+		}
+
+		@Override
+		public String toString() {
+			return String.format("TextureKey(%dx%d, bufferWidth=%d, %s, hash=0x%016X)", width, height, bufferWidth, VideoEngine.getPsmName(pixelFormat), hashCode);
+		}
+	}
+
+	/**
+	 * @param maxSizeInKB  the maximum number of KB used by the cached textures
+	 */
+	public SoftwareTextureCache(int maxSizeInKB) {
+		maxSizeInBytes = maxSizeInKB * 1024L;
+		statistics = new CacheStatistics("Software Texture", maxSizeInKB);
+	}
+
+	/**
+	 * Compute the key of a texture uploaded by setTexImage or by setCompressedTexImage.
+	 *
+	 * @param width         the texture width
+	 * @param height        the texture height
+	 * @param bufferWidth   the texture buffer width
+	 * @param pixelFormat   the texture pixel format
+	 * @param buffer        the texture buffer (IntBuffer or ShortBuffer)
+	 * @param sizeInBytes   the texture size in bytes
+	 * @param compressed    true if the texture is compressed
+	 * @return              the texture key, or null if the texture cannot be cached
+	 */
+	public TextureKey getKey(int width, int height, int bufferWidth, int pixelFormat, Buffer buffer, int sizeInBytes, boolean compressed) {
+		if (!compressed) {
+			// The CLUT of indexed textures is only applied when rendering
+			// and is not part of their texels.
+			if (IRenderingEngine.isTextureTypeIndexed[pixelFormat]) {
+				return null;
+			}
+
+			if (buffer instanceof IntBuffer && ((IntBuffer) buffer).array() == RuntimeContext.getMemoryInt()) {
+				// A texture directly using the memory array cannot be shared,
+				// its content is changing with the memory.
+				if (pixelFormat == GeCommands.TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888) {
+					return null;
+				}
+				// VRAM textures are changing at each frame
+				if (Memory.isVRAM(buffer.arrayOffset() << 2)) {
+					return null;
+				}
+			}
+		}
+
+		long hashCode;
+		long checksum;
+		int length;
+		if (buffer instanceof IntBuffer) {
+			length = sizeInBytes >> 2;
+			int[] array = ((IntBuffer) buffer).array();
+			hashCode = Hash.getHashCode64(0L, array, buffer.arrayOffset(), length);
+			checksum = Hash.getChecksum(array, buffer.arrayOffset(), length);
+		} else if (buffer instanceof ShortBuffer) {
+			length = sizeInBytes >> 1;
+			short[] array = ((ShortBuffer) buffer).array();
+			hashCode = Hash.getHashCode64(0L, array, buffer.arrayOffset(), length);
+			checksum = Hash.getChecksum(array, buffer.arrayOffset(), length);
+		} else {
+			return null;
+		}
+
+		return new TextureKey(width, height, bufferWidth, pixelFormat, length, hashCode, checksum);
+	}
+
+	/**
+	 * Retrieve a texture from the cache.
+	 *
+	 * @param key  the texture key
+	 * @return     the cached texture, or null if the texture is not cached
+	 */
+	public CachedTextureResampled getTexture(TextureKey key) {
+		statistics.totalHits++;
+		Entry entry = cache.get(key);
+		if (entry == null) {
+			statistics.notPresentHits++;
+			return null;
+		}
+
+		statistics.successfulHits++;
+		if (log.isTraceEnabled()) {
+			log.trace(String.format("SoftwareTextureCache hit %s", key));
+		}
+
+		// Resampled textures might have been added since the last access
+		updateSize(entry);
+		removeLRU();
+
+		return entry.texture;
+	}
+
+	/**
+	 * Add a texture to the cache.
+	 *
+	 * @param key      the texture key
+	 * @param texture  the texture
+	 */
+	public void addTexture(TextureKey key, CachedTextureResampled texture) {
+		Entry entry = new Entry(texture);
+		Entry previousEntry = cache.put(key, entry);
+		if (previousEntry != null) {
+			sizeInBytes -= previousEntry.sizeInBytes;
+		}
+		updateSize(entry);
+		removeLRU();
+	}
+
+	private void updateSize(Entry entry) {
+		int entrySizeInBytes = entry.texture.getSizeInBytes();
+		sizeInBytes += entrySizeInBytes - entry.sizeInBytes;
+		entry.sizeInBytes = entrySizeInBytes;
+
+		statistics.maxSizeUsed = Math.max(statistics.maxSizeUsed, sizeInBytes >> 10);
+	}
+
+	private void removeLRU() {
+		// Always keep the most recently used texture
+		for (Iterator<Map.Entry<TextureKey, Entry>> it = cache.entrySet().iterator(); sizeInBytes > maxSizeInBytes && cache.size() > 1 && it.hasNext(); ) {
+			Entry entry = it.next().getValue();
+			sizeInBytes -= entry.sizeInBytes;
+			it.remove();
+			statistics.entriesRemoved++;
+		}
+	}
+}
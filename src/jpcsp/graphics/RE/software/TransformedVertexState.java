@@ -0,0 +1,42 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics.RE.software;
+
+import jpcsp.graphics.VertexState;
+
+/**
+ * A vertex state also holding the screen coordinates
+ * already computed by the VertexProcessor.
+ */
+public class TransformedVertexState extends VertexState {
+	public float[] s = new float[4]; // Screen X, Y, Z, W
+	public boolean hasScreenCoordinates;
+
+	@Override
+	public void copy(VertexState from) {
+		super.copy(from);
+		if (from instanceof TransformedVertexState) {
+			TransformedVertexState transformedFrom = (TransformedVertexState) from;
+			if (transformedFrom != this) {
+				System.arraycopy(transformedFrom.s, 0, s, 0, s.length);
+				hasScreenCoordinates = transformedFrom.hasScreenCoordinates;
+			}
+		} else {
+			hasScreenCoordinates = false;
+		}
+	}
+}
@@ -0,0 +1,282 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics.RE.software;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.Memory;
+import jpcsp.graphics.DecodedVertices;
+import jpcsp.graphics.GeContext;
+import jpcsp.graphics.VertexInfo;
+import jpcsp.graphics.VideoEngine;
+import jpcsp.memory.IMemoryReader;
+import jpcsp.memory.MemoryReader;
+import jpcsp.util.DurationStatistics;
+
+/**
+ * Vertex processing stage of the software Rendering Engine (RESoftware).
+ *
+ * All the vertices of a draw are decoded at once, by the compiled vertex readers,
+ * directly into arrays (positions, normals, texture coordinates, colors and bone weights).
+ * The skinning and the transformation to the screen coordinates
+ * are then performed on these arrays, in parallel for large draws.
+ *
+ * When the vertices are accessed through 8-bit or 16-bit indices,
+ * each vertex is only decoded and transformed once per draw,
+ * even if it is shared by multiple primitives.
+ *
+ * The lighting is not part of this stage: the software renderer
+ * is computing it for each pixel.
+ *
+ * This class is only accessed by the GE thread.
+ */
+public class VertexProcessor {
+	private static Logger log = VideoEngine.log;
+	// Draws having at least this number of vertices are processed in parallel
+	private static final int parallelMinimumVertices = 2048;
+	private static final int numberParallelThreads = Runtime.getRuntime().availableProcessors();
+	private static ExecutorService parallelExecutor;
+	public static DurationStatistics vertexProcessingStatistics = new DurationStatistics("RESoftware VertexProcessor");
+	private int first;
+	private int count;
+	private int numberVertices;
+	// Slot of each vertex of the draw in the arrays below
+	private int[] slots = new int[0];
+	private final DecodedVertices vertices = new DecodedVertices();
+	private float[] screenCoordinates = new float[0];
+	private boolean hasScreenCoordinates;
+	// Slot of each vertex index already processed during the current draw
+	private final int[] indexSlots = new int[0x10000];
+	private final int[] indexGenerations = new int[0x10000];
+	private int generation;
+	// Statistics
+	private long drawVerticesCount;
+	private long processedVerticesCount;
+
+	private void ensureCapacity(int n) {
+		if (vertices.ensureCapacity(n)) {
+			slots = new int[n];
+			screenCoordinates = new float[n * 4];
+		}
+	}
+
+	/**
+	 * Decode, skin and transform all the vertices of a draw.
+	 *
+	 * @param context             the current GE context
+	 * @param bufferVertexReader  the reader for vertices computed by the VideoEngine (spline and bezier curves),
+	 *                            or null when reading the vertices from the memory
+	 * @param renderer            the renderer for the primitives of the draw, providing the transformation
+	 * @param first               the first vertex of the draw
+	 * @param count               the number of vertices of the draw
+	 * @param readTexture         true if the texture coordinates have to be read
+	 */
+	public void process(GeContext context, BufferVertexReader bufferVertexReader, BasePrimitiveRenderer renderer, int first, int count, boolean readTexture) {
+		vertexProcessingStatistics.start();
+
+		this.first = first;
+		this.count = count;
+		ensureCapacity(count);
+
+		final VertexInfo vinfo = context.vinfo;
+		final Memory mem = Memory.getInstance();
+		final boolean doubleTexture2DCoords = VideoEngine.getInstance().isDoubleTexture2DCoords();
+		final int numberBoneWeights = vinfo.weight != 0 ? vinfo.skinningWeightCount : 0;
+		final boolean useIndexSlots = bufferVertexReader == null && vinfo.ptr_index != 0 && (vinfo.index == 1 || vinfo.index == 2);
+
+		if (bufferVertexReader == null && (!readTexture || vinfo.texture == 0)) {
+			// The texture coordinates are not decoded, but they are still
+			// compared between vertices (see RESoftware.isSprite)
+			Arrays.fill(vertices.textures, 0, count * 2, 0f);
+		}
+
+		numberVertices = 0;
+		if (useIndexSlots) {
+			generation++;
+			if (generation == 0) {
+				Arrays.fill(indexGenerations, 0);
+				generation = 1;
+			}
+
+			IMemoryReader indexReader = MemoryReader.getMemoryReader(vinfo.ptr_index + first * vinfo.index, count * vinfo.index, vinfo.index);
+			for (int i = 0; i < count; i++) {
+				int index = indexReader.readNext() & 0xFFFF;
+				if (indexGenerations[index] == generation) {
+					// This vertex has already been processed during this draw
+					slots[i] = indexSlots[index];
+				} else {
+					int slot = numberVertices++;
+					vinfo.readVertex(mem, vinfo.ptr_vertex + index * vinfo.vertexSize, vertices, slot, readTexture, doubleTexture2DCoords);
+					slots[i] = slot;
+					indexSlots[index] = slot;
+					indexGenerations[index] = generation;
+				}
+			}
+		} else {
+			for (int i = 0; i < count; i++) {
+				if (bufferVertexReader == null) {
+					int addr = vinfo.getAddress(mem, first + i);
+					vinfo.readVertex(mem, addr, vertices, i, readTexture, doubleTexture2DCoords);
+				} else {
+					bufferVertexReader.readVertex(first + i, vertices, i);
+				}
+				slots[i] = i;
+			}
+			numberVertices = count;
+		}
+
+		hasScreenCoordinates = !renderer.transform2D;
+		if (numberVertices >= parallelMinimumVertices && numberParallelThreads > 1) {
+			transformParallel(context, renderer, numberBoneWeights);
+		} else {
+			transform(context, renderer, numberBoneWeights, 0, numberVertices);
+		}
+
+		drawVerticesCount += count;
+		processedVerticesCount += numberVertices;
+
+		vertexProcessingStatistics.end();
+	}
+
+	private void transform(GeContext context, BasePrimitiveRenderer renderer, int numberBoneWeights, int start, int end) {
+		if (numberBoneWeights > 0) {
+			skinning(context.bone_uploaded_matrix, numberBoneWeights, context.vinfo.normal != 0, start, end);
+		}
+		if (hasScreenCoordinates) {
+			renderer.getScreenCoordinates(vertices.positions, screenCoordinates, start, end);
+		}
+	}
+
+	private static synchronized ExecutorService getParallelExecutor() {
+		if (parallelExecutor == null) {
+			parallelExecutor = Executors.newFixedThreadPool(numberParallelThreads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "VertexProcessor Thread");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		return parallelExecutor;
+	}
+
+	private void transformParallel(final GeContext context, final BasePrimitiveRenderer renderer, final int numberBoneWeights) {
+		int chunkSize = (numberVertices + numberParallelThreads - 1) / numberParallelThreads;
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numberParallelThreads);
+		for (int start = 0; start < numberVertices; start += chunkSize) {
+			final int chunkStart = start;
+			final int chunkEnd = Math.min(start + chunkSize, numberVertices);
+			tasks.add(new Callable<Object>() {
+				@Override
+				public Object call() {
+					transform(context, renderer, numberBoneWeights, chunkStart, chunkEnd);
+					return null;
+				}
+			});
+		}
+
+		try {
+			getParallelExecutor().invokeAll(tasks);
+		} catch (InterruptedException e) {
+			log.error("VertexProcessor", e);
+		}
+	}
+
+	/**
+	 * Apply the skinning to the vertices in the slots [start..end[,
+	 * see VideoEngine.doSkinning().
+	 */
+	private void skinning(float[][] boneMatrix, int numberBoneWeights, boolean hasNormal, int start, int end) {
+		final float[] positions = vertices.positions;
+		final float[] normals = vertices.normals;
+		final float[] boneWeights = vertices.boneWeights;
+		for (int slot = start; slot < end; slot++) {
+			final int p = slot * 3;
+			final int w = slot * 8;
+			final float px = positions[p];
+			final float py = positions[p + 1];
+			final float pz = positions[p + 2];
+			final float nx = normals[p];
+			final float ny = normals[p + 1];
+			final float nz = normals[p + 2];
+			float x = 0, y = 0, z = 0;
+			float snx = 0, sny = 0, snz = 0;
+			for (int i = 0; i < numberBoneWeights; i++) {
+				final float boneWeight = boneWeights[w + i];
+				if (boneWeight != 0.f) {
+					final float[] m = boneMatrix[i];
+					x += (px * m[0] + py * m[3] + pz * m[6] + m[9]) * boneWeight;
+					y += (px * m[1] + py * m[4] + pz * m[7] + m[10]) * boneWeight;
+					z += (px * m[2] + py * m[5] + pz * m[8] + m[11]) * boneWeight;
+
+					if (hasNormal) {
+						snx += (nx * m[0] + ny * m[3] + nz * m[6]) * boneWeight;
+						sny += (nx * m[1] + ny * m[4] + nz * m[7]) * boneWeight;
+						snz += (nx * m[2] + ny * m[5] + nz * m[8]) * boneWeight;
+					}
+				}
+			}
+
+			positions[p] = x;
+			positions[p + 1] = y;
+			positions[p + 2] = z;
+			if (hasNormal) {
+				normals[p] = snx;
+				normals[p + 1] = sny;
+				normals[p + 2] = snz;
+			}
+		}
+	}
+
+	/**
+	 * Retrieve a processed vertex.
+	 *
+	 * @param index  the vertex index, in the range [first..first+count[ of the processed draw
+	 * @param v      the vertex state to be filled
+	 */
+	public void readVertex(int index, TransformedVertexState v) {
+		int slot = slots[index - first];
+		System.arraycopy(vertices.positions, slot * 3, v.p, 0, 3);
+		System.arraycopy(vertices.normals, slot * 3, v.n, 0, 3);
+		System.arraycopy(vertices.textures, slot * 2, v.t, 0, 2);
+		System.arraycopy(vertices.colors, slot * 4, v.c, 0, 4);
+		if (hasScreenCoordinates) {
+			System.arraycopy(screenCoordinates, slot * 4, v.s, 0, 4);
+		}
+		v.hasScreenCoordinates = hasScreenCoordinates;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public void exit() {
+		if (log.isInfoEnabled() && drawVerticesCount > 0) {
+			log.info(String.format("VertexProcessor: %d vertices drawn, %d vertices processed (%.1f%%)", drawVerticesCount, processedVerticesCount, processedVerticesCount * 100.0 / drawVerticesCount));
+		}
+	}
+}
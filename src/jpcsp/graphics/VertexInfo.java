@@ -79,6 +79,8 @@ public class VertexInfo {
         "GU_TRANSFORM_3D", "GU_TRANSFORM_2D"
     };
 	private VertexInfoReaderTemplate vertexInfoReader;
+	// The compiled readers for the current vtype, without and with the texture
+	private final VertexInfoReaderTemplate[] vertexInfoReaders = new VertexInfoReaderTemplate[2];
 	public boolean readTexture;
     
     // cache data
@@ -124,6 +126,8 @@ public class VertexInfo {
     public void processType(int param) {
         vtype = param & vtypeMask;
 
+        vertexInfoReaders[0] = null;
+        vertexInfoReaders[1] = null;
         updateVertexInfoReader(texture != 0);
 
         vertexInfoReader.processType(this);
@@ -173,7 +177,13 @@ public class VertexInfo {
 
     private void updateVertexInfoReader(boolean readTexture) {
     	this.readTexture = readTexture;
-    	vertexInfoReader = VertexInfoCompiler.getInstance().getCompiledVertexInfoReader(vtype, readTexture);
+    	// Keep both readers so that switching between them
+    	// does not require a lookup in the VertexInfoCompiler
+    	int n = readTexture ? 1 : 0;
+    	if (vertexInfoReaders[n] == null) {
+    		vertexInfoReaders[n] = VertexInfoCompiler.getInstance().getCompiledVertexInfoReader(vtype, readTexture);
+    	}
+    	vertexInfoReader = vertexInfoReaders[n];
     }
 
     public int getAddress(Memory mem, int i) {
@@ -226,6 +236,32 @@ public class VertexInfo {
     	}
     }
 
+    /**
+     * Read a vertex directly into the arrays of a DecodedVertices.
+     *
+     * @param mem                    the memory
+     * @param addr                   the vertex address
+     * @param vertices               the decoded vertices
+     * @param slot                   the slot where to store the vertex in the decoded vertices
+     * @param readTexture            true if the texture coordinates have to be read
+     * @param doubleTexture2DCoords  true if the 2D texture coordinates have to be doubled
+     */
+    public void readVertex(Memory mem, int addr, DecodedVertices vertices, int slot, boolean readTexture, boolean doubleTexture2DCoords) {
+    	if (texture == 0) {
+    		readTexture = false;
+    	}
+    	if (readTexture != this.readTexture) {
+    		updateVertexInfoReader(readTexture);
+    	}
+    	vertexInfoReader.readVertex(mem, addr, vertices, slot, morph_weight);
+
+    	// HD Remaster can require to double the 2D texture coordinates
+    	if (doubleTexture2DCoords && transform2D && readTexture) {
+    		vertices.textures[slot * 2] *= 2f;
+    		vertices.textures[slot * 2 + 1] *= 2f;
+    	}
+    }
+
     public void setDirty() {
         cachedIndices = null;
         cachedVertices = null;
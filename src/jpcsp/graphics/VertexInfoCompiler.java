@@ -17,6 +17,7 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
 package jpcsp.graphics;
 
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import jpcsp.util.ClassSpecializer;
 
@@ -29,7 +30,9 @@ import org.apache.log4j.Logger;
 public class VertexInfoCompiler {
 	private static Logger log = VideoEngine.log;
 	private static VertexInfoCompiler instance;
-	private HashMap<Integer, VertexInfoReaderTemplate> compiledVertexInfoReaders = new HashMap<Integer, VertexInfoReaderTemplate>();
+	// The compiled readers are retrieved without synchronization
+	// by all the threads decoding vertices (GE, AsyncVertexCache, GUI...)
+	private ConcurrentHashMap<Integer, VertexInfoReaderTemplate> compiledVertexInfoReaders = new ConcurrentHashMap<Integer, VertexInfoReaderTemplate>();
 	private VertexInfo vinfo = new VertexInfo();
 
 	public static VertexInfoCompiler getInstance() {
@@ -61,6 +64,7 @@ public class VertexInfoCompiler {
 					compiledVertexInfoReader = compileVertexInfoReader(key, vtype, readTexture);
 					if (compiledVertexInfoReader != null) {
 						compiledVertexInfoReaders.put(key, compiledVertexInfoReader);
+						GEProfiler.compileVertexInfoReader(String.format("%s%s", vinfo, readTexture ? "" : " (texture not read)"));
 					}
 				}
 			}
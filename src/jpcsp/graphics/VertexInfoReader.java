@@ -163,8 +163,8 @@ public class VertexInfoReader {
 	public VertexInfoReader() {
 	}
 
-	private void setAddress(int address) {
-		memoryReader = new BufferedMemoryReader(address);
+	private void setAddress(int address, int length) {
+		memoryReader = new BufferedMemoryReader(address, length);
 	}
 
 	/**
@@ -397,7 +397,7 @@ public class VertexInfoReader {
 			}
 		}
 
-		setAddress(address + firstVertex * vertexInfo.vertexSize);
+		setAddress(address + firstVertex * vertexInfo.vertexSize, numberOfVertex * vertexInfo.vertexSize);
 		createVertexDataBuffer(numberOfVertex);
 
 		// Prepare all the element readers
@@ -67,10 +67,24 @@ public class VertexInfoReaderTemplate {
     }
 
     public void readVertex(Memory mem, int addr, VertexState v, float[] morphWeights) {
-    	doReadVertex(mem, addr, v, morphWeights);
+    	doReadVertex(mem, addr, v.boneWeights, 0, v.t, 0, v.c, 0, v.n, 0, v.p, 0, morphWeights);
     }
 
-    private static void doReadVertex(Memory mem, int addr, VertexState v, float[] morphWeights) {
+    /**
+     * Read a vertex directly into the arrays of a DecodedVertices,
+     * at the given slot.
+     *
+     * @param mem           the memory
+     * @param addr          the vertex address
+     * @param vertices      the decoded vertices
+     * @param slot          the slot where to store the vertex in the decoded vertices
+     * @param morphWeights  the morphing weights
+     */
+    public void readVertex(Memory mem, int addr, DecodedVertices vertices, int slot, float[] morphWeights) {
+    	doReadVertex(mem, addr, vertices.boneWeights, slot * 8, vertices.textures, slot * 2, vertices.colors, slot * 4, vertices.normals, slot * 3, vertices.positions, slot * 3, morphWeights);
+    }
+
+    private static void doReadVertex(Memory mem, int addr, float[] boneWeights, int w, float[] textures, int t, float[] colors, int c, float[] normals, int n, float[] positions, int p, float[] morphWeights) {
         int startAddr = addr;
 
 		//
@@ -88,17 +102,17 @@ public class VertexInfoReaderTemplate {
                 switch (weight) {
                     case 1:
                         // Unsigned 8 bit, mapped to [0..2]
-                        v.boneWeights[i] = mem.read8(addr++);
-                        v.boneWeights[i] /= 0x80;
+                        boneWeights[w + i] = mem.read8(addr++);
+                        boneWeights[w + i] /= 0x80;
                         break;
                     case 2:
                         // Unsigned 16 bit, mapped to [0..2]
-                        v.boneWeights[i] = mem.read16(addr);
-                        v.boneWeights[i] /= 0x8000;
+                        boneWeights[w + i] = mem.read16(addr);
+                        boneWeights[w + i] /= 0x8000;
                         addr += 2;
                         break;
                     case 3:
-                        v.boneWeights[i] = Float.intBitsToFloat(mem.read32(addr));
+                        boneWeights[w + i] = Float.intBitsToFloat(mem.read32(addr));
                         addr += 4;
                         break;
                 }
@@ -113,7 +127,7 @@ public class VertexInfoReaderTemplate {
         		//
         		// Texture with morphing
         		//
-	        	v.t[0] = v.t[1] = 0f;
+	        	textures[t] = textures[t + 1] = 0f;
     	        switch (texture) {
     	            case 1:
     	                for (int morphCounter = 0; morphCounter < morphingVertexCount; morphCounter++) {
@@ -126,8 +140,8 @@ public class VertexInfoReaderTemplate {
 	                        tu /= 0x80;
 	                        tv /= 0x80;
 
-	                        v.t[0] += tu * morphWeights[morphCounter];
-	                        v.t[1] += tv * morphWeights[morphCounter];
+	                        textures[t] += tu * morphWeights[morphCounter];
+	                        textures[t + 1] += tv * morphWeights[morphCounter];
     	                }
     	                break;
     	            case 2:
@@ -141,8 +155,8 @@ public class VertexInfoReaderTemplate {
 	                        tu /= 0x8000;
 	                        tv /= 0x8000;
 
-	                        v.t[0] += tu * morphWeights[morphCounter];
-	                        v.t[1] += tv * morphWeights[morphCounter];
+	                        textures[t] += tu * morphWeights[morphCounter];
+	                        textures[t + 1] += tv * morphWeights[morphCounter];
     	                }
     	                break;
     	            case 3:
@@ -152,8 +166,8 @@ public class VertexInfoReaderTemplate {
     	                    float tu = Float.intBitsToFloat(mem.read32(addr));
     	                    float tv = Float.intBitsToFloat(mem.read32(addr + 4));
 
-    	                    v.t[0] += tu * morphWeights[morphCounter];
-    	                    v.t[1] += tv * morphWeights[morphCounter];
+    	                    textures[t] += tu * morphWeights[morphCounter];
+    	                    textures[t + 1] += tv * morphWeights[morphCounter];
     	                }
     	                break;
     	        }
@@ -163,7 +177,7 @@ public class VertexInfoReaderTemplate {
         		//
         		// Color with morphing
         		//
-	        	v.c[0] = v.c[1] = v.c[2] = v.c[3] = 0f;
+	        	colors[c] = colors[c + 1] = colors[c + 2] = colors[c + 3] = 0f;
 
 	        	switch (color) {
 		            case 1:
@@ -192,10 +206,10 @@ public class VertexInfoReaderTemplate {
 		                    float g = ((gBits << 2) | (gBits >> 4)) / 255.0f;
 		                    float b = ((bBits << 3) | (bBits >> 2)) / 255.0f;
 
-		                    v.c[0] += r * morphWeights[morphCounter];
-		                    v.c[1] += g * morphWeights[morphCounter];
-		                    v.c[2] += b * morphWeights[morphCounter];
-		                    v.c[3] += morphWeights[morphCounter];
+		                    colors[c] += r * morphWeights[morphCounter];
+		                    colors[c + 1] += g * morphWeights[morphCounter];
+		                    colors[c + 2] += b * morphWeights[morphCounter];
+		                    colors[c + 3] += morphWeights[morphCounter];
 		                }
 		                break;
 		            }
@@ -221,10 +235,10 @@ public class VertexInfoReaderTemplate {
 		                    float b = ((bBits << 3) | (bBits >> 2)) / 255.0f;
 		                    float a = ((packed >> 15) & 0x01) / 1.0f;
 
-		                    v.c[0] += r * morphWeights[morphCounter];
-		                    v.c[1] += g * morphWeights[morphCounter];
-		                    v.c[2] += b * morphWeights[morphCounter];
-		                    v.c[3] += a * morphWeights[morphCounter];
+		                    colors[c] += r * morphWeights[morphCounter];
+		                    colors[c + 1] += g * morphWeights[morphCounter];
+		                    colors[c + 2] += b * morphWeights[morphCounter];
+		                    colors[c + 3] += a * morphWeights[morphCounter];
 		                }
 		                break;
 		            }
@@ -251,10 +265,10 @@ public class VertexInfoReaderTemplate {
 		                    float b = ((bBits << 4) | bBits) / 255.0f;
 		                    float a = ((aBits << 4) | aBits) / 255.0f;
 
-		                    v.c[0] += r * morphWeights[morphCounter];
-		                    v.c[1] += g * morphWeights[morphCounter];
-		                    v.c[2] += b * morphWeights[morphCounter];
-		                    v.c[3] += a * morphWeights[morphCounter];
+		                    colors[c] += r * morphWeights[morphCounter];
+		                    colors[c + 1] += g * morphWeights[morphCounter];
+		                    colors[c + 2] += b * morphWeights[morphCounter];
+		                    colors[c + 3] += a * morphWeights[morphCounter];
 		                }
 		                break;
 		            }
@@ -269,10 +283,10 @@ public class VertexInfoReaderTemplate {
 		                    float b = ((packed >> 16) & 0xff) / 255.0f;
 		                    float a = ((packed >> 24) & 0xff) / 255.0f;
 
-		                    v.c[0] += r * morphWeights[morphCounter];
-		                    v.c[1] += g * morphWeights[morphCounter];
-		                    v.c[2] += b * morphWeights[morphCounter];
-		                    v.c[3] += a * morphWeights[morphCounter];
+		                    colors[c] += r * morphWeights[morphCounter];
+		                    colors[c + 1] += g * morphWeights[morphCounter];
+		                    colors[c + 2] += b * morphWeights[morphCounter];
+		                    colors[c + 3] += a * morphWeights[morphCounter];
 		                }
 		                break;
 		            }
@@ -283,7 +297,7 @@ public class VertexInfoReaderTemplate {
         		//
         		// Normal with morphing
         		//
-	        	v.n[0] = v.n[1] = v.n[2] = 0f;
+	        	normals[n] = normals[n + 1] = normals[n + 2] = 0f;
 
 	        	switch (normal) {
 		            case 1:
@@ -300,9 +314,9 @@ public class VertexInfoReaderTemplate {
 	                        y /= 0x7f;
 	                        z /= 0x7f;
 
-	                        v.n[0] += x * morphWeights[morphCounter];
-	                        v.n[1] += y * morphWeights[morphCounter];
-	                        v.n[2] += z * morphWeights[morphCounter];
+	                        normals[n] += x * morphWeights[morphCounter];
+	                        normals[n + 1] += y * morphWeights[morphCounter];
+	                        normals[n + 2] += z * morphWeights[morphCounter];
 		                }
 		                break;
 		            case 2:
@@ -319,9 +333,9 @@ public class VertexInfoReaderTemplate {
 	                        y /= 0x7fff;
 	                        z /= 0x7fff;
 
-	                        v.n[0] += x * morphWeights[morphCounter];
-	                        v.n[1] += y * morphWeights[morphCounter];
-	                        v.n[2] += z * morphWeights[morphCounter];
+	                        normals[n] += x * morphWeights[morphCounter];
+	                        normals[n + 1] += y * morphWeights[morphCounter];
+	                        normals[n + 2] += z * morphWeights[morphCounter];
 		                }
 		                break;
 		            case 3:
@@ -332,9 +346,9 @@ public class VertexInfoReaderTemplate {
 		                    float y = Float.intBitsToFloat(mem.read32(addr + 4));
 		                    float z = Float.intBitsToFloat(mem.read32(addr + 8));
 
-		                    v.n[0] += x * morphWeights[morphCounter];
-		                    v.n[1] += y * morphWeights[morphCounter];
-		                    v.n[2] += z * morphWeights[morphCounter];
+		                    normals[n] += x * morphWeights[morphCounter];
+		                    normals[n + 1] += y * morphWeights[morphCounter];
+		                    normals[n + 2] += z * morphWeights[morphCounter];
 		                }
 		                break;
 		        }
@@ -344,7 +358,7 @@ public class VertexInfoReaderTemplate {
         		//
         		// Position with morphing
         		//
-	        	v.p[0] = v.p[1] = v.p[2] = 0f;
+	        	positions[p] = positions[p + 1] = positions[p + 2] = 0f;
 
 	        	switch (position) {
 		            case 1:
@@ -356,9 +370,9 @@ public class VertexInfoReaderTemplate {
 	                        float y = ((byte) mem.read8(addr + 1)) / 127f;
 	                        float z = ((byte) mem.read8(addr + 2)) / 127f;
 
-	                        v.p[0] += x * morphWeights[morphCounter];
-	                        v.p[1] += y * morphWeights[morphCounter];
-	                        v.p[2] += z * morphWeights[morphCounter];
+	                        positions[p] += x * morphWeights[morphCounter];
+	                        positions[p + 1] += y * morphWeights[morphCounter];
+	                        positions[p + 2] += z * morphWeights[morphCounter];
 		                }
 		                break;
 		            case 2:
@@ -370,9 +384,9 @@ public class VertexInfoReaderTemplate {
 	                        float y = ((short) mem.read16(addr + 2)) / 32767f;
 	                        float z = ((short) mem.read16(addr + 4)) / 32767f;
 
-	                        v.p[0] += x * morphWeights[morphCounter];
-	                        v.p[1] += y * morphWeights[morphCounter];
-	                        v.p[2] += z * morphWeights[morphCounter];
+	                        positions[p] += x * morphWeights[morphCounter];
+	                        positions[p + 1] += y * morphWeights[morphCounter];
+	                        positions[p + 2] += z * morphWeights[morphCounter];
 		                }
 		                break;
 		            case 3: // GU_VERTEX_32BITF
@@ -383,9 +397,9 @@ public class VertexInfoReaderTemplate {
 		                    float y = Float.intBitsToFloat(mem.read32(addr + 4));
 		                    float z = Float.intBitsToFloat(mem.read32(addr + 8));
 
-	                        v.p[0] += x * morphWeights[morphCounter];
-	                        v.p[1] += y * morphWeights[morphCounter];
-	                        v.p[2] += z * morphWeights[morphCounter];
+	                        positions[p] += x * morphWeights[morphCounter];
+	                        positions[p + 1] += y * morphWeights[morphCounter];
+	                        positions[p + 2] += z * morphWeights[morphCounter];
 		                }
 		                break;
 	        	}
@@ -408,8 +422,8 @@ public class VertexInfoReaderTemplate {
 	                        tu /= 0x80;
 	                        tv /= 0x80;
 	                    }
-                        v.t[0] = tu;
-                        v.t[1] = tv;
+                        textures[t] = tu;
+                        textures[t + 1] = tv;
 		                break;
 		            }
 		            case 2: {
@@ -423,14 +437,14 @@ public class VertexInfoReaderTemplate {
 	                        tu /= 0x8000;
 	                        tv /= 0x8000;
 	                    }
-                        v.t[0] = tu;
-                        v.t[1] = tv;
+                        textures[t] = tu;
+                        textures[t + 1] = tv;
                         break;
                     }
 		            case 3: {
                         addr = (addr + 3) & ~3;
-                        v.t[0] = Float.intBitsToFloat(mem.read32(addr));
-	                    v.t[1] = Float.intBitsToFloat(mem.read32(addr + 4));
+                        textures[t] = Float.intBitsToFloat(mem.read32(addr));
+	                    textures[t + 1] = Float.intBitsToFloat(mem.read32(addr + 4));
 	                    addr += 8;
 	                    break;
 	                }
@@ -466,10 +480,10 @@ public class VertexInfoReaderTemplate {
 	                    int rBits = packed & 0x1F;
 	                    int gBits = (packed >> 5) & 0x3F;
 	                    int bBits = (packed >> 11) & 0x1F;
-	                    v.c[0] = ((rBits << 3) | (rBits >> 2)) / 255f;
-	                    v.c[1] = ((gBits << 2) | (gBits >> 4)) / 255f;
-	                    v.c[2] = ((bBits << 3) | (bBits >> 2)) / 255f;
-	                    v.c[3] = 1f;
+	                    colors[c] = ((rBits << 3) | (rBits >> 2)) / 255f;
+	                    colors[c + 1] = ((gBits << 2) | (gBits >> 4)) / 255f;
+	                    colors[c + 2] = ((bBits << 3) | (bBits >> 2)) / 255f;
+	                    colors[c + 3] = 1f;
 		                break;
 	                }
 
@@ -488,10 +502,10 @@ public class VertexInfoReaderTemplate {
 	                    int rBits = (packed) & 0x1F;
 	                    int gBits = (packed >> 5) & 0x1F;
 	                    int bBits = (packed >> 10) & 0x1F;
-	                    v.c[0] = ((rBits << 3) | (rBits >> 2)) / 255f;
-	                    v.c[1] = ((gBits << 3) | (gBits >> 2)) / 255f;
-	                    v.c[2] = ((bBits << 3) | (bBits >> 2)) / 255f;
-	                    v.c[3] = ((packed >> 15) & 0x01) / 1f;
+	                    colors[c] = ((rBits << 3) | (rBits >> 2)) / 255f;
+	                    colors[c + 1] = ((gBits << 3) | (gBits >> 2)) / 255f;
+	                    colors[c + 2] = ((bBits << 3) | (bBits >> 2)) / 255f;
+	                    colors[c + 3] = ((packed >> 15) & 0x01) / 1f;
 	                    break;
 		            }
 
@@ -511,10 +525,10 @@ public class VertexInfoReaderTemplate {
 	                    int gBits = (packed >> 4) & 0x0F;
 	                    int bBits = (packed >> 8) & 0x0F;
 	                    int aBits = (packed >> 12) & 0x0F;
-	                    v.c[0] = ((rBits << 4) | rBits) / 255f;
-	                    v.c[1] = ((gBits << 4) | gBits) / 255f;
-	                    v.c[2] = ((bBits << 4) | bBits) / 255f;
-	                    v.c[3] = ((aBits << 4) | aBits) / 255f;
+	                    colors[c] = ((rBits << 4) | rBits) / 255f;
+	                    colors[c + 1] = ((gBits << 4) | gBits) / 255f;
+	                    colors[c + 2] = ((bBits << 4) | bBits) / 255f;
+	                    colors[c + 3] = ((aBits << 4) | aBits) / 255f;
 	                    break;
 	                }
 
@@ -522,10 +536,10 @@ public class VertexInfoReaderTemplate {
                         addr = (addr + 3) & ~3;
                         int packed = mem.read32(addr);
                         addr += 4;
-                        v.c[0] = ((packed) & 0xff) / 255f;
-                        v.c[1] = ((packed >> 8) & 0xff) / 255f;
-                        v.c[2] = ((packed >> 16) & 0xff) / 255f;
-                        v.c[3] = ((packed >> 24) & 0xff) / 255f;
+                        colors[c] = ((packed) & 0xff) / 255f;
+                        colors[c + 1] = ((packed >> 8) & 0xff) / 255f;
+                        colors[c + 2] = ((packed >> 16) & 0xff) / 255f;
+                        colors[c + 3] = ((packed >> 24) & 0xff) / 255f;
                         break;
 		            }
 		        }
@@ -546,9 +560,9 @@ public class VertexInfoReaderTemplate {
 	                        y /= 0x7f;
 	                        z /= 0x7f;
 	                    }
-	                    v.n[0] = x;
-	                    v.n[1] = y;
-	                    v.n[2] = z;
+	                    normals[n] = x;
+	                    normals[n + 1] = y;
+	                    normals[n + 2] = z;
 	                    break;
 	                }
 		            case 2: {
@@ -565,16 +579,16 @@ public class VertexInfoReaderTemplate {
 	                        y /= 0x7fff;
 	                        z /= 0x7fff;
 	                    }
-	                    v.n[0] = x;
-	                    v.n[1] = y;
-	                    v.n[2] = z;
+	                    normals[n] = x;
+	                    normals[n + 1] = y;
+	                    normals[n + 2] = z;
 	                    break;
 		            }
 		            case 3: {
 	                    addr = (addr + 3) & ~3;
-	                    v.n[0] = Float.intBitsToFloat(mem.read32(addr));
-	                    v.n[1] = Float.intBitsToFloat(mem.read32(addr + 4));
-	                    v.n[2] = Float.intBitsToFloat(mem.read32(addr + 8));
+	                    normals[n] = Float.intBitsToFloat(mem.read32(addr));
+	                    normals[n + 1] = Float.intBitsToFloat(mem.read32(addr + 4));
+	                    normals[n + 2] = Float.intBitsToFloat(mem.read32(addr + 8));
 	                    addr += 12;
 	                    break;
 		            }
@@ -589,14 +603,14 @@ public class VertexInfoReaderTemplate {
 		            case 1: {
 	                    if (transform2D) {
 	                        // X and Y are signed 8 bit, Z is unsigned 8 bit
-	                        v.p[0] = (byte) mem.read8(addr++);
-	                        v.p[1] = (byte) mem.read8(addr++);
-	                        v.p[2] = mem.read8(addr++);
+	                        positions[p] = (byte) mem.read8(addr++);
+	                        positions[p + 1] = (byte) mem.read8(addr++);
+	                        positions[p + 2] = mem.read8(addr++);
 	                    } else {
 	                        // Signed 8 bit, to be mapped to [-1..1] for 3D
-	                    	v.p[0] = ((byte) mem.read8(addr++)) / 127f;
-	                    	v.p[1] = ((byte) mem.read8(addr++)) / 127f;
-	                    	v.p[2] = ((byte) mem.read8(addr++)) / 127f;
+	                    	positions[p] = ((byte) mem.read8(addr++)) / 127f;
+	                    	positions[p + 1] = ((byte) mem.read8(addr++)) / 127f;
+	                    	positions[p + 2] = ((byte) mem.read8(addr++)) / 127f;
 	                    }
 	                    break;
 	                }
@@ -604,14 +618,14 @@ public class VertexInfoReaderTemplate {
 		                addr = (addr + 1) & ~1;
 	                    if (transform2D) {
 	                        // X and Y are signed 16 bit, Z is unsigned 16 bit
-	                        v.p[0] = (short) mem.read16(addr);
-	                        v.p[1] = (short) mem.read16(addr + 2);
-	                        v.p[2] = mem.read16(addr + 4);
+	                        positions[p] = (short) mem.read16(addr);
+	                        positions[p + 1] = (short) mem.read16(addr + 2);
+	                        positions[p + 2] = mem.read16(addr + 4);
 	                    } else {
 	                        // Signed 16 bit, to be mapped to [-1..1] for 3D
-	                    	v.p[0] = ((short) mem.read16(addr)) / 32767f;
-	                    	v.p[1] = ((short) mem.read16(addr + 2)) / 32767f;
-	                    	v.p[2] = ((short) mem.read16(addr + 4)) / 32767f;
+	                    	positions[p] = ((short) mem.read16(addr)) / 32767f;
+	                    	positions[p + 1] = ((short) mem.read16(addr + 2)) / 32767f;
+	                    	positions[p + 2] = ((short) mem.read16(addr + 4)) / 32767f;
 	                    }
 	                    addr += 6;
 	                    break;
@@ -633,9 +647,9 @@ public class VertexInfoReaderTemplate {
 	                            z = (int) z;
 	                        }
 	                    }
-	                    v.p[0] = x;
-	                    v.p[1] = y;
-	                    v.p[2] = z;
+	                    positions[p] = x;
+	                    positions[p + 1] = y;
+	                    positions[p + 2] = z;
 	                    break;
 	                }
 		        }
@@ -648,23 +662,23 @@ public class VertexInfoReaderTemplate {
         if (isLogTraceEnabled) {
         	VideoEngine.log.trace(String.format("Reading vertex at 0x%08X %s", startAddr, VertexInfo.toString(texture, color, normal, position, weight, skinningWeightCount, morphingVertexCount, index, transform2D, vertexSize)));
             if (weight != 0) {
-                VideoEngine.log.trace(String.format("Weight(%d) %.2f %.2f %.2f %.2f %.2f %.2f %.2f %.2f", skinningWeightCount, v.boneWeights[0], v.boneWeights[1], v.boneWeights[2], v.boneWeights[3], v.boneWeights[4], v.boneWeights[5], v.boneWeights[6], v.boneWeights[7]));
+                VideoEngine.log.trace(String.format("Weight(%d) %.2f %.2f %.2f %.2f %.2f %.2f %.2f %.2f", skinningWeightCount, boneWeights[w], boneWeights[w + 1], boneWeights[w + 2], boneWeights[w + 3], boneWeights[w + 4], boneWeights[w + 5], boneWeights[w + 6], boneWeights[w + 7]));
             }
             if (texture != 0) {
             	if (transform2D) {
-            		VideoEngine.log.trace(String.format("texture type %d %d, %d", texture, round(v.t[0]), round(v.t[1])));
+            		VideoEngine.log.trace(String.format("texture type %d %d, %d", texture, round(textures[t]), round(textures[t + 1])));
             	} else {
-            		VideoEngine.log.trace(String.format("texture type %d %f, %f", texture, v.t[0], v.t[1]));
+            		VideoEngine.log.trace(String.format("texture type %d %f, %f", texture, textures[t], textures[t + 1]));
             	}
             }
             if (color != 0) {
-                VideoEngine.log.trace(String.format("color type %d 0x%08X", color, PixelColor.getColor(v.c)));
+                VideoEngine.log.trace(String.format("color type %d 0x%08X", color, PixelColor.getColor(PixelColor.getColor(colors[c + 3]), PixelColor.getColor(colors[c + 2]), PixelColor.getColor(colors[c + 1]), PixelColor.getColor(colors[c]))));
             }
             if (normal != 0) {
-                VideoEngine.log.trace(String.format("normal type %d %f, %f, %f", normal, v.n[0], v.n[1], v.n[2]));
+                VideoEngine.log.trace(String.format("normal type %d %f, %f, %f", normal, normals[n], normals[n + 1], normals[n + 2]));
             }
             if (position != 0) {
-        		VideoEngine.log.trace(String.format("vertex type %d %f, %f, %f", position, v.p[0], v.p[1], v.p[2]));
+        		VideoEngine.log.trace(String.format("vertex type %d %f, %f, %f", position, positions[p], positions[p + 1], positions[p + 2]));
             }
             if (morphingVertexCount > 1) {
             	VideoEngine.log.trace(String.format("Morphing oneVertexSize=%d, textureOffset=%d, colorOffset=%d, normalOffset=%d, positionOffset=%d", oneVertexSize, textureOffset, colorOffset, normalOffset, positionOffset));
@@ -629,6 +629,7 @@ public class VideoEngine {
                 log.info(instance.waitStallStatistics);
                 log.info(instance.textureCacheLookupStatistics);
                 log.info(instance.vertexCacheLookupStatistics);
+                CurvedSurfaceTessellator.getInstance().exit();
                 VertexBufferManager.exit();
                 VertexArrayManager.exit();
             }
@@ -761,6 +762,7 @@ public class VideoEngine {
         logLevelUpdated();
         isGeProfilerEnabled = GEProfiler.isProfilerEnabled();
         memoryForGEUpdated();
+        VramRegionTracker.getInstance().startFrame();
         somethingDisplayed = false;
         geBufChanged = true;
         forceLoadGEToScreen = true;
@@ -1108,6 +1110,10 @@ public class VideoEngine {
         }
 
         if (currentList.isDone()) {
+            // The threads waiting on this list can read the rendered buffers
+            // as soon as they are unblocked: the primitives still being
+            // rendered asynchronously have to be completed first.
+            re.waitForRenderingCompletion();
             if (isGeProfilerEnabled) {
                 long listEndMicroTime = Emulator.getClock().microTime();
                 GEProfiler.geListDuration(listEndMicroTime - listStartMicroTime);
@@ -2276,7 +2282,7 @@ public class VideoEngine {
         }
 
         updateGeBuf();
-        somethingDisplayed = true;
+        setSomethingDisplayed();
         primCount++;
         if (isGeProfilerEnabled) {
             GEProfiler.startGeCmd(PRIM);
@@ -3336,7 +3342,7 @@ public class VideoEngine {
             re.endDirectRendering();
             re.deleteTexture(texture);
 
-            somethingDisplayed = true;
+            setSomethingDisplayed();
         }
 
         if (pc == multiTrxkickEnd) {
@@ -3524,7 +3530,7 @@ public class VideoEngine {
             GEProfiler.startGeCmd(BEZIER);
         }
         updateGeBuf();
-        somethingDisplayed = true;
+        setSomethingDisplayed();
         loadTexture();
 
         drawBezier(ucount, vcount);
@@ -3549,7 +3555,7 @@ public class VideoEngine {
         }
 
         updateGeBuf();
-        somethingDisplayed = true;
+        setSomethingDisplayed();
         if (isGeProfilerEnabled) {
             GEProfiler.startGeCmd(SPLINE);
         }
@@ -6901,47 +6907,6 @@ public class VideoEngine {
         return orthoMatrix;
     }
 
-    float spline_n(int i, int j, float u, int[] knot) {
-        if (j == 0) {
-            if (knot[i] <= u && u < knot[i + 1]) {
-                return 1;
-            }
-            return 0;
-        }
-        float res = 0;
-        if (knot[i + j] - knot[i] != 0) {
-            res += (u - knot[i]) / (knot[i + j] - knot[i]) * spline_n(i, j - 1, u, knot);
-        }
-        if (knot[i + j + 1] - knot[i + 1] != 0) {
-            res += (knot[i + j + 1] - u) / (knot[i + j + 1] - knot[i + 1]) * spline_n(i + 1, j - 1, u, knot);
-        }
-        return res;
-    }
-
-    int[] spline_knot(int n, int type) {
-        int[] knot = new int[n + 5];
-        for (int i = 0; i < n - 1; i++) {
-            knot[i + 3] = i;
-        }
-
-        if ((type & 1) == 0) {
-            knot[0] = -3;
-            knot[1] = -2;
-            knot[2] = -1;
-        }
-        if ((type & 2) == 0) {
-            knot[n + 2] = n - 1;
-            knot[n + 3] = n;
-            knot[n + 4] = n + 1;
-        } else {
-            knot[n + 2] = n - 2;
-            knot[n + 3] = n - 2;
-            knot[n + 4] = n - 2;
-        }
-
-        return knot;
-    }
-
     private void drawSpline(int ucount, int vcount, int utype, int vtype) {
         if (ucount < 4 || vcount < 4) {
             log.warn("Unsupported spline parameters uc=" + ucount + " vc=" + vcount);
@@ -6964,10 +6929,10 @@ public class VideoEngine {
             vertexCacheLookupStatistics.end();
         }
 
-        VertexState[][] patch = null;
+        float[] patch = null;
         if (cachedVertexInfo == null) {
             // Generate control points.
-            VertexState[][] ctrlpoints = getControlPoints(ucount, vcount);
+            float[] ctrlpoints = getControlPoints(ucount, vcount);
 
             // GE capture.
             if (State.captureGeNextFrame && !isVertexBufferEmbedded()) {
@@ -6975,69 +6940,13 @@ public class VideoEngine {
                 CaptureManager.captureRAM(context.vinfo.ptr_vertex, context.vinfo.vertexSize * ucount * vcount);
             }
 
-            // Generate patch VertexState.
-            patch = new VertexState[context.patch_div_s + 1][context.patch_div_t + 1];
-
-            // Calculate knot arrays.
-            int n = ucount - 1;
-            int m = vcount - 1;
-            int[] knot_u = spline_knot(n, utype);
-            int[] knot_v = spline_knot(m, vtype);
-
-            // The spline grows to a limit defined by n - 2 for u and m - 2 for v.
-            // This limit is open, so we need to get a very close approximation of it.
-            float limit = 2.000001f;
-
-            // Process spline vertexes with Cox-deBoor's algorithm.
-            for (int j = 0; j <= context.patch_div_t; j++) {
-                float cv = (float) j * (float) (m - limit) / (float) context.patch_div_t;
-
-                for (int i = 0; i <= context.patch_div_s; i++) {
-                    float cu = (float) i * (float) (n - limit) / (float) context.patch_div_s;
-
-                    patch[i][j] = new VertexState();
-                    VertexState p = patch[i][j];
-
-                    for (int ii = 0; ii <= n; ii++) {
-                        for (int jj = 0; jj <= m; jj++) {
-                            float f = spline_n(ii, 3, cu, knot_u) * spline_n(jj, 3, cv, knot_v);
-                            if (f != 0) {
-                                pointMultAdd(p, ctrlpoints[ii][jj], f, context.useVertexColor, useTexture, useNormal);
-                            }
-                        }
-                    }
-                    if (useTexture && context.vinfo.texture == 0) {
-                        p.t[0] = cu;
-                        p.t[1] = cv;
-                    }
-                }
-            }
+            // Generate patch vertices, or retrieve them from the cache.
+            patch = CurvedSurfaceTessellator.getInstance().tessellateSpline(ctrlpoints, ucount, vcount, utype, vtype, context.patch_div_s, context.patch_div_t, context.useVertexColor, useTexture, useNormal, useTexture && context.vinfo.texture == 0);
         }
 
         drawCurvedSurface(patch, ucount, vcount, cachedVertexInfo, context.useVertexColor, useTexture, useNormal);
     }
 
-    private void pointMultAdd(VertexState dest, VertexState src, float f, boolean useVertexColor, boolean useTexture, boolean useNormal) {
-        dest.p[0] += f * src.p[0];
-        dest.p[1] += f * src.p[1];
-        dest.p[2] += f * src.p[2];
-        if (useTexture) {
-            dest.t[0] += f * src.t[0];
-            dest.t[1] += f * src.t[1];
-        }
-        if (useVertexColor) {
-            dest.c[0] += f * src.c[0];
-            dest.c[1] += f * src.c[1];
-            dest.c[2] += f * src.c[2];
-            dest.c[3] += f * src.c[3];
-        }
-        if (useNormal) {
-            dest.n[0] += f * src.n[0];
-            dest.n[1] += f * src.n[1];
-            dest.n[2] += f * src.n[2];
-        }
-    }
-
     private void drawBezier(int ucount, int vcount) {
         if ((ucount - 1) % 3 != 0 || (vcount - 1) % 3 != 0) {
             log.warn("Unsupported bezier parameters ucount=" + ucount + " vcount=" + vcount);
@@ -7063,9 +6972,9 @@ public class VideoEngine {
             vertexCacheLookupStatistics.end();
         }
 
-        VertexState[][] patch = null;
+        float[] patch = null;
         if (cachedVertexInfo == null) {
-            VertexState[][] anchors = getControlPoints(ucount, vcount);
+            float[] anchors = getControlPoints(ucount, vcount);
 
             // Don't capture the ram if the vertex list is embedded in the display list. TODO handle stall_addr == 0 better
             // TODO may need to move inside the loop if indices are used, or find the largest index so we can calculate the size of the vertex list
@@ -7074,60 +6983,37 @@ public class VideoEngine {
                 CaptureManager.captureRAM(context.vinfo.ptr_vertex, context.vinfo.vertexSize * ucount * vcount);
             }
 
-            // Generate patch VertexState.
-            patch = new VertexState[context.patch_div_s + 1][context.patch_div_t + 1];
-
-            // Number of patches in the U and V directions
-            int upcount = ucount / 3;
-            int vpcount = vcount / 3;
-
-            float[][] ucoeff = new float[context.patch_div_s + 1][];
-
-            for (int j = 0; j <= context.patch_div_t; j++) {
-                float vglobal = (float) j * vpcount / (float) context.patch_div_t;
-
-                int vpatch = (int) vglobal; // Patch number
-                float cv = vglobal - vpatch;
-                if (j == context.patch_div_t) {
-                    vpatch--;
-                    cv = 1.f;
-                }
-                float[] vcoeff = BernsteinCoeff(cv);
-
-                for (int i = 0; i <= context.patch_div_s; i++) {
-                    float uglobal = (float) i * upcount / (float) context.patch_div_s;
-                    int upatch = (int) uglobal;
-                    float cu = uglobal - upatch;
-                    if (i == context.patch_div_s) {
-                        upatch--;
-                        cu = 1.f;
-                    }
-                    ucoeff[i] = BernsteinCoeff(cu);
-
-                    VertexState p = new VertexState();
-                    patch[i][j] = p;
+            // Generate patch vertices, or retrieve them from the cache.
+            patch = CurvedSurfaceTessellator.getInstance().tessellateBezier(anchors, ucount, vcount, context.patch_div_s, context.patch_div_t, context.useVertexColor, useTexture, useNormal, useTexture && context.vinfo.texture == 0);
+        }
 
-                    for (int ii = 0; ii < 4; ++ii) {
-                        for (int jj = 0; jj < 4; ++jj) {
-                            pointMultAdd(p,
-                                    anchors[3 * upatch + ii][3 * vpatch + jj],
-                                    ucoeff[i][ii] * vcoeff[jj],
-                                    context.useVertexColor, useTexture, useNormal);
-                        }
-                    }
+        drawCurvedSurface(patch, ucount, vcount, cachedVertexInfo, context.useVertexColor, useTexture, useNormal);
+    }
 
-                    if (useTexture && context.vinfo.texture == 0) {
-                        p.t[0] = uglobal;
-                        p.t[1] = vglobal;
-                    }
-                }
-            }
+    private int addCurvedSurfaceVertex(float[] patch, int offset, int ii, boolean useVertexColor, boolean useTexture, boolean useNormal) {
+        if (useTexture) {
+            floatBufferArray[ii++] = patch[offset + CurvedSurfaceTessellator.VERTEX_TEXTURE + 0];
+            floatBufferArray[ii++] = patch[offset + CurvedSurfaceTessellator.VERTEX_TEXTURE + 1];
+        }
+        if (useVertexColor) {
+            floatBufferArray[ii++] = patch[offset + CurvedSurfaceTessellator.VERTEX_COLOR + 0];
+            floatBufferArray[ii++] = patch[offset + CurvedSurfaceTessellator.VERTEX_COLOR + 1];
+            floatBufferArray[ii++] = patch[offset + CurvedSurfaceTessellator.VERTEX_COLOR + 2];
+            floatBufferArray[ii++] = patch[offset + CurvedSurfaceTessellator.VERTEX_COLOR + 3];
+        }
+        if (useNormal) {
+            floatBufferArray[ii++] = patch[offset + CurvedSurfaceTessellator.VERTEX_NORMAL + 0];
+            floatBufferArray[ii++] = patch[offset + CurvedSurfaceTessellator.VERTEX_NORMAL + 1];
+            floatBufferArray[ii++] = patch[offset + CurvedSurfaceTessellator.VERTEX_NORMAL + 2];
         }
+        floatBufferArray[ii++] = patch[offset + CurvedSurfaceTessellator.VERTEX_POSITION + 0];
+        floatBufferArray[ii++] = patch[offset + CurvedSurfaceTessellator.VERTEX_POSITION + 1];
+        floatBufferArray[ii++] = patch[offset + CurvedSurfaceTessellator.VERTEX_POSITION + 2];
 
-        drawCurvedSurface(patch, ucount, vcount, cachedVertexInfo, context.useVertexColor, useTexture, useNormal);
+        return ii;
     }
 
-    private void drawCurvedSurface(VertexState[][] patch, int ucount, int vcount, VertexInfo cachedVertexInfo, boolean useVertexColor, boolean useTexture, boolean useNormal) {
+    private void drawCurvedSurface(float[] patch, int ucount, int vcount, VertexInfo cachedVertexInfo, boolean useVertexColor, boolean useTexture, boolean useNormal) {
         if (re.isVertexArrayAvailable()) {
             re.bindVertexArray(0);
         }
@@ -7148,91 +7034,24 @@ public class VideoEngine {
         int numberOfVertexPerRow = (context.patch_div_s + 1) * 2;
         if (cachedVertexInfo == null) {
             int ii = 0;
+            int rowSize = (context.patch_div_s + 1) * CurvedSurfaceTessellator.VERTEX_SIZE;
             for (int j = 0; j < context.patch_div_t; j++) {
                 for (int i = 0; i <= context.patch_div_s; i++) {
-                    VertexState vs1 = patch[i][j];
-                    VertexState vs2 = patch[i][j + 1];
+                    int vs1 = j * rowSize + i * CurvedSurfaceTessellator.VERTEX_SIZE;
+                    int vs2 = vs1 + rowSize;
 
-                    if (useTexture) {
-                        floatBufferArray[ii++] = vs1.t[0];
-                        floatBufferArray[ii++] = vs1.t[1];
-                    }
-                    if (useVertexColor) {
-                        floatBufferArray[ii++] = vs1.c[0];
-                        floatBufferArray[ii++] = vs1.c[1];
-                        floatBufferArray[ii++] = vs1.c[2];
-                        floatBufferArray[ii++] = vs1.c[3];
-                    }
-                    if (useNormal) {
-                        floatBufferArray[ii++] = vs1.n[0];
-                        floatBufferArray[ii++] = vs1.n[1];
-                        floatBufferArray[ii++] = vs1.n[2];
-                    }
-                    floatBufferArray[ii++] = vs1.p[0];
-                    floatBufferArray[ii++] = vs1.p[1];
-                    floatBufferArray[ii++] = vs1.p[2];
+                    ii = addCurvedSurfaceVertex(patch, vs1, ii, useVertexColor, useTexture, useNormal);
 
                     if (combineRowPrimitives && i == 0 && j > 0) {
                         // First dummy vertex: add v1 again
-                        if (useTexture) {
-                            floatBufferArray[ii++] = vs1.t[0];
-                            floatBufferArray[ii++] = vs1.t[1];
-                        }
-                        if (useVertexColor) {
-                            floatBufferArray[ii++] = vs1.c[0];
-                            floatBufferArray[ii++] = vs1.c[1];
-                            floatBufferArray[ii++] = vs1.c[2];
-                            floatBufferArray[ii++] = vs1.c[3];
-                        }
-                        if (useNormal) {
-                            floatBufferArray[ii++] = vs1.n[0];
-                            floatBufferArray[ii++] = vs1.n[1];
-                            floatBufferArray[ii++] = vs1.n[2];
-                        }
-                        floatBufferArray[ii++] = vs1.p[0];
-                        floatBufferArray[ii++] = vs1.p[1];
-                        floatBufferArray[ii++] = vs1.p[2];
+                        ii = addCurvedSurfaceVertex(patch, vs1, ii, useVertexColor, useTexture, useNormal);
                     }
 
-                    if (useTexture) {
-                        floatBufferArray[ii++] = vs2.t[0];
-                        floatBufferArray[ii++] = vs2.t[1];
-                    }
-                    if (useVertexColor) {
-                        floatBufferArray[ii++] = vs2.c[0];
-                        floatBufferArray[ii++] = vs2.c[1];
-                        floatBufferArray[ii++] = vs2.c[2];
-                        floatBufferArray[ii++] = vs2.c[3];
-                    }
-                    if (useNormal) {
-                        floatBufferArray[ii++] = vs2.n[0];
-                        floatBufferArray[ii++] = vs2.n[1];
-                        floatBufferArray[ii++] = vs2.n[2];
-                    }
-                    floatBufferArray[ii++] = vs2.p[0];
-                    floatBufferArray[ii++] = vs2.p[1];
-                    floatBufferArray[ii++] = vs2.p[2];
+                    ii = addCurvedSurfaceVertex(patch, vs2, ii, useVertexColor, useTexture, useNormal);
 
                     if (combineRowPrimitives && i == context.patch_div_s && j < context.patch_div_t - 1) {
                         // Second dummy vertex: add v2 again
-                        if (useTexture) {
-                            floatBufferArray[ii++] = vs2.t[0];
-                            floatBufferArray[ii++] = vs2.t[1];
-                        }
-                        if (useVertexColor) {
-                            floatBufferArray[ii++] = vs2.c[0];
-                            floatBufferArray[ii++] = vs2.c[1];
-                            floatBufferArray[ii++] = vs2.c[2];
-                            floatBufferArray[ii++] = vs2.c[3];
-                        }
-                        if (useNormal) {
-                            floatBufferArray[ii++] = vs2.n[0];
-                            floatBufferArray[ii++] = vs2.n[1];
-                            floatBufferArray[ii++] = vs2.n[2];
-                        }
-                        floatBufferArray[ii++] = vs2.p[0];
-                        floatBufferArray[ii++] = vs2.p[1];
-                        floatBufferArray[ii++] = vs2.p[2];
+                        ii = addCurvedSurfaceVertex(patch, vs2, ii, useVertexColor, useTexture, useNormal);
                     }
                 }
             }
@@ -7296,15 +7115,16 @@ public class VideoEngine {
         endRendering(ucount * vcount);
     }
 
-    private VertexState[][] getControlPoints(int ucount, int vcount) {
-        VertexState[][] controlPoints = new VertexState[ucount][vcount];
+    private float[] getControlPoints(int ucount, int vcount) {
+        float[] controlPoints = CurvedSurfaceTessellator.getInstance().getControlPointsBuffer(ucount * vcount);
 
         boolean readTexture = context.textureFlag.isEnabled();
         Memory mem = Memory.getInstance();
+        final VertexState vs = new VertexState();
         for (int cu = 0; cu < ucount; cu++) {
             for (int cv = 0; cv < vcount; cv++) {
                 int addr = context.vinfo.getAddress(mem, cv * ucount + cu);
-                VertexState vs = context.vinfo.readVertex(mem, addr, readTexture, isDoubleTexture2DCoords());
+                context.vinfo.readVertex(mem, addr, vs, readTexture, isDoubleTexture2DCoords());
                 if (context.vinfo.weight != 0 && context.vinfo.position != 0) {
                     doSkinning(context.bone_uploaded_matrix, context.vinfo, vs);
                 }
@@ -7315,21 +7135,12 @@ public class VideoEngine {
                             vs.t[0], vs.t[1],
                             PixelColor.getColor(vs.c)));
                 }
-                controlPoints[cu][cv] = vs;
+                CurvedSurfaceTessellator.setControlPoint(controlPoints, cu * vcount + cv, vs);
             }
         }
         return controlPoints;
     }
 
-    private float[] BernsteinCoeff(float u) {
-        float uPow2 = u * u;
-        float uPow3 = uPow2 * u;
-        float u1 = 1 - u;
-        float u1Pow2 = u1 * u1;
-        float u1Pow3 = u1Pow2 * u1;
-        return new float[]{u1Pow3, 3 * u * u1Pow2, 3 * uPow2 * u1, uPow3};
-    }
-
     private Buffer getTextureBuffer(int texaddr, int bytesPerPixel, int level, int textureBufferWidthInPixels) {
         Buffer final_buffer = null;
 
@@ -7371,6 +7182,11 @@ public class VideoEngine {
         return round4(width) * round4(height) * 4 / compressionRatio;
     }
 
+    private void setSomethingDisplayed() {
+        somethingDisplayed = true;
+        display.setGeRendered();
+    }
+
     private void updateGeBuf() {
         if (geBufChanged) {
             display.hleDisplaySetGeBuf(context.fbp, context.fbw, context.psm, somethingDisplayed, forceLoadGEToScreen);
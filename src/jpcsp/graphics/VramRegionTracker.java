@@ -0,0 +1,243 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.graphics;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.Memory;
+
+/**
+ * Index of the VRAM regions used as GE frame buffers,
+ * with the dirty state of each region.
+ *
+ * When rendering with OpenGL, the result of the GE rendering is only
+ * available on the screen. A region is tracking if the GE has rendered
+ * into it since its last copy to the memory (i.e. if the memory is outdated).
+ * The copy of the GE to the memory can then be skipped when the GE
+ * has not rendered into the region since its last copy.
+ *
+ * The regions are sorted by address and are not overlapping:
+ * a new region overlapping existing regions is merged with them.
+ * The state of a new region is unknown, it is considered as being modified.
+ *
+ * The CPU writes into the memory do not need to be tracked: when the copy
+ * is skipped, the memory content, including these writes, is left unchanged.
+ */
+public class VramRegionTracker {
+	private static Logger log = VideoEngine.log;
+	private static VramRegionTracker instance;
+	private volatile Region[] regions = new Region[0];
+	// The region returned by the last call to getRegion()
+	private volatile Region lastRegion;
+	// Statistics
+	private long copyToMemoryCount;
+	private long copyToMemoryBytes;
+	private long copyToMemoryAvoidedCount;
+	private long copyToMemoryAvoidedBytes;
+	private long frameCount;
+	private long frameAvoidedBytes;
+	private long maxFrameAvoidedBytes;
+
+	public static class Region {
+		private final int start;
+		private final int end;
+		private volatile boolean memoryOutdated = true;
+		private volatile boolean merged;
+
+		private Region(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		public int getStart() {
+			return start;
+		}
+
+		public int getEnd() {
+			return end;
+		}
+
+		public int getLength() {
+			return end - start;
+		}
+
+		/**
+		 * @return true if the GE has rendered into this region since
+		 *         its last copy to the memory.
+		 */
+		public boolean isMemoryOutdated() {
+			return memoryOutdated;
+		}
+
+		public void setRenderedByGe() {
+			memoryOutdated = true;
+		}
+
+		public void setMemoryUpdated() {
+			memoryOutdated = false;
+		}
+
+		private boolean isInside(int start, int end) {
+			return this.start <= start && end <= this.end;
+		}
+
+		private boolean isOverlapping(int start, int end) {
+			return start < this.end && this.start < end;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Region 0x%08X-0x%08X(memoryOutdated=%b)", start, end, memoryOutdated);
+		}
+	}
+
+	public static VramRegionTracker getInstance() {
+		if (instance == null) {
+			instance = new VramRegionTracker();
+		}
+
+		return instance;
+	}
+
+	private VramRegionTracker() {
+	}
+
+	public synchronized void reset() {
+		regions = new Region[0];
+		lastRegion = null;
+	}
+
+	/**
+	 * Retrieve the region including the given memory range.
+	 * The region is created, or merged with the overlapping regions, if required.
+	 * The returned region is only valid until the next call to getRegion().
+	 *
+	 * @param address  the start address of the memory range
+	 * @param length   the length in bytes of the memory range
+	 * @return         the region including the memory range
+	 */
+	public Region getRegion(int address, int length) {
+		int start = address & Memory.addressMask;
+		int end = start + Math.max(length, 1);
+
+		Region region = lastRegion;
+		if (region != null && !region.merged && region.isInside(start, end)) {
+			return region;
+		}
+
+		return findRegion(start, end);
+	}
+
+	private synchronized Region findRegion(int start, int end) {
+		Region[] regions = this.regions;
+
+		int first = 0;
+		while (first < regions.length && regions[first].end <= start) {
+			first++;
+		}
+		int last = first;
+		while (last < regions.length && regions[last].isOverlapping(start, end)) {
+			last++;
+		}
+
+		Region region;
+		if (last == first + 1 && regions[first].isInside(start, end)) {
+			region = regions[first];
+		} else {
+			// Merge the overlapping regions into a new region
+			int mergedStart = start;
+			int mergedEnd = end;
+			if (last > first) {
+				mergedStart = Math.min(mergedStart, regions[first].start);
+				mergedEnd = Math.max(mergedEnd, regions[last - 1].end);
+			}
+			region = new Region(mergedStart, mergedEnd);
+
+			Region[] newRegions = new Region[regions.length - (last - first) + 1];
+			System.arraycopy(regions, 0, newRegions, 0, first);
+			newRegions[first] = region;
+			System.arraycopy(regions, last, newRegions, first + 1, regions.length - last);
+			this.regions = newRegions;
+
+			if (last > first) {
+				// The state of the new region is the combined state of the merged regions
+				boolean memoryOutdated = false;
+				for (int i = first; i < last; i++) {
+					regions[i].merged = true;
+					memoryOutdated |= regions[i].memoryOutdated;
+				}
+				// The memory range not covered by the merged regions has an unknown state
+				boolean covered = mergedStart == regions[first].start && mergedEnd == regions[last - 1].end;
+				for (int i = first + 1; covered && i < last; i++) {
+					covered = regions[i - 1].end == regions[i].start;
+				}
+				region.memoryOutdated = memoryOutdated || !covered;
+			}
+
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("VramRegionTracker new %s, merged %d regions", region, last - first));
+			}
+		}
+
+		lastRegion = region;
+
+		return region;
+	}
+
+	/**
+	 * The GE has been copied to the memory.
+	 *
+	 * @param region   the region including the copied memory range
+	 * @param address  the start address of the copied memory range
+	 * @param length   the length in bytes of the copied memory range
+	 */
+	public void copyToMemoryDone(Region region, int address, int length) {
+		copyToMemoryCount++;
+		copyToMemoryBytes += length;
+
+		// The memory of the region is up-to-date only if it has been completely copied
+		int start = address & Memory.addressMask;
+		if (start <= region.start && region.end <= start + length) {
+			region.setMemoryUpdated();
+		}
+	}
+
+	public void copyToMemoryAvoided(Region region) {
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("VramRegionTracker copy to memory not required for %s", region));
+		}
+		copyToMemoryAvoidedCount++;
+		copyToMemoryAvoidedBytes += region.getLength();
+		frameAvoidedBytes += region.getLength();
+	}
+
+	/**
+	 * A new frame is being rendered by the GE.
+	 */
+	public void startFrame() {
+		frameCount++;
+		maxFrameAvoidedBytes = Math.max(maxFrameAvoidedBytes, frameAvoidedBytes);
+		frameAvoidedBytes = 0;
+	}
+
+	public void exit() {
+		if (log.isInfoEnabled() && frameCount > 0 && (copyToMemoryCount > 0 || copyToMemoryAvoidedCount > 0)) {
+			maxFrameAvoidedBytes = Math.max(maxFrameAvoidedBytes, frameAvoidedBytes);
+			log.info(String.format("VramRegionTracker: copy GE to memory %d times (%d KB), avoided %d times (%d KB, average %.1f KB per frame, max %d KB per frame)", copyToMemoryCount, copyToMemoryBytes >> 10, copyToMemoryAvoidedCount, copyToMemoryAvoidedBytes >> 10, copyToMemoryAvoidedBytes / 1024.0 / frameCount, maxFrameAvoidedBytes >> 10));
+		}
+	}
+}
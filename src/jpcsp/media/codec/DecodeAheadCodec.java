@@ -0,0 +1,293 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.media.codec;
+
+import static jpcsp.HLE.modules.SysMemUserForUser.KERNEL_PARTITION_ID;
+import static jpcsp.HLE.modules.SysMemUserForUser.PSP_SMEM_Low;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.Memory;
+import jpcsp.HLE.Modules;
+import jpcsp.HLE.modules.SysMemUserForUser.SysMemInfo;
+import jpcsp.util.Utilities;
+
+/**
+ * Audio codec decoding the next frame on a background thread.
+ *
+ * After each decode() call, the HLE module can call decodeAhead() with the
+ * address of the next frame when it is already available in the application
+ * stream buffer. The frame is then decoded by a worker thread and its samples
+ * are kept on the host side. When the next decode() call requests the same input frame
+ * (same address and unchanged content), the samples are just copied to the
+ * output address. Otherwise, the frame is decoded synchronously.
+ *
+ * The wrapped codec keeps a state between frames (e.g. overlap and bit reservoir).
+ * When the frame decoded ahead is not the requested one, the codec has consumed
+ * a wrong frame: it is re-initialized before decoding the requested frame.
+ *
+ * The decode() calls of the wrapped codec are never executed concurrently.
+ * The worker threads decode into one kernel memory area shared by all the codecs,
+ * having one slot per worker thread.
+ */
+public class DecodeAheadCodec implements ICodec {
+	private static Logger log = CodecFactory.log;
+	// Larger frames are not decoded ahead
+	private static final int MAX_INPUT_LENGTH = 0x2000;
+	// Enough to store the largest frame (2048 samples) with stereo output
+	private static final int OUTPUT_BUFFER_SIZE = 2048 * 2 * 2;
+	private static final int numberOfThreads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+	private static ExecutorService executor;
+	private static SysMemInfo sharedOutputBuffer;
+	private static final LinkedBlockingQueue<Integer> freeOutputSlots = new LinkedBlockingQueue<Integer>();
+	static {
+		for (int i = 0; i < numberOfThreads; i++) {
+			freeOutputSlots.add(i);
+		}
+	}
+	private final ICodec codec;
+	private int bytesPerFrame;
+	private int channels;
+	private int outputChannels;
+	private int codingMode;
+	private boolean initialized;
+	private int numberOfSamples = -1;
+	private Future<DecodeAheadJob> pendingFuture;
+	private int hits;
+	private int misses;
+
+	private static class DecodeAheadThreadFactory implements ThreadFactory {
+		private int threadNumber;
+
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, String.format("Audio Decode Ahead Thread %d", ++threadNumber));
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private class DecodeAheadJob implements Callable<DecodeAheadJob> {
+		private final int inputAddr;
+		private final int inputLength;
+		private final int outputBufferAddr;
+		private final byte[] input;
+		private byte[] output;
+		private int outputLength;
+		private int result;
+		private int numberOfSamples;
+		private boolean valid;
+
+		public DecodeAheadJob(int inputAddr, int inputLength, int outputBufferAddr) {
+			this.inputAddr = inputAddr;
+			this.inputLength = inputLength;
+			this.outputBufferAddr = outputBufferAddr;
+			input = new byte[Math.min(inputLength, MAX_INPUT_LENGTH)];
+		}
+
+		@Override
+		public DecodeAheadJob call() throws InterruptedException {
+			Utilities.readBytes(inputAddr, input.length, input, 0);
+
+			int slot = freeOutputSlots.take().intValue();
+			try {
+				int slotAddr = outputBufferAddr + slot * OUTPUT_BUFFER_SIZE;
+				result = codec.decode(inputAddr, inputLength, slotAddr);
+				numberOfSamples = codec.getNumberOfSamples();
+
+				if (result > 0) {
+					outputLength = Math.min(numberOfSamples * 2 * outputChannels, OUTPUT_BUFFER_SIZE);
+					output = new byte[outputLength];
+					Utilities.readBytes(slotAddr, outputLength, output, 0);
+				}
+			} finally {
+				freeOutputSlots.add(slot);
+			}
+
+			// The decoded frame is only valid if the input has not been
+			// modified by the application during the decoding
+			valid = result > 0 && isInputUnchanged();
+
+			return this;
+		}
+
+		public boolean isInputUnchanged() {
+			if (result > input.length) {
+				return false;
+			}
+
+			Memory mem = Memory.getInstance();
+			for (int i = 0; i < result; i++) {
+				if (input[i] != (byte) mem.read8(inputAddr + i)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		public boolean matches(int inputAddr, int inputLength) {
+			return valid && this.inputAddr == inputAddr && result <= inputLength && isInputUnchanged();
+		}
+	}
+
+	public DecodeAheadCodec(ICodec codec) {
+		this.codec = codec;
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(numberOfThreads, new DecodeAheadThreadFactory());
+		}
+
+		return executor;
+	}
+
+	/**
+	 * Get the kernel memory area where the worker threads are decoding.
+	 * It is allocated once and shared by all the codecs.
+	 * Has to be called from the emulator thread.
+	 *
+	 * @return the shared output buffer, or null if it could not be allocated
+	 */
+	private static SysMemInfo getSharedOutputBuffer() {
+		// The memory might have been reset since the allocation
+		if (sharedOutputBuffer != null && Modules.SysMemUserForUserModule.getSysMemInfo(sharedOutputBuffer.uid) != sharedOutputBuffer) {
+			sharedOutputBuffer = null;
+		}
+
+		if (sharedOutputBuffer == null) {
+			sharedOutputBuffer = Modules.SysMemUserForUserModule.malloc(KERNEL_PARTITION_ID, "DecodeAheadCodec-output", PSP_SMEM_Low, numberOfThreads * OUTPUT_BUFFER_SIZE, 0);
+		}
+
+		return sharedOutputBuffer;
+	}
+
+	private DecodeAheadJob waitForPendingJob() {
+		DecodeAheadJob job = null;
+		if (pendingFuture != null) {
+			try {
+				job = pendingFuture.get();
+			} catch (InterruptedException e) {
+				log.error("DecodeAheadCodec", e);
+			} catch (ExecutionException e) {
+				log.error("DecodeAheadCodec", e.getCause());
+			}
+			pendingFuture = null;
+		}
+
+		return job;
+	}
+
+	@Override
+	public int init(int bytesPerFrame, int channels, int outputChannels, int codingMode) {
+		waitForPendingJob();
+		this.bytesPerFrame = bytesPerFrame;
+		this.channels = channels;
+		this.outputChannels = outputChannels;
+		this.codingMode = codingMode;
+		initialized = true;
+		numberOfSamples = -1;
+
+		return codec.init(bytesPerFrame, channels, outputChannels, codingMode);
+	}
+
+	@Override
+	public int decode(int inputAddr, int inputLength, int outputAddr) {
+		if (pendingFuture != null) {
+			DecodeAheadJob job = waitForPendingJob();
+			if (job != null && job.matches(inputAddr, inputLength)) {
+				hits++;
+				numberOfSamples = job.numberOfSamples;
+				Utilities.writeBytes(outputAddr, job.outputLength, job.output, 0);
+
+				return job.result;
+			}
+
+			// The codec has decoded a frame which is not the one requested
+			// (e.g. after a change of the play position).
+			// Restart from a clean codec state instead of the state
+			// left by the frame decoded ahead.
+			misses++;
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("DecodeAheadCodec miss: requested 0x%08X, decoded ahead 0x%08X", inputAddr, job == null ? 0 : job.inputAddr));
+			}
+			if (initialized) {
+				codec.init(bytesPerFrame, channels, outputChannels, codingMode);
+			}
+		}
+
+		int result = codec.decode(inputAddr, inputLength, outputAddr);
+		numberOfSamples = codec.getNumberOfSamples();
+
+		return result;
+	}
+
+	/**
+	 * Start decoding the next frame on a background thread.
+	 * The frame has to be completely available at inputAddr.
+	 *
+	 * @param inputAddr    the address of the next frame
+	 * @param inputLength  the length available at inputAddr
+	 */
+	public void decodeAhead(int inputAddr, int inputLength) {
+		if (pendingFuture != null || inputLength <= 0) {
+			return;
+		}
+
+		SysMemInfo outputBuffer = getSharedOutputBuffer();
+		if (outputBuffer == null) {
+			return;
+		}
+
+		pendingFuture = getExecutor().submit(new DecodeAheadJob(inputAddr, inputLength, outputBuffer.addr));
+	}
+
+	/**
+	 * Wait for the frame being decoded ahead.
+	 */
+	public void release() {
+		waitForPendingJob();
+
+		if (log.isDebugEnabled() && (hits > 0 || misses > 0)) {
+			log.debug(String.format("DecodeAheadCodec %s: hits=%d, misses=%d", codec.getClass().getSimpleName(), hits, misses));
+		}
+	}
+
+	@Override
+	public int getNumberOfSamples() {
+		if (numberOfSamples < 0) {
+			// No frame decoded yet
+			waitForPendingJob();
+			return codec.getNumberOfSamples();
+		}
+
+		return numberOfSamples;
+	}
+
+	public ICodec getCodec() {
+		return codec;
+	}
+}
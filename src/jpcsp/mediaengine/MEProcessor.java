@@ -23,12 +23,9 @@ import org.apache.log4j.Logger;
 
 import jpcsp.AllegrexOpcodes;
 import jpcsp.Emulator;
-import jpcsp.Memory;
-import jpcsp.MemoryMap;
 import jpcsp.Processor;
-import jpcsp.Allegrex.Common.Instruction;
-import jpcsp.Allegrex.Decoder;
-import jpcsp.Allegrex.compiler.RuntimeContext;
+import jpcsp.Allegrex.compiler.IProcessorExecutable;
+import jpcsp.Allegrex.compiler.ProcessorCompiler;
 import jpcsp.Allegrex.compiler.RuntimeContextLLE;
 import jpcsp.memory.mmio.MMIOHandlerInterruptMan;
 import jpcsp.util.Utilities;
@@ -59,9 +56,7 @@ public class MEProcessor extends Processor {
 	private final int[] vmeRegisters = new int[0x590]; // Highest VME register number seen is 0x058F
 	private boolean halt;
 	private int pendingInterruptIPbits;
-	private Instruction instructions[];
-	private static final int optimizedRunStart = MemoryMap.START_RAM;
-	private static final int optimizedRunEnd = MemoryMap.START_RAM + 0x3000;
+	private final ProcessorCompiler compiler;
 
 	public static MEProcessor getInstance() {
 		if (instance == null) {
@@ -74,6 +69,7 @@ public class MEProcessor extends Processor {
 		setLogger(log);
 		meMemory = new MEMemory(RuntimeContextLLE.getMMIO(), log);
 		cpu.setMemory(meMemory);
+		compiler = new ProcessorCompiler(this, "ME");
 
 		// CPUID is 1 for the ME
 		cp0.setCpuid(CPUID_ME);
@@ -116,6 +112,9 @@ public class MEProcessor extends Processor {
 
 		cpu.pc = 0xBFC00000;
 
+		// The ME memory has been reloaded, recompile all the code
+		compiler.invalidateAll();
+
 		halt = false;
 
 		meThread.sync();
@@ -270,52 +269,37 @@ public class MEProcessor extends Processor {
 		}
 	}
 
-	private void initRun() {
-		instructions = new Instruction[(optimizedRunEnd - optimizedRunStart) >> 2];
-		for (int pc = optimizedRunStart; pc < optimizedRunEnd; pc += 4) {
-			int opcode = memory.read32(pc);
-			instructions[(pc - optimizedRunStart) >> 2] = Decoder.instruction(opcode);
-		}
-	}
-
-	private void optimizedRun() {
-		int[] memoryInt = RuntimeContext.getMemoryInt();
-		
+	private void compiledRun() {
 		int count = 0;
 		long start = Emulator.getClock().currentTimeMillis();
 
 		while (!halt && !Emulator.pause) {
+			// The pending interrupts are checked at each code block boundary.
+			// Code blocks are ending after each instruction modifying the
+			// interrupt state, so that an interrupt is taken as soon as enabled.
 			if (pendingInterruptIPbits != 0) {
 				checkPendingInterruptException();
 			}
 
-			int pc = cpu.pc & Memory.addressMask;
-			if (pc >= optimizedRunEnd) {
-				break;
+			IProcessorExecutable executable = compiler.getExecutable(cpu.pc);
+			if (executable != null) {
+				executable.exec(this);
+			} else {
+				step();
 			}
-			int insnIndex = (pc - optimizedRunStart) >> 2;
-			int opcode = memoryInt[pc >> 2];
-			cpu.pc += 4;
-
-			Instruction insn = instructions[insnIndex];
-	        if (log.isTraceEnabled()) {
-	        	log.trace(String.format("Interpreting 0x%08X: [0x%08X] - %s", cpu.pc - 4, opcode, insn.disasm(cpu.pc - 4, opcode)));
-	        }
-			insn.interpret(this, opcode);
 			count++;
 		}
 
 		long end = Emulator.getClock().currentTimeMillis();
-		if (count > 0 && log.isInfoEnabled()) {
+		if (count > 0 && log.isDebugEnabled()) {
 			int duration = Math.max((int) (end - start), 1);
-			log.info(String.format("MEProcessor %d instructions executed in %d ms: %d instructions per ms", count, duration, (count + duration / 2) / duration));
+			log.debug(String.format("MEProcessor %d code blocks executed in %d ms", count, duration));
 		}
 	}
 
 	private void normalRun() {
 		int count = 0;
 		long start = Emulator.getClock().currentTimeMillis();
-		final boolean hasMemoryInt = RuntimeContext.hasMemoryInt();
 
 		while (!halt && !Emulator.pause) {
 			if (pendingInterruptIPbits != 0) {
@@ -325,11 +309,6 @@ public class MEProcessor extends Processor {
 			step();
 			count++;
 
-			int pc = cpu.pc & Memory.addressMask;
-			if (hasMemoryInt && pc >= optimizedRunStart && pc < optimizedRunEnd) {
-				break;
-			}
-
 			if (cpu.pc == 0x883000E0 && log.isDebugEnabled()) {
 				log.debug(String.format("Initial ME memory content from meimg.img:"));
 				log.debug(Utilities.getMemoryDump(meMemory, 0x00101000, cpu._v0));
@@ -338,30 +317,22 @@ public class MEProcessor extends Processor {
 		}
 
 		long end = Emulator.getClock().currentTimeMillis();
-		if (count > 0 && log.isInfoEnabled()) {
+		if (count > 0 && log.isDebugEnabled()) {
 			int duration = Math.max((int) (end - start), 1);
-			log.info(String.format("MEProcessor %d instructions executed in %d ms: %d instructions per ms", count, duration, (count + duration / 2) / duration));
+			log.debug(String.format("MEProcessor %d instructions executed in %d ms: %d instructions per ms", count, duration, (count + duration / 2) / duration));
 		}
 	}
 
 	public void run() {
-		if (instructions == null) {
-			initRun();
-		}
-
 		if (log.isDebugEnabled()) {
 			log.debug(String.format("MEProcessor starting run: halt=%b, pendingInterruptIPbits=0x%X, pc=0x%08X", halt, pendingInterruptIPbits, cpu.pc));
 		}
 
-		final boolean hasMemoryInt = RuntimeContext.hasMemoryInt();
-
-		while (!halt && !Emulator.pause) {
-			int pc = cpu.pc & Memory.addressMask;
-			if (hasMemoryInt && pc >= optimizedRunStart && pc < optimizedRunEnd) {
-				optimizedRun();
-			} else {
-				normalRun();
-			}
+		if (log.isTraceEnabled()) {
+			// Interpret instruction by instruction to trace each of them
+			normalRun();
+		} else {
+			compiledRun();
 		}
 
 		if (log.isDebugEnabled()) {
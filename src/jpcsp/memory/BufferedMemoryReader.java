@@ -21,9 +21,17 @@ package jpcsp.memory;
  *
  */
 public class BufferedMemoryReader {
+	// Maximum number of 32-bit values read at once from the memory
+	private static final int BUFFER_LENGTH = 256;
 	private IMemoryReader memoryReader;
 	private int readValue;
 	private int index;
+	// 32-bit values read in advance when the length is known
+	private int[] buffer;
+	private int bufferIndex;
+	private int bufferLength;
+	// Number of 32-bit values not yet read into the buffer
+	private int remaining;
 
 	public BufferedMemoryReader(int address) {
 		memoryReader = MemoryReader.getMemoryReader(address, 4);
@@ -31,25 +39,62 @@ public class BufferedMemoryReader {
 	}
 
 	public BufferedMemoryReader(int address, int length) {
-		memoryReader = MemoryReader.getMemoryReader(address, length, 4);
+		// Number of 32-bit values covering the memory range
+		remaining = ((address & 0x03) + length + 3) >> 2;
+		memoryReader = MemoryReader.getMemoryReader(address, remaining << 2, 4);
+		buffer = new int[Math.max(0, Math.min(remaining, BUFFER_LENGTH))];
 		init(address);
 	}
 
 	private void init(int address) {
 		index = address & 0x03;
 		if (index > 0) {
-			readValue = memoryReader.readNext();
+			readValue = readNextValue();
+		}
+	}
+
+	private int readNextValue() {
+		if (buffer == null) {
+			return memoryReader.readNext();
+		}
+
+		if (bufferIndex >= bufferLength) {
+			bufferIndex = 0;
+			bufferLength = Math.min(buffer.length, remaining);
+			if (bufferLength <= 0) {
+				// Reading past the given length
+				bufferLength = 0;
+				return memoryReader.readNext();
+			}
+			memoryReader.readNext(buffer, 0, bufferLength);
+			remaining -= bufferLength;
+		}
+
+		return buffer[bufferIndex++];
+	}
+
+	private void skipValues(int count) {
+		if (buffer == null) {
+			memoryReader.skip(count);
+		} else {
+			int bufferSkip = Math.min(count, bufferLength - bufferIndex);
+			bufferIndex += bufferSkip;
+			count -= bufferSkip;
+			if (count > 0) {
+				memoryReader.skip(count);
+				remaining -= count;
+			}
 		}
 	}
 
 	public int readNext32() {
 		index = 0;
-		return memoryReader.readNext();
+		return readNextValue();
 	}
 
 	public void skipNext32(int count) {
 		index = 0;
-		memoryReader.skip(count);
+		skipValues(count);
 	}
 
 	public void skipNext32() {
@@ -59,7 +104,7 @@ public class BufferedMemoryReader {
 	public int readNext16() {
 		if (index == 0 || index == 3) {
 			index = 2;
-			readValue = memoryReader.readNext();
+			readValue = readNextValue();
 			return readValue & 0xFFFF;
 		}
 		index = 0;
@@ -69,7 +114,7 @@ public class BufferedMemoryReader {
 	public void skipNext16() {
 		if (index == 0 || index == 3) {
 			index = 2;
-			readValue = memoryReader.readNext();
+			readValue = readNextValue();
 		} else {
 			index = 0;
 		}
@@ -78,7 +123,7 @@ public class BufferedMemoryReader {
 	public int readNext8() {
 		switch (index) {
 		case 0:
-			readValue = memoryReader.readNext();
+			readValue = readNextValue();
 			index = 1;
 			return (readValue & 0xFF);
 		case 1:
@@ -95,7 +140,7 @@ public class BufferedMemoryReader {
 
 	public void skipNext8() {
 		if (index == 0) {
-			readValue = memoryReader.readNext();
+			readValue = readNextValue();
 			index = 1;
 		} else if (index == 3) {
 			index = 0;
@@ -106,7 +151,7 @@ public class BufferedMemoryReader {
 
 	public float readNextFloat() {
 		index = 0;
-		return Float.intBitsToFloat(memoryReader.readNext());
+		return Float.intBitsToFloat(readNextValue());
 	}
 
 	public void align16() {
@@ -34,6 +34,18 @@ public interface IMemoryReader {
 	 */
 	public int readNext();
 
+	/**
+	 * Reads the next n values from memory into an int array.
+	 * 
+	 * This is equivalent to calling n times readNext(), but
+	 * the MemoryReader can read the values in bulk.
+	 * 
+	 * @param values the array receiving the values.
+	 * @param offset the offset in the array of the first value.
+	 * @param n      the number of values to be read.
+	 */
+	public void readNext(int[] values, int offset, int n);
+
 	/**
 	 * Skip n values when reading from memory.
 	 * 
@@ -40,6 +40,31 @@ public interface IMemoryWriter {
 	 */
 	public void writeNext(int value);
 
+	/**
+	 * Writes the next n values from an int array to memory.
+	 * 
+	 * This is equivalent to calling n times writeNext(int), but
+	 * the MemoryWriter can write the values in bulk.
+	 * 
+	 * @param values the array containing the values.
+	 * @param offset the offset in the array of the first value.
+	 * @param n      the number of values to be written.
+	 */
+	public void writeNext(int[] values, int offset, int n);
+
+	/**
+	 * Writes the next n values from a short array to memory.
+	 * 
+	 * This is equivalent to calling n times writeNext(int), but
+	 * the MemoryWriter can write the values in bulk.
+	 * When writing 32-bit values, the short values are sign-extended.
+	 * 
+	 * @param values the array containing the values.
+	 * @param offset the offset in the array of the first value.
+	 * @param n      the number of values to be written.
+	 */
+	public void writeNext(short[] values, int offset, int n);
+
 	/**
 	 * Skip n values when writing to memory.
 	 * 
@@ -247,6 +247,13 @@ public class ImageReader {
 			this.memoryReader = memoryReader;
 		}
 
+		@Override
+		public void readNext(int[] values, int offset, int n) {
+			for (int i = 0; i < n; i++) {
+				values[offset + i] = readNext();
+			}
+		}
+
 		@Override
 		public int getCurrentAddress() {
 			return memoryReader.getCurrentAddress();
@@ -419,6 +426,14 @@ public class ImageReader {
 			return color5551to8888(memoryReader.readNext());
 		}
 
+		@Override
+		public void readNext(int[] values, int offset, int n) {
+			memoryReader.readNext(values, offset, n);
+			for (int i = 0; i < n; i++) {
+				values[offset + i] = color5551to8888(values[offset + i]);
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			memoryReader.skip(n);
@@ -440,6 +455,14 @@ public class ImageReader {
 			return color565to8888(memoryReader.readNext());
 		}
 
+		@Override
+		public void readNext(int[] values, int offset, int n) {
+			memoryReader.readNext(values, offset, n);
+			for (int i = 0; i < n; i++) {
+				values[offset + i] = color565to8888(values[offset + i]);
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			memoryReader.skip(n);
@@ -461,6 +484,14 @@ public class ImageReader {
 			return color4444to8888(memoryReader.readNext());
 		}
 
+		@Override
+		public void readNext(int[] values, int offset, int n) {
+			memoryReader.readNext(values, offset, n);
+			for (int i = 0; i < n; i++) {
+				values[offset + i] = color4444to8888(values[offset + i]);
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			memoryReader.skip(n);
@@ -474,6 +505,7 @@ public class ImageReader {
 	 */
 	private static final class SwizzleDecoder extends ImageDecoder {
 		private int[] buffer;
+		private int[] swizzledBuffer;
 		private int index;
 		private int maxIndex;
 		private int rowWidth;
@@ -490,20 +522,28 @@ public class ImageReader {
 			buffer = new int[pitch * 8];
 			maxIndex = buffer.length;
 			index = maxIndex;
+
+			if (rowWidth >= 16) {
+				// The 8 pixel rows are read at once
+				swizzledBuffer = new int[bxc * 32];
+			}
 		}
 
 		private void reload() {
 			// Reload the swizzle buffer with the next 8 pixel rows
 	        int xdest = 0;
 	        if (rowWidth >= 16) {
+	        	memoryReader.readNext(swizzledBuffer, 0, swizzledBuffer.length);
+	        	int src = 0;
 				for (int bx = 0; bx < bxc; bx++) {
 					int dest = xdest;
 					for (int n = 0; n < 8; n++) {
-						buffer[dest    ] = memoryReader.readNext();
-						buffer[dest + 1] = memoryReader.readNext();
-						buffer[dest + 2] = memoryReader.readNext();
-						buffer[dest + 3] = memoryReader.readNext();
+						buffer[dest    ] = swizzledBuffer[src    ];
+						buffer[dest + 1] = swizzledBuffer[src + 1];
+						buffer[dest + 2] = swizzledBuffer[src + 2];
+						buffer[dest + 3] = swizzledBuffer[src + 3];
 
+						src += 4;
 						dest += pitch;
 					}
 					xdest += 4;
@@ -556,6 +596,22 @@ public class ImageReader {
 			return buffer[index++];
 		}
 
+		@Override
+		public void readNext(int[] values, int offset, int n) {
+			while (n > 0) {
+				if (index >= maxIndex) {
+					reload();
+					index = 0;
+				}
+
+				int count = Math.min(n, maxIndex - index);
+				System.arraycopy(buffer, index, values, offset, count);
+				index += count;
+				offset += count;
+				n -= count;
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			if (n > 0) {
@@ -608,6 +664,23 @@ public class ImageReader {
 			return memoryReader.readNext();
 		}
 
+		@Override
+		public void readNext(int[] values, int offset, int n) {
+			while (n > 0) {
+				if (x >= minWidth) {
+					memoryReader.skip(skipWidth);
+					x = 0;
+				}
+
+				// Read up to the end of the current line
+				int count = Math.min(n, minWidth - x);
+				memoryReader.readNext(values, offset, count);
+				x += count;
+				offset += count;
+				n -= count;
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			x += n;
@@ -707,6 +780,14 @@ public class ImageReader {
 			return clut[getClutIndex(index)];
 		}
 
+		@Override
+		public void readNext(int[] values, int offset, int n) {
+			memoryReader.readNext(values, offset, n);
+			for (int i = 0; i < n; i++) {
+				values[offset + i] = clut[getClutIndex(values[offset + i])];
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			memoryReader.skip(n);
@@ -766,6 +847,14 @@ public class ImageReader {
 			return clut[index];
 		}
 
+		@Override
+		public void readNext(int[] values, int offset, int n) {
+			memoryReader.readNext(values, offset, n);
+			for (int i = 0; i < n; i++) {
+				values[offset + i] = clut[values[offset + i]];
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			memoryReader.skip(n);
@@ -873,6 +962,22 @@ public class ImageReader {
 			return buffer[index++];
 		}
 
+		@Override
+		public void readNext(int[] values, int offset, int n) {
+			while (n > 0) {
+				if (index >= maxIndex) {
+					reload();
+					index = 0;
+				}
+
+				int count = Math.min(n, maxIndex - index);
+				System.arraycopy(buffer, index, values, offset, count);
+				index += count;
+				offset += count;
+				n -= count;
+			}
+		}
+
 		protected int getSkipLength() {
 			return (width / 4) * (2 + getAlphaSkipLength()) + bufferWidthSkip;
 		}
@@ -19,6 +19,7 @@ package jpcsp.memory;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.Arrays;
 
 import jpcsp.Memory;
 import jpcsp.MemoryMap;
@@ -230,6 +231,13 @@ public class MemoryReader {
 			return n;
 		}
 
+		@Override
+		public final void readNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				values[valuesOffset + i] = readNext();
+			}
+		}
+
 		@Override
 		public final void skip(int n) {
 			address += n * step;
@@ -271,6 +279,26 @@ public class MemoryReader {
 			return n;
 		}
 
+		@Override
+		public final void readNext(int[] values, int valuesOffset, int n) {
+			int end = valuesOffset + n;
+			// Complete the current 32-bit value
+			while (index != 4 && valuesOffset < end) {
+				values[valuesOffset++] = readNext();
+			}
+			// Read 4 values at a time from the next 32-bit values
+			for (; valuesOffset + 3 < end; valuesOffset += 4) {
+				int data = buffer[++offset];
+				values[valuesOffset    ] = data & 0xFF;
+				values[valuesOffset + 1] = (data >> 8) & 0xFF;
+				values[valuesOffset + 2] = (data >> 16) & 0xFF;
+				values[valuesOffset + 3] = data >>> 24;
+			}
+			while (valuesOffset < end) {
+				values[valuesOffset++] = readNext();
+			}
+		}
+
 		@Override
 		public final void skip(int n) {
 			if (n > 0) {
@@ -319,6 +347,24 @@ public class MemoryReader {
 			return n;
 		}
 
+		@Override
+		public final void readNext(int[] values, int valuesOffset, int n) {
+			int end = valuesOffset + n;
+			// Complete the current 32-bit value
+			if (index != 0 && valuesOffset < end) {
+				values[valuesOffset++] = readNext();
+			}
+			// Read 2 values at a time from the next 32-bit values
+			for (; valuesOffset + 1 < end; valuesOffset += 2) {
+				int data = buffer[offset++];
+				values[valuesOffset    ] = data & 0xFFFF;
+				values[valuesOffset + 1] = data >>> 16;
+			}
+			if (valuesOffset < end) {
+				values[valuesOffset] = readNext();
+			}
+		}
+
 		@Override
 		public final void skip(int n) {
 			if (n > 0) {
@@ -351,6 +397,12 @@ public class MemoryReader {
 			return buffer[offset++];
 		}
 
+		@Override
+		public final void readNext(int[] values, int valuesOffset, int n) {
+			System.arraycopy(buffer, offset, values, valuesOffset, n);
+			offset += n;
+		}
+
 		@Override
 		public final void skip(int n) {
 			offset += n;
@@ -368,7 +420,7 @@ public class MemoryReader {
 		private IntBuffer buffer;
 		private int address;
 
-		public MemoryReaderInt8(IntBuffer buffer, int index) {
+		public MemoryReaderInt8(IntBuffer buffer, int address) {
 			this.buffer = buffer;
 			this.address = address & ~3;
 			index = address & 0x03;
@@ -392,6 +444,13 @@ public class MemoryReader {
 			return n;
 		}
 
+		@Override
+		public final void readNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				values[valuesOffset + i] = readNext();
+			}
+		}
+
 		@Override
 		public final void skip(int n) {
 			if (n > 0) {
@@ -414,11 +473,11 @@ public class MemoryReader {
 		private IntBuffer buffer;
 		private int address;
 
-		public MemoryReaderInt16(IntBuffer buffer, int index) {
+		public MemoryReaderInt16(IntBuffer buffer, int address) {
 			this.buffer = buffer;
 			this.address = address & ~3;
 			this.index = (address & 0x02) >> 1;
-			if (index != 0 && buffer.capacity() > 0) {
+			if (this.index != 0 && buffer.capacity() > 0) {
 				value = buffer.get();
 			}
 		}
@@ -439,6 +498,13 @@ public class MemoryReader {
 			return n;
 		}
 
+		@Override
+		public final void readNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				values[valuesOffset + i] = readNext();
+			}
+		}
+
 		@Override
 		public final void skip(int n) {
 			if (n > 0) {
@@ -471,6 +537,11 @@ public class MemoryReader {
 			return buffer.get();
 		}
 
+		@Override
+		public final void readNext(int[] values, int valuesOffset, int n) {
+			buffer.get(values, valuesOffset, n);
+		}
+
 		@Override
 		public final void skip(int n) {
 			if (n > 0) {
@@ -498,6 +569,13 @@ public class MemoryReader {
 			return (buffer.get()) & 0xFF;
 		}
 
+		@Override
+		public final void readNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				values[valuesOffset + i] = readNext();
+			}
+		}
+
 		@Override
 		public final void skip(int n) {
 			if (n > 0) {
@@ -525,6 +603,13 @@ public class MemoryReader {
 			return (buffer.getShort()) & 0xFFFF;
 		}
 
+		@Override
+		public final void readNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				values[valuesOffset + i] = readNext();
+			}
+		}
+
 		@Override
 		public final void skip(int n) {
 			if (n > 0) {
@@ -552,6 +637,13 @@ public class MemoryReader {
 			return buffer.getInt();
 		}
 
+		@Override
+		public final void readNext(int[] values, int valuesOffset, int n) {
+			// The view is using the byte order of the buffer
+			buffer.asIntBuffer().get(values, valuesOffset, n);
+			buffer.position(buffer.position() + (n << 2));
+		}
+
 		@Override
 		public final void skip(int n) {
 			if (n > 0) {
@@ -587,6 +679,13 @@ public class MemoryReader {
 			return bytes[offset++] & 0xFF;
 		}
 
+		@Override
+		public void readNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				values[valuesOffset + i] = readNext();
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			offset += n;
@@ -621,6 +720,13 @@ public class MemoryReader {
 			return (bytes[offset++] & 0xFF) | ((bytes[offset++] & 0xFF) << 8);
 		}
 
+		@Override
+		public void readNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				values[valuesOffset + i] = readNext();
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			offset += n * 2;
@@ -658,6 +764,13 @@ public class MemoryReader {
 			       ((bytes[offset++] & 0xFF) << 24);
 		}
 
+		@Override
+		public void readNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				values[valuesOffset + i] = readNext();
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			offset += n * 4;
@@ -692,6 +805,16 @@ public class MemoryReader {
 			return ints[offset++];
 		}
 
+		@Override
+		public void readNext(int[] values, int valuesOffset, int n) {
+			int count = Math.max(0, Math.min(n, maxOffset - offset));
+			System.arraycopy(ints, offset, values, valuesOffset, count);
+			offset += count;
+			address += count * 4;
+			// Same as readNext() when reading past the end
+			Arrays.fill(values, valuesOffset + count, valuesOffset + n, 0);
+		}
+
 		@Override
 		public void skip(int n) {
 			offset += n;
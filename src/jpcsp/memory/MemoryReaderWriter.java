@@ -79,6 +79,24 @@ public class MemoryReaderWriter {
 			currentValue = memoryReader.readNext();
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			if (n > 0) {
+				memoryWriter.writeNext(values, valuesOffset, n);
+				memoryReader.skip(n - 1);
+				currentValue = memoryReader.readNext();
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			if (n > 0) {
+				memoryWriter.writeNext(values, valuesOffset, n);
+				memoryReader.skip(n - 1);
+				currentValue = memoryReader.readNext();
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			if (n > 0) {
@@ -118,6 +136,19 @@ public class MemoryReaderWriter {
 			buffer[offset++] = value;
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			System.arraycopy(values, valuesOffset, buffer, offset, n);
+			offset += n;
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				buffer[offset++] = values[valuesOffset + i];
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			offset += n;
@@ -164,6 +195,38 @@ public class MemoryReaderWriter {
 			}
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			int end = valuesOffset + n;
+			// Complete the current 32-bit value
+			if (index != 0 && valuesOffset < end) {
+				writeNext(values[valuesOffset++]);
+			}
+			// Write 2 values at a time to the next 32-bit values
+			for (; valuesOffset + 1 < end; valuesOffset += 2) {
+				buffer[offset++] = (values[valuesOffset] & 0xFFFF) | (values[valuesOffset + 1] << 16);
+			}
+			if (valuesOffset < end) {
+				writeNext(values[valuesOffset]);
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			int end = valuesOffset + n;
+			// Complete the current 32-bit value
+			if (index != 0 && valuesOffset < end) {
+				writeNext(values[valuesOffset++]);
+			}
+			// Write 2 values at a time to the next 32-bit values
+			for (; valuesOffset + 1 < end; valuesOffset += 2) {
+				buffer[offset++] = (values[valuesOffset] & 0xFFFF) | (values[valuesOffset + 1] << 16);
+			}
+			if (valuesOffset < end) {
+				writeNext(values[valuesOffset]);
+			}
+		}
+
 		@Override
 		public void skip(int n) {
 			if (n > 0) {
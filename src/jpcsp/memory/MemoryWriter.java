@@ -159,6 +159,19 @@ public class MemoryWriter {
 		return getMemoryWriter(address.getMemory(), address.getAddress(), length, step);
 	}
 
+	/**
+	 * Creates a MemoryWriter to write 32-bit values to an int array.
+	 *
+	 * @param address the address corresponding to ints[offset].
+	 * @param ints    the int array to be written.
+	 * @param offset  the offset in the int array where to start writing.
+	 * @param length  the maximum number of bytes that can be written.
+	 * @return        the MemoryWriter
+	 */
+	public static IMemoryWriter getMemoryWriter(int address, int[] ints, int offset, int length) {
+		return new MemoryWriterInts32(address, ints, offset, length);
+	}
+
 	private static class MemoryWriterGeneric implements IMemoryWriter {
 		private Memory mem;
 		private int address;
@@ -195,6 +208,20 @@ public class MemoryWriter {
 			length -= step;
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
 		@Override
 		public void flush() {
 		}
@@ -238,6 +265,40 @@ public class MemoryWriter {
 			}
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			int end = valuesOffset + n;
+			// Complete the current 32-bit value
+			while (index != 4 && valuesOffset < end) {
+				writeNext(values[valuesOffset++]);
+			}
+			// Write 4 values at a time, the last 32-bit value is kept pending
+			for (; valuesOffset + 3 < end; valuesOffset += 4) {
+				buffer[offset++] = value;
+				value = (values[valuesOffset] & 0xFF) | ((values[valuesOffset + 1] & 0xFF) << 8) | ((values[valuesOffset + 2] & 0xFF) << 16) | (values[valuesOffset + 3] << 24);
+			}
+			while (valuesOffset < end) {
+				writeNext(values[valuesOffset++]);
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			int end = valuesOffset + n;
+			// Complete the current 32-bit value
+			while (index != 4 && valuesOffset < end) {
+				writeNext(values[valuesOffset++]);
+			}
+			// Write 4 values at a time, the last 32-bit value is kept pending
+			for (; valuesOffset + 3 < end; valuesOffset += 4) {
+				buffer[offset++] = value;
+				value = (values[valuesOffset] & 0xFF) | ((values[valuesOffset + 1] & 0xFF) << 8) | ((values[valuesOffset + 2] & 0xFF) << 16) | (values[valuesOffset + 3] << 24);
+			}
+			while (valuesOffset < end) {
+				writeNext(values[valuesOffset++]);
+			}
+		}
+
 		@Override
 		public void flush() {
 			if (index > 0) {
@@ -288,6 +349,44 @@ public class MemoryWriter {
 			}
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			int end = valuesOffset + n;
+			// Complete the current 32-bit value
+			if (index != 0 && valuesOffset < end) {
+				writeNext(values[valuesOffset++]);
+			}
+			// Write 2 values at a time to the next 32-bit values
+			final int[] buffer = this.buffer;
+			int offset = this.offset;
+			for (; valuesOffset + 1 < end; valuesOffset += 2) {
+				buffer[offset++] = (values[valuesOffset] & 0xFFFF) | (values[valuesOffset + 1] << 16);
+			}
+			this.offset = offset;
+			if (valuesOffset < end) {
+				writeNext(values[valuesOffset]);
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			int end = valuesOffset + n;
+			// Complete the current 32-bit value
+			if (index != 0 && valuesOffset < end) {
+				writeNext(values[valuesOffset++]);
+			}
+			// Write 2 values at a time to the next 32-bit values
+			final int[] buffer = this.buffer;
+			int offset = this.offset;
+			for (; valuesOffset + 1 < end; valuesOffset += 2) {
+				buffer[offset++] = (values[valuesOffset] & 0xFFFF) | (values[valuesOffset + 1] << 16);
+			}
+			this.offset = offset;
+			if (valuesOffset < end) {
+				writeNext(values[valuesOffset]);
+			}
+		}
+
 		@Override
 		public void flush() {
 			if (index != 0) {
@@ -328,6 +427,19 @@ public class MemoryWriter {
 			buffer[offset++] = value;
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			System.arraycopy(values, valuesOffset, buffer, offset, n);
+			offset += n;
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				buffer[offset++] = values[valuesOffset + i];
+			}
+		}
+
 		@Override
 		public void flush() {
 		}
@@ -372,6 +484,20 @@ public class MemoryWriter {
 			}
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
 		@Override
 		public void flush() {
 			if (index > 0) {
@@ -416,6 +542,20 @@ public class MemoryWriter {
 			}
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
 		@Override
 		public void flush() {
 			if (index != 0) {
@@ -461,6 +601,18 @@ public class MemoryWriter {
 			buffer.put(value);
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			buffer.put(values, valuesOffset, n);
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				buffer.put(values[valuesOffset + i]);
+			}
+		}
+
 		@Override
 		public void flush() {
 		}
@@ -492,6 +644,20 @@ public class MemoryWriter {
 			buffer.put((byte) value);
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
 		@Override
 		public void flush() {
 		}
@@ -523,6 +689,20 @@ public class MemoryWriter {
 			buffer.putShort((short) value);
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				buffer.putShort((short) values[valuesOffset + i]);
+			}
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			// The view is using the byte order of the buffer
+			buffer.asShortBuffer().put(values, valuesOffset, n);
+			buffer.position(buffer.position() + (n << 1));
+		}
+
 		@Override
 		public void flush() {
 		}
@@ -554,6 +734,20 @@ public class MemoryWriter {
 			buffer.putInt(value);
 		}
 
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			// The view is using the byte order of the buffer
+			buffer.asIntBuffer().put(values, valuesOffset, n);
+			buffer.position(buffer.position() + (n << 2));
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				buffer.putInt(values[valuesOffset + i]);
+			}
+		}
+
 		@Override
 		public void flush() {
 		}
@@ -570,4 +764,57 @@ public class MemoryWriter {
 			return address + buffer.position();
 		}
 	}
+
+	private static class MemoryWriterInts32 implements IMemoryWriter {
+		private int address;
+		private final int[] ints;
+		private int offset;
+		private final int maxOffset;
+
+		public MemoryWriterInts32(int address, int[] ints, int offset, int length) {
+			this.address = address;
+			this.ints = ints;
+			this.offset = offset;
+			maxOffset = offset + (length >> 2);
+		}
+
+		@Override
+		public void writeNext(int value) {
+			if (offset < maxOffset) {
+				ints[offset++] = value;
+				address += 4;
+			}
+		}
+
+		@Override
+		public void writeNext(int[] values, int valuesOffset, int n) {
+			// Same as writeNext(int) when writing past the end
+			int count = Math.max(0, Math.min(n, maxOffset - offset));
+			System.arraycopy(values, valuesOffset, ints, offset, count);
+			offset += count;
+			address += count * 4;
+		}
+
+		@Override
+		public void writeNext(short[] values, int valuesOffset, int n) {
+			for (int i = 0; i < n; i++) {
+				writeNext(values[valuesOffset + i]);
+			}
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void skip(int n) {
+			offset += n;
+			address += n * 4;
+		}
+
+		@Override
+		public int getCurrentAddress() {
+			return address;
+		}
+	}
 }
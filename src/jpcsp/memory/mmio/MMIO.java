@@ -21,17 +21,36 @@ import static jpcsp.MemoryMap.START_IO_0;
 
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import jpcsp.Memory;
 import jpcsp.MemoryMap;
+import jpcsp.Allegrex.compiler.Profiler;
 import jpcsp.hardware.Screen;
 
 public class MMIO extends Memory {
+    // The handlers are stored in a two-level page table:
+    // the first level is indexed by the high address bits,
+    // the second level by the word offset in the page.
+    private static final int HANDLER_PAGE_SHIFT = 16;
+    private static final int HANDLER_PAGE_SIZE = 1 << HANDLER_PAGE_SHIFT;
+    private static final int HANDLER_PAGE_MASK = HANDLER_PAGE_SIZE - 1;
+    private static final int NUMBER_HANDLER_PAGES = 1 << (32 - HANDLER_PAGE_SHIFT);
+    private static final int NUMBER_DUMPED_ACCESS_COUNTERS = 50;
     private final Memory mem;
-    private final Map<Integer, IMMIOHandler> handlers = new HashMap<Integer, IMMIOHandler>();
+    private final IMMIOHandler[][] handlerPages = new IMMIOHandler[NUMBER_HANDLER_PAGES][];
+    // The pages completely covered by one handler are shared between all the
+    // address ranges of this handler (e.g. mirrored memory) and copied on write.
+    private final boolean[] sharedHandlerPages = new boolean[NUMBER_HANDLER_PAGES];
+    private final Map<IMMIOHandler, IMMIOHandler[]> fullHandlerPages = new HashMap<IMMIOHandler, IMMIOHandler[]>();
+    // Number of accesses to each word, only counted when the profiler is enabled
+    private final int[][] accessCounterPages = new int[NUMBER_HANDLER_PAGES][];
     protected static final boolean[] validMemoryPage = new boolean[Memory.validMemoryPage.length];
 
     public MMIO(Memory mem) {
@@ -48,7 +67,10 @@ public class MMIO extends Memory {
 
     @Override
 	public void Initialise() {
-    	handlers.clear();
+    	Arrays.fill(handlerPages, null);
+    	Arrays.fill(sharedHandlerPages, false);
+    	fullHandlerPages.clear();
+    	Arrays.fill(accessCounterPages, null);
 
     	addHandlerRW(0xBC000000, 0x54); // Memory interface
     	addHandler(MMIOHandlerSystemControl.BASE_ADDRESS, MMIOHandlerSystemControl.SIZE_OF, MMIOHandlerSystemControl.getInstance());
@@ -110,17 +132,60 @@ public class MMIO extends Memory {
     }
 
     private void addHandler(int baseAddress, int length, int[] additionalOffsets, IMMIOHandler handler) {
-    	for (int i = 0; i < length; i++) {
-    		handlers.put(baseAddress + i, handler);
-    	}
+    	setHandler(baseAddress, length, handler);
 
     	if (additionalOffsets != null) {
 	    	for (int offset : additionalOffsets) {
-	    		handlers.put(baseAddress + offset, handler);
+	    		setHandler(baseAddress + offset, 1, handler);
 	    	}
     	}
     }
 
+    private IMMIOHandler[] getFullHandlerPage(IMMIOHandler handler) {
+    	IMMIOHandler[] page = fullHandlerPages.get(handler);
+    	if (page == null) {
+    		page = new IMMIOHandler[HANDLER_PAGE_SIZE >> 2];
+    		Arrays.fill(page, handler);
+    		fullHandlerPages.put(handler, page);
+    	}
+
+    	return page;
+    }
+
+    private IMMIOHandler[] getWritableHandlerPage(int pageIndex) {
+    	IMMIOHandler[] page = handlerPages[pageIndex];
+    	if (page == null) {
+    		page = new IMMIOHandler[HANDLER_PAGE_SIZE >> 2];
+    		handlerPages[pageIndex] = page;
+    	} else if (sharedHandlerPages[pageIndex]) {
+    		page = page.clone();
+    		handlerPages[pageIndex] = page;
+    		sharedHandlerPages[pageIndex] = false;
+    	}
+
+    	return page;
+    }
+
+    private void setHandler(int baseAddress, int length, IMMIOHandler handler) {
+    	int offset = 0;
+    	while (offset < length) {
+    		int address = baseAddress + offset;
+    		int pageIndex = address >>> HANDLER_PAGE_SHIFT;
+    		int pageOffset = address & HANDLER_PAGE_MASK;
+    		int pageLength = Math.min(length - offset, HANDLER_PAGE_SIZE - pageOffset);
+
+    		if (pageLength == HANDLER_PAGE_SIZE) {
+    			handlerPages[pageIndex] = getFullHandlerPage(handler);
+    			sharedHandlerPages[pageIndex] = true;
+    		} else {
+    			IMMIOHandler[] page = getWritableHandlerPage(pageIndex);
+    			Arrays.fill(page, pageOffset >> 2, (pageOffset + pageLength + 3) >> 2, handler);
+    		}
+
+    		offset += pageLength;
+    	}
+    }
+
     protected void addHandlerRW(int baseAddress, int length) {
     	addHandler(baseAddress, length, new MMIOHandlerReadWrite(baseAddress, length));
     }
@@ -130,11 +195,152 @@ public class MMIO extends Memory {
     }
 
     private IMMIOHandler getHandler(int address) {
-    	return handlers.get(address);
+    	IMMIOHandler[] page = handlerPages[address >>> HANDLER_PAGE_SHIFT];
+    	if (page == null) {
+    		return null;
+    	}
+
+    	IMMIOHandler handler = page[(address & HANDLER_PAGE_MASK) >> 2];
+    	if (handler != null && Profiler.isProfilerEnabled()) {
+    		countAccess(address);
+    	}
+
+    	return handler;
     }
 
     private boolean hasHandler(int address) {
-    	return handlers.containsKey(address);
+    	IMMIOHandler[] page = handlerPages[address >>> HANDLER_PAGE_SHIFT];
+    	if (page == null) {
+    		return false;
+    	}
+
+    	return page[(address & HANDLER_PAGE_MASK) >> 2] != null;
+    }
+
+    /**
+     * Check if any address in the given range is handled by a handler.
+     */
+    public boolean hasHandler(int address, int length) {
+    	int endAddress = address + length;
+    	while (address != endAddress) {
+    		int pageIndex = address >>> HANDLER_PAGE_SHIFT;
+    		int pageOffset = address & HANDLER_PAGE_MASK;
+    		int pageLength = Math.min(endAddress - address, HANDLER_PAGE_SIZE - pageOffset);
+    		IMMIOHandler[] page = handlerPages[pageIndex];
+    		if (page != null) {
+    			for (int i = pageOffset >> 2; i < (pageOffset + pageLength + 3) >> 2; i++) {
+    				if (page[i] != null) {
+    					return true;
+    				}
+    			}
+    		}
+    		address += pageLength;
+    	}
+
+    	return false;
+    }
+
+    /**
+     * Retrieve the handler handling the complete address range.
+     *
+     * @return the handler, or null if the range is not handled by a single handler
+     */
+    public IMMIOHandler getHandler(int address, int length) {
+    	int endAddress = address + length;
+    	IMMIOHandler handler = null;
+    	while (address != endAddress) {
+    		int pageIndex = address >>> HANDLER_PAGE_SHIFT;
+    		int pageOffset = address & HANDLER_PAGE_MASK;
+    		int pageLength = Math.min(endAddress - address, HANDLER_PAGE_SIZE - pageOffset);
+    		IMMIOHandler[] page = handlerPages[pageIndex];
+    		if (page == null) {
+    			return null;
+    		}
+    		for (int i = pageOffset >> 2; i < (pageOffset + pageLength + 3) >> 2; i++) {
+    			if (page[i] == null || (handler != null && page[i] != handler)) {
+    				return null;
+    			}
+    			handler = page[i];
+    		}
+    		address += pageLength;
+    	}
+
+    	return handler;
+    }
+
+    /**
+     * @return the memory used for the addresses not handled by a handler
+     */
+    public Memory getMemory() {
+    	return mem;
+    }
+
+    private void countAccess(int address) {
+    	int pageIndex = address >>> HANDLER_PAGE_SHIFT;
+    	int[] accessCounterPage = accessCounterPages[pageIndex];
+    	if (accessCounterPage == null) {
+    		accessCounterPage = new int[HANDLER_PAGE_SIZE >> 2];
+    		accessCounterPages[pageIndex] = accessCounterPage;
+    	}
+    	accessCounterPage[(address & HANDLER_PAGE_MASK) >> 2]++;
+    }
+
+    private static class AccessCounter {
+    	private final int address;
+    	private final long count;
+
+    	public AccessCounter(int address, long count) {
+    		this.address = address;
+    		this.count = count;
+    	}
+    }
+
+    private static class AccessCounterComparator implements Comparator<AccessCounter> {
+		@Override
+		public int compare(AccessCounter o1, AccessCounter o2) {
+			return Long.compare(o2.count, o1.count);
+		}
+    }
+
+    /**
+     * Log the most accessed registers and the number of accesses per handler.
+     * The accesses are only counted when the profiler is enabled.
+     */
+    public void dumpAccessCounters() {
+    	List<AccessCounter> accessCounters = new ArrayList<AccessCounter>();
+    	Map<IMMIOHandler, Long> handlerAccessCounts = new HashMap<IMMIOHandler, Long>();
+    	for (int pageIndex = 0; pageIndex < NUMBER_HANDLER_PAGES; pageIndex++) {
+    		int[] accessCounterPage = accessCounterPages[pageIndex];
+    		if (accessCounterPage == null) {
+    			continue;
+    		}
+
+    		for (int i = 0; i < accessCounterPage.length; i++) {
+    			int count = accessCounterPage[i];
+    			if (count != 0) {
+    				int address = (pageIndex << HANDLER_PAGE_SHIFT) | (i << 2);
+    				accessCounters.add(new AccessCounter(address, count & 0xFFFFFFFFL));
+    				IMMIOHandler handler = handlerPages[pageIndex][i];
+    				Long handlerCount = handlerAccessCounts.get(handler);
+    				handlerAccessCounts.put(handler, (handlerCount == null ? 0L : handlerCount.longValue()) + (count & 0xFFFFFFFFL));
+    			}
+    		}
+    	}
+
+    	if (accessCounters.isEmpty()) {
+    		return;
+    	}
+
+    	for (Map.Entry<IMMIOHandler, Long> entry : handlerAccessCounts.entrySet()) {
+    		Profiler.log.info(String.format("MMIO %s: %d accesses", entry.getKey().getClass().getSimpleName(), entry.getValue()));
+    	}
+
+    	Collections.sort(accessCounters, new AccessCounterComparator());
+    	for (int i = 0; i < accessCounters.size() && i < NUMBER_DUMPED_ACCESS_COUNTERS; i++) {
+    		AccessCounter accessCounter = accessCounters.get(i);
+    		IMMIOHandler handler = handlerPages[accessCounter.address >>> HANDLER_PAGE_SHIFT][(accessCounter.address & HANDLER_PAGE_MASK) >> 2];
+    		Profiler.log.info(String.format("MMIO 0x%08X (%s): %d accesses", accessCounter.address, handler == null ? "" : handler.getClass().getSimpleName(), accessCounter.count));
+    	}
     }
 
     public static boolean isAddressGood(int address) {
@@ -237,7 +443,14 @@ public class MMIO extends Memory {
 
 	@Override
 	protected void memcpy(int destination, int source, int length, boolean checkOverlap) {
-		if (((destination | source | length) & 0x3) == 0 && !checkOverlap) {
+		if (!hasHandler(destination, length) && !hasHandler(source, length)) {
+			// Plain memory copy, e.g. RAM to RAM or RAM to VRAM
+			if (checkOverlap) {
+				mem.memmove(destination, source, length);
+			} else {
+				mem.memcpy(destination, source, length);
+			}
+		} else if (((destination | source | length) & 0x3) == 0 && !checkOverlap) {
 			for (int i = 0; i < length; i += 4) {
 				write32(destination + i, read32(source + i));
 			}
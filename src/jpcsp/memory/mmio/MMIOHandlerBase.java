@@ -31,6 +31,10 @@ public class MMIOHandlerBase implements IMMIOHandler {
 		this.baseAddress = baseAddress;
 	}
 
+	public int getBaseAddress() {
+		return baseAddress;
+	}
+
 	protected Memory getMemory() {
 		return RuntimeContextLLE.getMMIO();
 	}
@@ -24,8 +24,16 @@ import java.util.concurrent.Semaphore;
 import org.apache.log4j.Logger;
 
 import jpcsp.Memory;
+import jpcsp.HLE.Modules;
 import jpcsp.HLE.kernel.types.IAction;
+import jpcsp.memory.IMemoryReader;
+import jpcsp.memory.IMemoryWriter;
+import jpcsp.memory.MemoryReader;
+import jpcsp.memory.MemoryWriter;
+import jpcsp.memory.mmio.IMMIOHandler;
+import jpcsp.memory.mmio.MMIO;
 import jpcsp.memory.mmio.MMIOHandlerDmac;
+import jpcsp.memory.mmio.MMIOHandlerReadWrite;
 
 public class DmacThread extends Thread {
 	private static Logger log = MMIOHandlerDmac.log;
@@ -83,6 +91,94 @@ public class DmacThread extends Thread {
 		job.release();
 	}
 
+	/**
+	 * Retrieve the fastest MemoryReader for the given address range:
+	 * - plain memory is read directly from the memory,
+	 * - memory emulated by a plain MMIOHandlerReadWrite (e.g. the ME internal RAM)
+	 *   is read directly from the handler internal memory,
+	 * - other ranges (device endpoints) and the subclasses overriding
+	 *   the accessors (e.g. MMIOHandlerReadOnly) are read element-wise through their handlers.
+	 */
+	private static IMemoryReader getMemoryReader(Memory mem, int address, int length) {
+		while (mem instanceof MMIO) {
+			MMIO mmio = (MMIO) mem;
+			if (mmio.hasHandler(address, length)) {
+				IMMIOHandler handler = mmio.getHandler(address, length);
+				if (handler.getClass() == MMIOHandlerReadWrite.class) {
+					MMIOHandlerReadWrite handlerReadWrite = (MMIOHandlerReadWrite) handler;
+					return MemoryReader.getMemoryReader(address, handlerReadWrite.getInternalMemory(), (address - handlerReadWrite.getBaseAddress()) >> 2, length);
+				}
+				return MemoryReader.getMemoryReader(mem, address, length, 4);
+			}
+			mem = mmio.getMemory();
+		}
+
+		return MemoryReader.getMemoryReader(mem, address, length, 4);
+	}
+
+	/**
+	 * Retrieve the fastest MemoryWriter for the given address range,
+	 * see getMemoryReader().
+	 */
+	private static IMemoryWriter getMemoryWriter(Memory mem, int address, int length) {
+		while (mem instanceof MMIO) {
+			MMIO mmio = (MMIO) mem;
+			if (mmio.hasHandler(address, length)) {
+				IMMIOHandler handler = mmio.getHandler(address, length);
+				if (handler.getClass() == MMIOHandlerReadWrite.class) {
+					MMIOHandlerReadWrite handlerReadWrite = (MMIOHandlerReadWrite) handler;
+					return MemoryWriter.getMemoryWriter(address, handlerReadWrite.getInternalMemory(), (address - handlerReadWrite.getBaseAddress()) >> 2, length);
+				}
+				return MemoryWriter.getMemoryWriter(mem, address, length, 4);
+			}
+			mem = mmio.getMemory();
+		}
+
+		return MemoryWriter.getMemoryWriter(mem, address, length, 4);
+	}
+
+	/**
+	 * Transfer of 32-bit values where each side is either incrementing
+	 * or using a fixed address (e.g. a device FIFO register).
+	 * The incrementing sides are accessed in bulk,
+	 * the fixed addresses element-wise.
+	 */
+	private void dmacTransfer32(int dst, int src, int length, boolean dstIncrement, boolean srcIncrement) {
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("dmacTransfer32 dst=0x%08X, src=0x%08X, length=0x%X, dstIncrement=%b, srcIncrement=%b", dst, src, length, dstIncrement, srcIncrement));
+		}
+
+		final int n = length >> 2;
+		if (srcIncrement && dstIncrement) {
+			IMemoryReader memoryReader = getMemoryReader(memSrc, src, length);
+			IMemoryWriter memoryWriter = getMemoryWriter(memDst, dst, length);
+			for (int i = 0; i < n; i++) {
+				memoryWriter.writeNext(memoryReader.readNext());
+			}
+			memoryWriter.flush();
+		} else if (dstIncrement) {
+			IMemoryWriter memoryWriter = getMemoryWriter(memDst, dst, length);
+			for (int i = 0; i < n; i++) {
+				memoryWriter.writeNext(memSrc.read32(src));
+			}
+			memoryWriter.flush();
+		} else if (srcIncrement) {
+			IMemoryReader memoryReader = getMemoryReader(memSrc, src, length);
+			for (int i = 0; i < n; i++) {
+				memDst.write32(dst, memoryReader.readNext());
+			}
+		} else {
+			for (int i = 0; i < n; i++) {
+				memDst.write32(dst, memSrc.read32(src));
+			}
+		}
+
+		if (dstIncrement) {
+			// The destination might be the display frame buffer
+			Modules.sceDisplayModule.write(dst);
+		}
+	}
+
 	private void dmacMemcpy(int dst, int src, int dstLength, int srcLength, int dstStepLength, int srcStepLength, boolean dstIncrement, boolean srcIncrement) {
 		if (log.isDebugEnabled()) {
 			log.debug(String.format("dmacMemcpy dst=0x%08X, src=0x%08X, dstLength=0x%X, srcLength=0x%X, dstStepLength=%d, srcStepLength=%d, dstIncrement=%b, srcIncrement=%b", dst, src, dstLength, srcLength, dstStepLength, srcStepLength, dstIncrement, srcIncrement));
@@ -196,6 +292,28 @@ public class DmacThread extends Thread {
 			src = normalizeAddress(src);
 			dst = normalizeAddress(dst);
 
+			if (srcIncrement && dstIncrement) {
+				// Process in one batch the following linked-list descriptors
+				// continuing the same contiguous transfer with the same attributes
+				while ((attr & 0x80000000) == 0 && next != 0) {
+					int nextAttr = memSrc.read32(next + 12);
+					if ((nextAttr & ~0x80000FFF) != (attr & ~0x80000FFF)) {
+						break;
+					}
+					int nextSrc = normalizeAddress(memSrc.read32(next + 0));
+					int nextDst = normalizeAddress(memSrc.read32(next + 4));
+					if (nextSrc != src + srcLength || nextDst != dst + dstLength) {
+						break;
+					}
+
+					int nextLength = (nextAttr & 0xFFF) << srcLengthShift;
+					srcLength += nextLength;
+					dstLength += nextLength;
+					attr = nextAttr;
+					next = memSrc.read32(next + 8);
+				}
+			}
+
 			// Check for most common case which can be implemented through a simple memcpy
 			if (srcIncrement && dstIncrement && memSrc == memDst) {
 				if (log.isDebugEnabled()) {
@@ -203,6 +321,8 @@ public class DmacThread extends Thread {
 				}
 
 				memSrc.memcpy(dst, src, srcLength);
+			} else if (srcStepLength >= 4 && ((dst | src | srcLength) & 0x3) == 0 && (srcLength % srcStepLength) == 0) {
+				dmacTransfer32(dst, src, srcLength, dstIncrement, srcIncrement);
 			} else {
 				dmacMemcpy(dst, src, dstLength, srcLength, dstStepLength, srcStepLength, dstIncrement, srcIncrement);
 			}
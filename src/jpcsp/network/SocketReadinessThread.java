@@ -0,0 +1,356 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.network;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.IllegalSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import jpcsp.Emulator;
+import jpcsp.HLE.kernel.types.IAction;
+import jpcsp.HLE.modules.sceNetInet;
+
+/**
+ * Service thread waiting on the readiness of the sockets used by sceNetInet.
+ *
+ * The blocked network operations register their channel together with
+ * the interesting operations (read, write, accept, connect) and an action.
+ * The thread is waiting on a single NIO Selector for all the channels and,
+ * as soon as the OS reports the readiness of a channel, the actions waiting
+ * on it are executed by the emulator scheduler.
+ * Each registered action is executed only once.
+ * The channel is deregistered from the Selector as soon as no action
+ * is waiting on it, so that it can be registered again on another
+ * Selector by sceNetInetSelect or sceNetInetPoll.
+ *
+ * Channels not supported by a NIO Selector (e.g. raw sockets) cannot be
+ * registered: the caller has then to poll them.
+ */
+public class SocketReadinessThread extends Thread {
+	private static Logger log = sceNetInet.log;
+	// Maximum time spent in select(), used to detect the closed channels
+	private static final long SELECT_TIMEOUT_MILLIS = 100L;
+	private static SocketReadinessThread instance;
+	private final Selector selector;
+	private final Object registrationLock = new Object();
+	private final Object statisticsLock = new Object();
+	private final List<SelectionKey> registeredKeys = new LinkedList<SelectionKey>();
+	private volatile boolean exit;
+	private boolean cancelledKeys;
+	// Statistics
+	private long registrations;
+	private long notifications;
+	private long totalWaitNanos;
+	private long maxWaitNanos;
+	private long dispatches;
+	private long totalDispatchNanos;
+	private long maxDispatchNanos;
+
+	private static class Waiter {
+		private final IAction action;
+		private int ops;
+		private final long registrationNanos;
+
+		public Waiter(IAction action, int ops) {
+			this.action = action;
+			this.ops = ops;
+			registrationNanos = System.nanoTime();
+		}
+	}
+
+	private class ReadyAction implements IAction {
+		private final IAction action;
+		private final long readyNanos;
+
+		public ReadyAction(IAction action, long readyNanos) {
+			this.action = action;
+			this.readyNanos = readyNanos;
+		}
+
+		@Override
+		public void execute() {
+			addDispatchLatency(System.nanoTime() - readyNanos);
+			action.execute();
+		}
+	}
+
+	private SocketReadinessThread(Selector selector) {
+		this.selector = selector;
+		setName("Socket Readiness Thread");
+		setDaemon(true);
+	}
+
+	/**
+	 * Return the service thread, starting it at the first call.
+	 *
+	 * @return the service thread or null if no Selector could be opened.
+	 */
+	public static synchronized SocketReadinessThread getInstance() {
+		if (instance == null) {
+			try {
+				instance = new SocketReadinessThread(Selector.open());
+				instance.start();
+			} catch (IOException e) {
+				log.error("SocketReadinessThread", e);
+			}
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Stop the service thread, if it has been started, and log its statistics.
+	 */
+	public static synchronized void exitInstance() {
+		if (instance != null) {
+			instance.exit();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Register an action to be executed once when the channel
+	 * is ready for one of the given operations.
+	 * Registering again the same action for the same channel
+	 * only adds the new operations.
+	 *
+	 * @param channel the channel
+	 * @param ops     the SelectionKey operations
+	 * @param action  the action to be executed by the scheduler
+	 * @return        true if the action has been registered,
+	 *                false if the channel cannot be waited on.
+	 */
+	public boolean register(SelectableChannel channel, int ops, IAction action) {
+		if (channel == null || channel instanceof RawChannel || exit) {
+			return false;
+		}
+
+		ops &= channel.validOps();
+		if (ops == 0) {
+			return false;
+		}
+
+		synchronized (registrationLock) {
+			// Release the selector so that the channel can be registered
+			selector.wakeup();
+			try {
+				SelectionKey key = channel.keyFor(selector);
+				if (key == null) {
+					key = channel.register(selector, ops, new LinkedList<Waiter>());
+					registeredKeys.add(key);
+				} else {
+					key.interestOps(key.interestOps() | ops);
+				}
+
+				boolean found = false;
+				for (Waiter waiter : getWaiters(key)) {
+					if (waiter.action == action) {
+						waiter.ops |= ops;
+						found = true;
+						break;
+					}
+				}
+				if (!found) {
+					getWaiters(key).add(new Waiter(action, ops));
+				}
+			} catch (ClosedChannelException e) {
+				return false;
+			} catch (CancelledKeyException e) {
+				return false;
+			} catch (ClosedSelectorException e) {
+				return false;
+			} catch (IllegalBlockingModeException e) {
+				return false;
+			} catch (IllegalSelectorException e) {
+				return false;
+			}
+
+			registrations++;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Remove an action registered on any channel, e.g. after its timeout.
+	 * The channels having no other waiting action are deregistered.
+	 *
+	 * @param action  the action registered by register()
+	 */
+	public void unregister(IAction action) {
+		synchronized (registrationLock) {
+			for (SelectionKey key : registeredKeys) {
+				List<Waiter> waiters = getWaiters(key);
+				for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+					if (it.next().action == action) {
+						it.remove();
+					}
+				}
+
+				if (waiters.isEmpty() && key.isValid()) {
+					key.cancel();
+					cancelledKeys = true;
+				}
+			}
+
+			if (cancelledKeys) {
+				// Let the service thread deregister the cancelled keys
+				selector.wakeup();
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Waiter> getWaiters(SelectionKey key) {
+		return (List<Waiter>) key.attachment();
+	}
+
+	private void notifyReady(SelectionKey key, Waiter waiter, long now) {
+		long waitNanos = now - waiter.registrationNanos;
+		notifications++;
+		totalWaitNanos += waitNanos;
+		maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+
+		if (log.isTraceEnabled()) {
+			log.trace(String.format("SocketReadinessThread %s ready after %d us", key.channel(), waitNanos / 1000));
+		}
+
+		Emulator.getScheduler().addAction(new ReadyAction(waiter.action, now));
+	}
+
+	private void addDispatchLatency(long dispatchNanos) {
+		synchronized (statisticsLock) {
+			dispatches++;
+			totalDispatchNanos += dispatchNanos;
+			maxDispatchNanos = Math.max(maxDispatchNanos, dispatchNanos);
+		}
+	}
+
+	private void processSelectedKeys() throws IOException {
+		long now = System.nanoTime();
+
+		while (true) {
+			for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+				SelectionKey key = it.next();
+				it.remove();
+
+				try {
+					int readyOps = key.readyOps();
+					int remainingOps = 0;
+					for (Iterator<Waiter> waiters = getWaiters(key).iterator(); waiters.hasNext(); ) {
+						Waiter waiter = waiters.next();
+						if ((waiter.ops & readyOps) != 0) {
+							waiters.remove();
+							notifyReady(key, waiter, now);
+						} else {
+							remainingOps |= waiter.ops;
+						}
+					}
+
+					if (remainingOps == 0) {
+						// No more waiters, release the channel
+						key.cancel();
+						cancelledKeys = true;
+					} else {
+						key.interestOps(remainingOps);
+					}
+				} catch (CancelledKeyException e) {
+					// The channel has been closed, processed below
+				}
+			}
+
+			if (!cancelledKeys) {
+				break;
+			}
+
+			// Deregister the cancelled keys from their channel.
+			// This might select new keys, process them as well.
+			cancelledKeys = false;
+			if (selector.selectNow() == 0 && selector.selectedKeys().isEmpty()) {
+				break;
+			}
+		}
+
+		// The waiters on a closed channel are notified so that
+		// they can retrieve the error.
+		for (Iterator<SelectionKey> it = registeredKeys.iterator(); it.hasNext(); ) {
+			SelectionKey key = it.next();
+			if (!key.isValid()) {
+				it.remove();
+				List<Waiter> waiters = getWaiters(key);
+				for (Waiter waiter : waiters) {
+					notifyReady(key, waiter, now);
+				}
+				waiters.clear();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		while (!exit) {
+			// Wait for the completion of a pending registration
+			synchronized (registrationLock) {
+			}
+
+			try {
+				selector.select(SELECT_TIMEOUT_MILLIS);
+
+				synchronized (registrationLock) {
+					processSelectedKeys();
+				}
+			} catch (IOException e) {
+				log.error("SocketReadinessThread", e);
+				break;
+			}
+		}
+	}
+
+	private void exit() {
+		exit = true;
+		selector.wakeup();
+		try {
+			join();
+		} catch (InterruptedException e) {
+			// Ignore exception
+		}
+
+		try {
+			selector.close();
+		} catch (IOException e) {
+			// Ignore exception
+		}
+
+		if (log.isInfoEnabled() && registrations > 0) {
+			log.info(String.format("SocketReadinessThread registrations=%d, notifications=%d, average wait=%d us, max wait=%d us", registrations, notifications, notifications == 0 ? 0 : totalWaitNanos / notifications / 1000, maxWaitNanos / 1000));
+			synchronized (statisticsLock) {
+				log.info(String.format("SocketReadinessThread dispatches=%d, average dispatch latency=%d us, max dispatch latency=%d us", dispatches, dispatches == 0 ? 0 : totalDispatchNanos / dispatches / 1000, maxDispatchNanos / 1000));
+			}
+		}
+	}
+}
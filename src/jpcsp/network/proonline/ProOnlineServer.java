@@ -17,11 +17,15 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
 package jpcsp.network.proonline;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -30,7 +34,6 @@ import jpcsp.network.proonline.PacketFactory.SceNetAdhocctlConnectPacketS2C;
 import jpcsp.network.proonline.PacketFactory.SceNetAdhocctlDisconnectPacketS2C;
 import jpcsp.network.proonline.PacketFactory.SceNetAdhocctlPacketBaseC2S;
 import jpcsp.network.proonline.PacketFactory.SceNetAdhocctlPacketBaseS2C;
-import jpcsp.util.Utilities;
 
 import org.apache.log4j.Logger;
 
@@ -43,11 +46,20 @@ public class ProOnlineServer {
 	private static ProOnlineServer instance;
 	private ProOnlineServerThread serverThread;
 	private static final int port = 27312;
-	private ServerSocket serverSocket;
+	// Size of the pooled input and output buffers of each user
+	private static final int BUFFER_SIZE = 1000;
+	private static final int MAX_FREE_BUFFERS = 256;
+	// Maximum wait time in select(), used to check the user timeouts
+	private static final long SELECT_TIMEOUT_MILLIS = 1000L;
+	private Selector selector;
+	private ServerSocketChannel serverSocketChannel;
 	private List<User> users;
 	private PacketFactory packetFactory;
 	private User currentUser;
 	private List<Game> games;
+	private final LinkedList<ByteBuffer> freeBuffers = new LinkedList<ByteBuffer>();
+	// Users having output not yet written to their socket
+	private final List<User> pendingOutputUsers = new LinkedList<User>();
 
 	public static ProOnlineServer getInstance() {
 		if (instance == null) {
@@ -61,10 +73,13 @@ public class ProOnlineServer {
 	}
 
 	private static class User {
-		public Socket socket;
+		public SocketChannel socketChannel;
+		public SelectionKey selectionKey;
 		public long lastReceiveTimestamp;
-		public byte[] buffer = new byte[1000];
-		public int bufferLength = 0;
+		public ByteBuffer inputBuffer;
+		public ByteBuffer outputBuffer;
+		public boolean outputPending;
+		public boolean loggedOut;
 		public pspNetMacAddress mac;
 		public String nickName;
 		public Game game;
@@ -113,48 +128,77 @@ public class ProOnlineServer {
 	}
 
 	private class ProOnlineServerThread extends Thread {
-		private boolean exit;
+		private volatile boolean exit;
 
 		@Override
 		public void run() {
 			log.debug(String.format("Starting ProOnlineServerThread"));
+			long lastTimeoutCheck = System.currentTimeMillis();
 			while (!exit) {
 				try {
-					Socket socket = serverSocket.accept();
-					socket.setSoTimeout(1);
-					loginUserStream(socket);
-				} catch (SocketTimeoutException e) {
-					// Ignore timeout
+					selector.select(SELECT_TIMEOUT_MILLIS);
 				} catch (IOException e) {
-					log.debug("Accept server socket", e);
+					log.error("ProOnlineServerThread select", e);
+					break;
 				}
 
-				for (User user : users) {
-					int length = 0;
-					try {
-						InputStream is = user.socket.getInputStream();
-						length = is.read(user.buffer, user.bufferLength, user.buffer.length - user.bufferLength);
-					} catch (SocketTimeoutException e) {
-						// Ignore timeout
-					} catch (IOException e) {
-						log.debug("Receive user socket", e);
+				for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+					SelectionKey key = it.next();
+					it.remove();
+
+					if (!key.isValid()) {
+						continue;
+					}
+
+					if (key.isAcceptable()) {
+						acceptUsers();
+					} else {
+						User user = (User) key.attachment();
+						if (key.isReadable()) {
+							receiveFromUser(user);
+						}
+						if (!user.loggedOut && key.isValid() && key.isWritable()) {
+							writeToUser(user);
+						}
 					}
+				}
 
-					if (length > 0) {
-						user.bufferLength += length;
-						user.lastReceiveTimestamp = System.currentTimeMillis();
-						processUserStream(user);
-					} else if (length < 0 || user.isTimeout()) {
-						logoutUser(user);
+				long now = System.currentTimeMillis();
+				if (now - lastTimeoutCheck >= SELECT_TIMEOUT_MILLIS) {
+					lastTimeoutCheck = now;
+					for (User user : new ArrayList<User>(users)) {
+						if (!user.loggedOut && user.isTimeout()) {
+							logoutUser(user);
+						}
 					}
 				}
 
-				Utilities.sleep(10);
+				// All the packets generated while processing
+				// the received packets are sent at once
+				flushPendingOutputs();
+			}
+
+			for (User user : new ArrayList<User>(users)) {
+				closeUser(user);
+			}
+			users.clear();
+
+			try {
+				serverSocketChannel.close();
+				selector.close();
+			} catch (IOException e) {
+				log.debug("Closing server socket", e);
 			}
 		}
 
 		public void exit() {
 			exit = true;
+			selector.wakeup();
+			try {
+				join();
+			} catch (InterruptedException e) {
+				// Ignore exception
+			}
 		}
 	}
 
@@ -162,10 +206,26 @@ public class ProOnlineServer {
 		packetFactory = new PacketFactory();
 
 		try {
-			serverSocket = new ServerSocket(port);
-			serverSocket.setSoTimeout(1);
+			selector = Selector.open();
+			serverSocketChannel = ServerSocketChannel.open();
+			serverSocketChannel.socket().setReuseAddress(true);
+			serverSocketChannel.socket().bind(new InetSocketAddress(port));
+			serverSocketChannel.configureBlocking(false);
+			serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
 		} catch (IOException e) {
 			log.error(String.format("Server socket at port %d not available: %s", port, e));
+			try {
+				if (serverSocketChannel != null) {
+					serverSocketChannel.close();
+				}
+				if (selector != null) {
+					selector.close();
+				}
+			} catch (IOException e2) {
+				// Ignore exception
+			}
+			serverSocketChannel = null;
+			selector = null;
 			return;
 		}
 
@@ -184,14 +244,8 @@ public class ProOnlineServer {
 			serverThread = null;
 		}
 
-		if (serverSocket != null) {
-			try {
-				serverSocket.close();
-			} catch (IOException e) {
-				log.debug("Closing server socket", e);
-			}
-			serverSocket = null;
-		}
+		serverSocketChannel = null;
+		selector = null;
 	}
 
 	private static int convertIp(byte[] bytes) {
@@ -204,14 +258,139 @@ public class ProOnlineServer {
 		return ip;
 	}
 
-	private void sendToUser(User user, SceNetAdhocctlPacketBaseS2C packet) throws IOException {
-		OutputStream os = user.socket.getOutputStream();
-		os.write(packet.getBytes());
-		os.flush();
+	private ByteBuffer allocateBuffer() {
+		ByteBuffer buffer = freeBuffers.poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+
+		return buffer;
+	}
+
+	private void releaseBuffer(ByteBuffer buffer) {
+		// Only the buffers having the default size are pooled
+		if (buffer != null && buffer.capacity() == BUFFER_SIZE && freeBuffers.size() < MAX_FREE_BUFFERS) {
+			buffer.clear();
+			freeBuffers.add(buffer);
+		}
+	}
+
+	private void sendToUser(User user, SceNetAdhocctlPacketBaseS2C packet) {
+		sendToUser(user, packet.getBytes());
+	}
+
+	/*
+	 * The packet is only added to the output buffer of the user.
+	 * All the output buffers are written by flushPendingOutputs()
+	 * so that several packets sent to the same user are written at once.
+	 */
+	private void sendToUser(User user, byte[] bytes) {
+		if (user.loggedOut) {
+			return;
+		}
+
+		if (user.outputBuffer == null) {
+			user.outputBuffer = allocateBuffer();
+		} else if (user.outputBuffer.remaining() < bytes.length) {
+			// Grow the output buffer
+			ByteBuffer outputBuffer = ByteBuffer.allocate(Math.max(user.outputBuffer.capacity() * 2, user.outputBuffer.position() + bytes.length));
+			user.outputBuffer.flip();
+			outputBuffer.put(user.outputBuffer);
+			releaseBuffer(user.outputBuffer);
+			user.outputBuffer = outputBuffer;
+		}
+		user.outputBuffer.put(bytes);
+
+		if (!user.outputPending) {
+			user.outputPending = true;
+			pendingOutputUsers.add(user);
+		}
+	}
+
+	private void flushPendingOutputs() {
+		// Writing to a user might log it out and generate new outputs
+		while (!pendingOutputUsers.isEmpty()) {
+			List<User> outputUsers = new ArrayList<User>(pendingOutputUsers);
+			pendingOutputUsers.clear();
+			for (User user : outputUsers) {
+				user.outputPending = false;
+				writeToUser(user);
+			}
+		}
+	}
+
+	private void writeToUser(User user) {
+		if (user.loggedOut || user.outputBuffer == null) {
+			return;
+		}
+
+		user.outputBuffer.flip();
+		try {
+			user.socketChannel.write(user.outputBuffer);
+		} catch (IOException e) {
+			log.debug("Send user socket", e);
+			logoutUser(user);
+			return;
+		}
+
+		if (user.outputBuffer.hasRemaining()) {
+			// The socket is full, continue when it is writable again
+			user.outputBuffer.compact();
+			user.selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		} else {
+			releaseBuffer(user.outputBuffer);
+			user.outputBuffer = null;
+			user.selectionKey.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	private void acceptUsers() {
+		while (true) {
+			SocketChannel socketChannel;
+			try {
+				socketChannel = serverSocketChannel.accept();
+			} catch (IOException e) {
+				log.debug("Accept server socket", e);
+				break;
+			}
+
+			if (socketChannel == null) {
+				break;
+			}
+
+			try {
+				loginUserStream(socketChannel);
+			} catch (IOException e) {
+				log.debug("Accept server socket", e);
+				try {
+					socketChannel.close();
+				} catch (IOException e2) {
+					// Ignore exception
+				}
+			}
+		}
+	}
+
+	private void receiveFromUser(User user) {
+		int length;
+		try {
+			length = user.socketChannel.read(user.inputBuffer);
+		} catch (IOException e) {
+			log.debug("Receive user socket", e);
+			length = -1;
+		}
+
+		if (length > 0) {
+			user.lastReceiveTimestamp = System.currentTimeMillis();
+			processUserStream(user);
+		} else if (length < 0) {
+			logoutUser(user);
+		}
 	}
 
-	private void loginUserStream(Socket socket) throws IOException {
-		String ip = socket.getInetAddress().getHostAddress();
+	private void loginUserStream(SocketChannel socketChannel) throws IOException {
+		InetAddress inetAddress = socketChannel.socket().getInetAddress();
+		String ip = inetAddress.getHostAddress();
 
 		// Check for duplicated user
 //		for (User user : users) {
@@ -223,27 +402,47 @@ public class ProOnlineServer {
 //			}
 //		}
 
+		socketChannel.configureBlocking(false);
+		socketChannel.socket().setTcpNoDelay(true);
+
 		User user = new User();
-		user.ip = convertIp(socket.getInetAddress().getAddress());
+		user.ip = convertIp(inetAddress.getAddress());
 		user.ipString = ip;
-		user.socket = socket;
+		user.socketChannel = socketChannel;
 		user.lastReceiveTimestamp = System.currentTimeMillis();
+		user.inputBuffer = allocateBuffer();
+		user.selectionKey = socketChannel.register(selector, SelectionKey.OP_READ, user);
 		users.add(user);
 
 		log.info(String.format("New Connection from %s", user.ipString));
 	}
 
-	private void logoutUser(User user) {
-		if (user.group != null) {
-			disconnectUser(user);
-		}
+	private void closeUser(User user) {
+		user.loggedOut = true;
 
 		try {
-			user.socket.close();
+			user.socketChannel.close();
 		} catch (IOException e) {
 			// Ignore exception
 		}
 
+		releaseBuffer(user.inputBuffer);
+		user.inputBuffer = null;
+		releaseBuffer(user.outputBuffer);
+		user.outputBuffer = null;
+	}
+
+	private void logoutUser(User user) {
+		if (user.loggedOut) {
+			return;
+		}
+
+		if (user.group != null) {
+			disconnectUser(user);
+		}
+
+		closeUser(user);
+
 		if (user.game != null) {
 			log.info(String.format("%s stopped playing %s.", user, user.game.name));
 
@@ -263,33 +462,42 @@ public class ProOnlineServer {
 	}
 
 	private void processUserStream(User user) {
-		if (user.bufferLength <= 0) {
-			return;
-		}
+		byte[] buffer = user.inputBuffer.array();
+		int bufferLength = user.inputBuffer.position();
+
+		// Process all the complete packets received
+		while (bufferLength > 0 && !user.loggedOut) {
+			int consumed = 0;
+			SceNetAdhocctlPacketBaseC2S packet = packetFactory.createPacketC2S(null, this, buffer, bufferLength);
+			if (packet == null) {
+				// Skip the unknown code
+				consumed = 1;
+			} else if (bufferLength >= packet.getLength()) {
+				if (log.isDebugEnabled()) {
+					log.debug(String.format("Incoming client packet %s", packet));
+				}
 
-		int consumed = 0;
-		SceNetAdhocctlPacketBaseC2S packet = packetFactory.createPacketC2S(null, this, user.buffer, user.bufferLength);
-		if (packet == null) {
-			// Skip the unknown code
-			consumed = 1;
-		} else if (user.bufferLength >= packet.getLength()) {
-			if (log.isDebugEnabled()) {
-				log.debug(String.format("Incoming client packet %s", packet));
-			}
+				currentUser = user;
+				packet.process();
+				currentUser = null;
 
-			currentUser = user;
-			packet.process();
-			currentUser = null;
+				consumed = packet.getLength();
+			} else {
+				// Wait for the rest of the packet
+				break;
+			}
 
-			consumed = packet.getLength();
+			if (consumed >= bufferLength) {
+				bufferLength = 0;
+			} else {
+				// Removed consumed bytes from the buffer
+				bufferLength -= consumed;
+				System.arraycopy(buffer, consumed, buffer, 0, bufferLength);
+			}
 		}
 
-		if (consumed >= user.bufferLength) {
-			user.bufferLength = 0;
-		} else {
-			// Removed consumed bytes from the buffer
-			user.bufferLength -= consumed;
-			System.arraycopy(user.buffer, consumed, user.buffer, 0, user.bufferLength);
+		if (!user.loggedOut) {
+			user.inputBuffer.position(bufferLength);
 		}
 	}
 
@@ -323,13 +531,9 @@ public class ProOnlineServer {
 			Group group = user.group;
 			group.players.remove(user);
 
+			byte[] packetBytes = new SceNetAdhocctlDisconnectPacketS2C(user.ip).getBytes();
 			for (User groupUser : group.players) {
-				SceNetAdhocctlDisconnectPacketS2C packet = new SceNetAdhocctlDisconnectPacketS2C(user.ip);
-				try {
-					sendToUser(groupUser, packet);
-				} catch (IOException e) {
-					log.debug("disconnectUser", e);
-				}
+				sendToUser(groupUser, packetBytes);
 			}
 
 			log.info(String.format("%s left %s group %s.", user, user.game.name, group.name));
@@ -360,11 +564,7 @@ public class ProOnlineServer {
 					// Founder of the group is the first player
 					mac = group.players.get(0).mac;
 				}
-				try {
-					sendToUser(currentUser, new PacketFactory.SceNetAdhocctlScanPacketS2C(group.name, mac));
-				} catch (IOException e) {
-					log.debug("processScan", e);
-				}
+				sendToUser(currentUser, new PacketFactory.SceNetAdhocctlScanPacketS2C(group.name, mac));
 			}
 		} else {
 			log.info(String.format("%s attempted to scan for %s groups without disconnecting from %s first.", currentUser, currentUser.game.name, currentUser.group.name));
@@ -375,29 +575,23 @@ public class ProOnlineServer {
 	private void spreadMessage(User fromUser, String message) {
 		// Global notice
 		if (fromUser == null) {
+			byte[] packetBytes = new PacketFactory.SceNetAdhocctlChatPacketS2C(message, "").getBytes();
 			// Iterate players
 			for (User user : users) {
 				// User has access to chat
 				if (user.group != null) {
-					try {
-						sendToUser(user, new PacketFactory.SceNetAdhocctlChatPacketS2C(message, ""));
-					} catch (IOException e) {
-						log.debug("spreadMessage global notice", e);
-					}
+					sendToUser(user, packetBytes);
 				}
 			}
 		} else if (fromUser.group != null) {
 			// User is connected
 			int messageCount = 0;
+			byte[] packetBytes = new PacketFactory.SceNetAdhocctlChatPacketS2C(message, fromUser.nickName).getBytes();
 			for (User user : fromUser.group.players) {
 				// Skip self
 				if (user != fromUser) {
-					try {
-						sendToUser(user, new PacketFactory.SceNetAdhocctlChatPacketS2C(message, fromUser.nickName));
-						messageCount++;
-					} catch (IOException e) {
-						log.debug("spreadMessage", e);
-					}
+					sendToUser(user, packetBytes);
+					messageCount++;
 				}
 			}
 
@@ -430,29 +624,15 @@ public class ProOnlineServer {
 					currentUser.group = new Group(groupName, currentUser.game);
 				}
 
+				byte[] packetBytes = new SceNetAdhocctlConnectPacketS2C(currentUser.nickName, currentUser.mac, currentUser.ip).getBytes();
 				for (User user : currentUser.group.players) {
-					SceNetAdhocctlConnectPacketS2C packet = new SceNetAdhocctlConnectPacketS2C(currentUser.nickName, currentUser.mac, currentUser.ip);
-					try {
-						sendToUser(user, packet);
-					} catch (IOException e) {
-						log.debug("processConnect", e);
-					}
-
-					packet = new SceNetAdhocctlConnectPacketS2C(user.nickName, user.mac, user.ip);
-					try {
-						sendToUser(currentUser, packet);
-					} catch (IOException e) {
-						log.debug("processConnect", e);
-					}
+					sendToUser(user, packetBytes);
+					sendToUser(currentUser, new SceNetAdhocctlConnectPacketS2C(user.nickName, user.mac, user.ip));
 				}
 
 				currentUser.group.players.add(currentUser);
 
-				try {
-					sendToUser(currentUser, new PacketFactory.SceNetAdhocctlConnectBSSIDPacketS2C(currentUser.group.players.get(0).mac));
-				} catch (IOException e) {
-					log.debug("processConnect", e);
-				}
+				sendToUser(currentUser, new PacketFactory.SceNetAdhocctlConnectBSSIDPacketS2C(currentUser.group.players.get(0).mac));
 				log.info(String.format("%s joined %s group '%s'.", currentUser, currentUser.game == null ? "" : currentUser.game.name, currentUser.group.name));
 			} else {
 				// Already connected to another group
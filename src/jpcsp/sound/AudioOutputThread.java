@@ -0,0 +1,85 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.sound;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import jpcsp.HLE.modules.sceAudio;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Consumer thread of the SoundChannel ring buffers:
+ * moves the samples from the ring buffers to the sound sinks
+ * and unblocks the threads waiting on sceAudioOutputBlocking.
+ *
+ * All the calls to the sound sinks are done from this thread.
+ */
+public class AudioOutputThread extends Thread {
+	private static Logger log = sceAudio.log;
+	// Polling period used to follow the playback progress of the sinks
+	private static final long PERIOD_NANOS = 1000000L;
+	private final List<SoundChannel> channels = new CopyOnWriteArrayList<SoundChannel>();
+	private volatile boolean exit;
+
+	public AudioOutputThread() {
+		setName("Audio Output Thread");
+		setDaemon(true);
+	}
+
+	public void addChannel(SoundChannel channel) {
+		channels.add(channel);
+		wakeup();
+	}
+
+	public void wakeup() {
+		LockSupport.unpark(this);
+	}
+
+	@Override
+	public void run() {
+		while (!exit) {
+			for (SoundChannel channel : channels) {
+				try {
+					if (!channel.pump()) {
+						channels.remove(channel);
+					}
+				} catch (RuntimeException e) {
+					log.error(String.format("AudioOutputThread %s", channel), e);
+				}
+			}
+			LockSupport.parkNanos(PERIOD_NANOS);
+		}
+
+		for (SoundChannel channel : channels) {
+			channel.closeSink();
+		}
+		channels.clear();
+	}
+
+	public void exit() {
+		exit = true;
+		wakeup();
+		try {
+			join();
+		} catch (InterruptedException e) {
+			// Ignore exception
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.sound;
+
+/**
+ * Lock-free ring buffer of audio bytes for one producer thread
+ * (the emulator thread) and one consumer thread (the AudioOutputThread).
+ *
+ * The read and write positions are only increasing. The producer is the
+ * only one updating the write position and the consumer is the only one
+ * updating the read position, so no lock is required: the volatile writes
+ * of the positions publish the data copied into the buffer.
+ */
+public class AudioRingBuffer {
+	private final byte[] buffer;
+	private final int mask;
+	private volatile long readPosition;
+	private volatile long writePosition;
+
+	public AudioRingBuffer(int minimumCapacity) {
+		int capacity = Integer.highestOneBit(Math.max(minimumCapacity, 16) - 1) << 1;
+		buffer = new byte[capacity];
+		mask = capacity - 1;
+	}
+
+	public int getCapacity() {
+		return buffer.length;
+	}
+
+	/**
+	 * @return the number of bytes that can be read
+	 */
+	public int available() {
+		return (int) (writePosition - readPosition);
+	}
+
+	/**
+	 * @return the number of bytes that can be written
+	 */
+	public int free() {
+		return buffer.length - available();
+	}
+
+	/**
+	 * Producer side: append bytes to the ring buffer.
+	 *
+	 * @return the number of bytes written, less than length when the buffer is full
+	 */
+	public int write(byte[] src, int offset, int length) {
+		long position = writePosition;
+		length = Math.min(length, buffer.length - (int) (position - readPosition));
+		if (length <= 0) {
+			return 0;
+		}
+
+		int index = (int) position & mask;
+		int firstLength = Math.min(length, buffer.length - index);
+		System.arraycopy(src, offset, buffer, index, firstLength);
+		if (firstLength < length) {
+			System.arraycopy(src, offset + firstLength, buffer, 0, length - firstLength);
+		}
+		writePosition = position + length;
+
+		return length;
+	}
+
+	/**
+	 * Consumer side: copy bytes from the ring buffer without consuming them.
+	 * The bytes have then to be consumed using skip().
+	 *
+	 * @return the number of bytes copied
+	 */
+	public int peek(byte[] dst, int offset, int length) {
+		long position = readPosition;
+		length = Math.min(length, (int) (writePosition - position));
+		if (length <= 0) {
+			return 0;
+		}
+
+		int index = (int) position & mask;
+		int firstLength = Math.min(length, buffer.length - index);
+		System.arraycopy(buffer, index, dst, offset, firstLength);
+		if (firstLength < length) {
+			System.arraycopy(buffer, 0, dst, offset + firstLength, length - firstLength);
+		}
+
+		return length;
+	}
+
+	/**
+	 * Consumer side: consume bytes.
+	 */
+	public void skip(int length) {
+		readPosition += Math.min(length, available());
+	}
+
+	/**
+	 * Consumer side: discard all the bytes available.
+	 */
+	public void clear() {
+		readPosition = writePosition;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("AudioRingBuffer[available=%d, capacity=%d]", available(), getCapacity());
+	}
+}
@@ -0,0 +1,152 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.sound;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import jpcsp.HLE.modules.sceAudio;
+import jpcsp.settings.Settings;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Sound sink writing the samples of one channel to a WAV or raw PCM file
+ * in the tmp directory, e.g. for headless runs.
+ * The samples are consumed at the real-time rate, like with the NullSoundSink.
+ *
+ * A new file is started when the sample format is changed.
+ */
+public class FileSoundSink extends NullSoundSink {
+	private static Logger log = sceAudio.log;
+	private static final int WAV_HEADER_LENGTH = 44;
+	private final int channelIndex;
+	private final boolean wav;
+	private RandomAccessFile file;
+	private int fileIndex;
+	private long dataLength;
+
+	public FileSoundSink(int channelIndex, boolean wav) {
+		this.channelIndex = channelIndex;
+		this.wav = wav;
+	}
+
+	@Override
+	public void setFormat(int sampleRate, boolean stereo) {
+		if (file != null && (this.sampleRate != sampleRate || this.stereo != stereo)) {
+			closeFile();
+		}
+		super.setFormat(sampleRate, stereo);
+	}
+
+	private void openFile() {
+		String tmpDirectory = Settings.getInstance().getTmpDirectory();
+		new File(tmpDirectory).mkdirs();
+		String fileName = String.format("%saudio-channel%d", tmpDirectory, channelIndex);
+		if (fileIndex > 0) {
+			fileName += String.format("-%d", fileIndex);
+		}
+		fileName += wav ? ".wav" : ".raw";
+		fileIndex++;
+
+		try {
+			file = new RandomAccessFile(fileName, "rw");
+			file.setLength(0L);
+			dataLength = 0L;
+			if (wav) {
+				writeWavHeader();
+			}
+			log.info(String.format("Writing audio channel %d to '%s' (sampleRate=%d, %s)", channelIndex, fileName, sampleRate, stereo ? "Stereo" : "Mono"));
+		} catch (IOException e) {
+			log.error(String.format("FileSoundSink cannot create '%s'", fileName), e);
+			file = null;
+		}
+	}
+
+	private void writeInt(byte[] header, int offset, int value) {
+		header[offset + 0] = (byte) value;
+		header[offset + 1] = (byte) (value >> 8);
+		header[offset + 2] = (byte) (value >> 16);
+		header[offset + 3] = (byte) (value >> 24);
+	}
+
+	private void writeShort(byte[] header, int offset, int value) {
+		header[offset + 0] = (byte) value;
+		header[offset + 1] = (byte) (value >> 8);
+	}
+
+	private void writeWavHeader() throws IOException {
+		int numberChannels = stereo ? 2 : 1;
+		int blockAlign = numberChannels * 2;
+		byte[] header = new byte[WAV_HEADER_LENGTH];
+		writeInt(header, 0, 0x46464952); // "RIFF"
+		writeInt(header, 4, (int) (WAV_HEADER_LENGTH - 8 + dataLength));
+		writeInt(header, 8, 0x45564157); // "WAVE"
+		writeInt(header, 12, 0x20746D66); // "fmt "
+		writeInt(header, 16, 16);
+		writeShort(header, 20, 1); // PCM
+		writeShort(header, 22, numberChannels);
+		writeInt(header, 24, sampleRate);
+		writeInt(header, 28, sampleRate * blockAlign);
+		writeShort(header, 32, blockAlign);
+		writeShort(header, 34, 16);
+		writeInt(header, 36, 0x61746164); // "data"
+		writeInt(header, 40, (int) dataLength);
+
+		file.seek(0L);
+		file.write(header);
+		file.seek(WAV_HEADER_LENGTH + dataLength);
+	}
+
+	private void closeFile() {
+		if (file != null) {
+			try {
+				if (wav) {
+					writeWavHeader();
+				}
+				file.close();
+			} catch (IOException e) {
+				log.error("FileSoundSink.closeFile", e);
+			}
+			file = null;
+		}
+	}
+
+	@Override
+	protected void output(byte[] buffer, int offset, int length) {
+		if (file == null) {
+			openFile();
+			if (file == null) {
+				return;
+			}
+		}
+
+		try {
+			file.write(buffer, offset, length);
+			dataLength += length;
+		} catch (IOException e) {
+			log.error("FileSoundSink.output", e);
+		}
+	}
+
+	@Override
+	public void close() {
+		closeFile();
+		super.close();
+	}
+}
@@ -0,0 +1,54 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.sound;
+
+/**
+ * Output of the 16-bit PCM samples of one SoundChannel.
+ *
+ * All the methods are only called from the AudioOutputThread.
+ */
+public interface ISoundSink {
+	/**
+	 * Set the format of the samples passed to the following write() calls.
+	 *
+	 * @param sampleRate  the sample rate in Hz
+	 * @param stereo      true for interleaved stereo samples, false for mono samples
+	 */
+	public void setFormat(int sampleRate, boolean stereo);
+
+	/**
+	 * Queue samples for output, without blocking.
+	 *
+	 * @return the number of bytes accepted, less than length when the sink is full
+	 */
+	public int write(byte[] buffer, int offset, int length);
+
+	/**
+	 * @return the number of bytes queued in the sink and not yet played
+	 */
+	public int getQueuedBytes();
+
+	/**
+	 * Discard all the queued samples.
+	 */
+	public void flush();
+
+	/**
+	 * Release the resources used by the sink.
+	 */
+	public void close();
+}
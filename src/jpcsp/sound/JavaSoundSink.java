@@ -0,0 +1,111 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.sound;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import jpcsp.HLE.modules.sceAudio;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Sound sink playing the samples on a javax.sound SourceDataLine.
+ */
+public class JavaSoundSink implements ISoundSink {
+	private static Logger log = sceAudio.log;
+	// Size of the SourceDataLine buffer
+	private static final int LINE_BUFFER_SIZE_IN_MILLIS = 200;
+	private SourceDataLine line;
+	private int frameSize;
+	private int sampleRate;
+	private boolean stereo;
+
+	@Override
+	public void setFormat(int sampleRate, boolean stereo) {
+		if (line != null && this.sampleRate == sampleRate && this.stereo == stereo) {
+			return;
+		}
+
+		close();
+		this.sampleRate = sampleRate;
+		this.stereo = stereo;
+		frameSize = stereo ? 4 : 2;
+
+		AudioFormat audioFormat = new AudioFormat(sampleRate, 16, stereo ? 2 : 1, true, false);
+		int bufferSize = sampleRate * LINE_BUFFER_SIZE_IN_MILLIS / 1000 * frameSize;
+		try {
+			line = AudioSystem.getSourceDataLine(audioFormat);
+			line.open(audioFormat, bufferSize);
+			line.start();
+		} catch (LineUnavailableException e) {
+			log.error(String.format("JavaSoundSink cannot open a line for %s", audioFormat), e);
+			line = null;
+		} catch (IllegalArgumentException e) {
+			log.error(String.format("JavaSoundSink unsupported format %s", audioFormat), e);
+			line = null;
+		}
+	}
+
+	@Override
+	public int write(byte[] buffer, int offset, int length) {
+		if (line == null) {
+			// No line available, drop the samples
+			return length;
+		}
+
+		length = Math.min(length, line.available());
+		length -= length % frameSize;
+		if (length <= 0) {
+			return 0;
+		}
+
+		return line.write(buffer, offset, length);
+	}
+
+	@Override
+	public int getQueuedBytes() {
+		if (line == null) {
+			return 0;
+		}
+
+		return line.getBufferSize() - line.available();
+	}
+
+	@Override
+	public void flush() {
+		if (line != null) {
+			line.flush();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (line != null) {
+			line.stop();
+			line.close();
+			line = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("JavaSoundSink[sampleRate=%d, %s]", sampleRate, stereo ? "Stereo" : "Mono");
+	}
+}
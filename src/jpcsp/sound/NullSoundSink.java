@@ -0,0 +1,94 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.sound;
+
+/**
+ * Sound sink discarding the samples.
+ *
+ * The queued samples are consumed at the real-time rate defined by the
+ * sample rate, so that the applications are paced like with a sound device.
+ * Used when no sound device is available, e.g. for headless runs.
+ */
+public class NullSoundSink implements ISoundSink {
+	protected int sampleRate = 44100;
+	protected boolean stereo = true;
+	private int bytesPerSecond = 44100 * 4;
+	private long queuedBytes;
+	private long lastUpdateNanos;
+
+	@Override
+	public void setFormat(int sampleRate, boolean stereo) {
+		update();
+		this.sampleRate = sampleRate;
+		this.stereo = stereo;
+		bytesPerSecond = Math.max(sampleRate * (stereo ? 4 : 2), 1);
+	}
+
+	private void update() {
+		long now = System.nanoTime();
+		if (queuedBytes <= 0) {
+			lastUpdateNanos = now;
+			return;
+		}
+
+		long playedBytes = (now - lastUpdateNanos) * bytesPerSecond / 1000000000L;
+		if (playedBytes >= queuedBytes) {
+			queuedBytes = 0;
+			lastUpdateNanos = now;
+		} else if (playedBytes > 0) {
+			queuedBytes -= playedBytes;
+			lastUpdateNanos += playedBytes * 1000000000L / bytesPerSecond;
+		}
+	}
+
+	/**
+	 * Called for the samples being played.
+	 */
+	protected void output(byte[] buffer, int offset, int length) {
+	}
+
+	@Override
+	public int write(byte[] buffer, int offset, int length) {
+		update();
+		output(buffer, offset, length);
+		queuedBytes += length;
+
+		return length;
+	}
+
+	@Override
+	public int getQueuedBytes() {
+		update();
+
+		return (int) queuedBytes;
+	}
+
+	@Override
+	public void flush() {
+		queuedBytes = 0;
+	}
+
+	@Override
+	public void close() {
+		flush();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[sampleRate=%d, %s, queuedBytes=%d]", getClass().getSimpleName(), sampleRate, stereo ? "Stereo" : "Mono", queuedBytes);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.sound;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+import jpcsp.HLE.modules.sceAudio;
+
+import org.apache.log4j.Logger;
+import org.lwjgl.openal.AL10;
+import org.lwjgl.openal.AL11;
+
+/**
+ * Sound sink playing the samples on an OpenAL source.
+ * Each write() is queued as a separate OpenAL buffer.
+ */
+public class OpenALSoundSink implements ISoundSink {
+	private static Logger log = sceAudio.log;
+	private final SoundBufferManager soundBufferManager;
+	private final int alSource;
+	private int alFormat = AL10.AL_FORMAT_STEREO16;
+	private int sampleRate;
+	private final LinkedList<Integer> queuedBufferLengths = new LinkedList<Integer>();
+	private int queuedBytes;
+
+	public OpenALSoundSink() {
+		soundBufferManager = SoundBufferManager.getInstance();
+		alSource = AL10.alGenSources();
+		AL10.alSourcei(alSource, AL10.AL_LOOPING, AL10.AL_FALSE);
+	}
+
+	@Override
+	public void setFormat(int sampleRate, boolean stereo) {
+		this.sampleRate = sampleRate;
+		alFormat = stereo ? AL10.AL_FORMAT_STEREO16 : AL10.AL_FORMAT_MONO16;
+	}
+
+	private void checkFreeBuffers() {
+		int freedBuffers = soundBufferManager.checkFreeBuffers(alSource);
+		for (int i = 0; i < freedBuffers && !queuedBufferLengths.isEmpty(); i++) {
+			queuedBytes -= queuedBufferLengths.removeFirst();
+		}
+	}
+
+	@Override
+	public int write(byte[] buffer, int offset, int length) {
+		int alBuffer = soundBufferManager.getBuffer();
+		ByteBuffer directBuffer = soundBufferManager.getDirectBuffer(length);
+		directBuffer.clear();
+		directBuffer.limit(length);
+		directBuffer.put(buffer, offset, length);
+		directBuffer.rewind();
+		AL10.alBufferData(alBuffer, alFormat, directBuffer, sampleRate);
+		AL10.alSourceQueueBuffers(alSource, alBuffer);
+		soundBufferManager.releaseDirectBuffer(directBuffer);
+		queuedBufferLengths.addLast(length);
+		queuedBytes += length;
+
+		checkFreeBuffers();
+		int state = AL10.alGetSourcei(alSource, AL10.AL_SOURCE_STATE);
+		if (state != AL10.AL_PLAYING) {
+			AL10.alSourcePlay(alSource);
+		}
+
+		if (log.isTraceEnabled()) {
+			log.trace(String.format("OpenALSoundSink queued buffer=%d, length=%d, queuedBytes=%d", alBuffer, length, queuedBytes));
+		}
+
+		return length;
+	}
+
+	@Override
+	public int getQueuedBytes() {
+		checkFreeBuffers();
+		if (queuedBytes <= 0) {
+			return 0;
+		}
+
+		// The currently playing buffer is still queued, do not count
+		// its samples already played.
+		int byteOffset = AL10.alGetSourcei(alSource, AL11.AL_BYTE_OFFSET);
+
+		return Math.max(queuedBytes - byteOffset, 0);
+	}
+
+	@Override
+	public void flush() {
+		AL10.alSourceStop(alSource);
+		checkFreeBuffers();
+		queuedBufferLengths.clear();
+		queuedBytes = 0;
+	}
+
+	@Override
+	public void close() {
+		flush();
+		AL10.alDeleteSources(alSource);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("OpenALSoundSink[source=%d, queuedBytes=%d]", alSource, queuedBytes);
+	}
+}
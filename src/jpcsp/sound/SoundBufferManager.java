@@ -54,7 +54,8 @@ public class SoundBufferManager {
 		return freeBuffers.pop();
 	}
 
-	public void checkFreeBuffers(int alSource) {
+	public int checkFreeBuffers(int alSource) {
+		int freedBuffers = 0;
         while (true) {
         	int processedBuffers = AL10.alGetSourcei(alSource, AL10.AL_BUFFERS_PROCESSED);
         	if (processedBuffers <= 0) {
@@ -65,7 +66,10 @@ public class SoundBufferManager {
     			log.debug(String.format("free buffer %d", alBuffer));
     		}
     		freeBuffers.push(alBuffer);
+    		freedBuffers++;
         }
+
+        return freedBuffers;
 	}
 
 	public ByteBuffer getDirectBuffer(int size) {
@@ -16,21 +16,38 @@ along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
  */
 package jpcsp.sound;
 
-import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
 
+import jpcsp.Emulator;
+import jpcsp.HLE.kernel.types.IAction;
 import jpcsp.HLE.modules.sceAudio;
+import jpcsp.settings.Settings;
 
 import org.apache.log4j.Logger;
 import org.lwjgl.LWJGLException;
 import org.lwjgl.openal.AL;
-import org.lwjgl.openal.AL10;
-import org.lwjgl.openal.AL11;
 
+/**
+ * The samples output on a channel are written by the emulator thread
+ * into a lock-free ring buffer. The AudioOutputThread moves them from the
+ * ring buffer to the sound sink selected by the "emu.soundSink" setting
+ * (openal, javasound, null, wav or raw).
+ *
+ * The blocking state of the channel is computed from the ring buffer fill
+ * level and from the number of bytes queued in the sink: a thread blocked
+ * in sceAudioOutputBlocking is unblocked by the AudioOutputThread as soon
+ * as the channel is no longer blocking.
+ */
 public class SoundChannel {
 	private static Logger log = sceAudio.log;
 	private static volatile boolean isExit = false;
 	public static final int FORMAT_MONO = 0x10;
 	public static final int FORMAT_STEREO = 0x00;
+	public static final String SINK_OPENAL = "openal";
+	public static final String SINK_JAVASOUND = "javasound";
+	public static final String SINK_NULL = "null";
+	public static final String SINK_WAV = "wav";
+	public static final String SINK_RAW = "raw";
     //
     // The PSP is using a buffer equal to the sampleSize.
     // However, the audio data is not always streamed as fast on Jpcsp as on
@@ -46,54 +63,113 @@ public class SoundChannel {
     // the real sound itself.
 	// E.g. BUFFER_SIZE_IN_MILLIS = 100 gives a 0.1 second delay.
 	private static final int BUFFER_SIZE_IN_MILLIS = 100;
+	// When waiting for a minimum number of buffers before starting to play,
+	// start anyway when no new samples have been output since this delay.
+	private static final long PREBUFFER_TIMEOUT_NANOS = 20000000L;
 	public  static final int MAX_VOLUME = 0x8000;
 	private static final int DEFAULT_VOLUME = MAX_VOLUME;
 	private static final int DEFAULT_SAMPLE_RATE = 44100;
-	private SoundBufferManager soundBufferManager;
+	private static String sinkName = SINK_OPENAL;
+	private static AudioOutputThread audioOutputThread;
 	private int index;
 	private boolean reserved;
 	private int leftVolume;
 	private int rightVolume;
-    private int alSource;
-    private int sampleRate;
-    private int sampleLength;
-    private int format;
-    private int numberBlockingBuffers;
-    private int minimumNumberBuffers;
+    private volatile int sampleRate;
+    private volatile int sampleLength;
+    private volatile int format;
+    private volatile int numberBlockingBuffers;
+    private volatile int minimumNumberBuffers;
     private boolean busy;
+    // Accessed by the emulator thread (producer) and the AudioOutputThread (consumer)
+    private volatile AudioRingBuffer ringBuffer;
+    private volatile int sinkQueuedBytes;
+    private volatile boolean flushRequested;
+    private volatile boolean closeRequested;
+    private volatile boolean unblockOnDrain;
+    private volatile long lastOutputNanos;
+    private final AtomicReference<IAction> unblockAction = new AtomicReference<IAction>();
+    // Only accessed by the emulator thread
+    private byte[] outputBuffer;
+    private long outputBytes;
+    private long overruns;
+    private long latencyCount;
+    private long latencySumMicros;
+    private long latencyMaxMicros;
+    // Only accessed by the AudioOutputThread
+    private ISoundSink sink;
+    private int sinkSampleRate;
+    private boolean sinkStereo;
+    private boolean sinkPlaying;
+    private byte[] pumpBuffer;
+    private volatile long underruns;
 
     public static void init() {
-		if (!AL.isCreated()) {
-			try {
-				AL.create();
-				isExit = false;
-			} catch (LWJGLException e) {
-				log.error(e);
+    	sinkName = Settings.getInstance().readString("emu.soundSink", SINK_OPENAL).toLowerCase();
+    	if (SINK_OPENAL.equals(sinkName)) {
+			if (!AL.isCreated()) {
+				try {
+					AL.create();
+				} catch (LWJGLException e) {
+					log.error(e);
+				}
+			}
+			if (!AL.isCreated()) {
+				log.warn("OpenAL not available, audio output disabled");
+				sinkName = SINK_NULL;
 			}
+    	}
+		isExit = false;
+
+		if (audioOutputThread == null || !audioOutputThread.isAlive()) {
+			audioOutputThread = new AudioOutputThread();
+			audioOutputThread.start();
 		}
     }
 
     public static void exit() {
+		isExit = true;
+		if (audioOutputThread != null) {
+			audioOutputThread.exit();
+			audioOutputThread = null;
+		}
+
     	if (AL.isCreated()) {
-    		isExit = true;
     		AL.destroy();
     	}
     }
 
     public SoundChannel(int index) {
-		soundBufferManager = SoundBufferManager.getInstance();
 		this.index = index;
 		reserved = false;
 		leftVolume = DEFAULT_VOLUME;
 		rightVolume = DEFAULT_VOLUME;
-		alSource = AL10.alGenSources();
 		sampleRate = DEFAULT_SAMPLE_RATE;
 		updateNumberBlockingBuffers();
 
-		AL10.alSourcei(alSource, AL10.AL_LOOPING, AL10.AL_FALSE);
+		if (audioOutputThread != null) {
+			audioOutputThread.addChannel(this);
+		}
 	}
 
+    private ISoundSink createSink() {
+    	if (SINK_OPENAL.equals(sinkName)) {
+    		return new OpenALSoundSink();
+    	}
+    	if (SINK_JAVASOUND.equals(sinkName)) {
+    		return new JavaSoundSink();
+    	}
+    	if (SINK_WAV.equals(sinkName)) {
+    		return new FileSoundSink(index, true);
+    	}
+    	if (SINK_RAW.equals(sinkName)) {
+    		return new FileSoundSink(index, false);
+    	}
+		return new NullSoundSink();
+    }
+
     private void updateNumberBlockingBuffers() {
+    	int numberBlockingBuffers = 0;
     	if (getSampleLength() > 0) {
 	    	// Compute the number of buffers required to store the required
 	    	// amount of audio time
@@ -102,7 +178,7 @@ public class SoundChannel {
     	}
 
     	// At least 1 blocking buffer
-    	numberBlockingBuffers = Math.max(numberBlockingBuffers, 1);
+    	this.numberBlockingBuffers = Math.max(numberBlockingBuffers, 1);
 
     	// For very small sample length, wait for a minimum number of buffers
     	// before starting playing the audio otherwise, small cracks can be produced.
@@ -184,60 +260,97 @@ public class SoundChannel {
 		}
 	}
 
-	private void alSourcePlay() {
-		int state = AL10.alGetSourcei(alSource, AL10.AL_SOURCE_STATE);
-		if (state != AL10.AL_PLAYING) {
-			if (minimumNumberBuffers <= 0 || getWaitingBuffers() >= minimumNumberBuffers) {
-				AL10.alSourcePlay(alSource);
-			}
+	private int getBytesPerSample() {
+		return isFormatStereo() ? 4 : 2;
+	}
+
+	private int getBufferBytes() {
+		return Math.max(getSampleLength(), 1) * getBytesPerSample();
+	}
+
+	/**
+	 * Return a buffer of the given length that can be used to prepare
+	 * the samples passed to play(). The buffer is reused by the next calls.
+	 */
+	public byte[] getOutputBuffer(int length) {
+		if (outputBuffer == null || outputBuffer.length != length) {
+			outputBuffer = new byte[length];
 		}
-    }
 
-    private void alSourceQueueBuffer(byte[] buffer) {
-    	int alBuffer = soundBufferManager.getBuffer();
-    	ByteBuffer directBuffer = soundBufferManager.getDirectBuffer(buffer.length);
-		directBuffer.clear();
-		directBuffer.limit(buffer.length);
-		directBuffer.put(buffer);
-		directBuffer.rewind();
-		int alFormat = isFormatStereo() ? AL10.AL_FORMAT_STEREO16 : AL10.AL_FORMAT_MONO16;
-		AL10.alBufferData(alBuffer, alFormat, directBuffer, getSampleRate());
-		AL10.alSourceQueueBuffers(alSource, alBuffer);
-		soundBufferManager.releaseDirectBuffer(directBuffer);
-		alSourcePlay();
-		checkFreeBuffers();
-
-		if (log.isDebugEnabled()) {
-			log.debug(String.format("alSourceQueueBuffer buffer=%d, %s", alBuffer, toString()));
+		return outputBuffer;
+	}
+
+	private AudioRingBuffer getRingBuffer(int length) {
+		AudioRingBuffer ringBuffer = this.ringBuffer;
+		int requiredCapacity = Math.max(numberBlockingBuffers * getBufferBytes(), length) + length;
+		// The ring buffer can only be replaced when the AudioOutputThread
+		// has consumed all its bytes.
+		if (ringBuffer == null || (ringBuffer.getCapacity() < requiredCapacity && ringBuffer.available() == 0)) {
+			ringBuffer = new AudioRingBuffer(requiredCapacity);
+			this.ringBuffer = ringBuffer;
 		}
-    }
 
-    public void checkFreeBuffers() {
-    	soundBufferManager.checkFreeBuffers(alSource);
-    }
+		return ringBuffer;
+	}
 
-    public void release() {
-    	AL10.alSourceStop(alSource);
-    	checkFreeBuffers();
+    public void play(byte[] buffer) {
+    	play(buffer, buffer.length);
     }
 
-    public void play(byte[] buffer) {
-    	alSourceQueueBuffer(buffer);
+    public void play(byte[] buffer, int length) {
+    	AudioRingBuffer ringBuffer = getRingBuffer(length);
+
+    	// The latency of these samples is the duration of the samples already pending
+    	int pendingBytes = ringBuffer.available() + sinkQueuedBytes;
+    	long latencyMicros = pendingBytes * 1000000L / (getSampleRate() * getBytesPerSample());
+    	latencyCount++;
+    	latencySumMicros += latencyMicros;
+    	latencyMaxMicros = Math.max(latencyMaxMicros, latencyMicros);
+
+    	int written = ringBuffer.write(buffer, 0, length);
+    	outputBytes += written;
+    	if (written < length) {
+    		overruns++;
+    		if (log.isDebugEnabled()) {
+    			log.debug(String.format("SoundChannel %d: ring buffer full, dropping %d bytes", index, length - written));
+    		}
+    	}
+    	lastOutputNanos = System.nanoTime();
+
+    	if (audioOutputThread != null) {
+    		audioOutputThread.wakeup();
+    	}
     }
 
-    private int getWaitingBuffers() {
-    	checkFreeBuffers();
+    public void release() {
+    	// The AudioOutputThread discards the pending samples
+    	flushRequested = true;
+    	if (audioOutputThread != null) {
+    		audioOutputThread.wakeup();
+    	}
+    }
 
-    	return AL10.alGetSourcei(alSource, AL10.AL_BUFFERS_QUEUED);
+    /**
+     * Request the AudioOutputThread to unblock a thread by executing the
+     * given action on the emulator thread, as soon as the channel is no longer
+     * blocking or, when waitForCompleteDrain is set, as soon as the channel is drained.
+     */
+    public void setUnblockAction(IAction action, boolean waitForCompleteDrain) {
+    	unblockOnDrain = waitForCompleteDrain;
+    	unblockAction.set(action);
+    	if (audioOutputThread != null) {
+    		audioOutputThread.wakeup();
+    	}
     }
 
-    private int getSourceSampleOffset() {
-    	int sampleOffset = AL10.alGetSourcei(alSource, AL11.AL_SAMPLE_OFFSET);
-    	if (isFormatStereo()) {
-    		sampleOffset /= 2;
+    private int getPendingBytes() {
+    	AudioRingBuffer ringBuffer = this.ringBuffer;
+    	int pendingBytes = sinkQueuedBytes;
+    	if (ringBuffer != null) {
+    		pendingBytes += ringBuffer.available();
     	}
 
-    	return sampleOffset;
+    	return pendingBytes;
     }
 
     public boolean isOutputBlocking() {
@@ -245,69 +358,146 @@ public class SoundChannel {
     		return true;
     	}
 
-    	return getWaitingBuffers() >= numberBlockingBuffers;
+    	AudioRingBuffer ringBuffer = this.ringBuffer;
+    	if (ringBuffer != null && ringBuffer.available() > 0 && ringBuffer.free() < getBufferBytes()) {
+    		return true;
+    	}
+
+    	return getPendingBytes() >= numberBlockingBuffers * getBufferBytes();
     }
 
     public boolean isDrained() {
-    	if (isEnded()) {
+    	if (isExit) {
     		return true;
     	}
 
-    	if (getWaitingBuffers() > 1) {
-    		return false;
-    	}
+    	// The buffer currently playing is not waited for
+    	return getPendingBytes() <= getBufferBytes();
+    }
 
-    	return true;
+    public int getRestLength() {
+    	return getPendingBytes() / getBytesPerSample();
     }
 
-    public int getUnblockOutputDelayMicros(boolean waitForCompleteDrain) {
-    	// Return the delay required for the processing of the playing buffer
-    	if (isExit || isEnded()) {
-    		return 0;
-    	}
+    public boolean isEnded() {
+    	return getPendingBytes() == 0;
+    }
 
-    	int samples;
-    	if (waitForCompleteDrain) {
-    		samples = getDrainLength();
-    	} else {
-    		samples = getSampleLength() - getSourceSampleOffset();
+    /**
+     * Called by the AudioOutputThread:
+     * move the samples from the ring buffer to the sink and
+     * unblock the waiting thread if the channel is no longer blocking.
+     *
+     * @return false when the channel has been closed
+     */
+    boolean pump() {
+    	if (closeRequested) {
+    		closeSink();
+    		return false;
     	}
-    	float delaySecs = samples / (float) getSampleRate();
-    	int delayMicros = (int) (delaySecs * 1000000);
 
-    	return delayMicros;
-    }
+    	AudioRingBuffer ringBuffer = this.ringBuffer;
+    	if (flushRequested) {
+    		flushRequested = false;
+    		if (ringBuffer != null) {
+    			ringBuffer.clear();
+    		}
+    		if (sink != null) {
+    			sink.flush();
+    		}
+    		sinkPlaying = false;
+    	}
 
-    public int getDrainLength() {
-    	int waitingBuffers = getWaitingBuffers();
-    	if (waitingBuffers > 0) {
-    		// getWaitingBuffers also returns the currently playing buffer,
-    		// do not count it
-    		waitingBuffers--;
+    	int available = ringBuffer == null ? 0 : ringBuffer.available();
+    	if (available > 0) {
+    		if (sink == null) {
+    			sink = createSink();
+    			sinkSampleRate = 0;
+    		}
+
+    		int sampleRate = getSampleRate();
+    		boolean stereo = isFormatStereo();
+    		if (sampleRate != sinkSampleRate || stereo != sinkStereo) {
+    			sink.setFormat(sampleRate, stereo);
+    			sinkSampleRate = sampleRate;
+    			sinkStereo = stereo;
+    		}
+
+    		int bufferBytes = getBufferBytes();
+    		boolean prebuffering = !sinkPlaying && available < minimumNumberBuffers * bufferBytes && System.nanoTime() - lastOutputNanos < PREBUFFER_TIMEOUT_NANOS;
+    		if (!prebuffering) {
+    			if (pumpBuffer == null || pumpBuffer.length < bufferBytes) {
+    				pumpBuffer = new byte[bufferBytes];
+    			}
+
+    			while (available > 0) {
+    				int length = ringBuffer.peek(pumpBuffer, 0, bufferBytes);
+    				int accepted = sink.write(pumpBuffer, 0, length);
+    				// Update the queued bytes before consuming the ring buffer
+    				// so that the pending bytes are never under-estimated
+    				sinkQueuedBytes = sink.getQueuedBytes();
+    				ringBuffer.skip(accepted);
+    				if (accepted > 0) {
+    					sinkPlaying = true;
+    				}
+    				if (accepted < length) {
+    					break;
+    				}
+    				available -= accepted;
+    			}
+    		}
     	}
-    	int restLength = waitingBuffers * getSampleLength();
 
-    	return restLength;
-    }
+    	if (sink != null) {
+    		int queuedBytes = sink.getQueuedBytes();
+    		sinkQueuedBytes = queuedBytes;
+    		if (queuedBytes == 0 && sinkPlaying) {
+    			sinkPlaying = false;
+    			if (ringBuffer == null || ringBuffer.available() == 0) {
+    				// The sink has played all its samples before new ones were output
+    				underruns++;
+    			}
+    		}
+    	}
 
-    public int getRestLength() {
-    	int restLength = getDrainLength();
-    	if (!isEnded()) {
-    		restLength += getSampleLength() - getSourceSampleOffset();
+    	IAction action = unblockAction.get();
+    	if (action != null) {
+    		boolean unblock = unblockOnDrain ? isDrained() : !isOutputBlocking();
+    		if (unblock && unblockAction.compareAndSet(action, null)) {
+    			Emulator.getScheduler().addAction(action);
+    		}
     	}
 
-    	return restLength;
+    	return true;
     }
 
-    public boolean isEnded() {
-    	checkFreeBuffers();
+    /**
+     * Called by the AudioOutputThread to release the sink.
+     */
+    void closeSink() {
+    	if (sink != null) {
+    		sink.close();
+    		sink = null;
+    		if (outputBytes > 0) {
+    			log.info(getStatistics());
+    		}
+    	}
+    	sinkQueuedBytes = 0;
+    }
 
-    	int state = AL10.alGetSourcei(alSource, AL10.AL_SOURCE_STATE);
-		if (state == AL10.AL_PLAYING) {
-			return false;
-		}
+    /**
+     * Close the channel, releasing its sink.
+     */
+    public void close() {
+    	closeRequested = true;
+    	if (audioOutputThread != null) {
+    		audioOutputThread.wakeup();
+    	}
+    }
 
-		return true;
+    public String getStatistics() {
+    	long averageLatencyMicros = latencyCount > 0 ? latencySumMicros / latencyCount : 0L;
+    	return String.format("SoundChannel[%d] statistics: sink=%s, outputBytes=%d, underruns=%d, overruns=%d, latency average=%d us, max=%d us", index, sinkName, outputBytes, underruns, overruns, averageLatencyMicros, latencyMaxMicros);
     }
 
     public static short adjustSample(short sample, int volume) {
@@ -333,9 +523,9 @@ public class SoundChannel {
 
 		s.append(String.format("SoundChannel[%d](", index));
 		if (!isExit) {
-			s.append(String.format("sourceSampleOffset=%d", getSourceSampleOffset()));
-			s.append(String.format(", restLength=%d", getRestLength()));
-			s.append(String.format(", buffers queued=%d", getWaitingBuffers()));
+			s.append(String.format("restLength=%d", getRestLength()));
+			s.append(String.format(", sinkQueuedBytes=%d", sinkQueuedBytes));
+			s.append(String.format(", ringBuffer=%s", ringBuffer));
 			s.append(String.format(", isOutputBlock=%b", isOutputBlocking()));
 			s.append(String.format(", %s", isFormatStereo() ? "Stereo" : "Mono"));
 			s.append(String.format(", reserved=%b", reserved));
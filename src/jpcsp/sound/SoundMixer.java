@@ -90,16 +90,17 @@ public class SoundMixer {
     		}
     	}
 
-    	int lengthInBytes = mixedSamples.length << 1;
-    	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, lengthInBytes, 4);
+    	short[] stereoSamples = new short[samples * 2];
     	for (int i = 0, j = 0; i < samples; i++, j += 2) {
     		short sampleLeft  = clampSample(mixedSamples[j]);
     		short sampleRight = clampSample(mixedSamples[j + 1]);
-    		sampleLeft = SoundChannel.adjustSample(sampleLeft, leftVol);
-    		sampleRight = SoundChannel.adjustSample(sampleRight, rightVol);
-    		int sampleStereo = getSampleStereo(sampleLeft, sampleRight);
-    		memoryWriter.writeNext(sampleStereo);
+    		stereoSamples[j] = SoundChannel.adjustSample(sampleLeft, leftVol);
+    		stereoSamples[j + 1] = SoundChannel.adjustSample(sampleRight, rightVol);
     	}
+
+    	int lengthInBytes = mixedSamples.length << 1;
+    	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, lengthInBytes, 2);
+    	memoryWriter.writeNext(stereoSamples, 0, stereoSamples.length);
     	memoryWriter.flush();
     }
 
@@ -115,13 +116,15 @@ public class SoundMixer {
     		}
     	}
 
+    	short[] monoSamples = new short[samples];
+    	for (int i = 0; i < samples; i++) {
+    		short sampleMono  = clampSample(mixedSamples[i]);
+    		monoSamples[i] = SoundChannel.adjustSample(sampleMono, monoVol);
+    	}
+
     	int lengthInBytes = mixedSamples.length << 1;
     	IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(addr, lengthInBytes, 2);
-    	for (int i = 0, j = 0; i < samples; i++, j++) {
-    		short sampleMono  = clampSample(mixedSamples[j]);
-    		sampleMono = SoundChannel.adjustSample(sampleMono, monoVol);
-    		memoryWriter.writeNext(sampleMono & 0xFFFF);
-    	}
+    	memoryWriter.writeNext(monoSamples, 0, monoSamples.length);
     	memoryWriter.flush();
     }
 
@@ -193,16 +196,18 @@ public class SoundMixer {
     		// Mix with the input buffer with no volume change
 	    	int lengthInBytes = mixedSamples.length * 2;
 	    	IMemoryReader memoryReader = MemoryReader.getMemoryReader(addr, lengthInBytes, 2);
+	    	memoryReader.readNext(mixedSamples, 0, mixedSamples.length);
 	    	for (int i = 0; i < mixedSamples.length; i++) {
-	    		mixedSamples[i] = (short) memoryReader.readNext();
+	    		mixedSamples[i] = (short) mixedSamples[i];
 	    	}
     	} else {
     		// Mix with the input buffer with a volume adjustment
 	    	int lengthInBytes = mixedSamples.length * 2;
 	    	IMemoryReader memoryReader = MemoryReader.getMemoryReader(addr, lengthInBytes, 2);
+	    	memoryReader.readNext(mixedSamples, 0, samples * 2);
 	    	for (int i = 0; i < samples; i++) {
-	    		short sampleLeft = (short) memoryReader.readNext();
-	    		short sampleRight = (short) memoryReader.readNext();
+	    		short sampleLeft = (short) mixedSamples[i * 2];
+	    		short sampleRight = (short) mixedSamples[i * 2 + 1];
 	    		sampleLeft = SoundChannel.adjustSample(sampleLeft, leftVol);
 	    		sampleRight = SoundChannel.adjustSample(sampleRight, rightVol);
 	    		mixedSamples[i * 2] = sampleLeft;
@@ -0,0 +1,179 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import org.apache.log4j.xml.DOMConfigurator;
+
+import jpcsp.Emulator;
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.Processor;
+import jpcsp.Allegrex.DecodedInstructionCache;
+import jpcsp.Allegrex.Decoder;
+import jpcsp.Allegrex.Common.Instruction;
+
+/**
+ * Benchmark of the interpreter.
+ *
+ * Compares the instruction rate of the interpreter when decoding each
+ * fetched opcode with Decoder.instruction() against the rate when using
+ * the DecodedInstructionCache, as done by Processor.interpret().
+ * Both are executing the same straight-line code, once with a mix of
+ * integer, load and store instructions and once with a mix including
+ * FPU and VFPU instructions. The resulting register values are also compared.
+ *
+ * Usage: InterpreterBenchmark [numberOfInstructions [iterations]]
+ */
+public class InterpreterBenchmark {
+	private static final int CODE_ADDRESS = MemoryMap.START_RAM + 0x10000;
+	private static final int DATA_ADDRESS = MemoryMap.START_RAM + 0x100000;
+	private static final int ROUNDS = 5;
+	private static final int[] integerMix = {
+		0x24420001, // addiu $v0, $v0, 1
+		0x00431021, // addu  $v0, $v0, $v1
+		0x00621826, // xor   $v1, $v1, $v0
+		0x00021080, // sll   $v0, $v0, 2
+		0x8E040010, // lw    $a0, 16($s0)
+		0xAE050014, // sw    $a1, 20($s0)
+		0x0043282A, // slt   $a1, $v0, $v1
+		0x30A6FFFF, // andi  $a2, $a1, 0xFFFF
+		0x34C70001, // ori   $a3, $a2, 0x0001
+		0x3C080001  // lui   $t0, 0x0001
+	};
+	private static final int[] floatMix = {
+		0x46020800, // add.s  $f0, $f1, $f2
+		0x46020842, // mul.s  $f1, $f1, $f2
+		0x60008080, // vadd.q C000, C000, C000
+		0x24420001, // addiu  $v0, $v0, 1
+		0x00431021, // addu   $v0, $v0, $v1
+		0x8E040010, // lw     $a0, 16($s0)
+		0xAE050014, // sw     $a1, 20($s0)
+		0x00621826  // xor    $v1, $v1, $v0
+	};
+	private static boolean success = true;
+
+	private static void writeCode(int[] mix, int numberOfInstructions) {
+		Memory mem = Memory.getInstance();
+		for (int i = 0; i < numberOfInstructions; i++) {
+			mem.write32(CODE_ADDRESS + (i << 2), mix[i % mix.length]);
+		}
+	}
+
+	private static void resetRegisters(Processor processor) {
+		for (int i = 0; i < 32; i++) {
+			processor.cpu.setRegister(i, 0);
+		}
+		processor.cpu.setRegister(3, 0x12345678);
+		processor.cpu.setRegister(16, DATA_ADDRESS);
+	}
+
+	private static long runDecoder(Processor processor, int numberOfInstructions, int iterations) {
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			processor.cpu.pc = CODE_ADDRESS;
+			for (int j = 0; j < numberOfInstructions; j++) {
+				int opcode = processor.cpu.fetchOpcode();
+				Instruction insn = Decoder.instruction(opcode);
+				insn.interpret(processor, opcode);
+			}
+		}
+
+		return System.nanoTime() - start;
+	}
+
+	private static long runDecodedInstructionCache(Processor processor, DecodedInstructionCache decodedInstructionCache, int numberOfInstructions, int iterations) {
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			processor.cpu.pc = CODE_ADDRESS;
+			for (int j = 0; j < numberOfInstructions; j++) {
+				int address = processor.cpu.pc;
+				int opcode = processor.cpu.fetchOpcode();
+				Instruction insn = decodedInstructionCache.getInstruction(address, opcode);
+				insn.interpret(processor, opcode);
+			}
+		}
+
+		return System.nanoTime() - start;
+	}
+
+	private static void checkValues(String mixName, Processor processor, int numberOfInstructions) {
+		resetRegisters(processor);
+		runDecoder(processor, numberOfInstructions, 1);
+		int[] expected = new int[32];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = processor.cpu.getRegister(i);
+		}
+
+		resetRegisters(processor);
+		runDecodedInstructionCache(processor, new DecodedInstructionCache(), numberOfInstructions, 1);
+		for (int i = 0; i < expected.length; i++) {
+			if (processor.cpu.getRegister(i) != expected[i]) {
+				System.out.println(String.format("FAILED: %s register %d: 0x%08X instead of 0x%08X", mixName, i, processor.cpu.getRegister(i), expected[i]));
+				success = false;
+			}
+		}
+	}
+
+	private static double getMillionInstructionsPerSecond(long nanos, int numberOfInstructions, int iterations) {
+		return ((double) numberOfInstructions) * iterations / (nanos / 1000.0);
+	}
+
+	private static void benchmark(String mixName, int[] mix, int numberOfInstructions, int iterations) {
+		Processor processor = Emulator.getProcessor();
+		DecodedInstructionCache decodedInstructionCache = new DecodedInstructionCache();
+		writeCode(mix, numberOfInstructions);
+		checkValues(mixName, processor, numberOfInstructions);
+
+		// Warm-up, giving a chance to the JIT compiler
+		resetRegisters(processor);
+		for (int i = 0; i < 10; i++) {
+			runDecoder(processor, numberOfInstructions, iterations / 10 + 1);
+			runDecodedInstructionCache(processor, decodedInstructionCache, numberOfInstructions, iterations / 10 + 1);
+		}
+
+		// Keep the best of several rounds to reduce the measurement noise,
+		// alternating the execution order of both methods
+		long decoderNanos = Long.MAX_VALUE;
+		long cacheNanos = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			if ((round & 1) == 0) {
+				decoderNanos = Math.min(decoderNanos, runDecoder(processor, numberOfInstructions, iterations));
+				cacheNanos = Math.min(cacheNanos, runDecodedInstructionCache(processor, decodedInstructionCache, numberOfInstructions, iterations));
+			} else {
+				cacheNanos = Math.min(cacheNanos, runDecodedInstructionCache(processor, decodedInstructionCache, numberOfInstructions, iterations));
+				decoderNanos = Math.min(decoderNanos, runDecoder(processor, numberOfInstructions, iterations));
+			}
+		}
+
+		System.out.println(String.format("%-12s Decoder: %7.1f Minsn/s, DecodedInstructionCache: %7.1f Minsn/s (x%.2f)", mixName, getMillionInstructionsPerSecond(decoderNanos, numberOfInstructions, iterations), getMillionInstructionsPerSecond(cacheNanos, numberOfInstructions, iterations), decoderNanos / (double) cacheNanos));
+	}
+
+	public static void main(String[] args) {
+		DOMConfigurator.configure("LogSettings.xml");
+
+		int numberOfInstructions = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		// The Emulator provides the Processor used by the load and store instructions
+		new Emulator(null);
+
+		benchmark("integer mix", integerMix, numberOfInstructions, iterations);
+		benchmark("float mix", floatMix, numberOfInstructions, iterations);
+
+		System.out.println(success ? "All the checks succeeded" : "Some checks failed");
+	}
+}
@@ -0,0 +1,261 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import java.util.Arrays;
+
+import org.apache.log4j.xml.DOMConfigurator;
+
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.Allegrex.compiler.RuntimeContext;
+import jpcsp.memory.DirectBufferMemory;
+import jpcsp.memory.FastMemory;
+import jpcsp.memory.IMemoryReader;
+import jpcsp.memory.IMemoryWriter;
+import jpcsp.memory.MemoryReader;
+import jpcsp.memory.MemoryWriter;
+import jpcsp.memory.NativeMemory;
+import jpcsp.memory.StandardMemory;
+
+/**
+ * Benchmark of the MemoryReader and MemoryWriter.
+ *
+ * For each Memory implementation and each value size (8, 16 and 32-bit),
+ * compares the throughput of the per-element readNext()/writeNext() calls
+ * against the bulk readNext(int[], ...)/writeNext(int[], ...) calls.
+ * The values read and written by both methods are also compared.
+ *
+ * Usage: MemoryReaderWriterBenchmark [lengthInBytes [iterations]]
+ *
+ * The NativeMemory is only benchmarked when the "memory" library is available.
+ */
+public class MemoryReaderWriterBenchmark {
+	private static final int[] steps = { 1, 2, 4 };
+	// Bulk calls are performed on chunks of this number of values
+	private static final int CHUNK_LENGTH = 1024;
+	private static final int ROUNDS = 3;
+	private static boolean success = true;
+	private static int sink;
+
+	private static Memory createMemory(String name) {
+		Memory mem = null;
+		if ("FastMemory".equals(name)) {
+			mem = new FastMemory();
+		} else if ("DirectBufferMemory".equals(name)) {
+			mem = new DirectBufferMemory();
+		} else if ("StandardMemory".equals(name)) {
+			mem = new StandardMemory();
+		} else if ("NativeMemory".equals(name)) {
+			try {
+				System.loadLibrary("memory");
+			} catch (UnsatisfiedLinkError e) {
+				return null;
+			}
+			mem = new NativeMemory();
+		}
+
+		if (mem == null || !mem.allocate()) {
+			return null;
+		}
+
+		return mem;
+	}
+
+	private static int getAddress(int step) {
+		// Start on a non 32-bit aligned address to also test the partial values.
+		// Keep space before the address to check that it is left unchanged.
+		return MemoryMap.START_RAM + 4 + (step == 4 ? 0 : 4 - step);
+	}
+
+	private static int[] readPerElement(int step, int lengthInBytes, int[] values) {
+		int n = lengthInBytes / step;
+		IMemoryReader memoryReader = MemoryReader.getMemoryReader(getAddress(step), lengthInBytes, step);
+		for (int i = 0; i < n; i++) {
+			values[i] = memoryReader.readNext();
+		}
+
+		return values;
+	}
+
+	private static int[] readBulk(int step, int lengthInBytes, int[] values) {
+		int n = lengthInBytes / step;
+		IMemoryReader memoryReader = MemoryReader.getMemoryReader(getAddress(step), lengthInBytes, step);
+		for (int i = 0; i < n; i += CHUNK_LENGTH) {
+			memoryReader.readNext(values, i, Math.min(CHUNK_LENGTH, n - i));
+		}
+
+		return values;
+	}
+
+	private static void writePerElement(int step, int lengthInBytes, int[] values) {
+		int n = lengthInBytes / step;
+		IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(getAddress(step), lengthInBytes, step);
+		for (int i = 0; i < n; i++) {
+			memoryWriter.writeNext(values[i]);
+		}
+		memoryWriter.flush();
+	}
+
+	private static void writeBulk(int step, int lengthInBytes, int[] values) {
+		int n = lengthInBytes / step;
+		IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(getAddress(step), lengthInBytes, step);
+		for (int i = 0; i < n; i += CHUNK_LENGTH) {
+			memoryWriter.writeNext(values, i, Math.min(CHUNK_LENGTH, n - i));
+		}
+		memoryWriter.flush();
+	}
+
+	private static void writeBulkShort(int step, int lengthInBytes, short[] values) {
+		int n = lengthInBytes / step;
+		IMemoryWriter memoryWriter = MemoryWriter.getMemoryWriter(getAddress(step), lengthInBytes, step);
+		for (int i = 0; i < n; i += CHUNK_LENGTH) {
+			memoryWriter.writeNext(values, i, Math.min(CHUNK_LENGTH, n - i));
+		}
+		memoryWriter.flush();
+	}
+
+	private static void check(boolean condition, String memoryName, int step, String test) {
+		if (!condition) {
+			System.out.println(String.format("FAILED: %s %d-bit %s", memoryName, step * 8, test));
+			success = false;
+		}
+	}
+
+	private static void fill(Memory mem, int address, int length) {
+		for (int i = 0; i < length; i++) {
+			mem.write8(address + i, (byte) 0x5A);
+		}
+	}
+
+	private static void checkValues(String memoryName, int step, int lengthInBytes) {
+		Memory mem = Memory.getInstance();
+		int n = lengthInBytes / step;
+		int mask = step == 4 ? 0xFFFFFFFF : (1 << (step * 8)) - 1;
+		int address = getAddress(step);
+
+		int[] values = new int[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = (i * 0x9E3779B1) & mask;
+		}
+
+		// The bulk write must produce the same memory content
+		// as the per-element write, without changing the surrounding bytes
+		fill(mem, address - 4, lengthInBytes + 8);
+		writePerElement(step, lengthInBytes, values);
+		int[] expected = readPerElement(step, lengthInBytes, new int[n]);
+		check(Arrays.equals(expected, values), memoryName, step, "writeNext/readNext");
+
+		fill(mem, address - 4, lengthInBytes + 8);
+		writeBulk(step, lengthInBytes, values);
+		check(Arrays.equals(readPerElement(step, lengthInBytes, new int[n]), values), memoryName, step, "bulk writeNext(int[])");
+		check(mem.read8(address - 1) == 0x5A && mem.read8(address + lengthInBytes) == 0x5A, memoryName, step, "bulk writeNext(int[]) limits");
+
+		short[] shortValues = new short[n];
+		for (int i = 0; i < n; i++) {
+			shortValues[i] = (short) values[i];
+		}
+		fill(mem, address - 4, lengthInBytes + 8);
+		writeBulkShort(step, lengthInBytes, shortValues);
+		int[] shortExpected = new int[n];
+		for (int i = 0; i < n; i++) {
+			shortExpected[i] = shortValues[i] & mask;
+		}
+		check(Arrays.equals(readPerElement(step, lengthInBytes, new int[n]), shortExpected), memoryName, step, "bulk writeNext(short[])");
+
+		// The bulk read must return the same values as the per-element read
+		writePerElement(step, lengthInBytes, values);
+		check(Arrays.equals(readBulk(step, lengthInBytes, new int[n]), values), memoryName, step, "bulk readNext(int[])");
+	}
+
+	private static double getMegaBytesPerSecond(long nanos, int lengthInBytes, int iterations) {
+		return ((double) lengthInBytes) * iterations / (nanos / 1000000000.0) / (1024 * 1024);
+	}
+
+	private static void benchmark(String memoryName, int step, int lengthInBytes, int iterations) {
+		int n = lengthInBytes / step;
+		int[] values = new int[n];
+		readPerElement(step, lengthInBytes, values);
+
+		// Warm-up, giving a chance to the JIT compiler
+		for (int i = 0; i < 10; i++) {
+			sink += readPerElement(step, lengthInBytes, values)[i];
+			sink += readBulk(step, lengthInBytes, values)[i];
+			writePerElement(step, lengthInBytes, values);
+			writeBulk(step, lengthInBytes, values);
+		}
+
+		// Keep the best of several rounds to reduce the measurement noise
+		long readPerElementNanos = Long.MAX_VALUE;
+		long readBulkNanos = Long.MAX_VALUE;
+		long writePerElementNanos = Long.MAX_VALUE;
+		long writeBulkNanos = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				sink += readPerElement(step, lengthInBytes, values)[i % n];
+			}
+			readPerElementNanos = Math.min(readPerElementNanos, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				sink += readBulk(step, lengthInBytes, values)[i % n];
+			}
+			readBulkNanos = Math.min(readBulkNanos, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				writePerElement(step, lengthInBytes, values);
+			}
+			writePerElementNanos = Math.min(writePerElementNanos, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				writeBulk(step, lengthInBytes, values);
+			}
+			writeBulkNanos = Math.min(writeBulkNanos, System.nanoTime() - start);
+		}
+
+		System.out.println(String.format("%-18s %2d-bit  read: %8.1f MB/s per-element, %8.1f MB/s bulk (x%.1f)  write: %8.1f MB/s per-element, %8.1f MB/s bulk (x%.1f)", memoryName, step * 8, getMegaBytesPerSecond(readPerElementNanos, lengthInBytes, iterations), getMegaBytesPerSecond(readBulkNanos, lengthInBytes, iterations), readPerElementNanos / (double) readBulkNanos, getMegaBytesPerSecond(writePerElementNanos, lengthInBytes, iterations), getMegaBytesPerSecond(writeBulkNanos, lengthInBytes, iterations), writePerElementNanos / (double) writeBulkNanos));
+	}
+
+	public static void main(String[] args) {
+		DOMConfigurator.configure("LogSettings.xml");
+
+		int lengthInBytes = args.length > 0 ? Integer.parseInt(args[0]) : 512 * 1024;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		String[] memoryNames = { "FastMemory", "DirectBufferMemory", "StandardMemory", "NativeMemory" };
+		for (String memoryName : memoryNames) {
+			Memory mem = createMemory(memoryName);
+			if (mem == null) {
+				System.out.println(String.format("%s not available", memoryName));
+				continue;
+			}
+
+			Memory.setInstance(mem);
+			RuntimeContext.updateMemory();
+
+			for (int step : steps) {
+				checkValues(memoryName, step, 1000 * step + 12);
+				benchmark(memoryName, step, lengthInBytes, iterations);
+			}
+		}
+
+		System.out.println(success ? "All the checks succeeded" : "Some checks failed");
+	}
+}
@@ -0,0 +1,310 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import static jpcsp.HLE.modules.sceNetAdhocctl.ADHOC_ID_LENGTH;
+import static jpcsp.HLE.modules.sceNetAdhocctl.GROUP_NAME_LENGTH;
+import static jpcsp.HLE.modules.sceNetAdhocctl.NICK_NAME_LENGTH;
+import static jpcsp.hardware.Wlan.MAC_ADDRESS_LENGTH;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.xml.DOMConfigurator;
+
+import jpcsp.network.proonline.ProOnlineServer;
+
+/**
+ * Load test of the ProOnline server.
+ *
+ * Simulates many clients connecting to the ProOnline server on localhost.
+ * Each client is logging in, scanning the groups, joining one of the groups
+ * and then sending periodically chat messages to the other players of its group.
+ * The chat messages contain their sending time, which is used to measure the
+ * latency of the server.
+ *
+ * Usage: ProOnlineServerLoadTest [numberClients [numberGroups [durationSeconds]]]
+ *
+ * When no server is already running on localhost, the server is started
+ * inside this process.
+ */
+public class ProOnlineServerLoadTest {
+	private static Logger log = Logger.getLogger("ProOnline");
+	private static final String host = "localhost";
+	private static final int port = 27312;
+	private static final String gameName = "ULUS99999";
+	private static final long chatPeriodMillis = 200L;
+	private static final int CHAT_MESSAGE_LENGTH = 64;
+	// Client-to-server opcodes
+	private static final int OPCODE_PING = 0;
+	private static final int OPCODE_LOGIN = 1;
+	private static final int OPCODE_CONNECT = 2;
+	private static final int OPCODE_DISCONNECT = 3;
+	private static final int OPCODE_SCAN = 4;
+	private static final int OPCODE_SCAN_COMPLETE = 5;
+	private static final int OPCODE_CONNECT_BSSID = 6;
+	private static final int OPCODE_CHAT = 7;
+	// Statistics, updated by all the client threads
+	private static int connectedClients;
+	private static long chatsSent;
+	private static long chatsReceived;
+	private static long totalLatencyNanos;
+	private static long maxLatencyNanos;
+	private static long packetsReceived;
+
+	private static class Client extends Thread {
+		private final int clientNumber;
+		private final String groupName;
+		private final long endMillis;
+		private final byte[] buffer = new byte[4096];
+		private int bufferLength;
+
+		public Client(int clientNumber, String groupName, long endMillis) {
+			this.clientNumber = clientNumber;
+			this.groupName = groupName;
+			this.endMillis = endMillis;
+			setName(String.format("ProOnline Load Test Client %d", clientNumber));
+			setDaemon(true);
+		}
+
+		private static void copyToBytes(byte[] bytes, int offset, String s, int length) {
+			for (int i = 0; i < length; i++) {
+				bytes[offset + i] = (byte) (i < s.length() ? s.charAt(i) : 0);
+			}
+		}
+
+		private byte[] getLoginPacket() {
+			byte[] bytes = new byte[1 + MAC_ADDRESS_LENGTH + NICK_NAME_LENGTH + ADHOC_ID_LENGTH];
+			int offset = 0;
+			bytes[offset++] = OPCODE_LOGIN;
+			// Locally administered MAC address built from the client number
+			bytes[offset++] = 0x02;
+			bytes[offset++] = 0x00;
+			bytes[offset++] = (byte) (clientNumber >> 24);
+			bytes[offset++] = (byte) (clientNumber >> 16);
+			bytes[offset++] = (byte) (clientNumber >> 8);
+			bytes[offset++] = (byte) clientNumber;
+			copyToBytes(bytes, offset, String.format("Client%d", clientNumber), NICK_NAME_LENGTH);
+			offset += NICK_NAME_LENGTH;
+			copyToBytes(bytes, offset, gameName, ADHOC_ID_LENGTH);
+
+			return bytes;
+		}
+
+		private byte[] getConnectPacket() {
+			byte[] bytes = new byte[1 + GROUP_NAME_LENGTH];
+			bytes[0] = OPCODE_CONNECT;
+			copyToBytes(bytes, 1, groupName, GROUP_NAME_LENGTH);
+
+			return bytes;
+		}
+
+		private byte[] getChatPacket() {
+			byte[] bytes = new byte[1 + CHAT_MESSAGE_LENGTH];
+			bytes[0] = OPCODE_CHAT;
+			copyToBytes(bytes, 1, Long.toString(System.nanoTime()), CHAT_MESSAGE_LENGTH);
+
+			return bytes;
+		}
+
+		private static int getPacketLength(int opcode) {
+			switch (opcode) {
+				case OPCODE_PING:
+				case OPCODE_SCAN_COMPLETE:
+					return 1;
+				case OPCODE_CONNECT:
+					return 1 + NICK_NAME_LENGTH + MAC_ADDRESS_LENGTH + 4;
+				case OPCODE_DISCONNECT:
+					return 1 + 4;
+				case OPCODE_SCAN:
+					return 1 + GROUP_NAME_LENGTH + MAC_ADDRESS_LENGTH;
+				case OPCODE_CONNECT_BSSID:
+					return 1 + MAC_ADDRESS_LENGTH;
+				case OPCODE_CHAT:
+					return 1 + CHAT_MESSAGE_LENGTH + NICK_NAME_LENGTH;
+			}
+
+			return -1;
+		}
+
+		private void processChat(int offset) {
+			int length = 0;
+			while (length < CHAT_MESSAGE_LENGTH && buffer[offset + length] != 0) {
+				length++;
+			}
+
+			try {
+				long sentNanos = Long.parseLong(new String(buffer, offset, length));
+				addLatency(System.nanoTime() - sentNanos);
+			} catch (NumberFormatException e) {
+				log.error(String.format("Client %d received invalid chat message", clientNumber));
+			}
+		}
+
+		private void processPackets() throws IOException {
+			int offset = 0;
+			while (offset < bufferLength) {
+				int opcode = buffer[offset] & 0xFF;
+				int packetLength = getPacketLength(opcode);
+				if (packetLength < 0) {
+					throw new IOException(String.format("Client %d received unknown opcode %d", clientNumber, opcode));
+				}
+				if (offset + packetLength > bufferLength) {
+					break;
+				}
+
+				if (opcode == OPCODE_CHAT) {
+					processChat(offset + 1);
+				}
+				addPacketReceived();
+				offset += packetLength;
+			}
+
+			bufferLength -= offset;
+			System.arraycopy(buffer, offset, buffer, 0, bufferLength);
+		}
+
+		@Override
+		public void run() {
+			Socket socket = new Socket();
+			try {
+				socket.connect(new InetSocketAddress(host, port));
+				socket.setTcpNoDelay(true);
+				socket.setSoTimeout(10);
+				InputStream is = socket.getInputStream();
+				OutputStream os = socket.getOutputStream();
+				addConnectedClient(1);
+
+				os.write(getLoginPacket());
+				os.write(new byte[] { OPCODE_SCAN });
+				os.write(getConnectPacket());
+
+				// Spread the chat messages of the clients over the period
+				long nextChatMillis = System.currentTimeMillis() + (clientNumber * 7L) % chatPeriodMillis;
+				while (System.currentTimeMillis() < endMillis) {
+					long now = System.currentTimeMillis();
+					if (now >= nextChatMillis) {
+						os.write(getChatPacket());
+						addChatSent();
+						nextChatMillis += chatPeriodMillis;
+					}
+
+					try {
+						int length = is.read(buffer, bufferLength, buffer.length - bufferLength);
+						if (length < 0) {
+							log.error(String.format("Client %d disconnected by the server", clientNumber));
+							break;
+						}
+						bufferLength += length;
+						processPackets();
+					} catch (SocketTimeoutException e) {
+						// Ignore timeout
+					}
+				}
+
+				os.write(new byte[] { OPCODE_DISCONNECT });
+			} catch (IOException e) {
+				log.error(String.format("Client %d: %s", clientNumber, e));
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// Ignore exception
+				}
+			}
+		}
+	}
+
+	private static synchronized void addConnectedClient(int count) {
+		connectedClients += count;
+	}
+
+	private static synchronized void addChatSent() {
+		chatsSent++;
+	}
+
+	private static synchronized void addPacketReceived() {
+		packetsReceived++;
+	}
+
+	private static synchronized void addLatency(long latencyNanos) {
+		chatsReceived++;
+		totalLatencyNanos += latencyNanos;
+		maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+	}
+
+	private static boolean isServerRunning() {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(host, port), 1000);
+			socket.close();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public static void main(String[] args) {
+		DOMConfigurator.configure("LogSettings.xml");
+
+		int numberClients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int numberGroups = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int durationSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		boolean localServer = false;
+		if (!isServerRunning()) {
+			ProOnlineServer.getInstance().start();
+			localServer = true;
+		}
+
+		long endMillis = System.currentTimeMillis() + durationSeconds * 1000L;
+		List<Client> clients = new ArrayList<Client>();
+		for (int i = 0; i < numberClients; i++) {
+			Client client = new Client(i, String.format("G%d", i % numberGroups), endMillis);
+			clients.add(client);
+			client.start();
+		}
+
+		for (Client client : clients) {
+			try {
+				client.join();
+			} catch (InterruptedException e) {
+				// Ignore exception
+			}
+		}
+
+		if (localServer) {
+			ProOnlineServer.getInstance().exit();
+		}
+
+		synchronized (ProOnlineServerLoadTest.class) {
+			System.out.println(String.format("Clients: %d requested, %d connected, %d groups, %d seconds", numberClients, connectedClients, numberGroups, durationSeconds));
+			System.out.println(String.format("Packets received: %d", packetsReceived));
+			System.out.println(String.format("Chat messages: %d sent, %d received", chatsSent, chatsReceived));
+			if (chatsReceived > 0) {
+				System.out.println(String.format("Chat latency: average %d us, max %d us", totalLatencyNanos / chatsReceived / 1000, maxLatencyNanos / 1000));
+			}
+		}
+	}
+}
@@ -0,0 +1,221 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import org.apache.log4j.xml.DOMConfigurator;
+
+import jpcsp.Emulator;
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.Processor;
+import jpcsp.Allegrex.Decoder;
+import jpcsp.Allegrex.Common.Instruction;
+import jpcsp.Allegrex.compiler.IProcessorExecutable;
+import jpcsp.Allegrex.compiler.ProcessorCompiler;
+import jpcsp.Allegrex.compiler.RuntimeContext;
+
+/**
+ * Benchmark of the ProcessorCompiler.
+ *
+ * Compares the instruction rate of the code blocks compiled by the
+ * ProcessorCompiler against the rate of the interpreter loop using
+ * a table of the instructions decoded in advance, as previously used
+ * by the MEProcessor.
+ * Both are executing the same loop of integer, load and store instructions.
+ * The resulting register values are also compared.
+ *
+ * Usage: ProcessorCompilerBenchmark [loopInstructions [loopCount]]
+ *
+ * The loop instructions must fit into one code block (at most 250 instructions).
+ */
+public class ProcessorCompilerBenchmark {
+	private static final int CODE_ADDRESS = MemoryMap.START_RAM + 0x10000;
+	private static final int DATA_ADDRESS = MemoryMap.START_RAM + 0x100000;
+	private static final int ROUNDS = 5;
+	private static final int[] integerMix = {
+		0x24420001, // addiu $v0, $v0, 1
+		0x00431021, // addu  $v0, $v0, $v1
+		0x00621826, // xor   $v1, $v1, $v0
+		0x00021080, // sll   $v0, $v0, 2
+		0x8E040010, // lw    $a0, 16($s0)
+		0xAE050014, // sw    $a1, 20($s0)
+		0x0043282A, // slt   $a1, $v0, $v1
+		0x30A6FFFF, // andi  $a2, $a1, 0xFFFF
+		0x34C70001, // ori   $a3, $a2, 0x0001
+		0x3C080001  // lui   $t0, 0x0001
+	};
+	private static final int LOOP_COUNTER_REGISTER = 9; // $t1
+	private static boolean success = true;
+
+	/**
+	 * Write the following code:
+	 *     loop: ... loopInstructions instructions from the integer mix
+	 *           addiu $t1, $t1, -1
+	 *           bne   $t1, $zero, loop
+	 *           nop
+	 *
+	 * @return the address following the code
+	 */
+	private static int writeCode(int loopInstructions) {
+		Memory mem = Memory.getInstance();
+		int address = CODE_ADDRESS;
+		for (int i = 0; i < loopInstructions; i++, address += 4) {
+			mem.write32(address, integerMix[i % integerMix.length]);
+		}
+		mem.write32(address, 0x2529FFFF);
+		address += 4;
+		mem.write32(address, 0x15200000 | (((CODE_ADDRESS - (address + 4)) >> 2) & 0xFFFF));
+		address += 4;
+		mem.write32(address, 0x00000000);
+		address += 4;
+
+		return address;
+	}
+
+	private static void resetRegisters(Processor processor, int loopCount) {
+		for (int i = 0; i < 32; i++) {
+			processor.cpu.setRegister(i, 0);
+		}
+		processor.cpu.setRegister(3, 0x12345678);
+		processor.cpu.setRegister(16, DATA_ADDRESS);
+		processor.cpu.setRegister(LOOP_COUNTER_REGISTER, loopCount);
+		processor.cpu.pc = CODE_ADDRESS;
+	}
+
+	private static Instruction[] decodeInstructions(int endAddress) {
+		Memory mem = Memory.getInstance();
+		Instruction[] instructions = new Instruction[(endAddress - CODE_ADDRESS) >> 2];
+		for (int pc = CODE_ADDRESS; pc < endAddress; pc += 4) {
+			instructions[(pc - CODE_ADDRESS) >> 2] = Decoder.instruction(mem.read32(pc));
+		}
+
+		return instructions;
+	}
+
+	private static long runDecodedTable(Processor processor, Instruction[] instructions, int endAddress, int loopCount) {
+		int[] memoryInt = RuntimeContext.getMemoryInt();
+		int tableStart = CODE_ADDRESS & Memory.addressMask;
+		int tableEnd = endAddress & Memory.addressMask;
+
+		resetRegisters(processor, loopCount);
+		long start = System.nanoTime();
+		while (true) {
+			int pc = processor.cpu.pc & Memory.addressMask;
+			if (pc >= tableEnd) {
+				break;
+			}
+			int opcode = memoryInt[pc >> 2];
+			processor.cpu.pc += 4;
+			instructions[(pc - tableStart) >> 2].interpret(processor, opcode);
+		}
+
+		return System.nanoTime() - start;
+	}
+
+	private static long runCompiled(Processor processor, ProcessorCompiler compiler, int endAddress, int loopCount) {
+		resetRegisters(processor, loopCount);
+		long start = System.nanoTime();
+		while (processor.cpu.pc != endAddress) {
+			IProcessorExecutable executable = compiler.getExecutable(processor.cpu.pc);
+			if (executable != null) {
+				executable.exec(processor);
+			} else {
+				processor.step();
+			}
+		}
+
+		return System.nanoTime() - start;
+	}
+
+	private static int[] getRegisters(Processor processor) {
+		int[] registers = new int[32];
+		for (int i = 0; i < registers.length; i++) {
+			registers[i] = processor.cpu.getRegister(i);
+		}
+
+		return registers;
+	}
+
+	private static void checkValues(Processor processor, ProcessorCompiler compiler, Instruction[] instructions, int endAddress) {
+		runDecodedTable(processor, instructions, endAddress, 10);
+		int[] expected = getRegisters(processor);
+
+		runCompiled(processor, compiler, endAddress, 10);
+		int[] registers = getRegisters(processor);
+		for (int i = 0; i < expected.length; i++) {
+			if (registers[i] != expected[i]) {
+				System.out.println(String.format("FAILED: register %d: 0x%08X instead of 0x%08X", i, registers[i], expected[i]));
+				success = false;
+			}
+		}
+	}
+
+	private static double getMillionInstructionsPerSecond(long nanos, int loopInstructions, int loopCount) {
+		// Count the loop instructions, the addiu, the bne and its delay slot
+		return ((double) loopInstructions + 3) * loopCount / (nanos / 1000.0);
+	}
+
+	private static void benchmark(int loopInstructions, int loopCount) {
+		Processor processor = Emulator.getProcessor();
+		ProcessorCompiler compiler = new ProcessorCompiler(processor, "Benchmark");
+		int endAddress = writeCode(loopInstructions);
+		Instruction[] instructions = decodeInstructions(endAddress);
+		checkValues(processor, compiler, instructions, endAddress);
+
+		// Warm-up, giving a chance to the JIT compiler
+		for (int i = 0; i < 10; i++) {
+			runDecodedTable(processor, instructions, endAddress, loopCount / 10 + 1);
+			runCompiled(processor, compiler, endAddress, loopCount / 10 + 1);
+		}
+
+		// Keep the best of several rounds to reduce the measurement noise,
+		// alternating the execution order of both methods
+		long decodedTableNanos = Long.MAX_VALUE;
+		long compiledNanos = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			if ((round & 1) == 0) {
+				decodedTableNanos = Math.min(decodedTableNanos, runDecodedTable(processor, instructions, endAddress, loopCount));
+				compiledNanos = Math.min(compiledNanos, runCompiled(processor, compiler, endAddress, loopCount));
+			} else {
+				compiledNanos = Math.min(compiledNanos, runCompiled(processor, compiler, endAddress, loopCount));
+				decodedTableNanos = Math.min(decodedTableNanos, runDecodedTable(processor, instructions, endAddress, loopCount));
+			}
+		}
+
+		System.out.println(String.format("%d instructions per loop: decoded table: %7.1f Minsn/s, compiled code blocks: %7.1f Minsn/s (x%.2f), %d code blocks", loopInstructions + 3, getMillionInstructionsPerSecond(decodedTableNanos, loopInstructions, loopCount), getMillionInstructionsPerSecond(compiledNanos, loopInstructions, loopCount), decodedTableNanos / (double) compiledNanos, compiler.getNumberOfCodeBlocks()));
+	}
+
+	public static void main(String[] args) {
+		DOMConfigurator.configure("LogSettings.xml");
+
+		int loopInstructions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int loopCount = args.length > 1 ? Integer.parseInt(args[1]) : 40000;
+
+		// The Emulator provides the Processor used by the load and store instructions
+		new Emulator(null);
+		RuntimeContext.updateMemory();
+		if (RuntimeContext.getMemoryInt() == null) {
+			System.out.println("The decoded table requires the FastMemory");
+			return;
+		}
+
+		benchmark(loopInstructions, loopCount);
+		benchmark(loopInstructions / 10, loopCount * 10);
+
+		System.out.println(success ? "All the checks succeeded" : "Some checks failed");
+	}
+}
@@ -0,0 +1,327 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.xml.DOMConfigurator;
+
+import jpcsp.Memory;
+import jpcsp.MemoryMap;
+import jpcsp.Allegrex.compiler.RuntimeContext;
+import jpcsp.graphics.GeCommands;
+import jpcsp.graphics.GeContext;
+import jpcsp.graphics.VertexState;
+import jpcsp.graphics.RE.NullRenderingEngine;
+import jpcsp.graphics.RE.software.CachedTexture;
+import jpcsp.graphics.RE.software.CachedTextureResampled;
+import jpcsp.graphics.RE.software.CoarseDepthBuffer;
+import jpcsp.graphics.RE.software.RESoftware;
+import jpcsp.graphics.RE.software.TriangleRenderer;
+import jpcsp.memory.FastMemory;
+
+/**
+ * Benchmark of the software renderer, with and without the BlockRasterizer.
+ *
+ * Each scene is a list of textured 2D triangles rendered with a depth test
+ * into a 480x272 frame buffer. The scenes are rendered first without and
+ * then with the BlockRasterizer: the resulting frame buffer and depth buffer
+ * must be identical and the pixel throughput of both renderings is compared.
+ *
+ * The scenes are synthetic: several layers of triangle meshes covering
+ * the screen, drawn front-to-back, in random order and back-to-front,
+ * and random triangles of all sizes and shapes using all the depth functions.
+ *
+ * Usage: SoftwareRendererBenchmark [frames]
+ */
+public class SoftwareRendererBenchmark {
+	private static final int WIDTH = 480;
+	private static final int HEIGHT = 272;
+	private static final int BUFFER_WIDTH = 512;
+	private static final int FBP = MemoryMap.START_VRAM;
+	private static final int ZBP = MemoryMap.START_VRAM + 0x88000;
+	private static final int TEXTURE_SIZE = 64;
+	private static final int LAYERS = 6;
+	private static final int CELL_SIZE = 40;
+	private static final int ROUNDS = 5;
+	private static boolean success = true;
+
+	private static class Scene {
+		private final String name;
+		private final int depthFunc;
+		private final int depthClearValue;
+		private final List<VertexState[]> triangles;
+		private final int numberPixels;
+
+		public Scene(String name, int depthFunc, int depthClearValue, List<VertexState[]> triangles, int numberPixels) {
+			this.name = name;
+			this.depthFunc = depthFunc;
+			this.depthClearValue = depthClearValue;
+			this.triangles = triangles;
+			this.numberPixels = numberPixels;
+		}
+	}
+
+	private static VertexState createVertex(Random random, float x, float y, float z) {
+		VertexState v = new VertexState();
+		v.p[0] = x;
+		v.p[1] = y;
+		v.p[2] = z;
+		v.t[0] = random.nextFloat() * TEXTURE_SIZE;
+		v.t[1] = random.nextFloat() * TEXTURE_SIZE;
+		v.c[0] = random.nextFloat();
+		v.c[1] = random.nextFloat();
+		v.c[2] = random.nextFloat();
+		v.c[3] = 1f;
+
+		return v;
+	}
+
+	private static List<VertexState[]> createLayer(Random random, float z) {
+		// A mesh of jittered cells covering the screen, each cell split in 2 triangles
+		int columns = WIDTH / CELL_SIZE;
+		int rows = (HEIGHT + CELL_SIZE - 1) / CELL_SIZE;
+		VertexState[][] grid = new VertexState[rows + 1][columns + 1];
+		for (int row = 0; row <= rows; row++) {
+			for (int column = 0; column <= columns; column++) {
+				float x = column * CELL_SIZE;
+				float y = row * CELL_SIZE;
+				if (column > 0 && column < columns) {
+					x += random.nextFloat() * 10f - 5f;
+				}
+				if (row > 0 && row < rows) {
+					y += random.nextFloat() * 10f - 5f;
+				}
+				grid[row][column] = createVertex(random, x, y, z + random.nextFloat() * 500f);
+			}
+		}
+
+		List<VertexState[]> triangles = new ArrayList<VertexState[]>();
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				triangles.add(new VertexState[] { grid[row][column], grid[row][column + 1], grid[row + 1][column] });
+				triangles.add(new VertexState[] { grid[row][column + 1], grid[row + 1][column + 1], grid[row + 1][column] });
+			}
+		}
+
+		return triangles;
+	}
+
+	private static Scene createLayersScene(String name, Random random, int[] layerOrder) {
+		List<VertexState[]> triangles = new ArrayList<VertexState[]>();
+		for (int layer : layerOrder) {
+			triangles.addAll(createLayer(random, 5000f + layer * 8000f));
+		}
+
+		return new Scene(name, GeCommands.ZTST_FUNCTION_PASS_PX_WHEN_DEPTH_IS_LESS, 0xFFFF, triangles, layerOrder.length * WIDTH * HEIGHT);
+	}
+
+	private static Scene createRandomScene(String name, Random random, int depthFunc, int depthClearValue, int numberTriangles) {
+		List<VertexState[]> triangles = new ArrayList<VertexState[]>();
+		long area = 0L;
+		for (int i = 0; i < numberTriangles; i++) {
+			// Triangles of all sizes, including thin ones and ones crossing the screen limits
+			float size = (float) Math.pow(2.0, random.nextFloat() * 9f);
+			float x = random.nextFloat() * (WIDTH + 100) - 50f;
+			float y = random.nextFloat() * (HEIGHT + 100) - 50f;
+			float z = random.nextFloat() * 65535f;
+			VertexState[] triangle = new VertexState[3];
+			for (int j = 0; j < 3; j++) {
+				float dz = (random.nextFloat() - 0.5f) * 8000f;
+				triangle[j] = createVertex(random, x + (random.nextFloat() - 0.5f) * size, y + (random.nextFloat() - 0.5f) * size, Math.max(0f, Math.min(65535f, z + dz)));
+			}
+			if (random.nextInt(8) == 0) {
+				// Thin triangle
+				triangle[2] = createVertex(random, triangle[0].p[0] + random.nextFloat() * 0.3f, triangle[0].p[1] + random.nextFloat() * 0.3f + (triangle[1].p[1] - triangle[0].p[1]), triangle[0].p[2]);
+			}
+			triangles.add(triangle);
+			area += (long) (size * size / 4f);
+		}
+
+		return new Scene(name, depthFunc, depthClearValue, triangles, (int) Math.min(area, Integer.MAX_VALUE));
+	}
+
+	private static GeContext createContext(int depthFunc) {
+		GeContext context = new GeContext();
+		context.setRenderingEngine(new NullRenderingEngine());
+		context.fbp = FBP;
+		context.fbw = BUFFER_WIDTH;
+		context.psm = GeCommands.TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888;
+		context.zbp = ZBP;
+		context.zbw = BUFFER_WIDTH;
+		context.scissor_x1 = 0;
+		context.scissor_y1 = 0;
+		context.scissor_x2 = WIDTH - 1;
+		context.scissor_y2 = HEIGHT - 1;
+		context.nearZ = 0x0000;
+		context.farZ = 0xFFFF;
+		context.vinfo.transform2D = true;
+		context.useVertexColor = true;
+		context.vinfo.color = GeCommands.VTYPE_COLOR_FORMAT_32BIT_ABGR_8888;
+		context.depthTestFlag.setEnabled(true);
+		context.depthFunc = depthFunc;
+		context.depthMask = true;
+		context.textureFlag.setEnabled(true);
+		context.texture_storage = GeCommands.TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888;
+		context.texture_width[0] = TEXTURE_SIZE;
+		context.texture_height[0] = TEXTURE_SIZE;
+		context.texture_buffer_width[0] = TEXTURE_SIZE;
+
+		return context;
+	}
+
+	private static CachedTextureResampled createTexture() {
+		int[] texels = new int[TEXTURE_SIZE * TEXTURE_SIZE];
+		Random random = new Random(1);
+		for (int i = 0; i < texels.length; i++) {
+			texels[i] = random.nextInt() | 0xFF000000;
+		}
+		CachedTexture cachedTexture = CachedTexture.getCachedTexture(TEXTURE_SIZE, TEXTURE_SIZE, GeCommands.TPSM_PIXEL_STORAGE_MODE_32BIT_ABGR8888, texels, 0, texels.length);
+
+		return new CachedTextureResampled(cachedTexture);
+	}
+
+	private static void clear(Scene scene) {
+		Memory mem = Memory.getInstance();
+		mem.memset(FBP, (byte) 0, BUFFER_WIDTH * HEIGHT * 4);
+		for (int i = 0; i < BUFFER_WIDTH * HEIGHT; i++) {
+			mem.write16(ZBP + i * 2, (short) scene.depthClearValue);
+		}
+		// The depth buffer has been modified outside of the rendering
+		CoarseDepthBuffer.invalidateAll();
+	}
+
+	private static void render(Scene scene, CachedTextureResampled texture) {
+		GeContext context = createContext(scene.depthFunc);
+		TriangleRenderer triangleRenderer = new TriangleRenderer(context, texture, true);
+		for (VertexState[] triangle : scene.triangles) {
+			triangleRenderer.setVertex(triangle[0], triangle[1], triangle[2]);
+			if (!triangleRenderer.isCulled(false) && triangleRenderer.prepare(context)) {
+				triangleRenderer.render();
+			}
+		}
+	}
+
+	private static int[] readBuffers() {
+		Memory mem = Memory.getInstance();
+		int[] buffers = new int[BUFFER_WIDTH * HEIGHT + BUFFER_WIDTH * HEIGHT / 2];
+		for (int i = 0; i < buffers.length; i++) {
+			int address = i < BUFFER_WIDTH * HEIGHT ? FBP + i * 4 : ZBP + (i - BUFFER_WIDTH * HEIGHT) * 4;
+			buffers[i] = mem.read32(address);
+		}
+
+		return buffers;
+	}
+
+	private static long renderFrames(Scene scene, CachedTextureResampled texture, int frames, boolean useBlockRasterizer) {
+		RESoftware.setUseBlockRasterizer(useBlockRasterizer);
+		long duration = 0L;
+		for (int frame = 0; frame < frames; frame++) {
+			clear(scene);
+			long start = System.nanoTime();
+			render(scene, texture);
+			duration += System.nanoTime() - start;
+		}
+
+		return duration;
+	}
+
+	private static void benchmark(Scene scene, CachedTextureResampled texture, int frames) {
+		RESoftware.setUseBlockRasterizer(false);
+		clear(scene);
+		render(scene, texture);
+		int[] expected = readBuffers();
+
+		RESoftware.setUseBlockRasterizer(true);
+		clear(scene);
+		render(scene, texture);
+		int[] result = readBuffers();
+
+		// Warm-up, giving a chance to the JIT compiler
+		renderFrames(scene, texture, frames, false);
+		renderFrames(scene, texture, frames, true);
+
+		// Alternate both renderings and keep the best of several rounds
+		// to reduce the measurement noise
+		long scanlineNanos = Long.MAX_VALUE;
+		long blockNanos = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			scanlineNanos = Math.min(scanlineNanos, renderFrames(scene, texture, frames, false));
+			blockNanos = Math.min(blockNanos, renderFrames(scene, texture, frames, true));
+		}
+
+		boolean identical = Arrays.equals(expected, result);
+		if (!identical) {
+			success = false;
+		}
+
+		double scanlinePixelsPerSecond = scene.numberPixels * (double) frames / (scanlineNanos / 1000000000.0) / 1000000.0;
+		double blockPixelsPerSecond = scene.numberPixels * (double) frames / (blockNanos / 1000000000.0) / 1000000.0;
+		System.out.println(String.format("%-26s %8.2f ms/frame scanline, %8.2f ms/frame block, %7.1f Mpixels/s vs %7.1f Mpixels/s (x%.2f) %s", scene.name, scanlineNanos / 1000000.0 / frames, blockNanos / 1000000.0 / frames, scanlinePixelsPerSecond, blockPixelsPerSecond, scanlineNanos / (double) blockNanos, identical ? "identical" : "DIFFERENT"));
+	}
+
+	public static void main(String[] args) {
+		DOMConfigurator.configure("LogSettings.xml");
+
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+		Random random = new Random(42);
+		int[] frontToBack = new int[LAYERS];
+		int[] backToFront = new int[LAYERS];
+		List<Integer> randomOrder = new ArrayList<Integer>();
+		for (int i = 0; i < LAYERS; i++) {
+			frontToBack[i] = i;
+			backToFront[i] = LAYERS - 1 - i;
+			randomOrder.add(i);
+		}
+		Collections.shuffle(randomOrder, random);
+		int[] shuffled = new int[LAYERS];
+		for (int i = 0; i < LAYERS; i++) {
+			shuffled[i] = randomOrder.get(i);
+		}
+
+		List<Scene> scenes = new ArrayList<Scene>();
+		scenes.add(createLayersScene("layers front-to-back", random, frontToBack));
+		scenes.add(createLayersScene("layers random order", random, shuffled));
+		scenes.add(createLayersScene("layers back-to-front", random, backToFront));
+		scenes.add(createRandomScene("random LESS", random, GeCommands.ZTST_FUNCTION_PASS_PX_WHEN_DEPTH_IS_LESS, 0xFFFF, 2000));
+		scenes.add(createRandomScene("random LESS_OR_EQUAL", random, GeCommands.ZTST_FUNCTION_PASS_PX_WHEN_DEPTH_IS_LESS_OR_EQUAL, 0xFFFF, 2000));
+		scenes.add(createRandomScene("random GREATER", random, GeCommands.ZTST_FUNCTION_PASS_PX_WHEN_DEPTH_IS_GREATER, 0x0000, 2000));
+		scenes.add(createRandomScene("random GREATER_OR_EQUAL", random, GeCommands.ZTST_FUNCTION_PASS_PX_WHEN_DEPTH_IS_GREATER_OR_EQUAL, 0x0000, 2000));
+		scenes.add(createRandomScene("random EQUAL", random, GeCommands.ZTST_FUNCTION_PASS_PX_WHEN_DEPTH_IS_EQUAL, 0x8000, 2000));
+		scenes.add(createRandomScene("random ALWAYS", random, GeCommands.ZTST_FUNCTION_ALWAYS_PASS_PIXEL, 0x0000, 2000));
+
+		Memory mem = new FastMemory();
+		if (!mem.allocate()) {
+			System.out.println("Cannot allocate the memory");
+			return;
+		}
+		Memory.setInstance(mem);
+		RuntimeContext.updateMemory();
+
+		CachedTextureResampled texture = createTexture();
+		for (Scene scene : scenes) {
+			benchmark(scene, texture, frames);
+		}
+
+		System.out.println(success ? "All the renderings are identical" : "Some renderings are different");
+	}
+}
@@ -20,6 +20,10 @@ import jpcsp.memory.IMemoryReader;
 import jpcsp.memory.MemoryReader;
 
 public class Hash {
+	// Number of 32-bit values read at once from the memory
+	private static final int CHUNK_LENGTH = 1024;
+	// Odd multiplier for the 64-bit hashCode (golden ratio)
+	private static final long HASH64_MULTIPLIER = 0x9E3779B97F4A7C15L;
 	// 256 Random values
 	private static final int[] salt = {
 		0x3A5601D2, 0x2B3DCB11, 0xEA39A63C, 0x552CBCBF,
@@ -98,10 +102,15 @@ public class Hash {
 	 */
 	public static int getHashCode(int hashCode, int addr, int lengthInBytes) {
 		IMemoryReader memoryReader = MemoryReader.getMemoryReader(addr, lengthInBytes, 4);
-		for (int i = 0, j = 0; i < lengthInBytes; i += 4, j++) {
-			int value = memoryReader.readNext();
-			hashCode ^= value + salt[j & 0xFF];
-			hashCode += i + addr;
+		int n = (lengthInBytes + 3) >> 2;
+		int[] values = new int[getChunkLength(n)];
+		for (int j = 0; j < n; ) {
+			int count = Math.min(values.length, n - j);
+			memoryReader.readNext(values, 0, count);
+			for (int k = 0; k < count; k++, j++) {
+				hashCode ^= values[k] + salt[j & 0xFF];
+				hashCode += (j << 2) + addr;
+			}
 		}
 
 		return hashCode;
@@ -149,11 +158,15 @@ public class Hash {
 	public static int getHashCodeComplex(int hashCode, int addr, int lengthInBytes) {
 		IMemoryReader memoryReader = MemoryReader.getMemoryReader(addr, lengthInBytes, 4);
 		int n = lengthInBytes / 4;
-		for (int i = 0; i < n; i++) {
-			int value = memoryReader.readNext();
-			value = Integer.rotateLeft(value, i & 31);
-			hashCode ^= value + i + addr;
-			hashCode += i + addr;
+		int[] values = new int[getChunkLength(n)];
+		for (int i = 0; i < n; ) {
+			int count = Math.min(values.length, n - i);
+			memoryReader.readNext(values, 0, count);
+			for (int k = 0; k < count; k++, i++) {
+				int value = Integer.rotateLeft(values[k], i & 31);
+				hashCode ^= value + i + addr;
+				hashCode += i + addr;
+			}
 		}
 
 		return hashCode;
@@ -216,12 +229,102 @@ public class Hash {
 	 * @return updated hashCode value
 	 */
 	public static int getHashCodeFloatingMemory(int hashCode, IMemoryReader memoryReader, int lengthInBytes) {
-		for (int i = 0; i < lengthInBytes; i += 4) {
-			int value = memoryReader.readNext();
-			hashCode ^= value + i;
-			hashCode += i;
+		int n = (lengthInBytes + 3) >> 2;
+		int[] values = new int[getChunkLength(n)];
+		for (int j = 0; j < n; ) {
+			int count = Math.min(values.length, n - j);
+			memoryReader.readNext(values, 0, count);
+			for (int k = 0; k < count; k++, j++) {
+				int i = j << 2;
+				hashCode ^= values[k] + i;
+				hashCode += i;
+			}
 		}
 
 		return hashCode;
 	}
+
+	/**
+	 * Generate a 64-bit hashCode on all the values of an array.
+	 * The hashCode is independent of the memory address and
+	 * is wide enough to be used to identify the data content.
+	 * 
+	 * @param hashCode		current hashCode value
+	 * @param values		the values to be hashed
+	 * @param offset		offset of the first value to be hashed
+	 * @param length		number of values to be hashed
+	 * @return updated hashCode value
+	 */
+	public static long getHashCode64(long hashCode, int[] values, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			hashCode = Long.rotateLeft((hashCode ^ (values[offset + i] & 0xFFFFFFFFL)) * HASH64_MULTIPLIER, 31);
+		}
+
+		return hashCode;
+	}
+
+	/**
+	 * Generate a 64-bit hashCode on all the values of an array.
+	 * The hashCode is independent of the memory address and
+	 * is wide enough to be used to identify the data content.
+	 * 
+	 * @param hashCode		current hashCode value
+	 * @param values		the values to be hashed
+	 * @param offset		offset of the first value to be hashed
+	 * @param length		number of values to be hashed
+	 * @return updated hashCode value
+	 */
+	public static long getHashCode64(long hashCode, short[] values, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			hashCode = Long.rotateLeft((hashCode ^ (values[offset + i] & 0xFFFFL)) * HASH64_MULTIPLIER, 31);
+		}
+
+		return hashCode;
+	}
+
+	/**
+	 * Generate a Fletcher-like checksum on all the values of an array.
+	 * The checksum is computed differently than getHashCode64()
+	 * and can be used to detect a collision of the 64-bit hashCode.
+	 * 
+	 * @param values		the values to be checked
+	 * @param offset		offset of the first value to be checked
+	 * @param length		number of values to be checked
+	 * @return the checksum
+	 */
+	public static long getChecksum(int[] values, int offset, int length) {
+		int sum1 = 0;
+		int sum2 = 0;
+		for (int i = 0; i < length; i++) {
+			sum1 += values[offset + i];
+			sum2 += sum1;
+		}
+
+		return (((long) sum2) << 32) | (sum1 & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Generate a Fletcher-like checksum on all the values of an array.
+	 * The checksum is computed differently than getHashCode64()
+	 * and can be used to detect a collision of the 64-bit hashCode.
+	 * 
+	 * @param values		the values to be checked
+	 * @param offset		offset of the first value to be checked
+	 * @param length		number of values to be checked
+	 * @return the checksum
+	 */
+	public static long getChecksum(short[] values, int offset, int length) {
+		int sum1 = 0;
+		int sum2 = 0;
+		for (int i = 0; i < length; i++) {
+			sum1 += values[offset + i] & 0xFFFF;
+			sum2 += sum1;
+		}
+
+		return (((long) sum2) << 32) | (sum1 & 0xFFFFFFFFL);
+	}
+
+	private static int getChunkLength(int n) {
+		return Math.max(0, Math.min(n, CHUNK_LENGTH));
+	}
 }
@@ -35,6 +35,27 @@ public class LongLongKey {
 		shift = key.shift;
 	}
 
+	/**
+	 * Create a complete key from its 128-bit value,
+	 * e.g. as previously returned by getKey1() and getKey2().
+	 *
+	 * @param key1  the lower 64 bits of the key
+	 * @param key2  the upper 64 bits of the key
+	 */
+	public LongLongKey(long key1, long key2) {
+		this.key1 = key1;
+		this.key2 = key2;
+		shift = Long.SIZE * 2;
+	}
+
+	public long getKey1() {
+		return key1;
+	}
+
+	public long getKey2() {
+		return key2;
+	}
+
 	public void reset() {
 		key1 = 0;
 		key2 = 0;
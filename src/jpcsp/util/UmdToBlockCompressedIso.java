@@ -0,0 +1,284 @@
+/*
+This file is part of jpcsp.
+
+Jpcsp is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Jpcsp is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with Jpcsp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jpcsp.util;
+
+import static jpcsp.filesystems.umdiso.BlockCompressedFileSectorDevice.BLOCK_OFFSET_MASK;
+import static jpcsp.filesystems.umdiso.BlockCompressedFileSectorDevice.FLAG_CHECKSUMS;
+import static jpcsp.filesystems.umdiso.BlockCompressedFileSectorDevice.FLAG_DICTIONARY;
+import static jpcsp.filesystems.umdiso.BlockCompressedFileSectorDevice.HEADER_LENGTH;
+import static jpcsp.filesystems.umdiso.BlockCompressedFileSectorDevice.MAGIC;
+import static jpcsp.filesystems.umdiso.BlockCompressedFileSectorDevice.UNCOMPRESSED_BLOCK;
+import static jpcsp.filesystems.umdiso.BlockCompressedFileSectorDevice.VERSION;
+import static jpcsp.filesystems.umdiso.ISectorDevice.sectorLength;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import jpcsp.filesystems.umdiso.UmdIsoReader;
+
+/**
+ * Convert an ISO, CSO or PBP image into the block-compressed ISO format
+ * read by jpcsp.filesystems.umdiso.BlockCompressedFileSectorDevice.
+ *
+ * Usage:
+ *     UmdToBlockCompressedIso [-blockSize <bytes>] [-level <0-9>] [-dictionary] [-noChecksums] <input file> <output file>
+ */
+public class UmdToBlockCompressedIso {
+	public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+	private static final int DICTIONARY_LENGTH = 32 * 1024;
+	private static final int DICTIONARY_SAMPLES = DICTIONARY_LENGTH / sectorLength;
+
+	private static class CompressedBlock {
+		public byte[] data;
+		public int length;
+		public boolean compressed;
+		public int checksum;
+	}
+
+	private static class CompressBlock implements Callable<CompressedBlock> {
+		private final byte[] block;
+		private final int length;
+		private final int level;
+		private final byte[] dictionary;
+
+		public CompressBlock(byte[] block, int length, int level, byte[] dictionary) {
+			this.block = block;
+			this.length = length;
+			this.level = level;
+			this.dictionary = dictionary;
+		}
+
+		@Override
+		public CompressedBlock call() {
+			CompressedBlock compressedBlock = new CompressedBlock();
+
+			CRC32 crc32 = new CRC32();
+			crc32.update(block, 0, length);
+			compressedBlock.checksum = (int) crc32.getValue();
+
+			Deflater deflater = new Deflater(level, true);
+			if (dictionary != null) {
+				deflater.setDictionary(dictionary);
+			}
+			deflater.setInput(block, 0, length);
+			deflater.finish();
+			byte[] buffer = new byte[length];
+			int compressedLength = 0;
+			while (!deflater.finished() && compressedLength < buffer.length) {
+				compressedLength += deflater.deflate(buffer, compressedLength, buffer.length - compressedLength);
+			}
+			boolean finished = deflater.finished();
+			deflater.end();
+
+			if (finished && compressedLength < length) {
+				compressedBlock.data = buffer;
+				compressedBlock.length = compressedLength;
+				compressedBlock.compressed = true;
+			} else {
+				// Not compressible, store the block uncompressed
+				compressedBlock.data = block;
+				compressedBlock.length = length;
+				compressedBlock.compressed = false;
+			}
+
+			return compressedBlock;
+		}
+	}
+
+	private static byte[] buildDictionary(UmdIsoReader iso, int numSectors) throws IOException {
+		// Sample sectors evenly distributed over the image
+		byte[] dictionary = new byte[DICTIONARY_LENGTH];
+		for (int i = 0; i < DICTIONARY_SAMPLES; i++) {
+			int sectorNumber = (int) (((long) numSectors) * i / DICTIONARY_SAMPLES);
+			iso.readSector(sectorNumber, dictionary, i * sectorLength);
+		}
+
+		return dictionary;
+	}
+
+	public static void convert(String inputFileName, String outputFileName, int blockSize, int level, boolean useDictionary, boolean useChecksums) throws IOException {
+		if (blockSize <= 0 || (blockSize % sectorLength) != 0) {
+			throw new IllegalArgumentException(String.format("Invalid block size %d, must be a multiple of %d", blockSize, sectorLength));
+		}
+
+		UmdIsoReader iso = new UmdIsoReader(inputFileName);
+		RandomAccessFile output = new RandomAccessFile(outputFileName, "rw");
+		output.setLength(0L);
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+
+		try {
+			int numSectors = iso.getNumSectors();
+			int sectorsPerBlock = blockSize / sectorLength;
+			int numBlocks = (numSectors + sectorsPerBlock - 1) / sectorsPerBlock;
+
+			byte[] dictionary = useDictionary ? buildDictionary(iso, numSectors) : null;
+			int flags = 0;
+			if (dictionary != null) {
+				flags |= FLAG_DICTIONARY;
+			}
+			if (useChecksums) {
+				flags |= FLAG_CHECKSUMS;
+			}
+
+			long indexOffset = HEADER_LENGTH;
+			int indexLength = (numBlocks + 1) * 8 + (useChecksums ? numBlocks * 4 : 0);
+			long dictionaryOffset = indexOffset + indexLength;
+			int dictionaryLength = dictionary != null ? dictionary.length : 0;
+			long dataOffset = dictionaryOffset + dictionaryLength;
+
+			long[] blockOffsets = new long[numBlocks + 1];
+			int[] blockChecksums = new int[numBlocks];
+
+			if (dictionary != null) {
+				output.seek(dictionaryOffset);
+				output.write(dictionary);
+			}
+
+			// Compress the blocks in parallel, by batches of blocks
+			output.seek(dataOffset);
+			long offset = dataOffset;
+			final int batchSize = nThreads * 4;
+			List<Future<CompressedBlock>> futures = new ArrayList<Future<CompressedBlock>>(batchSize);
+			for (int firstBlock = 0; firstBlock < numBlocks; firstBlock += batchSize) {
+				int lastBlock = Math.min(firstBlock + batchSize, numBlocks);
+				futures.clear();
+				for (int blockNumber = firstBlock; blockNumber < lastBlock; blockNumber++) {
+					int firstSector = blockNumber * sectorsPerBlock;
+					int blockSectors = Math.min(sectorsPerBlock, numSectors - firstSector);
+					byte[] block = new byte[blockSectors * sectorLength];
+					iso.readSectors(firstSector, blockSectors, block, 0);
+					futures.add(pool.submit(new CompressBlock(block, block.length, level, dictionary)));
+				}
+
+				for (int blockNumber = firstBlock; blockNumber < lastBlock; blockNumber++) {
+					CompressedBlock compressedBlock;
+					try {
+						compressedBlock = futures.get(blockNumber - firstBlock).get();
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					} catch (ExecutionException e) {
+						throw new IOException(e.getCause());
+					}
+
+					blockOffsets[blockNumber] = offset;
+					if (!compressedBlock.compressed) {
+						blockOffsets[blockNumber] |= UNCOMPRESSED_BLOCK;
+					}
+					blockChecksums[blockNumber] = compressedBlock.checksum;
+					output.write(compressedBlock.data, 0, compressedBlock.length);
+					offset += compressedBlock.length;
+				}
+
+				System.out.print(String.format("\rConverting... %d%%", (int) (lastBlock * 100L / numBlocks)));
+			}
+			blockOffsets[numBlocks] = offset;
+			System.out.println();
+
+			// Write the index
+			ByteBuffer indexBuffer = ByteBuffer.allocate(indexLength).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i <= numBlocks; i++) {
+				indexBuffer.putLong(blockOffsets[i]);
+			}
+			if (useChecksums) {
+				for (int i = 0; i < numBlocks; i++) {
+					indexBuffer.putInt(blockChecksums[i]);
+				}
+			}
+			output.seek(indexOffset);
+			output.write(indexBuffer.array());
+
+			// Write the header
+			ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+			headerBuffer.putInt(MAGIC);
+			headerBuffer.putInt(VERSION);
+			headerBuffer.putInt(HEADER_LENGTH);
+			headerBuffer.putInt(blockSize);
+			headerBuffer.putInt(numSectors);
+			headerBuffer.putInt(numBlocks);
+			headerBuffer.putInt(flags);
+			headerBuffer.putInt(dictionaryLength);
+			headerBuffer.putLong(dictionaryOffset);
+			headerBuffer.putLong(indexOffset);
+			output.seek(0L);
+			output.write(headerBuffer.array());
+
+			long inputLength = ((long) numSectors) * sectorLength;
+			long outputLength = offset & BLOCK_OFFSET_MASK;
+			System.out.println(String.format("Converted %d sectors into %d blocks: %d bytes -> %d bytes (%d%%)", numSectors, numBlocks, inputLength, outputLength, (int) (outputLength * 100L / Math.max(inputLength, 1L))));
+		} finally {
+			pool.shutdown();
+			output.close();
+			iso.close();
+		}
+	}
+
+	private static void usage() {
+		System.out.println("Usage: UmdToBlockCompressedIso [-blockSize <bytes>] [-level <0-9>] [-dictionary] [-noChecksums] <input file> <output file>");
+	}
+
+	public static void main(String[] args) {
+		int blockSize = DEFAULT_BLOCK_SIZE;
+		int level = Deflater.BEST_COMPRESSION;
+		boolean useDictionary = false;
+		boolean useChecksums = true;
+		String inputFileName = null;
+		String outputFileName = null;
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if ("-blockSize".equals(arg) && i + 1 < args.length) {
+				blockSize = Integer.parseInt(args[++i]);
+			} else if ("-level".equals(arg) && i + 1 < args.length) {
+				level = Integer.parseInt(args[++i]);
+			} else if ("-dictionary".equals(arg)) {
+				useDictionary = true;
+			} else if ("-noChecksums".equals(arg)) {
+				useChecksums = false;
+			} else if (inputFileName == null) {
+				inputFileName = arg;
+			} else if (outputFileName == null) {
+				outputFileName = arg;
+			} else {
+				usage();
+				return;
+			}
+		}
+
+		if (inputFileName == null || outputFileName == null) {
+			usage();
+			return;
+		}
+
+		try {
+			convert(inputFileName, outputFileName, blockSize, level, useDictionary, useChecksums);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}